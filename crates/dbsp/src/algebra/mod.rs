@@ -713,6 +713,23 @@ where
     }
 }
 
+/// [`Semigroup`] implementation that returns its left argument.
+///
+/// Used for the components of a tuple accumulator which a computation does
+/// not need, e.g., the aggregates of the other frames in
+/// [`Stream::partitioned_rolling_aggregate_ranges`](`crate::Stream::partitioned_rolling_aggregate_ranges`).
+#[derive(Clone)]
+pub struct FirstSemigroup<V>(PhantomData<V>);
+
+impl<V> Semigroup<V> for FirstSemigroup<V>
+where
+    V: Clone,
+{
+    fn combine(left: &V, _right: &V) -> V {
+        left.clone()
+    }
+}
+
 /// [`Semigroup`] implementation that panics with "not implemented"
 /// message.
 // TODO: this is a temporary thing that can be used with aggregation operators,
@@ -18,6 +18,9 @@ use crate::{
 use std::{borrow::Cow, marker::PhantomData, ops::Neg};
 
 mod lag;
+mod order_by;
+mod range_aggregate;
+mod rows_aggregate;
 mod topk;
 
 #[cfg(test)]
@@ -28,6 +31,9 @@ use minitrace::trace;
 
 use crate::dynamic::{ClonableTrait, Erase};
 pub use lag::{LagCustomOrdFactories, LagFactories};
+pub use order_by::OrderByCustomOrdFactories;
+pub use range_aggregate::RangeAggregateCustomOrdFactories;
+pub use rows_aggregate::{DynFrame, RowsAggregateCustomOrdFactories};
 pub use topk::{TopKCustomOrdFactories, TopKFactories, TopKRankCustomOrdFactories};
 
 /// Specifies the order in which a group transformer produces output tuples.
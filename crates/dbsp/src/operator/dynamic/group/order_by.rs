@@ -0,0 +1,197 @@
+use super::{GroupTransformer, Monotonicity};
+use crate::{
+    algebra::{HasZero, OrdIndexedZSet, OrdIndexedZSetFactories, ZCursor},
+    dynamic::{DataTrait, DynDataTyped, DynPair, DynUnit, Erase, Factory},
+    trace::{cursor::CursorPair, BatchReaderFactories},
+    utils::Tup2,
+    DBData, DynZWeight, RootCircuit, Stream, ZWeight,
+};
+use std::{marker::PhantomData, ops::Neg};
+
+pub struct OrderByCustomOrdFactories<K, V2, OV>
+where
+    K: DataTrait + ?Sized,
+    V2: DataTrait + ?Sized,
+    OV: DataTrait + ?Sized,
+{
+    inner_factories: OrdIndexedZSetFactories<K, V2>,
+    numbered_factories: OrdIndexedZSetFactories<K, DynPair<DynDataTyped<i64>, V2>>,
+    output_factories: OrdIndexedZSetFactories<K, OV>,
+}
+
+impl<K, V2, OV> OrderByCustomOrdFactories<K, V2, OV>
+where
+    K: DataTrait + ?Sized,
+    V2: DataTrait + ?Sized,
+    OV: DataTrait + ?Sized,
+{
+    pub fn new<KType, V2Type, OVType>() -> Self
+    where
+        KType: DBData + Erase<K>,
+        V2Type: DBData + Erase<V2>,
+        OVType: DBData + Erase<OV>,
+    {
+        Self {
+            inner_factories: BatchReaderFactories::new::<KType, V2Type, ZWeight>(),
+            numbered_factories: BatchReaderFactories::new::<KType, Tup2<i64, V2Type>, ZWeight>(),
+            output_factories: BatchReaderFactories::new::<KType, OVType, ZWeight>(),
+        }
+    }
+}
+
+impl<K, V> Stream<RootCircuit, OrdIndexedZSet<K, V>>
+where
+    K: DataTrait + ?Sized,
+    V: DataTrait + ?Sized,
+{
+    /// See [`Stream::order_by_custom_order`].
+    pub fn dyn_order_by_custom_order<V2, OV>(
+        &self,
+        factories: &OrderByCustomOrdFactories<K, V2, OV>,
+        encode: Box<dyn Fn(&V, &mut V2)>,
+        output_func: Box<dyn Fn(i64, &V2, &mut OV)>,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        V2: DataTrait + ?Sized,
+        OV: DataTrait + ?Sized,
+    {
+        self.dyn_map_index(
+            &factories.inner_factories,
+            Box::new(move |(k, v), kv| {
+                let (out_k, out_v) = kv.split_mut();
+                k.clone_to(out_k);
+                encode(v, out_v);
+            }),
+        )
+        .dyn_group_transform(
+            &factories.inner_factories,
+            &factories.numbered_factories,
+            Box::new(OrderBy::new(
+                factories.numbered_factories.val_factory(),
+                factories.inner_factories.val_factory(),
+            )),
+        )
+        .dyn_map_index(
+            &factories.output_factories,
+            Box::new(move |(k, v), kv| {
+                let (out_k, out_v) = kv.split_mut();
+                let (position, v2) = v.split();
+                k.clone_to(out_k);
+                output_func(**position, v2, out_v);
+            }),
+        )
+    }
+}
+
+/// Incremental transformer that attaches to each value its row number in the
+/// ascending order of the values in the group.
+///
+/// Unlike the row number computed by `top-k`, this transformer never rebuilds
+/// the whole group.  The row numbers of all values that precede the smallest
+/// modified value are unchanged, so only the suffix of the group that starts
+/// at this value is renumbered, and only the changed row numbers are output.
+/// The row number of the first value of the suffix is derived from the last
+/// row number in the output trace, so the cost of a step is proportional to
+/// the length of the suffix; e.g., appending values at the end of the order
+/// costs time proportional to the number of appended values.
+struct OrderBy<I: DataTrait + ?Sized> {
+    output_pair: Box<DynPair<DynDataTyped<i64>, I>>,
+    first_key: Box<I>,
+    _phantom: PhantomData<fn(&I)>,
+}
+
+impl<I: DataTrait + ?Sized> OrderBy<I> {
+    fn new(
+        output_pair_factory: &'static dyn Factory<DynPair<DynDataTyped<i64>, I>>,
+        key_factory: &'static dyn Factory<I>,
+    ) -> Self {
+        Self {
+            output_pair: output_pair_factory.default_box(),
+            first_key: key_factory.default_box(),
+            _phantom: PhantomData,
+        }
+    }
+}
+
+impl<I> GroupTransformer<I, DynPair<DynDataTyped<i64>, I>> for OrderBy<I>
+where
+    I: DataTrait + ?Sized,
+{
+    fn name(&self) -> &str {
+        "order_by"
+    }
+
+    fn monotonicity(&self) -> Monotonicity {
+        // Retractions are produced in descending order, insertions in
+        // ascending order.
+        Monotonicity::Unordered
+    }
+
+    fn transform(
+        &mut self,
+        input_delta: &mut dyn ZCursor<I, DynUnit, ()>,
+        input_trace: &mut dyn ZCursor<I, DynUnit, ()>,
+        output_trace: &mut dyn ZCursor<DynPair<DynDataTyped<i64>, I>, DynUnit, ()>,
+        output_cb: &mut dyn FnMut(&mut DynPair<DynDataTyped<i64>, I>, &mut DynZWeight),
+    ) {
+        if !input_delta.key_valid() {
+            return;
+        }
+        input_delta.key().clone_to(self.first_key.as_mut());
+
+        // Number of values in the old contents of the group that are not
+        // smaller than the first modified value.  Like `top-k`, we ignore
+        // values with negative weights.
+        let mut suffix: ZWeight = 0;
+        input_trace.fast_forward_keys();
+        while input_trace.key_valid() && input_trace.key() >= self.first_key.as_ref() {
+            let w = **input_trace.weight();
+            if w > 0 {
+                suffix += w;
+            }
+            input_trace.step_key_reverse();
+        }
+
+        // The last row number in the output trace is the old size of the group.
+        output_trace.fast_forward_keys();
+        while output_trace.key_valid() && output_trace.weight().is_zero() {
+            output_trace.step_key_reverse();
+        }
+        let total = if output_trace.key_valid() {
+            **output_trace.key().fst()
+        } else {
+            0
+        };
+
+        // Retract the old row numbers of the suffix.
+        let first_position = total - suffix + 1;
+        while output_trace.key_valid() && **output_trace.key().fst() >= first_position {
+            let w = **output_trace.weight();
+            if !w.is_zero() {
+                output_trace.key().clone_to(self.output_pair.as_mut());
+                output_cb(self.output_pair.as_mut(), w.neg().erase_mut());
+            }
+            output_trace.step_key_reverse();
+        }
+
+        // Number the new contents of the suffix.  Entries that keep their
+        // row number cancel out with the retractions above.
+        input_delta.rewind_keys();
+        input_trace.rewind_keys();
+        let mut cursor = CursorPair::new(input_delta, input_trace);
+        cursor.seek_key(self.first_key.as_ref());
+        let mut position = first_position;
+        while cursor.key_valid() {
+            let w = **cursor.weight();
+            for _ in 0..w {
+                let (p, v) = self.output_pair.split_mut();
+                **p = position;
+                cursor.key().clone_to(v);
+                let mut one: ZWeight = 1;
+                output_cb(self.output_pair.as_mut(), one.erase_mut());
+                position += 1;
+            }
+            cursor.step_key();
+        }
+    }
+}
@@ -0,0 +1,487 @@
+use super::{DynFrame, GroupTransformer, Monotonicity, RowsAggregateCustomOrdFactories};
+use crate::{
+    algebra::{OrdIndexedZSet, ZCursor},
+    dynamic::{DataTrait, DynOpt, DynPair, DynUnit, DynVec, Factory},
+    operator::dynamic::time_series::{RelOffset, RelRange},
+    trace::cursor::CursorPair,
+    DynZWeight, RootCircuit, Stream, ZWeight,
+};
+use std::{marker::PhantomData, ops::Neg};
+
+/// Factories for [`Stream::dyn_range_aggregate_custom_order`].
+pub type RangeAggregateCustomOrdFactories<K, V2, Acc, A, OV> =
+    RowsAggregateCustomOrdFactories<K, V2, Acc, A, OV>;
+
+impl<K, V> Stream<RootCircuit, OrdIndexedZSet<K, V>>
+where
+    K: DataTrait + ?Sized,
+    V: DataTrait + ?Sized,
+{
+    /// See [`Stream::range_aggregate_custom_order`].
+    ///
+    /// `aggregate` computes the accumulator of a set of rows, `combine`
+    /// adds an accumulator to another one, and `finalize` computes the
+    /// aggregate of an accumulator.
+    #[allow(clippy::type_complexity, clippy::too_many_arguments)]
+    pub fn dyn_range_aggregate_custom_order<V2, Acc, A, OV>(
+        &self,
+        factories: &RangeAggregateCustomOrdFactories<K, V2, Acc, A, OV>,
+        range: RelRange<u64>,
+        encode: Box<dyn Fn(&V, &mut V2)>,
+        peers: Box<dyn Fn(&V2, &V2) -> bool>,
+        aggregate: Box<dyn Fn(&DynFrame<V2>, &mut DynOpt<Acc>)>,
+        combine: Box<dyn Fn(&mut DynOpt<Acc>, &DynOpt<Acc>)>,
+        finalize: Box<dyn Fn(&DynOpt<Acc>, &mut DynOpt<A>)>,
+        output_func: Box<dyn Fn(&V2, &DynOpt<A>, &mut OV)>,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        V2: DataTrait + ?Sized,
+        Acc: DataTrait + ?Sized,
+        A: DataTrait + ?Sized,
+        OV: DataTrait + ?Sized,
+    {
+        self.dyn_map_index(
+            &factories.inner_factories,
+            Box::new(move |(k, v), kv| {
+                let (out_k, out_v) = kv.split_mut();
+                k.clone_to(out_k);
+                encode(v, out_v);
+            }),
+        )
+        .dyn_group_transform(
+            &factories.inner_factories,
+            &factories.aggregated_factories,
+            Box::new(RangeAggregate::new(
+                factories.aggregated_factories.val_factory(),
+                factories.keys_factory,
+                factories.frame_factory,
+                factories.acc_factory,
+                range,
+                peers,
+                aggregate,
+                combine,
+                finalize,
+            )),
+        )
+        .dyn_map_index(
+            &factories.output_factories,
+            Box::new(move |(k, v), kv| {
+                let (out_k, out_v) = kv.split_mut();
+                let (v2, agg) = v.split();
+                k.clone_to(out_k);
+                output_func(v2, agg, out_v);
+            }),
+        )
+    }
+}
+
+/// Incremental transformer that computes an aggregate over a window frame
+/// whose bounds are either unbounded or the current row and its peers.
+///
+/// These are the only `RANGE` frames that can be defined over an arbitrary
+/// total order, where the distance between two values is not defined.  Two
+/// values are peers if `peers` returns `true`; peers must be contiguous in
+/// the order of the group.  Values with negative weights are ignored.
+///
+/// All the peers of a value have the same frame, so when a value changes
+/// only the values whose frames contain one of its peers are aggregated
+/// again: its own peers, plus all the values after it if the frame is
+/// unbounded on the left, and all the values before it if the frame is
+/// unbounded on the right.
+///
+/// Frames which are unbounded on one side are computed with a single running
+/// fold over the peer groups, starting from the unbounded side, so each row is
+/// aggregated once per step instead of once per affected value.
+struct RangeAggregate<I: DataTrait + ?Sized, Acc: DataTrait + ?Sized, A: DataTrait + ?Sized> {
+    /// True if the frame starts with the first row of the group.
+    unbounded_before: bool,
+    /// True if the frame ends with the last row of the group.
+    unbounded_after: bool,
+    peers: Box<dyn Fn(&I, &I) -> bool>,
+    aggregate: Box<dyn Fn(&DynFrame<I>, &mut DynOpt<Acc>)>,
+    combine: Box<dyn Fn(&mut DynOpt<Acc>, &DynOpt<Acc>)>,
+    finalize: Box<dyn Fn(&DynOpt<Acc>, &mut DynOpt<A>)>,
+    /// Keys in the input delta.
+    delta_keys: Box<DynVec<I>>,
+    /// Values whose outputs must be recomputed.
+    affected_keys: Box<DynVec<I>>,
+    /// The values of the peer group being folded.
+    group_keys: Box<DynVec<I>>,
+    /// The rows of the frame being aggregated.
+    frame: Box<DynFrame<I>>,
+    /// Accumulator of the rows of `frame`.
+    frame_acc: Box<DynOpt<Acc>>,
+    /// Accumulator of the running fold.
+    acc: Box<DynOpt<Acc>>,
+    output_pair: Box<DynPair<I, DynOpt<A>>>,
+    _phantom: PhantomData<fn(&I, &Acc, &A)>,
+}
+
+impl<I, Acc, A> RangeAggregate<I, Acc, A>
+where
+    I: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+{
+    #[allow(clippy::too_many_arguments)]
+    fn new(
+        output_pair_factory: &'static dyn Factory<DynPair<I, DynOpt<A>>>,
+        keys_factory: &'static dyn Factory<DynVec<I>>,
+        frame_factory: &'static dyn Factory<DynFrame<I>>,
+        acc_factory: &'static dyn Factory<DynOpt<Acc>>,
+        range: RelRange<u64>,
+        peers: Box<dyn Fn(&I, &I) -> bool>,
+        aggregate: Box<dyn Fn(&DynFrame<I>, &mut DynOpt<Acc>)>,
+        combine: Box<dyn Fn(&mut DynOpt<Acc>, &DynOpt<Acc>)>,
+        finalize: Box<dyn Fn(&DynOpt<Acc>, &mut DynOpt<A>)>,
+    ) -> Self {
+        let unbounded_before = match range.from {
+            RelOffset::Before(u64::MAX) => true,
+            RelOffset::Before(0) | RelOffset::After(0) => false,
+            _ => panic!("frame must start with the first row or the current row: {range:?}"),
+        };
+        let unbounded_after = match range.to {
+            RelOffset::After(u64::MAX) => true,
+            RelOffset::Before(0) | RelOffset::After(0) => false,
+            _ => panic!("frame must end with the last row or the current row: {range:?}"),
+        };
+
+        Self {
+            unbounded_before,
+            unbounded_after,
+            peers,
+            aggregate,
+            combine,
+            finalize,
+            delta_keys: keys_factory.default_box(),
+            affected_keys: keys_factory.default_box(),
+            group_keys: keys_factory.default_box(),
+            frame: frame_factory.default_box(),
+            frame_acc: acc_factory.default_box(),
+            acc: acc_factory.default_box(),
+            output_pair: output_pair_factory.default_box(),
+            _phantom: PhantomData,
+        }
+    }
+
+    /// Visit the peers of `key` before `key` in `cursor`.
+    fn for_each_before(
+        cursor: &mut dyn ZCursor<I, DynUnit, ()>,
+        key: &I,
+        peers: &dyn Fn(&I, &I) -> bool,
+        f: &mut dyn FnMut(&I, ZWeight),
+    ) {
+        cursor.fast_forward_keys();
+        cursor.seek_key_reverse(key);
+        if cursor.key_valid() && cursor.key() == key {
+            cursor.step_key_reverse();
+        }
+        while cursor.key_valid() && peers(cursor.key(), key) {
+            let w = **cursor.weight();
+            if w > 0 {
+                f(cursor.key(), w);
+            }
+            cursor.step_key_reverse();
+        }
+    }
+
+    /// Visit the peers of `key` after `key` in `cursor`.
+    fn for_each_after(
+        cursor: &mut dyn ZCursor<I, DynUnit, ()>,
+        key: &I,
+        peers: &dyn Fn(&I, &I) -> bool,
+        f: &mut dyn FnMut(&I, ZWeight),
+    ) {
+        cursor.rewind_keys();
+        cursor.seek_key(key);
+        if cursor.key_valid() && cursor.key() == key {
+            cursor.step_key();
+        }
+        while cursor.key_valid() && peers(cursor.key(), key) {
+            let w = **cursor.weight();
+            if w > 0 {
+                f(cursor.key(), w);
+            }
+            cursor.step_key();
+        }
+    }
+
+    /// Record in `affected_keys` the peers of `key`, whose frames contain
+    /// `key` when the frame is bounded on both sides.
+    fn record_affected(
+        cursor: &mut dyn ZCursor<I, DynUnit, ()>,
+        key: &I,
+        peers: &dyn Fn(&I, &I) -> bool,
+        affected_keys: &mut DynVec<I>,
+    ) {
+        let mut record = |k: &I, _w: ZWeight| affected_keys.push_ref(k);
+        Self::for_each_before(cursor, key, peers, &mut record);
+        Self::for_each_after(cursor, key, peers, &mut record);
+    }
+
+    /// True if the frame of `key` contains a modified value, when the frame
+    /// is unbounded on at least one side.  `first` and `last` are the first
+    /// and last modified values.
+    fn unbounded_affected(&self, key: &I, first: &I, last: &I) -> bool {
+        match (self.unbounded_before, self.unbounded_after) {
+            (true, true) => true,
+            (true, false) => key >= first || (self.peers)(key, first),
+            (false, true) => key <= last || (self.peers)(key, last),
+            (false, false) => unreachable!(),
+        }
+    }
+
+    /// Read the next peer group from `cursor` into `group_keys` and the rows
+    /// with positive weights of the group into `frame`, moving backward if
+    /// `reverse` is true.
+    fn read_group(
+        cursor: &mut dyn ZCursor<I, DynUnit, ()>,
+        reverse: bool,
+        peers: &dyn Fn(&I, &I) -> bool,
+        group_keys: &mut DynVec<I>,
+        frame: &mut DynFrame<I>,
+    ) {
+        group_keys.clear();
+        frame.clear();
+        while cursor.key_valid()
+            && (group_keys.is_empty() || peers(cursor.key(), group_keys.index(0)))
+        {
+            let key = cursor.key();
+            group_keys.push_ref(key);
+            let w = **cursor.weight();
+            if w > 0 {
+                frame.push_with(&mut |pair| {
+                    let (fk, fw) = pair.split_mut();
+                    key.clone_to(fk);
+                    **fw = w;
+                });
+            }
+            if reverse {
+                cursor.step_key_reverse();
+            } else {
+                cursor.step_key();
+            }
+        }
+    }
+
+    /// Output each row of `frame` with aggregate `acc`.
+    fn output_frame(
+        frame: &DynFrame<I>,
+        acc: &DynOpt<Acc>,
+        finalize: &dyn Fn(&DynOpt<Acc>, &mut DynOpt<A>),
+        output_pair: &mut DynPair<I, DynOpt<A>>,
+        output_cb: &mut dyn FnMut(&mut DynPair<I, DynOpt<A>>, &mut DynZWeight),
+    ) {
+        for i in 0..frame.len() {
+            let (key, w) = frame.index(i).split();
+            let mut w = **w;
+            let (k, agg) = output_pair.split_mut();
+            key.clone_to(k);
+            finalize(acc, agg);
+            output_cb(output_pair, w.erase_mut());
+        }
+    }
+}
+
+impl<I, Acc, A> GroupTransformer<I, DynPair<I, DynOpt<A>>> for RangeAggregate<I, Acc, A>
+where
+    I: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+{
+    fn name(&self) -> &str {
+        "range_aggregate"
+    }
+
+    fn monotonicity(&self) -> Monotonicity {
+        // Retractions and insertions of the same value are not ordered by the
+        // aggregate.
+        Monotonicity::Unordered
+    }
+
+    fn transform(
+        &mut self,
+        input_delta: &mut dyn ZCursor<I, DynUnit, ()>,
+        input_trace: &mut dyn ZCursor<I, DynUnit, ()>,
+        output_trace: &mut dyn ZCursor<DynPair<I, DynOpt<A>>, DynUnit, ()>,
+        output_cb: &mut dyn FnMut(&mut DynPair<I, DynOpt<A>>, &mut DynZWeight),
+    ) {
+        self.delta_keys.clear();
+        while input_delta.key_valid() {
+            self.delta_keys.push_ref(input_delta.key());
+            input_delta.step_key();
+        }
+        if self.delta_keys.is_empty() {
+            return;
+        }
+
+        if self.unbounded_before || self.unbounded_after {
+            self.transform_unbounded(input_delta, input_trace, output_trace, output_cb);
+            return;
+        }
+
+        // The affected values are computed both in the old contents of the
+        // group, and in the new one.
+        self.affected_keys.clear();
+        for i in 0..self.delta_keys.len() {
+            let key = self.delta_keys.index(i);
+            self.affected_keys.push_ref(key);
+            Self::record_affected(input_trace, key, &*self.peers, &mut self.affected_keys);
+            Self::record_affected(
+                &mut CursorPair::new(input_delta, input_trace),
+                key,
+                &*self.peers,
+                &mut self.affected_keys,
+            );
+        }
+        self.affected_keys.sort_unstable();
+        self.affected_keys.dedup();
+
+        // Retract the old outputs of the affected values.
+        for i in 0..self.affected_keys.len() {
+            let key = self.affected_keys.index(i);
+            output_trace.seek_key_with(&|pair| pair.fst() >= key);
+            while output_trace.key_valid() && output_trace.key().fst() == key {
+                let w = **output_trace.weight();
+                if w != 0 {
+                    output_trace.key().clone_to(self.output_pair.as_mut());
+                    output_cb(self.output_pair.as_mut(), w.neg().erase_mut());
+                }
+                output_trace.step_key();
+            }
+        }
+
+        // Aggregate the frames of the affected values, which only contain
+        // their peers.  All the rows of a value have the same frame.
+        input_delta.rewind_keys();
+        input_trace.rewind_keys();
+        let mut cursor = CursorPair::new(input_delta, input_trace);
+        for i in 0..self.affected_keys.len() {
+            let key = self.affected_keys.index(i);
+            cursor.rewind_keys();
+            cursor.seek_key(key);
+            if !cursor.key_valid() || cursor.key() != key {
+                continue;
+            }
+            let mut w = **cursor.weight();
+            if w <= 0 {
+                continue;
+            }
+
+            self.frame.clear();
+            let frame = self.frame.as_mut();
+            let mut push = |k: &I, w: ZWeight| {
+                frame.push_with(&mut |pair| {
+                    let (fk, fw) = pair.split_mut();
+                    k.clone_to(fk);
+                    **fw = w;
+                })
+            };
+            push(key, w);
+            Self::for_each_before(&mut cursor, key, &*self.peers, &mut push);
+            Self::for_each_after(&mut cursor, key, &*self.peers, &mut push);
+
+            (self.aggregate)(&self.frame, self.frame_acc.as_mut());
+            let (k, agg) = self.output_pair.split_mut();
+            key.clone_to(k);
+            (self.finalize)(&self.frame_acc, agg);
+            output_cb(self.output_pair.as_mut(), w.erase_mut());
+        }
+    }
+}
+
+impl<I, Acc, A> RangeAggregate<I, Acc, A>
+where
+    I: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+{
+    /// Implementation of `transform` for frames which are unbounded on at least
+    /// one side.
+    ///
+    /// If the frame is unbounded on the left, the frames of all the values from
+    /// the peers of the first modified value onwards change; they are computed
+    /// with a running fold over the peer groups from the start of the group.
+    /// Symmetrically, if the frame is unbounded on the right, the fold runs
+    /// backward from the end of the group.  If both sides are unbounded, all
+    /// values have the same frame, which is aggregated once.
+    fn transform_unbounded(
+        &mut self,
+        input_delta: &mut dyn ZCursor<I, DynUnit, ()>,
+        input_trace: &mut dyn ZCursor<I, DynUnit, ()>,
+        output_trace: &mut dyn ZCursor<DynPair<I, DynOpt<A>>, DynUnit, ()>,
+        output_cb: &mut dyn FnMut(&mut DynPair<I, DynOpt<A>>, &mut DynZWeight),
+    ) {
+        let first = self.delta_keys.index(0);
+        let last = self.delta_keys.index(self.delta_keys.len() - 1);
+
+        // Retract the old outputs of the affected values.
+        output_trace.rewind_keys();
+        while output_trace.key_valid() {
+            let w = **output_trace.weight();
+            if w != 0 && self.unbounded_affected(output_trace.key().fst(), first, last) {
+                output_trace.key().clone_to(self.output_pair.as_mut());
+                output_cb(self.output_pair.as_mut(), w.neg().erase_mut());
+            }
+            output_trace.step_key();
+        }
+
+        let both = self.unbounded_before && self.unbounded_after;
+        let reverse = !self.unbounded_before;
+        input_delta.rewind_keys();
+        input_trace.rewind_keys();
+        let mut cursor = CursorPair::new(input_delta, input_trace);
+        if reverse {
+            cursor.fast_forward_keys();
+        }
+        self.acc.set_none();
+        while cursor.key_valid() {
+            Self::read_group(
+                &mut cursor,
+                reverse,
+                &*self.peers,
+                &mut self.group_keys,
+                &mut self.frame,
+            );
+            (self.aggregate)(&self.frame, self.frame_acc.as_mut());
+            (self.combine)(self.acc.as_mut(), &self.frame_acc);
+            // Peers are contiguous, so the group is affected if its last value
+            // is.
+            if !both
+                && self.unbounded_affected(
+                    self.group_keys.index(self.group_keys.len() - 1),
+                    first,
+                    last,
+                )
+            {
+                Self::output_frame(
+                    &self.frame,
+                    &self.acc,
+                    &*self.finalize,
+                    self.output_pair.as_mut(),
+                    output_cb,
+                );
+            }
+        }
+
+        if both {
+            cursor.rewind_keys();
+            while cursor.key_valid() {
+                Self::read_group(
+                    &mut cursor,
+                    false,
+                    &*self.peers,
+                    &mut self.group_keys,
+                    &mut self.frame,
+                );
+                Self::output_frame(
+                    &self.frame,
+                    &self.acc,
+                    &*self.finalize,
+                    self.output_pair.as_mut(),
+                    output_cb,
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,628 @@
+use super::{GroupTransformer, Monotonicity};
+use crate::{
+    algebra::{OrdIndexedZSet, OrdIndexedZSetFactories, ZCursor},
+    dynamic::{
+        DataTrait, DynDataTyped, DynOpt, DynPair, DynUnit, DynVec, Erase, Factory, LeanVec,
+        WithFactory,
+    },
+    operator::dynamic::time_series::{RelOffset, RelRange},
+    trace::{cursor::CursorPair, BatchReaderFactories},
+    utils::Tup2,
+    DBData, DynZWeight, RootCircuit, Stream, ZWeight,
+};
+use std::{
+    cmp::{max, min},
+    marker::PhantomData,
+    ops::Neg,
+};
+
+/// The rows of a window frame: values with the number of times they occur in
+/// the frame.  The values are in no particular order, and they may repeat.
+pub type DynFrame<V> = DynVec<DynPair<V, DynDataTyped<ZWeight>>>;
+
+/// Factories for [`Stream::dyn_rows_aggregate_custom_order`].
+pub struct RowsAggregateCustomOrdFactories<K, V2, Acc, A, OV>
+where
+    K: DataTrait + ?Sized,
+    V2: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+    OV: DataTrait + ?Sized,
+{
+    pub(super) inner_factories: OrdIndexedZSetFactories<K, V2>,
+    pub(super) aggregated_factories: OrdIndexedZSetFactories<K, DynPair<V2, DynOpt<A>>>,
+    pub(super) keys_factory: &'static dyn Factory<DynVec<V2>>,
+    pub(super) frame_factory: &'static dyn Factory<DynFrame<V2>>,
+    pub(super) acc_factory: &'static dyn Factory<DynOpt<Acc>>,
+    pub(super) output_factories: OrdIndexedZSetFactories<K, OV>,
+}
+
+impl<K, V2, Acc, A, OV> RowsAggregateCustomOrdFactories<K, V2, Acc, A, OV>
+where
+    K: DataTrait + ?Sized,
+    V2: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+    OV: DataTrait + ?Sized,
+{
+    pub fn new<KType, V2Type, AccType, AType, OVType>() -> Self
+    where
+        KType: DBData + Erase<K>,
+        V2Type: DBData + Erase<V2>,
+        AccType: DBData + Erase<Acc>,
+        AType: DBData + Erase<A>,
+        OVType: DBData + Erase<OV>,
+    {
+        Self {
+            inner_factories: BatchReaderFactories::new::<KType, V2Type, ZWeight>(),
+            aggregated_factories: BatchReaderFactories::new::<
+                KType,
+                Tup2<V2Type, Option<AType>>,
+                ZWeight,
+            >(),
+            keys_factory: WithFactory::<LeanVec<V2Type>>::FACTORY,
+            frame_factory: WithFactory::<LeanVec<Tup2<V2Type, ZWeight>>>::FACTORY,
+            acc_factory: WithFactory::<Option<AccType>>::FACTORY,
+            output_factories: BatchReaderFactories::new::<KType, OVType, ZWeight>(),
+        }
+    }
+}
+
+impl<K, V> Stream<RootCircuit, OrdIndexedZSet<K, V>>
+where
+    K: DataTrait + ?Sized,
+    V: DataTrait + ?Sized,
+{
+    /// See [`Stream::rows_aggregate_custom_order`].
+    ///
+    /// `aggregate` computes the accumulator of a set of rows, `combine`
+    /// adds an accumulator to another one, and `finalize` computes the
+    /// aggregate of an accumulator.
+    #[allow(clippy::type_complexity, clippy::too_many_arguments)]
+    pub fn dyn_rows_aggregate_custom_order<V2, Acc, A, OV>(
+        &self,
+        factories: &RowsAggregateCustomOrdFactories<K, V2, Acc, A, OV>,
+        range: RelRange<u64>,
+        encode: Box<dyn Fn(&V, &mut V2)>,
+        aggregate: Box<dyn Fn(&DynFrame<V2>, &mut DynOpt<Acc>)>,
+        combine: Box<dyn Fn(&mut DynOpt<Acc>, &DynOpt<Acc>)>,
+        finalize: Box<dyn Fn(&DynOpt<Acc>, &mut DynOpt<A>)>,
+        output_func: Box<dyn Fn(&V2, &DynOpt<A>, &mut OV)>,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        V2: DataTrait + ?Sized,
+        Acc: DataTrait + ?Sized,
+        A: DataTrait + ?Sized,
+        OV: DataTrait + ?Sized,
+    {
+        self.dyn_map_index(
+            &factories.inner_factories,
+            Box::new(move |(k, v), kv| {
+                let (out_k, out_v) = kv.split_mut();
+                k.clone_to(out_k);
+                encode(v, out_v);
+            }),
+        )
+        .dyn_group_transform(
+            &factories.inner_factories,
+            &factories.aggregated_factories,
+            Box::new(RowsAggregate::new(
+                factories.aggregated_factories.val_factory(),
+                factories.keys_factory,
+                factories.frame_factory,
+                factories.acc_factory,
+                range,
+                aggregate,
+                combine,
+                finalize,
+            )),
+        )
+        .dyn_map_index(
+            &factories.output_factories,
+            Box::new(move |(k, v), kv| {
+                let (out_k, out_v) = kv.split_mut();
+                let (v2, agg) = v.split();
+                k.clone_to(out_k);
+                output_func(v2, agg, out_v);
+            }),
+        )
+    }
+}
+
+/// Converts a relative offset measured in rows into a signed number of rows,
+/// saturating unbounded offsets.
+fn rows_offset(offset: RelOffset<u64>) -> ZWeight {
+    match offset {
+        RelOffset::Before(rows) => ZWeight::try_from(rows).unwrap_or(ZWeight::MAX).neg(),
+        RelOffset::After(rows) => ZWeight::try_from(rows).unwrap_or(ZWeight::MAX),
+    }
+}
+
+/// Incremental transformer that computes an aggregate over a window frame
+/// measured in rows for each value in the group.
+///
+/// The rows of the group are the values in ascending order, each value
+/// occurring as many times as its weight; like `lag`, values with negative
+/// weights are ignored.  The frame of the row at position `i` contains the rows
+/// at positions `i + from ..= i + to`, where `from` and `to` are the bounds
+/// of the range.  Each row is output together with the aggregate of its frame,
+/// or `None` if the frame is empty.
+///
+/// A frame only changes if it contains a modified row, either before or after
+/// the change, and the rows whose frames may contain a row of a modified value
+/// are at most `to` rows before and `-from` rows after it.  Only the values in
+/// these neighborhoods are retracted and aggregated again, so the cost of a
+/// step is proportional to the number of modified values times the size of
+/// the frame, rather than to the size of the group.
+///
+/// Frames which are unbounded on one side would make this quadratic, since
+/// every row after (or before) a modified row is affected and each frame
+/// contains a prefix (or suffix) of the group.  These frames are computed with
+/// a single running fold over the rows, starting from the unbounded side: the
+/// frame of each row extends the frame of the previous one, so its accumulator
+/// is combined with the accumulators of the new rows through the aggregator's
+/// semigroup.
+struct RowsAggregate<I: DataTrait + ?Sized, Acc: DataTrait + ?Sized, A: DataTrait + ?Sized> {
+    /// Lower bound of the frame relative to the current row.
+    from: ZWeight,
+    /// Upper bound of the frame relative to the current row.
+    to: ZWeight,
+    /// True if the frame starts with the first row of the group.
+    unbounded_before: bool,
+    /// True if the frame ends with the last row of the group.
+    unbounded_after: bool,
+    aggregate: Box<dyn Fn(&DynFrame<I>, &mut DynOpt<Acc>)>,
+    combine: Box<dyn Fn(&mut DynOpt<Acc>, &DynOpt<Acc>)>,
+    finalize: Box<dyn Fn(&DynOpt<Acc>, &mut DynOpt<A>)>,
+    /// Keys in the input delta.
+    delta_keys: Box<DynVec<I>>,
+    /// Values whose outputs must be recomputed.
+    affected_keys: Box<DynVec<I>>,
+    /// The rows of the frame being aggregated.
+    frame: Box<DynFrame<I>>,
+    /// The values of the group with positive weights, in the order of the
+    /// running fold.
+    rows: Box<DynFrame<I>>,
+    /// Accumulator of the rows of `frame`.
+    frame_acc: Box<DynOpt<Acc>>,
+    /// Accumulator of the running fold.
+    acc: Box<DynOpt<Acc>>,
+    output_pair: Box<DynPair<I, DynOpt<A>>>,
+    _phantom: PhantomData<fn(&I, &Acc, &A)>,
+}
+
+impl<I, Acc, A> RowsAggregate<I, Acc, A>
+where
+    I: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+{
+    #[allow(clippy::too_many_arguments)]
+    fn new(
+        output_pair_factory: &'static dyn Factory<DynPair<I, DynOpt<A>>>,
+        keys_factory: &'static dyn Factory<DynVec<I>>,
+        frame_factory: &'static dyn Factory<DynFrame<I>>,
+        acc_factory: &'static dyn Factory<DynOpt<Acc>>,
+        range: RelRange<u64>,
+        aggregate: Box<dyn Fn(&DynFrame<I>, &mut DynOpt<Acc>)>,
+        combine: Box<dyn Fn(&mut DynOpt<Acc>, &DynOpt<Acc>)>,
+        finalize: Box<dyn Fn(&DynOpt<Acc>, &mut DynOpt<A>)>,
+    ) -> Self {
+        let from = rows_offset(range.from);
+        let to = rows_offset(range.to);
+        assert!(from <= to, "empty window frame {range:?}");
+
+        Self {
+            from,
+            to,
+            unbounded_before: range.from == RelOffset::Before(u64::MAX),
+            unbounded_after: range.to == RelOffset::After(u64::MAX),
+            aggregate,
+            combine,
+            finalize,
+            delta_keys: keys_factory.default_box(),
+            affected_keys: keys_factory.default_box(),
+            frame: frame_factory.default_box(),
+            rows: frame_factory.default_box(),
+            frame_acc: acc_factory.default_box(),
+            acc: acc_factory.default_box(),
+            output_pair: output_pair_factory.default_box(),
+            _phantom: PhantomData,
+        }
+    }
+
+    /// Record in `affected_keys` the values of the rows that are at most
+    /// `before` rows before or `after` rows after `key` in `cursor`.
+    fn record_neighbors(
+        cursor: &mut dyn ZCursor<I, DynUnit, ()>,
+        key: &I,
+        before: ZWeight,
+        after: ZWeight,
+        affected_keys: &mut DynVec<I>,
+    ) {
+        let mut rows = 0;
+        cursor.fast_forward_keys();
+        cursor.seek_key_reverse(key);
+        if cursor.key_valid() && cursor.key() == key {
+            cursor.step_key_reverse();
+        }
+        while rows < before && cursor.key_valid() {
+            let w = **cursor.weight();
+            if w > 0 {
+                affected_keys.push_ref(cursor.key());
+                rows += w;
+            }
+            cursor.step_key_reverse();
+        }
+
+        rows = 0;
+        cursor.rewind_keys();
+        cursor.seek_key(key);
+        if cursor.key_valid() && cursor.key() == key {
+            cursor.step_key();
+        }
+        while rows < after && cursor.key_valid() {
+            let w = **cursor.weight();
+            if w > 0 {
+                affected_keys.push_ref(cursor.key());
+                rows += w;
+            }
+            cursor.step_key();
+        }
+    }
+
+    /// Add to `frame` the rows at positions `first ..= last` before (`first`
+    /// and `last` are negative) or after `key` in `cursor`; position `-1` is
+    /// the last row before `key`, and position `0` is the first row after it.
+    fn add_rows(
+        cursor: &mut dyn ZCursor<I, DynUnit, ()>,
+        key: &I,
+        first: ZWeight,
+        last: ZWeight,
+        frame: &mut DynFrame<I>,
+    ) {
+        if first > last {
+            return;
+        }
+        if last < 0 {
+            // Rows before the key, starting with position -1.
+            let mut position = -1;
+            cursor.fast_forward_keys();
+            cursor.seek_key_reverse(key);
+            if cursor.key_valid() && cursor.key() == key {
+                cursor.step_key_reverse();
+            }
+            while position >= first && cursor.key_valid() {
+                let w = **cursor.weight();
+                if w > 0 {
+                    // The rows of this value are at positions `position - w + 1 ..= position`.
+                    let count = max(0, position.min(last) - max(position - w + 1, first) + 1);
+                    if count > 0 {
+                        frame.push_with(&mut |pair| {
+                            let (k, c) = pair.split_mut();
+                            cursor.key().clone_to(k);
+                            **c = count;
+                        });
+                    }
+                    position -= w;
+                }
+                cursor.step_key_reverse();
+            }
+        } else {
+            // Rows after the key, starting with position 0.
+            let mut position = 0;
+            cursor.rewind_keys();
+            cursor.seek_key(key);
+            if cursor.key_valid() && cursor.key() == key {
+                cursor.step_key();
+            }
+            while position <= last && cursor.key_valid() {
+                let w = **cursor.weight();
+                if w > 0 {
+                    // The rows of this value are at positions `position ..= position + w - 1`.
+                    let count = max(0, (position + w - 1).min(last) - max(position, first) + 1);
+                    if count > 0 {
+                        frame.push_with(&mut |pair| {
+                            let (k, c) = pair.split_mut();
+                            cursor.key().clone_to(k);
+                            **c = count;
+                        });
+                    }
+                    position += w;
+                }
+                cursor.step_key();
+            }
+        }
+    }
+}
+
+impl<I, Acc, A> GroupTransformer<I, DynPair<I, DynOpt<A>>> for RowsAggregate<I, Acc, A>
+where
+    I: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+{
+    fn name(&self) -> &str {
+        "rows_aggregate"
+    }
+
+    fn monotonicity(&self) -> Monotonicity {
+        // Outputs are produced one value at a time, but retractions and
+        // insertions of the same value are not ordered by the aggregate.
+        Monotonicity::Unordered
+    }
+
+    fn transform(
+        &mut self,
+        input_delta: &mut dyn ZCursor<I, DynUnit, ()>,
+        input_trace: &mut dyn ZCursor<I, DynUnit, ()>,
+        output_trace: &mut dyn ZCursor<DynPair<I, DynOpt<A>>, DynUnit, ()>,
+        output_cb: &mut dyn FnMut(&mut DynPair<I, DynOpt<A>>, &mut DynZWeight),
+    ) {
+        self.delta_keys.clear();
+        while input_delta.key_valid() {
+            self.delta_keys.push_ref(input_delta.key());
+            input_delta.step_key();
+        }
+        if self.delta_keys.is_empty() {
+            return;
+        }
+
+        if self.unbounded_before || self.unbounded_after {
+            self.transform_unbounded(input_delta, input_trace, output_trace, output_cb);
+            return;
+        }
+
+        // The frame of a row contains a modified row iff the row is at most
+        // `to` rows before or `-from` rows after the modified row.  This can be
+        // the case in the old contents of the group, or in the new one.
+        let before = max(self.to, 0);
+        let after = max(self.from.neg(), 0);
+        self.affected_keys.clear();
+        for i in 0..self.delta_keys.len() {
+            let key = self.delta_keys.index(i);
+            self.affected_keys.push_ref(key);
+            Self::record_neighbors(input_trace, key, before, after, &mut self.affected_keys);
+            Self::record_neighbors(
+                &mut CursorPair::new(input_delta, input_trace),
+                key,
+                before,
+                after,
+                &mut self.affected_keys,
+            );
+        }
+        self.affected_keys.sort_unstable();
+        self.affected_keys.dedup();
+
+        // Retract the old outputs of the affected values.
+        for i in 0..self.affected_keys.len() {
+            let key = self.affected_keys.index(i);
+            output_trace.seek_key_with(&|pair| pair.fst() >= key);
+            while output_trace.key_valid() && output_trace.key().fst() == key {
+                let w = **output_trace.weight();
+                if w != 0 {
+                    output_trace.key().clone_to(self.output_pair.as_mut());
+                    output_cb(self.output_pair.as_mut(), w.neg().erase_mut());
+                }
+                output_trace.step_key();
+            }
+        }
+
+        // Aggregate the frames of all the rows of the affected values.
+        input_delta.rewind_keys();
+        input_trace.rewind_keys();
+        let mut cursor = CursorPair::new(input_delta, input_trace);
+        for i in 0..self.affected_keys.len() {
+            let key = self.affected_keys.index(i);
+            cursor.rewind_keys();
+            cursor.seek_key(key);
+            if !cursor.key_valid() || cursor.key() != key {
+                continue;
+            }
+            let w = **cursor.weight();
+            // The rows of the value are at positions `0 ..= w - 1`.
+            for row in 0..w {
+                let first = row.saturating_add(self.from);
+                let last = row.saturating_add(self.to);
+                self.frame.clear();
+                Self::add_rows(&mut cursor, key, first, last.min(-1), &mut self.frame);
+                let count = max(0, last.min(w - 1) - max(first, 0) + 1);
+                if count > 0 {
+                    self.frame.push_with(&mut |pair| {
+                        let (k, c) = pair.split_mut();
+                        key.clone_to(k);
+                        **c = count;
+                    });
+                }
+                Self::add_rows(
+                    &mut cursor,
+                    key,
+                    max(first, w) - w,
+                    last.saturating_sub(w),
+                    &mut self.frame,
+                );
+
+                (self.aggregate)(&self.frame, self.frame_acc.as_mut());
+                let (k, agg) = self.output_pair.split_mut();
+                key.clone_to(k);
+                (self.finalize)(&self.frame_acc, agg);
+                let mut one: ZWeight = 1;
+                output_cb(self.output_pair.as_mut(), one.erase_mut());
+            }
+        }
+    }
+}
+
+impl<I, Acc, A> RowsAggregate<I, Acc, A>
+where
+    I: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    A: DataTrait + ?Sized,
+{
+    /// Read the values of `cursor` with positive weights into `rows`, moving
+    /// backward if `reverse` is true.
+    fn read_rows(cursor: &mut dyn ZCursor<I, DynUnit, ()>, reverse: bool, rows: &mut DynFrame<I>) {
+        rows.clear();
+        while cursor.key_valid() {
+            let w = **cursor.weight();
+            if w > 0 {
+                rows.push_with(&mut |pair| {
+                    let (k, c) = pair.split_mut();
+                    cursor.key().clone_to(k);
+                    **c = w;
+                });
+            }
+            if reverse {
+                cursor.step_key_reverse();
+            } else {
+                cursor.step_key();
+            }
+        }
+    }
+
+    /// Implementation of `transform` for frames which are unbounded on at least
+    /// one side.
+    ///
+    /// If the frame is unbounded on the left, the frame of each row is a prefix
+    /// of the group, which ends `to` rows after the row.  The rows whose frames
+    /// contain a modified row are the rows of the values from `to` rows before
+    /// the first modified value onwards.  Their frames are computed with a
+    /// running fold from the start of the group, which adds the rows to the
+    /// accumulator as the end of the frame moves forward.  Symmetrically, if
+    /// the frame is unbounded on the right, the fold runs backward from the end
+    /// of the group.  If both sides are unbounded, all rows have the same
+    /// frame, which is aggregated once.
+    fn transform_unbounded(
+        &mut self,
+        input_delta: &mut dyn ZCursor<I, DynUnit, ()>,
+        input_trace: &mut dyn ZCursor<I, DynUnit, ()>,
+        output_trace: &mut dyn ZCursor<DynPair<I, DynOpt<A>>, DynUnit, ()>,
+        output_cb: &mut dyn FnMut(&mut DynPair<I, DynOpt<A>>, &mut DynZWeight),
+    ) {
+        let both = self.unbounded_before && self.unbounded_after;
+        let reverse = !self.unbounded_before;
+
+        // The affected values are delimited by the first (or last) modified
+        // value and its neighbors, in the old contents of the group and in
+        // the new one.
+        self.affected_keys.clear();
+        if !both {
+            let (key, before, after) = if reverse {
+                let last = self.delta_keys.index(self.delta_keys.len() - 1);
+                (last, 0, max(self.from.neg(), 0))
+            } else {
+                (self.delta_keys.index(0), max(self.to, 0), 0)
+            };
+            self.affected_keys.push_ref(key);
+            Self::record_neighbors(input_trace, key, before, after, &mut self.affected_keys);
+            Self::record_neighbors(
+                &mut CursorPair::new(input_delta, input_trace),
+                key,
+                before,
+                after,
+                &mut self.affected_keys,
+            );
+            self.affected_keys.sort_unstable();
+        }
+        let bound = if both {
+            None
+        } else if reverse {
+            Some(self.affected_keys.index(self.affected_keys.len() - 1))
+        } else {
+            Some(self.affected_keys.index(0))
+        };
+        let affected = |key: &I| match bound {
+            None => true,
+            Some(bound) if reverse => key <= bound,
+            Some(bound) => key >= bound,
+        };
+
+        // Retract the old outputs of the affected values.
+        output_trace.rewind_keys();
+        if let Some(bound) = bound.filter(|_| !reverse) {
+            output_trace.seek_key_with(&|pair| pair.fst() >= bound);
+        }
+        while output_trace.key_valid() && affected(output_trace.key().fst()) {
+            let w = **output_trace.weight();
+            if w != 0 {
+                output_trace.key().clone_to(self.output_pair.as_mut());
+                output_cb(self.output_pair.as_mut(), w.neg().erase_mut());
+            }
+            output_trace.step_key();
+        }
+
+        input_delta.rewind_keys();
+        input_trace.rewind_keys();
+        let mut cursor = CursorPair::new(input_delta, input_trace);
+        if reverse {
+            cursor.fast_forward_keys();
+        }
+        Self::read_rows(&mut cursor, reverse, &mut self.rows);
+
+        if both {
+            (self.aggregate)(&self.rows, self.frame_acc.as_mut());
+            for i in 0..self.rows.len() {
+                let (key, w) = self.rows.index(i).split();
+                let mut w = **w;
+                let (k, agg) = self.output_pair.split_mut();
+                key.clone_to(k);
+                (self.finalize)(&self.frame_acc, agg);
+                output_cb(self.output_pair.as_mut(), w.erase_mut());
+            }
+            return;
+        }
+
+        // In the order of the fold, the frame of the row at position `i` ends
+        // at position `i + ahead`.  The accumulator is only brought up to date
+        // for the affected rows, so the rows that precede the first affected
+        // frame are aggregated in a single step.
+        let ahead = if reverse { self.from.neg() } else { self.to };
+        self.acc.set_none();
+        // Number of rows in the accumulator, which are the first rows of the
+        // fold.
+        let mut end: ZWeight = 0;
+        // Index in `rows` of the value of the next row to accumulate, and
+        // number of rows of that value which are already accumulated.
+        let mut next = 0;
+        let mut next_used: ZWeight = 0;
+        let mut position: ZWeight = 0;
+        for i in 0..self.rows.len() {
+            let (key, w) = self.rows.index(i).split();
+            let w = **w;
+            if !affected(key) {
+                position += w;
+                continue;
+            }
+            for row in position..position + w {
+                let frame_end = row.saturating_add(ahead).saturating_add(1);
+                self.frame.clear();
+                while end < frame_end && next < self.rows.len() {
+                    let (next_key, next_w) = self.rows.index(next).split();
+                    let count = min(frame_end - end, **next_w - next_used);
+                    self.frame.push_with(&mut |pair| {
+                        let (k, c) = pair.split_mut();
+                        next_key.clone_to(k);
+                        **c = count;
+                    });
+                    end += count;
+                    next_used += count;
+                    if next_used == **next_w {
+                        next += 1;
+                        next_used = 0;
+                    }
+                }
+                if !self.frame.is_empty() {
+                    (self.aggregate)(&self.frame, self.frame_acc.as_mut());
+                    (self.combine)(self.acc.as_mut(), &self.frame_acc);
+                }
+
+                let (k, agg) = self.output_pair.split_mut();
+                key.clone_to(k);
+                (self.finalize)(&self.acc, agg);
+                let mut one: ZWeight = 1;
+                output_cb(self.output_pair.as_mut(), one.erase_mut());
+            }
+            position += w;
+        }
+    }
+}
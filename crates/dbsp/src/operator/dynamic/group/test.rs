@@ -1,11 +1,15 @@
 #![allow(clippy::type_complexity)]
 
-use std::cmp::Ordering;
+use std::{cmp::Ordering, collections::BTreeMap};
 
 use crate::{
+    algebra::DefaultSemigroup,
     dynamic::{DowncastTrait, DynData, DynPair},
     indexed_zset,
-    operator::{CmpFunc, IndexedZSetHandle, OutputHandle},
+    operator::{
+        time_series::{RelOffset, RelRange},
+        CmpFunc, Fold, IndexedZSetHandle, OutputHandle,
+    },
     trace::{
         test::test_batch::{assert_batch_eq, assert_typed_batch_eq, TestBatch, TestBatchFactories},
         Cursor, Trace,
@@ -353,6 +357,300 @@ fn lag_custom_order_test_circuit(
     Ok((input_handle, lag_handle))
 }
 
+fn order_by_test_circuit(
+    circuit: &mut RootCircuit,
+) -> AnyResult<(
+    IndexedZSetHandle<i32, i32>,
+    OutputHandle<OrdIndexedZSet<i32, Tup2<i64, i32>>>,
+    OutputHandle<OrdIndexedZSet<i32, Tup2<i64, i32>>>,
+)> {
+    struct Desc;
+
+    impl CmpFunc<i32> for Desc {
+        fn cmp(left: &i32, right: &i32) -> std::cmp::Ordering {
+            right.cmp(left)
+        }
+    }
+
+    let (input_stream, input_handle) = circuit.add_input_indexed_zset::<i32, i32>();
+
+    let order_by_handle = input_stream
+        .order_by_custom_order::<Desc, _, _>(|row_number, v| Tup2(row_number, *v))
+        .integrate()
+        .output();
+
+    let row_number_handle = input_stream
+        .topk_row_number_custom_order::<Desc, _, _>(usize::MAX, |row_number, v| {
+            Tup2(row_number, *v)
+        })
+        .integrate()
+        .output();
+
+    Ok((input_handle, order_by_handle, row_number_handle))
+}
+
+fn order_by_test(trace: Vec<Vec<(i32, i32, ZWeight)>>) {
+    let (mut dbsp, (input_handle, order_by_handle, row_number_handle)) =
+        Runtime::init_circuit(4, order_by_test_circuit).unwrap();
+
+    for batch in trace.into_iter() {
+        for (k, v, r) in batch.into_iter() {
+            input_handle.push(k, (v, r));
+        }
+        dbsp.step().unwrap();
+
+        let order_by_result = order_by_handle.consolidate();
+        let row_number_result = row_number_handle.consolidate();
+
+        assert_typed_batch_eq(&order_by_result, &row_number_result);
+    }
+}
+
+fn topk_range_test_circuit(
+    circuit: &mut RootCircuit,
+) -> AnyResult<(
+    IndexedZSetHandle<i32, i32>,
+    [OutputHandle<OrdIndexedZSet<i32, i32>>; 2],
+    [OutputHandle<OrdIndexedZSet<i32, Tup2<i64, i32>>>; 2],
+)> {
+    struct Desc;
+
+    impl CmpFunc<i32> for Desc {
+        fn cmp(left: &i32, right: &i32) -> std::cmp::Ordering {
+            right.cmp(left)
+        }
+    }
+
+    let (input_stream, input_handle) = circuit.add_input_indexed_zset::<i32, i32>();
+
+    let range_handle = input_stream
+        .topk_custom_order_range::<Desc>(2, 3)
+        .integrate()
+        .output();
+
+    // Reference: the top 5 values without the top 2 values.
+    let expected_range_handle = input_stream
+        .topk_custom_order::<Desc>(5)
+        .integrate()
+        .minus(&input_stream.topk_custom_order::<Desc>(2).integrate())
+        .output();
+
+    let row_number_range_handle = input_stream
+        .topk_row_number_custom_order_range::<Desc, _, _>(2, 3, |row_number, v| {
+            Tup2(row_number, *v)
+        })
+        .integrate()
+        .output();
+
+    let expected_row_number_range_handle = input_stream
+        .topk_row_number_custom_order::<Desc, _, _>(5, |row_number, v| Tup2(row_number, *v))
+        .integrate()
+        .filter(|(_k, v)| v.0 > 2)
+        .output();
+
+    Ok((
+        input_handle,
+        [range_handle, expected_range_handle],
+        [row_number_range_handle, expected_row_number_range_handle],
+    ))
+}
+
+fn topk_range_test(trace: Vec<Vec<(i32, i32, ZWeight)>>) {
+    let (
+        mut dbsp,
+        (
+            input_handle,
+            [range_handle, expected_range_handle],
+            [row_number_handle, expected_row_number_handle],
+        ),
+    ) = Runtime::init_circuit(4, topk_range_test_circuit).unwrap();
+
+    for batch in trace.into_iter() {
+        for (k, v, r) in batch.into_iter() {
+            input_handle.push(k, (v, r));
+        }
+        dbsp.step().unwrap();
+
+        assert_typed_batch_eq(&range_handle.consolidate(), &expected_range_handle.consolidate());
+        assert_typed_batch_eq(
+            &row_number_handle.consolidate(),
+            &expected_row_number_handle.consolidate(),
+        );
+    }
+}
+
+fn rows_aggregate_test_circuit(
+    circuit: &mut RootCircuit,
+    range: RelRange<u64>,
+) -> AnyResult<(
+    IndexedZSetHandle<i32, i32>,
+    OutputHandle<OrdIndexedZSet<i32, Tup2<i32, Option<i64>>>>,
+)> {
+    struct Desc;
+
+    impl CmpFunc<i32> for Desc {
+        fn cmp(left: &i32, right: &i32) -> std::cmp::Ordering {
+            right.cmp(left)
+        }
+    }
+
+    let (input_stream, input_handle) = circuit.add_input_indexed_zset::<i32, i32>();
+
+    // Sum of the rows in the frame of the current row.
+    let sum = <Fold<i32, i64, DefaultSemigroup<_>, _, _>>::new(0, |sum: &mut i64, v: &i32, w| {
+        *sum += *v as i64 * w
+    });
+    let rows_aggregate_handle = input_stream
+        .rows_aggregate_custom_order::<Desc, _, _, _>(
+            range,
+            sum,
+            |v, sum| Tup2(*v, sum.cloned()),
+        )
+        .integrate()
+        .output();
+
+    Ok((input_handle, rows_aggregate_handle))
+}
+
+/// Reference implementation of `rows_aggregate_test_circuit`.
+fn rows_aggregate_reference(
+    groups: &BTreeMap<i32, BTreeMap<i32, ZWeight>>,
+    range: RelRange<u64>,
+) -> OrdIndexedZSet<i32, Tup2<i32, Option<i64>>> {
+    let offset = |offset: RelOffset<u64>| match offset {
+        RelOffset::Before(rows) => -(rows as i128),
+        RelOffset::After(rows) => rows as i128,
+    };
+    let (from, to) = (offset(range.from), offset(range.to));
+    let mut tuples = Vec::new();
+    for (k, group) in groups.iter() {
+        let rows: Vec<i32> = group
+            .iter()
+            .rev()
+            .filter(|(_, w)| **w > 0)
+            .flat_map(|(v, w)| std::iter::repeat(*v).take(*w as usize))
+            .collect();
+        for i in 0..rows.len() {
+            let first = (i as i128 + from).clamp(0, rows.len() as i128) as usize;
+            let last = (i as i128 + to + 1).clamp(0, rows.len() as i128) as usize;
+            let sum = (first < last).then(|| rows[first..last].iter().map(|v| *v as i64).sum());
+            tuples.push(Tup2(Tup2(*k, Tup2(rows[i], sum)), 1));
+        }
+    }
+    OrdIndexedZSet::from_tuples((), tuples)
+}
+
+fn rows_aggregate_test(trace: Vec<Vec<(i32, i32, ZWeight)>>, range: RelRange<u64>) {
+    let (mut dbsp, (input_handle, rows_aggregate_handle)) =
+        Runtime::init_circuit(4, move |circuit| rows_aggregate_test_circuit(circuit, range))
+            .unwrap();
+
+    let mut groups: BTreeMap<i32, BTreeMap<i32, ZWeight>> = BTreeMap::new();
+    for batch in trace.into_iter() {
+        for (k, v, r) in batch.into_iter() {
+            *groups.entry(k).or_default().entry(v).or_default() += r;
+            input_handle.push(k, (v, r));
+        }
+        dbsp.step().unwrap();
+
+        let rows_aggregate_result = rows_aggregate_handle.consolidate();
+
+        assert_typed_batch_eq(
+            &rows_aggregate_result,
+            &rows_aggregate_reference(&groups, range),
+        );
+    }
+}
+
+fn range_aggregate_test_circuit(
+    circuit: &mut RootCircuit,
+    range: RelRange<u64>,
+) -> AnyResult<(
+    IndexedZSetHandle<i32, i32>,
+    OutputHandle<OrdIndexedZSet<i32, Tup2<i32, Option<i64>>>>,
+)> {
+    struct Desc;
+
+    impl CmpFunc<i32> for Desc {
+        fn cmp(left: &i32, right: &i32) -> std::cmp::Ordering {
+            right.cmp(left)
+        }
+    }
+
+    // Values with the same tens digit are peers.
+    struct DescTens;
+
+    impl CmpFunc<i32> for DescTens {
+        fn cmp(left: &i32, right: &i32) -> std::cmp::Ordering {
+            right.div_euclid(10).cmp(&left.div_euclid(10))
+        }
+    }
+
+    let (input_stream, input_handle) = circuit.add_input_indexed_zset::<i32, i32>();
+
+    // Sum of the values in the frame of the current value.
+    let sum = <Fold<i32, i64, DefaultSemigroup<_>, _, _>>::new(0, |sum: &mut i64, v: &i32, w| {
+        *sum += *v as i64 * w
+    });
+    let range_aggregate_handle = input_stream
+        .range_aggregate_custom_order::<Desc, DescTens, _, _, _>(
+            range,
+            sum,
+            |v, sum| Tup2(*v, sum.cloned()),
+        )
+        .integrate()
+        .output();
+
+    Ok((input_handle, range_aggregate_handle))
+}
+
+/// Reference implementation of `range_aggregate_test_circuit`.
+fn range_aggregate_reference(
+    groups: &BTreeMap<i32, BTreeMap<i32, ZWeight>>,
+    range: RelRange<u64>,
+) -> OrdIndexedZSet<i32, Tup2<i32, Option<i64>>> {
+    // Values are sorted in descending order of their tens digit.
+    let in_frame = |u: i32, v: i32| {
+        let (u, v) = (u.div_euclid(10), v.div_euclid(10));
+        (range.from == RelOffset::Before(u64::MAX) || u <= v)
+            && (range.to == RelOffset::After(u64::MAX) || u >= v)
+    };
+    let mut tuples = Vec::new();
+    for (k, group) in groups.iter() {
+        for (v, w) in group.iter().filter(|(_, w)| **w > 0) {
+            let sum = group
+                .iter()
+                .filter(|(u, w)| **w > 0 && in_frame(**u, *v))
+                .map(|(u, w)| *u as i64 * w)
+                .sum();
+            tuples.push(Tup2(Tup2(*k, Tup2(*v, Some(sum))), *w));
+        }
+    }
+    OrdIndexedZSet::from_tuples((), tuples)
+}
+
+fn range_aggregate_test(trace: Vec<Vec<(i32, i32, ZWeight)>>, range: RelRange<u64>) {
+    let (mut dbsp, (input_handle, range_aggregate_handle)) =
+        Runtime::init_circuit(4, move |circuit| range_aggregate_test_circuit(circuit, range))
+            .unwrap();
+
+    let mut groups: BTreeMap<i32, BTreeMap<i32, ZWeight>> = BTreeMap::new();
+    for batch in trace.into_iter() {
+        for (k, v, r) in batch.into_iter() {
+            *groups.entry(k).or_default().entry(v).or_default() += r;
+            input_handle.push(k, (v, r));
+        }
+        dbsp.step().unwrap();
+
+        let range_aggregate_result = range_aggregate_handle.consolidate();
+
+        assert_typed_batch_eq(
+            &range_aggregate_result,
+            &range_aggregate_reference(&groups, range),
+        );
+    }
+}
+
 fn lead_test(trace: Vec<Vec<(i32, i32, ZWeight)>>) {
     let (mut dbsp, (input_handle, lead_handle)) =
         Runtime::init_circuit(4, lead_test_circuit).unwrap();
@@ -743,4 +1041,59 @@ proptest! {
     fn test_lead(trace in input_trace(5, 100, 200, 20)) {
         lead_test(trace)
     }
+
+    #[test]
+    fn test_order_by(trace in input_trace(5, 100, 200, 20)) {
+        order_by_test(trace)
+    }
+
+    #[test]
+    fn test_range_aggregate(trace in input_trace(5, 100, 200, 20)) {
+        range_aggregate_test(trace, RelRange::new(RelOffset::Before(u64::MAX), RelOffset::After(0)))
+    }
+
+    #[test]
+    fn test_range_aggregate_following(trace in input_trace(5, 100, 200, 20)) {
+        range_aggregate_test(trace, RelRange::new(RelOffset::Before(0), RelOffset::After(u64::MAX)))
+    }
+
+    #[test]
+    fn test_range_aggregate_unbounded(trace in input_trace(5, 100, 200, 20)) {
+        range_aggregate_test(trace, RelRange::new(RelOffset::Before(u64::MAX), RelOffset::After(u64::MAX)))
+    }
+
+    #[test]
+    fn test_range_aggregate_peers(trace in input_trace(5, 100, 200, 20)) {
+        range_aggregate_test(trace, RelRange::new(RelOffset::Before(0), RelOffset::After(0)))
+    }
+
+    #[test]
+    fn test_rows_aggregate(trace in input_trace(5, 100, 200, 20)) {
+        rows_aggregate_test(trace, RelRange::new(RelOffset::Before(2), RelOffset::After(1)))
+    }
+
+    #[test]
+    fn test_rows_aggregate_preceding(trace in input_trace(5, 100, 200, 20)) {
+        rows_aggregate_test(trace, RelRange::new(RelOffset::Before(u64::MAX), RelOffset::After(0)))
+    }
+
+    #[test]
+    fn test_rows_aggregate_preceding_excluded(trace in input_trace(5, 100, 200, 20)) {
+        rows_aggregate_test(trace, RelRange::new(RelOffset::Before(u64::MAX), RelOffset::Before(1)))
+    }
+
+    #[test]
+    fn test_rows_aggregate_following(trace in input_trace(5, 100, 200, 20)) {
+        rows_aggregate_test(trace, RelRange::new(RelOffset::After(1), RelOffset::After(u64::MAX)))
+    }
+
+    #[test]
+    fn test_rows_aggregate_unbounded(trace in input_trace(5, 100, 200, 20)) {
+        rows_aggregate_test(trace, RelRange::new(RelOffset::Before(u64::MAX), RelOffset::After(u64::MAX)))
+    }
+
+    #[test]
+    fn test_topk_range(trace in input_trace(5, 100, 200, 20)) {
+        topk_range_test(trace)
+    }
 }
@@ -146,6 +146,21 @@ where
         encode: Box<dyn Fn(&V, &mut V2)>,
         decode: Box<dyn Fn(&V2) -> &V>,
     ) -> Self
+    where
+        V2: DataTrait + ?Sized,
+    {
+        self.dyn_topk_custom_order_range(factories, 0, k, encode, decode)
+    }
+
+    /// See [`Stream::topk_custom_order_range`].
+    pub fn dyn_topk_custom_order_range<V2>(
+        &self,
+        factories: &TopKCustomOrdFactories<K, V, V2, DynZWeight>,
+        offset: usize,
+        k: usize,
+        encode: Box<dyn Fn(&V, &mut V2)>,
+        decode: Box<dyn Fn(&V2) -> &V>,
+    ) -> Self
     where
         V2: DataTrait + ?Sized,
     {
@@ -162,7 +177,7 @@ where
             &factories.inner_factories,
             Box::new(DiffGroupTransformer::new(
                 factories.inner_factories.val_factory(),
-                TopK::asc(factories.inner_factories.val_factory(), k),
+                TopK::asc_range(factories.inner_factories.val_factory(), offset, k),
             )),
         )
         .dyn_map_index(
@@ -255,6 +270,22 @@ where
         encode: Box<dyn Fn(&V, &mut V2)>,
         output_func: Box<dyn Fn(i64, &V2, &mut OV)>,
     ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        V2: DataTrait + ?Sized,
+        OV: DataTrait + ?Sized,
+    {
+        self.dyn_topk_row_number_custom_order_range(factories, 0, k, encode, output_func)
+    }
+
+    /// See [`Stream::topk_row_number_custom_order_range`].
+    pub fn dyn_topk_row_number_custom_order_range<V2, OV>(
+        &self,
+        factories: &TopKRankCustomOrdFactories<K, V2, OV>,
+        offset: usize,
+        k: usize,
+        encode: Box<dyn Fn(&V, &mut V2)>,
+        output_func: Box<dyn Fn(i64, &V2, &mut OV)>,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
     where
         V2: DataTrait + ?Sized,
         OV: DataTrait + ?Sized,
@@ -272,7 +303,12 @@ where
             &factories.output_factories,
             Box::new(DiffGroupTransformer::new(
                 factories.output_factories.val_factory(),
-                TopKRowNumber::new(factories.output_factories.val_factory(), k, output_func),
+                TopKRowNumber::new(
+                    factories.output_factories.val_factory(),
+                    offset,
+                    k,
+                    output_func,
+                ),
             )),
         )
     }
@@ -283,6 +319,7 @@ where
     I: DataTrait + ?Sized,
 {
     key_factory: &'static dyn Factory<I>,
+    offset: usize,
     k: usize,
     name: String,
     // asc: bool,
@@ -293,17 +330,33 @@ impl<I: DataTrait + ?Sized> TopK<I, true> {
     fn asc(key_factory: &'static dyn Factory<I>, k: usize) -> Self {
         Self {
             key_factory,
+            offset: 0,
             k,
             name: format!("top-{k}-asc"),
             _phantom: PhantomData,
         }
     }
+
+    /// Skip the `offset` smallest values and pick the next `k` values.
+    fn asc_range(key_factory: &'static dyn Factory<I>, offset: usize, k: usize) -> Self {
+        if offset == 0 {
+            return Self::asc(key_factory, k);
+        }
+        Self {
+            key_factory,
+            offset,
+            k,
+            name: format!("top-{offset}+{k}-asc"),
+            _phantom: PhantomData,
+        }
+    }
 }
 
 impl<I: DataTrait + ?Sized> TopK<I, false> {
     fn desc(key_factory: &'static dyn Factory<I>, k: usize) -> Self {
         Self {
             key_factory,
+            offset: 0,
             k,
             name: format!("top-{k}-desc"),
             _phantom: PhantomData,
@@ -333,14 +386,17 @@ where
         CB: FnMut(&mut I, &mut DynZWeight),
     {
         let mut count = 0usize;
+        let end = self.offset.saturating_add(self.k);
         let mut key = self.key_factory.default_box();
 
         if ASCENDING {
-            while cursor.key_valid() && count < self.k {
+            while cursor.key_valid() && count < end {
                 let mut w = **cursor.weight();
                 if !w.is_zero() {
-                    cursor.key().clone_to(&mut key);
-                    output_cb(&mut key, w.erase_mut());
+                    if count >= self.offset {
+                        cursor.key().clone_to(&mut key);
+                        output_cb(&mut key, w.erase_mut());
+                    }
                     count += 1;
                 }
                 cursor.step_key();
@@ -348,11 +404,13 @@ where
         } else {
             cursor.fast_forward_keys();
 
-            while cursor.key_valid() && count < self.k {
+            while cursor.key_valid() && count < end {
                 let mut w = **cursor.weight();
                 if !w.is_zero() {
-                    cursor.key().clone_to(&mut key);
-                    output_cb(&mut key, w.erase_mut());
+                    if count >= self.offset {
+                        cursor.key().clone_to(&mut key);
+                        output_cb(&mut key, w.erase_mut());
+                    }
                     count += 1;
                 }
                 cursor.step_key_reverse();
@@ -464,6 +522,7 @@ where
 
 struct TopKRowNumber<I: ?Sized, OV: DataTrait + ?Sized> {
     output_factory: &'static dyn Factory<OV>,
+    offset: usize,
     k: usize,
     name: String,
     output_func: Box<dyn Fn(i64, &I, &mut OV)>,
@@ -473,13 +532,20 @@ struct TopKRowNumber<I: ?Sized, OV: DataTrait + ?Sized> {
 impl<I: ?Sized, OV: DataTrait + ?Sized> TopKRowNumber<I, OV> {
     fn new(
         output_factory: &'static dyn Factory<OV>,
+        offset: usize,
         k: usize,
         output_func: Box<dyn Fn(i64, &I, &mut OV)>,
     ) -> Self {
+        let name = if offset == 0 {
+            format!("top-{k}-row_number")
+        } else {
+            format!("top-{offset}+{k}-row_number")
+        };
         Self {
             output_factory,
+            offset,
             k,
-            name: format!("top-{k}-row_number"),
+            name,
             output_func,
             _phantom: PhantomData,
         }
@@ -506,17 +572,22 @@ where
         CB: FnMut(&mut OV, &mut DynZWeight),
     {
         let mut count = 0usize;
+        let end = self.offset.saturating_add(self.k);
         let mut output_val = self.output_factory.default_box();
 
-        while cursor.key_valid() && count < self.k {
+        while cursor.key_valid() && count < end {
             let mut w = **cursor.weight();
             while w.ge0() && !w.is_zero() {
                 count += 1;
-                if count > self.k {
+                if count > end {
                     break;
                 }
-                (self.output_func)(count as i64, cursor.key(), &mut output_val);
-                output_cb(&mut output_val, ZWeight::one().erase_mut());
+                // Row numbers are counted from the start of the group, also
+                // for the rows that are skipped.
+                if count > self.offset {
+                    (self.output_func)(count as i64, cursor.key(), &mut output_val);
+                    output_cb(&mut output_val, ZWeight::one().erase_mut());
+                }
                 AddAssignByRef::add_assign_by_ref(&mut w, &ZWeight::one().neg());
             }
             cursor.step_key();
@@ -1,28 +1,29 @@
 use crate::{
     algebra::{
         IndexedZSet, IndexedZSetReader, Lattice, MulByRef, OrdIndexedZSet, OrdZSet, PartialOrder,
-        ZSet, ZTrace,
+        ZCursor, ZSet, ZTrace,
     },
     circuit::{
         metadata::{
             MetaItem, OperatorLocation, OperatorMeta, NUM_ENTRIES_LABEL, SHARED_BYTES_LABEL,
             USED_BYTES_LABEL,
         },
-        operator_traits::{BinaryOperator, Operator},
+        operator_traits::{BinaryOperator, Operator, QuaternaryOperator},
         Circuit, GlobalNodeId, RootCircuit, Scope, Stream, WithClock,
     },
     circuit_cache_key,
     dynamic::{
-        ClonableTrait, DataTrait, DynDataTyped, DynPair, DynPairs, DynUnit, Erase, Factory,
-        LeanVec, WithFactory,
+        ClonableTrait, DataTrait, DowncastTrait, DynDataTyped, DynPair, DynPairs, DynUnit,
+        DynWeightedPairs, Erase, Factory, LeanVec, WithFactory,
     },
     operator::dynamic::{distinct::DistinctFactories, filter_map::DynFilterMap},
     time::Timestamp,
     trace::{
-        BatchFactories, BatchReader, BatchReaderFactories, Batcher, Builder, Cursor, WeightedItem,
+        cursor::CursorPair, BatchFactories, BatchReader, BatchReaderFactories, Batcher, Builder,
+        Cursor, WeightedItem,
     },
     utils::Tup2,
-    DBData, ZWeight,
+    DBData, DynZWeight, ZWeight,
 };
 use minitrace::trace;
 use size_of::{Context, SizeOf};
@@ -36,6 +37,7 @@ use std::{
 };
 
 circuit_cache_key!(AntijoinId<C, D>((GlobalNodeId, GlobalNodeId) => Stream<C, D>));
+circuit_cache_key!(SemijoinId<C, D>((GlobalNodeId, GlobalNodeId) => Stream<C, D>));
 
 pub trait TraceJoinFuncTrait<K: ?Sized, V1: ?Sized, V2: ?Sized, OK: ?Sized, OV: ?Sized>:
     FnMut(&K, &V1, &V2, &mut dyn FnMut(&mut OK, &mut OV))
@@ -547,6 +549,61 @@ where
         })
     }
 
+    /// See [`Stream::semijoin`].
+    ///
+    /// The values of `other` should be `()`: the output contains each value of
+    /// `self` once for every distinct value of the same key in `other`.
+    pub fn dyn_semijoin<I2>(
+        &self,
+        factories: &AntijoinFactories<I1, I2, C::Time>,
+        other: &Stream<C, I2>,
+    ) -> Stream<C, I1>
+    where
+        I2: IndexedZSet<Key = I1::Key> + Send,
+        Box<I1::Key>: Clone,
+        Box<I1::Val>: Clone,
+    {
+        self.circuit()
+            .cache_get_or_insert_with(
+                SemijoinId::new((
+                    self.origin_node_id().clone(),
+                    other.origin_node_id().clone(),
+                )),
+                move || {
+                    self.circuit().region("semijoin", || {
+                        let stream1 = self.dyn_shard(&factories.join_factories.left_factories);
+                        // Only the distinct contents of `other` are integrated.
+                        let stream2 = other
+                            .dyn_distinct(&factories.distinct_factories)
+                            .dyn_shard(&factories.join_factories.right_factories);
+
+                        let mut key = factories
+                            .join_factories
+                            .output_factories
+                            .key_factory()
+                            .default_box();
+                        let mut val = factories
+                            .join_factories
+                            .output_factories
+                            .val_factory()
+                            .default_box();
+                        stream1
+                            .dyn_join_generic(
+                                &factories.join_factories,
+                                &stream2,
+                                TraceJoinFuncs::new(move |k: &I1::Key, v1: &I1::Val, _v2, cb| {
+                                    k.clone_to(&mut key);
+                                    v1.clone_to(&mut val);
+                                    cb(key.as_mut(), val.as_mut())
+                                }),
+                            )
+                            .mark_sharded()
+                    })
+                },
+            )
+            .clone()
+    }
+
     /// See [`Stream::antijoin`].
     pub fn dyn_antijoin<I2>(
         &self,
@@ -691,6 +748,308 @@ where
     }
 }
 
+/// Function applied to the values of one side of an outer join whose key has
+/// no match on the other side.
+pub type UnmatchedFunc<K, V, O> = dyn Fn(&K, &V, &mut dyn FnMut(&mut O, &mut DynUnit));
+
+impl<I1> Stream<RootCircuit, I1>
+where
+    I1: IndexedZSet + Send,
+{
+    /// See [`Stream::left_join`] and [`Stream::full_join`].
+    ///
+    /// `left_func` is applied to the values of `self` whose key has no value
+    /// in `other`; `right_func`, if present, to the values of `other` whose
+    /// key has no value in `self`.
+    #[track_caller]
+    pub fn dyn_left_join<I2, Z>(
+        &self,
+        factories: &JoinFactories<I1, I2, (), Z>,
+        other: &Stream<RootCircuit, I2>,
+        join_funcs: TraceJoinFuncs<I1::Key, I1::Val, I2::Val, Z::Key, DynUnit>,
+        left_func: Box<UnmatchedFunc<I1::Key, I1::Val, Z::Key>>,
+        right_func: Option<Box<UnmatchedFunc<I2::Key, I2::Val, Z::Key>>>,
+    ) -> Stream<RootCircuit, Z>
+    where
+        I2: IndexedZSet<Key = I1::Key> + Send,
+        Z: ZSet,
+    {
+        let location = Location::caller();
+        let center = self.dyn_join_generic(factories, other, join_funcs);
+
+        self.circuit().region("outer_join", || {
+            // The inner join has already sharded and integrated both inputs,
+            // so these are the streams and traces that it uses.
+            let left = self.dyn_shard(&factories.left_factories);
+            let right = other.dyn_shard(&factories.right_factories);
+            let left_trace = left
+                .dyn_trace(&factories.left_trace_factories)
+                .delay_trace();
+            let right_trace = right
+                .dyn_trace(&factories.right_trace_factories)
+                .delay_trace();
+
+            let unmatched = self.circuit().add_quaternary_operator(
+                Unmatched::new(
+                    factories.left_factories.key_factory(),
+                    &factories.output_factories,
+                    left_func,
+                    right_func,
+                    location,
+                ),
+                &left,
+                &left_trace,
+                &right,
+                &right_trace,
+            );
+            center.plus(&unmatched)
+        })
+    }
+}
+
+/// Computes the changes to the unmatched values of an outer join.
+///
+/// The values of a key on one side are unmatched if the key has no value with
+/// a positive weight on the other side.  For each key modified on either side
+/// the operator checks whether the key had and has a match in the old and in
+/// the new contents of the other side, using the delayed traces of the inputs,
+/// which are shared with the inner join:
+///
+/// * no match before and after: the changes of the key are unmatched;
+/// * a match only before: the new values of the key become unmatched;
+/// * a match only after: the old values of the key stop being unmatched;
+/// * a match before and after: no output.
+pub struct Unmatched<I1, T1, I2, T2, Z>
+where
+    I1: IndexedZSet,
+    I2: IndexedZSet,
+    Z: ZSet,
+{
+    key_factory: &'static dyn Factory<I1::Key>,
+    output_factories: Z::Factories,
+    left_func: Box<UnmatchedFunc<I1::Key, I1::Val, Z::Key>>,
+    right_func: Option<Box<UnmatchedFunc<I2::Key, I2::Val, Z::Key>>>,
+    location: &'static Location<'static>,
+    phantom: PhantomData<fn(&I1, &T1, &I2, &T2)>,
+}
+
+impl<I1, T1, I2, T2, Z> Unmatched<I1, T1, I2, T2, Z>
+where
+    I1: IndexedZSet,
+    I2: IndexedZSet<Key = I1::Key>,
+    Z: ZSet,
+{
+    pub fn new(
+        key_factory: &'static dyn Factory<I1::Key>,
+        output_factories: &Z::Factories,
+        left_func: Box<UnmatchedFunc<I1::Key, I1::Val, Z::Key>>,
+        right_func: Option<Box<UnmatchedFunc<I2::Key, I2::Val, Z::Key>>>,
+        location: &'static Location<'static>,
+    ) -> Self {
+        Self {
+            key_factory,
+            output_factories: output_factories.clone(),
+            left_func,
+            right_func,
+            location,
+            phantom: PhantomData,
+        }
+    }
+
+    /// True if `key` has a value with a positive weight in `cursor`.
+    fn matched<V, C>(cursor: &mut C, key: &I1::Key) -> bool
+    where
+        V: DataTrait + ?Sized,
+        C: ZCursor<I1::Key, V, ()>,
+    {
+        cursor.seek_key(key);
+        if cursor.get_key() != Some(key) {
+            return false;
+        }
+        cursor.rewind_vals();
+        while cursor.val_valid() {
+            if **cursor.weight() > 0 {
+                return true;
+            }
+            cursor.step_val();
+        }
+        false
+    }
+
+    /// Output `func` for each value of `key` in `cursor`, with its weight
+    /// multiplied by `sign`.
+    fn output<V, C>(
+        cursor: &mut C,
+        key: &I1::Key,
+        sign: ZWeight,
+        func: &UnmatchedFunc<I1::Key, V, Z::Key>,
+        output_tuples: &mut DynWeightedPairs<DynPair<Z::Key, DynUnit>, DynZWeight>,
+    ) where
+        V: DataTrait + ?Sized,
+        C: ZCursor<I1::Key, V, ()>,
+    {
+        cursor.seek_key(key);
+        if cursor.get_key() != Some(key) {
+            return;
+        }
+        cursor.rewind_vals();
+        while cursor.val_valid() {
+            let w = **cursor.weight() * sign;
+            if w != 0 {
+                func(key, cursor.val(), &mut |k, v| {
+                    output_tuples.push_with(&mut move |tup| {
+                        let (kv, neww) = tup.split_mut();
+                        let (newk, newv) = kv.split_mut();
+                        k.move_to(newk);
+                        v.move_to(newv);
+                        *unsafe { neww.downcast_mut() } = w;
+                    });
+                });
+            }
+            cursor.step_val();
+        }
+    }
+
+    /// Output the changes to the unmatched values of `key` on one side of the
+    /// join, given the delta, the delayed trace and the integral of that side,
+    /// and whether the key had and has a match on the other side.
+    #[allow(clippy::too_many_arguments)]
+    fn output_side<V, DC, TC, C>(
+        delta: &mut DC,
+        delayed_trace: &mut TC,
+        trace: &mut C,
+        key: &I1::Key,
+        old_match: bool,
+        new_match: bool,
+        func: &UnmatchedFunc<I1::Key, V, Z::Key>,
+        output_tuples: &mut DynWeightedPairs<DynPair<Z::Key, DynUnit>, DynZWeight>,
+    ) where
+        V: DataTrait + ?Sized,
+        DC: ZCursor<I1::Key, V, ()>,
+        TC: ZCursor<I1::Key, V, ()>,
+        C: ZCursor<I1::Key, V, ()>,
+    {
+        match (old_match, new_match) {
+            (false, false) => Self::output(delta, key, 1, func, output_tuples),
+            (false, true) => Self::output(delayed_trace, key, -1, func, output_tuples),
+            (true, false) => Self::output(trace, key, 1, func, output_tuples),
+            (true, true) => {}
+        }
+    }
+}
+
+impl<I1, T1, I2, T2, Z> Operator for Unmatched<I1, T1, I2, T2, Z>
+where
+    I1: IndexedZSet,
+    T1: 'static,
+    I2: IndexedZSet,
+    T2: 'static,
+    Z: ZSet,
+{
+    fn name(&self) -> Cow<'static, str> {
+        Cow::Borrowed("Unmatched")
+    }
+
+    fn location(&self) -> OperatorLocation {
+        Some(self.location)
+    }
+
+    fn fixedpoint(&self, _scope: Scope) -> bool {
+        true
+    }
+}
+
+impl<I1, T1, I2, T2, Z> QuaternaryOperator<I1, T1, I2, T2, Z> for Unmatched<I1, T1, I2, T2, Z>
+where
+    I1: IndexedZSet,
+    T1: ZTrace<Key = I1::Key, Val = I1::Val, Time = ()> + Clone,
+    I2: IndexedZSet<Key = I1::Key>,
+    T2: ZTrace<Key = I2::Key, Val = I2::Val, Time = ()> + Clone,
+    Z: ZSet,
+{
+    fn eval<'a>(
+        &mut self,
+        delta1: Cow<'a, I1>,
+        delayed_trace1: Cow<'a, T1>,
+        delta2: Cow<'a, I2>,
+        delayed_trace2: Cow<'a, T2>,
+    ) -> Z {
+        let mut delta1_cursor = delta1.cursor();
+        let mut delta2_cursor = delta2.cursor();
+        let mut delayed_trace1_cursor = delayed_trace1.cursor();
+        let mut delayed_trace2_cursor = delayed_trace2.cursor();
+
+        // Cursors over the new contents of the inputs.
+        let mut delta1_cursor2 = delta1.cursor();
+        let mut delayed_trace1_cursor2 = delayed_trace1.cursor();
+        let mut trace1_cursor = CursorPair::new(&mut delta1_cursor2, &mut delayed_trace1_cursor2);
+        let mut delta2_cursor2 = delta2.cursor();
+        let mut delayed_trace2_cursor2 = delayed_trace2.cursor();
+        let mut trace2_cursor = CursorPair::new(&mut delta2_cursor2, &mut delayed_trace2_cursor2);
+
+        let mut output_tuples = self
+            .output_factories
+            .weighted_items_factory()
+            .default_box();
+        let mut key = self.key_factory.default_box();
+
+        // Iterate over the keys in delta1 and delta2.
+        while delta1_cursor.key_valid() || delta2_cursor.key_valid() {
+            let (in1, in2) = match (delta1_cursor.get_key(), delta2_cursor.get_key()) {
+                (Some(k1), Some(k2)) => match k1.cmp(k2) {
+                    Ordering::Less => (true, false),
+                    Ordering::Equal => (true, true),
+                    Ordering::Greater => (false, true),
+                },
+                (Some(_), None) => (true, false),
+                _ => (false, true),
+            };
+            if in1 {
+                delta1_cursor.key().clone_to(&mut *key);
+            } else {
+                delta2_cursor.key().clone_to(&mut *key);
+            }
+
+            let old_match2 = Self::matched::<I2::Val, _>(&mut delayed_trace2_cursor, &key);
+            let new_match2 = Self::matched::<I2::Val, _>(&mut trace2_cursor, &key);
+            Self::output_side(
+                &mut delta1_cursor,
+                &mut delayed_trace1_cursor,
+                &mut trace1_cursor,
+                &key,
+                old_match2,
+                new_match2,
+                &*self.left_func,
+                output_tuples.as_mut(),
+            );
+
+            if let Some(right_func) = &self.right_func {
+                let old_match1 = Self::matched::<I1::Val, _>(&mut delayed_trace1_cursor, &key);
+                let new_match1 = Self::matched::<I1::Val, _>(&mut trace1_cursor, &key);
+                Self::output_side(
+                    &mut delta2_cursor,
+                    &mut delayed_trace2_cursor,
+                    &mut trace2_cursor,
+                    &key,
+                    old_match1,
+                    new_match1,
+                    &**right_func,
+                    output_tuples.as_mut(),
+                );
+            }
+
+            if in1 {
+                delta1_cursor.step_key();
+            }
+            if in2 {
+                delta2_cursor.step_key();
+            }
+        }
+
+        Z::dyn_from_tuples(&self.output_factories, (), &mut output_tuples)
+    }
+}
+
 /// Join two streams of batches.
 ///
 /// See [`Stream::join`](`crate::circuit::Stream::join`).
@@ -1785,4 +2144,213 @@ mod test {
 
         circuit.kill().unwrap();
     }
+
+    #[test]
+    fn left_join_test() {
+        let output = Arc::new(Mutex::new(OrdZSet::empty(())));
+        let output_clone = output.clone();
+
+        let (mut circuit, (input1, input2)) = Runtime::init_circuit(4, move |circuit| {
+            let (input1, input_handle1) = circuit.add_input_indexed_zset::<u64, u64>();
+            let (input2, input_handle2) = circuit.add_input_indexed_zset::<u64, u64>();
+
+            input1
+                .left_join(
+                    &input2,
+                    |_k, v1, v2| Tup2(*v1, Some(*v2)),
+                    |_k, v1| Tup2(*v1, None),
+                )
+                .gather(0)
+                .inspect(move |batch| {
+                    if Runtime::worker_index() == 0 {
+                        *output_clone.lock().unwrap() = batch.clone();
+                    }
+                });
+
+            Ok((input_handle1, input_handle2))
+        })
+        .unwrap();
+
+        input1.append(&mut vec![
+            Tup2(1, Tup2(10, 1)),
+            Tup2(1, Tup2(11, 1)),
+            Tup2(2, Tup2(20, 1)),
+        ]);
+        input2.append(&mut vec![Tup2(2, Tup2(200, 1)), Tup2(3, Tup2(300, 1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &zset! {
+                Tup2(10, None) => 1,
+                Tup2(11, None) => 1,
+                Tup2(20, Some(200)) => 1,
+            }
+        );
+
+        // Key 1 gets a match: both of its values stop being unmatched.
+        input2.append(&mut vec![Tup2(1, Tup2(100, 1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &zset! {
+                Tup2(10, None) => -1,
+                Tup2(11, None) => -1,
+                Tup2(10, Some(100)) => 1,
+                Tup2(11, Some(100)) => 1,
+            }
+        );
+
+        // Key 3 only exists on the right side and produces no output; key 2
+        // loses its match and a new value.
+        input1.append(&mut vec![Tup2(2, Tup2(21, 1)), Tup2(1, Tup2(11, -1))]);
+        input2.append(&mut vec![Tup2(2, Tup2(200, -1)), Tup2(3, Tup2(301, 1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &zset! {
+                Tup2(11, Some(100)) => -1,
+                Tup2(20, Some(200)) => -1,
+                Tup2(20, None) => 1,
+                Tup2(21, None) => 1,
+            }
+        );
+
+        // Deleting an unmatched value retracts it.
+        input1.append(&mut vec![Tup2(2, Tup2(20, -1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &zset! {
+                Tup2(20, None) => -1,
+            }
+        );
+
+        circuit.kill().unwrap();
+    }
+
+    #[test]
+    fn full_join_test() {
+        let output = Arc::new(Mutex::new(OrdZSet::empty(())));
+        let output_clone = output.clone();
+
+        let (mut circuit, (input1, input2)) = Runtime::init_circuit(4, move |circuit| {
+            let (input1, input_handle1) = circuit.add_input_indexed_zset::<u64, u64>();
+            let (input2, input_handle2) = circuit.add_input_indexed_zset::<u64, u64>();
+
+            input1
+                .full_join(
+                    &input2,
+                    |_k, v1, v2| Tup2(Some(*v1), Some(*v2)),
+                    |_k, v1| Tup2(Some(*v1), None),
+                    |_k, v2| Tup2(None, Some(*v2)),
+                )
+                .gather(0)
+                .inspect(move |batch| {
+                    if Runtime::worker_index() == 0 {
+                        *output_clone.lock().unwrap() = batch.clone();
+                    }
+                });
+
+            Ok((input_handle1, input_handle2))
+        })
+        .unwrap();
+
+        input1.append(&mut vec![Tup2(1, Tup2(10, 1)), Tup2(2, Tup2(20, 1))]);
+        input2.append(&mut vec![Tup2(2, Tup2(200, 1)), Tup2(3, Tup2(300, 1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &zset! {
+                Tup2(Some(10), None) => 1,
+                Tup2(Some(20), Some(200)) => 1,
+                Tup2(None, Some(300)) => 1,
+            }
+        );
+
+        // A second value for key 2 does not retract anything.
+        input2.append(&mut vec![Tup2(2, Tup2(201, 1)), Tup2(1, Tup2(100, 1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &zset! {
+                Tup2(Some(10), None) => -1,
+                Tup2(Some(10), Some(100)) => 1,
+                Tup2(Some(20), Some(201)) => 1,
+            }
+        );
+
+        // Key 3 gets a match; key 1 loses its match.
+        input1.append(&mut vec![Tup2(3, Tup2(30, 1))]);
+        input2.append(&mut vec![Tup2(1, Tup2(100, -1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &zset! {
+                Tup2(None, Some(300)) => -1,
+                Tup2(Some(30), Some(300)) => 1,
+                Tup2(Some(10), Some(100)) => -1,
+                Tup2(Some(10), None) => 1,
+            }
+        );
+
+        circuit.kill().unwrap();
+    }
+
+    #[test]
+    fn semijoin_test() {
+        let output = Arc::new(Mutex::new(OrdIndexedZSet::empty(())));
+        let output_clone = output.clone();
+
+        let (mut circuit, (input1, input2)) = Runtime::init_circuit(4, move |circuit| {
+            let (input1, input_handle1) = circuit.add_input_indexed_zset::<u64, u64>();
+            let (input2, input_handle2) = circuit.add_input_indexed_zset::<u64, ()>();
+
+            input1.semijoin(&input2).gather(0).inspect(move |batch| {
+                if Runtime::worker_index() == 0 {
+                    *output_clone.lock().unwrap() = batch.clone();
+                }
+            });
+
+            Ok((input_handle1, input_handle2))
+        })
+        .unwrap();
+
+        input1.append(&mut vec![
+            Tup2(1, Tup2(0, 1)),
+            Tup2(1, Tup2(1, 2)),
+            Tup2(2, Tup2(0, 1)),
+            Tup2(2, Tup2(1, 1)),
+        ]);
+        circuit.step().unwrap();
+        assert_eq!(&*output.lock().unwrap(), &indexed_zset! {});
+
+        // The weights of `input2` do not multiply the output.
+        input2.append(&mut vec![Tup2(1, Tup2((), 3))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &indexed_zset! { 1 => { 0 => 1, 1 => 2 } }
+        );
+
+        input2.append(&mut vec![Tup2(2, Tup2((), 1))]);
+        input1.append(&mut vec![Tup2(2, Tup2(2, 1)), Tup2(4, Tup2(1, 1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &indexed_zset! { 2 => { 0 => 1, 1 => 1, 2 => 1 } }
+        );
+
+        input2.append(&mut vec![Tup2(1, Tup2((), -2))]);
+        circuit.step().unwrap();
+        assert_eq!(&*output.lock().unwrap(), &indexed_zset! {});
+
+        input2.append(&mut vec![Tup2(1, Tup2((), -1))]);
+        circuit.step().unwrap();
+        assert_eq!(
+            &*output.lock().unwrap(),
+            &indexed_zset! { 1 => { 0 => -1, 1 => -2 } }
+        );
+
+        circuit.kill().unwrap();
+    }
 }
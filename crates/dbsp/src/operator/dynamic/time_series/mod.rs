@@ -12,7 +12,7 @@ pub use partitioned::{
 pub use radix_tree::TreeNode;
 pub use range::{Range, RelOffset, RelRange};
 pub use rolling_aggregate::{
-    OrdPartitionedOverStream, PartitionedRollingAggregateFactories,
+    DynRollingFrame, FramesFunc, OrdPartitionedOverStream, PartitionedRollingAggregateFactories,
     PartitionedRollingAggregateLinearFactories, PartitionedRollingAggregateWithWaterlineFactories,
     PartitionedRollingAverageFactories,
 };
@@ -2,7 +2,7 @@
 
 use num::PrimInt;
 use std::{
-    cmp::max,
+    cmp::{max, Ordering},
     marker::PhantomData,
     ops::{Add, Neg, Sub},
 };
@@ -28,6 +28,22 @@ pub enum RelOffset<TS> {
     After(TS),
 }
 
+impl<TS> RelOffset<TS>
+where
+    TS: PrimInt,
+{
+    /// Compares the relative times denoted by two offsets.  `Before(0)` is
+    /// ordered before `After(0)`.
+    fn cmp_time(&self, other: &Self) -> Ordering {
+        match (self, other) {
+            (Self::Before(ts1), Self::Before(ts2)) => ts2.cmp(ts1),
+            (Self::After(ts1), Self::After(ts2)) => ts1.cmp(ts2),
+            (Self::Before(_), Self::After(_)) => Ordering::Less,
+            (Self::After(_), Self::Before(_)) => Ordering::Greater,
+        }
+    }
+}
+
 impl<TS> Neg for RelOffset<TS> {
     type Output = Self;
 
@@ -100,6 +116,36 @@ where
         Self { from, to }
     }
 
+    /// Returns the smallest relative range that contains all `ranges`.
+    ///
+    /// # Panics
+    ///
+    /// Panics if `ranges` is empty.
+    ///
+    /// # Example
+    ///
+    /// ```
+    /// use dbsp::operator::time_series::{RelOffset, RelRange};
+    ///
+    /// let hull = RelRange::hull(&[
+    ///     RelRange::new(RelOffset::Before(3), RelOffset::Before(1)),
+    ///     RelRange::new(RelOffset::Before(2), RelOffset::After(1)),
+    /// ]);
+    /// assert_eq!(hull, RelRange::new(RelOffset::Before(3), RelOffset::After(1)));
+    /// ```
+    pub fn hull(ranges: &[Self]) -> Self {
+        let mut result = ranges[0];
+        for range in &ranges[1..] {
+            if range.from.cmp_time(&result.from) == Ordering::Less {
+                result.from = range.from;
+            }
+            if range.to.cmp_time(&result.to) == Ordering::Greater {
+                result.to = range.to;
+            }
+        }
+        result
+    }
+
     /// Computes relative range of timestamp `ts`.
     ///
     /// Returns `None` if the range is completely outside the range of type
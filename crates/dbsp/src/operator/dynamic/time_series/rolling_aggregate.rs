@@ -57,6 +57,58 @@ impl<IV: ?Sized, PK: ?Sized, OV: ?Sized, F> PartitionFunc<IV, PK, OV> for F wher
 {
 }
 
+/// Combines the aggregates computed over several window frames into the
+/// output of a rolling aggregate.  The first argument contains the aggregate
+/// of each frame, in the order of the ranges given to the operator.
+pub trait FramesFunc<Out: ?Sized>: Fn(&mut [Box<DynOpt<Out>>], &mut DynOpt<Out>) + DynClone {}
+
+impl<Out: ?Sized, F> FramesFunc<Out> for F where
+    F: Fn(&mut [Box<DynOpt<Out>>], &mut DynOpt<Out>) + Clone
+{
+}
+
+dyn_clone::clone_trait_object! {<Out: ?Sized> FramesFunc<Out>}
+
+/// A window frame of a rolling aggregate.
+///
+/// The aggregator of the frame evaluates the aggregates of the frame using the
+/// radix tree maintained by the aggregator of the operator.  It must have the
+/// same accumulator type, but it only needs to combine and finalize the
+/// components of the accumulator that the frame uses.
+pub struct DynRollingFrame<TS, V: ?Sized, Acc: ?Sized, Out: ?Sized> {
+    pub range: RelRange<TS>,
+    pub aggregator: Box<dyn DynAggregator<V, (), DynZWeight, Accumulator = Acc, Output = Out>>,
+}
+
+impl<TS, V, Acc, Out> DynRollingFrame<TS, V, Acc, Out>
+where
+    V: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    Out: DataTrait + ?Sized,
+{
+    pub fn new(
+        range: RelRange<TS>,
+        aggregator: Box<dyn DynAggregator<V, (), DynZWeight, Accumulator = Acc, Output = Out>>,
+    ) -> Self {
+        Self { range, aggregator }
+    }
+}
+
+impl<TS, V, Acc, Out> Clone for DynRollingFrame<TS, V, Acc, Out>
+where
+    TS: Clone,
+    V: DataTrait + ?Sized,
+    Acc: DataTrait + ?Sized,
+    Out: DataTrait + ?Sized,
+{
+    fn clone(&self) -> Self {
+        Self {
+            range: self.range.clone(),
+            aggregator: clone_box(self.aggregator.as_ref()),
+        }
+    }
+}
+
 pub type OrdPartitionedOverStream<PK, TS, A> =
     Stream<RootCircuit, OrdPartitionedIndexedZSet<PK, TS, DynOpt<A>>>;
 
@@ -73,7 +125,7 @@ where
     radix_tree_factories: FilePartitionedRadixTreeFactories<B::Key, TS, Acc>,
     partitioned_tree_aggregate_factories: OrdPartitionedTreeAggregateFactories<TS, V, B, Acc>,
     output_factories: O::Factories,
-    phantom: PhantomData<fn(&Out)>,
+    frame_factory: &'static dyn Factory<DynOpt<Out>>,
 }
 
 impl<TS, V, Acc, Out, B, O> PartitionedRollingAggregateFactories<TS, V, Acc, Out, B, O>
@@ -106,7 +158,7 @@ where
             >(),
             output_factories: BatchReaderFactories::new::<KType, Tup2<TS, Option<OType>>, ZWeight>(
             ),
-            phantom: PhantomData,
+            frame_factory: WithFactory::<Option<OType>>::FACTORY,
         }
     }
 }
@@ -383,6 +435,42 @@ where
         Acc: DataTrait + ?Sized,
         Out: DataTrait + ?Sized,
     {
+        self.dyn_partitioned_rolling_aggregate_ranges_with_waterline(
+            factories,
+            waterline,
+            partition_func,
+            aggregator,
+            vec![DynRollingFrame::new(range, clone_box(aggregator))],
+            None,
+        )
+    }
+
+    /// See [`Stream::partitioned_rolling_aggregate_ranges_with_waterline`].
+    pub fn dyn_partitioned_rolling_aggregate_ranges_with_waterline<PK, TS, V, Acc, Out>(
+        &self,
+        factories: &PartitionedRollingAggregateWithWaterlineFactories<PK, TS, V, Acc, Out, B>,
+        waterline: &Stream<RootCircuit, Box<DynDataTyped<TS>>>,
+        partition_func: Box<dyn PartitionFunc<B::Val, PK, V>>,
+        aggregator: &dyn DynAggregator<V, (), B::R, Accumulator = Acc, Output = Out>,
+        frames: Vec<DynRollingFrame<TS, V, Acc, Out>>,
+        frames_func: Option<Box<dyn FramesFunc<Out>>>,
+    ) -> OrdPartitionedOverStream<PK, DynDataTyped<TS>, Out>
+    where
+        B: IndexedZSet,
+        B: for<'a> DynFilterMap<
+            DynItemRef<'a> = (&'a <B as BatchReader>::Key, &'a <B as BatchReader>::Val),
+        >,
+        Box<B::Key>: Clone,
+        PK: DataTrait + ?Sized,
+        TS: DBData + UnsignedPrimInt + Erase<B::Key>,
+        V: DataTrait + ?Sized,
+        Acc: DataTrait + ?Sized,
+        Out: DataTrait + ?Sized,
+    {
+        // The input window must cover all frames.
+        let ranges: Vec<_> = frames.iter().map(|frame| frame.range).collect();
+        let range = RelRange::hull(&ranges);
+
         self.circuit()
             .region("partitioned_rolling_aggregate_with_waterline", || {
                 // Shift the aggregation window so that its right end is at 0.
@@ -448,7 +536,8 @@ where
                     &factories.rolling_aggregate_factories,
                     &partitioned_window,
                     aggregator,
-                    range,
+                    frames,
+                    frames_func,
                     bound,
                 )
             })
@@ -470,6 +559,42 @@ where
         aggregator: &dyn DynAggregator<V, (), B::R, Accumulator = Acc, Output = Out>,
         range: RelRange<TS>,
     ) -> OrdPartitionedOverStream<PK, DynDataTyped<TS>, Out>
+    where
+        B: IndexedZSet,
+        B: for<'a> DynFilterMap<
+            DynItemRef<'a> = (&'a <B as BatchReader>::Key, &'a <B as BatchReader>::Val),
+        >,
+        Acc: DataTrait + ?Sized,
+        Out: DataTrait + ?Sized,
+        PK: DataTrait + ?Sized,
+        TS: DBData + UnsignedPrimInt + Erase<B::Key>,
+        V: DataTrait + ?Sized,
+    {
+        self.dyn_partitioned_rolling_aggregate_ranges(
+            factories,
+            partition_func,
+            aggregator,
+            vec![DynRollingFrame::new(range, clone_box(aggregator))],
+            None,
+        )
+    }
+
+    /// See [`Stream::partitioned_rolling_aggregate_ranges`].
+    pub fn dyn_partitioned_rolling_aggregate_ranges<PK, TS, V, Acc, Out>(
+        &self,
+        factories: &PartitionedRollingAggregateFactories<
+            TS,
+            V,
+            Acc,
+            Out,
+            OrdPartitionedIndexedZSet<PK, DynDataTyped<TS>, V>,
+            OrdPartitionedIndexedZSet<PK, DynDataTyped<TS>, DynOpt<Out>>,
+        >,
+        partition_func: Box<dyn PartitionFunc<B::Val, PK, V>>,
+        aggregator: &dyn DynAggregator<V, (), B::R, Accumulator = Acc, Output = Out>,
+        frames: Vec<DynRollingFrame<TS, V, Acc, Out>>,
+        frames_func: Option<Box<dyn FramesFunc<Out>>>,
+    ) -> OrdPartitionedOverStream<PK, DynDataTyped<TS>, Out>
     where
         B: IndexedZSet,
         B: for<'a> DynFilterMap<
@@ -510,7 +635,8 @@ where
                 factories,
                 &partitioned,
                 aggregator,
-                range,
+                frames,
+                frames_func,
                 TraceBound::new(),
             )
         })
@@ -609,7 +735,8 @@ impl<B> Stream<RootCircuit, B> {
         factories: &PartitionedRollingAggregateFactories<TS, V, Acc, Out, B, O>,
         self_window: &Self,
         aggregator: &dyn DynAggregator<V, (), DynZWeight, Accumulator = Acc, Output = Out>,
-        range: RelRange<TS>,
+        frames: Vec<DynRollingFrame<TS, V, Acc, Out>>,
+        frames_func: Option<Box<dyn FramesFunc<Out>>>,
         bound: TraceBound<DynPair<DynDataTyped<TS>, DynOpt<Out>>>,
     ) -> Stream<RootCircuit, O>
     where
@@ -645,8 +772,9 @@ impl<B> Stream<RootCircuit, B> {
             .add_quaternary_operator(
                 <PartitionedRollingAggregate<TS, V, Acc, Out, _>>::new(
                     &factories.output_factories,
-                    range,
-                    aggregator,
+                    factories.frame_factory,
+                    frames,
+                    frames_func,
                 ),
                 &stream,
                 &input_trace,
@@ -680,8 +808,11 @@ struct PartitionedRollingAggregate<
     O: Batch,
 > {
     output_factories: O::Factories,
-    range: RelRange<TS>,
-    aggregator: Box<dyn DynAggregator<V, (), DynZWeight, Accumulator = Acc, Output = Out>>,
+    frame_factory: &'static dyn Factory<DynOpt<Out>>,
+    frames: Vec<DynRollingFrame<TS, V, Acc, Out>>,
+    // Combines the aggregates of the frames; `None` when there is a single
+    // frame, whose aggregate is the output.
+    frames_func: Option<Box<dyn FramesFunc<Out>>>,
     phantom: PhantomData<fn(&V, &O)>,
 }
 
@@ -694,13 +825,17 @@ where
 {
     fn new(
         output_factories: &O::Factories,
-        range: RelRange<TS>,
-        aggregator: &dyn DynAggregator<V, (), DynZWeight, Accumulator = Acc, Output = Out>,
+        frame_factory: &'static dyn Factory<DynOpt<Out>>,
+        frames: Vec<DynRollingFrame<TS, V, Acc, Out>>,
+        frames_func: Option<Box<dyn FramesFunc<Out>>>,
     ) -> Self {
+        assert!(!frames.is_empty());
+        assert!(frames.len() == 1 || frames_func.is_some());
         Self {
             output_factories: output_factories.clone(),
-            range,
-            aggregator: clone_box(aggregator),
+            frame_factory,
+            frames,
+            frames_func,
             phantom: PhantomData,
         }
     }
@@ -714,8 +849,12 @@ where
         let mut affected_ranges = Ranges::new();
         let mut delta_ranges = Ranges::new();
 
+        // The ranges affected by the change of a key in any frame; since
+        // `push_monotonic` requires ascending ranges, use the hull of the frames.
+        let ranges: Vec<_> = self.frames.iter().map(|frame| frame.range).collect();
+        let hull = RelRange::hull(&ranges);
         while delta_cursor.key_valid() {
-            if let Some(range) = self.range.affected_range_of(delta_cursor.key().deref()) {
+            if let Some(range) = hull.affected_range_of(delta_cursor.key().deref()) {
                 affected_ranges.push_monotonic(range);
             }
             // If `delta_cursor.key()` is a new key that doesn't yet occur in the input
@@ -727,6 +866,33 @@ where
 
         affected_ranges.merge(&delta_ranges)
     }
+
+    /// Computes the aggregate of the values in `range` using the radix tree
+    /// of the current partition and stores it in `result`.
+    fn aggregate_frame<C>(
+        aggregator: &dyn DynAggregator<V, (), DynZWeight, Accumulator = Acc, Output = Out>,
+        tree_cursor: &mut C,
+        range: Option<Range<TS>>,
+        acc: &mut DynOpt<Acc>,
+        agg: &mut Out,
+        result: &mut DynOpt<Out>,
+    ) where
+        C: RadixTreeCursor<TS, Acc>,
+        TS: DBData + UnsignedPrimInt,
+    {
+        if let Some(range) = range {
+            tree_cursor.rewind_keys();
+            tree_cursor.aggregate_range(&range, aggregator.combine(), acc);
+            if let Some(acc) = acc.get_mut() {
+                aggregator.finalize(acc, agg);
+                result.from_val(agg);
+            } else {
+                result.set_none();
+            }
+        } else {
+            result.set_none();
+        }
+    }
 }
 
 impl<TS, V, Acc, Out, O> Operator for PartitionedRollingAggregate<TS, V, Acc, Out, O>
@@ -785,8 +951,16 @@ where
         // tree_partition_cursor.rewind_keys();
 
         let mut item = self.output_factories.weighted_item_factory().default_box();
-        let mut acc = self.aggregator.opt_accumulator_factory().default_box();
-        let mut agg = self.aggregator.output_factory().default_box();
+        let mut acc = self.frames[0].aggregator.opt_accumulator_factory().default_box();
+        let mut agg = self.frames[0].aggregator.output_factory().default_box();
+        let mut frames: Vec<Box<DynOpt<Out>>> = if self.frames_func.is_some() {
+            self.frames
+                .iter()
+                .map(|_| self.frame_factory.default_box())
+                .collect()
+        } else {
+            Vec::new()
+        };
 
         // Iterate over affected partitions.
         while delta_cursor.key_valid() {
@@ -834,14 +1008,7 @@ where
                 // For all affected times, seek them in `input_trace`, compute aggregates using
                 // using radix_tree.
                 while input_range_cursor.key_valid() {
-                    let range = self.range.range_of(input_range_cursor.key());
-                    tree_partition_cursor.rewind_keys();
-
-                    // println!("aggregate_range({range:x?})");
-                    // let mut treestr = String::new();
-                    // tree_partition_cursor.format_tree(&mut treestr).unwrap();
-                    // println!("tree: {treestr}");
-                    // tree_partition_cursor.rewind_keys();
+                    let ts = **input_range_cursor.key();
 
                     while input_range_cursor.val_valid() {
                         // Generate output update.
@@ -850,22 +1017,29 @@ where
                             let (k, v) = kv.split_mut();
 
                             delta_cursor.key().clone_to(k);
-                            **v.fst_mut() = **input_range_cursor.key();
+                            **v.fst_mut() = ts;
                             **w = HasOne::one();
-                            if let Some(range) = range {
-                                tree_partition_cursor.aggregate_range(
-                                    &range,
-                                    self.aggregator.combine(),
-                                    acc.as_mut(),
-                                );
-                                if let Some(acc) = acc.get_mut() {
-                                    self.aggregator.finalize(acc, agg.as_mut());
-                                    v.snd_mut().from_val(agg.as_mut());
-                                } else {
-                                    v.snd_mut().set_none();
+                            if let Some(frames_func) = &self.frames_func {
+                                for (frame, result) in self.frames.iter().zip(frames.iter_mut()) {
+                                    Self::aggregate_frame(
+                                        frame.aggregator.as_ref(),
+                                        &mut tree_partition_cursor,
+                                        frame.range.range_of(&ts),
+                                        acc.as_mut(),
+                                        agg.as_mut(),
+                                        result.as_mut(),
+                                    );
                                 }
+                                frames_func(frames.as_mut_slice(), v.snd_mut());
                             } else {
-                                v.snd_mut().set_none();
+                                Self::aggregate_frame(
+                                    self.frames[0].aggregator.as_ref(),
+                                    &mut tree_partition_cursor,
+                                    self.frames[0].range.range_of(&ts),
+                                    acc.as_mut(),
+                                    agg.as_mut(),
+                                    v.snd_mut(),
+                                );
                             }
 
                             // println!("insert({item:?})");
@@ -905,7 +1079,7 @@ mod test {
                 },
                 trace::TraceBound,
             },
-            time_series::OrdPartitionedIndexedZSet,
+            time_series::{OrdPartitionedIndexedZSet, RollingFrame},
             Fold,
         },
         trace::{BatchReaderFactories, Cursor},
@@ -1133,6 +1307,49 @@ mod test {
                 assert_eq!(expected, actual)
             });
 
+            // Several frames computed by one operator.  The selected frames
+            // always contain the current record, so they are never empty.
+            let frames = vec![
+                RollingFrame::new(
+                    RelRange::new(RelOffset::Before(1000), RelOffset::Before(0)),
+                    aggregator.clone(),
+                ),
+                RollingFrame::new(
+                    RelRange::new(RelOffset::Before(500), RelOffset::Before(100)),
+                    aggregator.clone(),
+                ),
+                RollingFrame::new(
+                    RelRange::new(RelOffset::Before(500), RelOffset::After(500)),
+                    aggregator.clone(),
+                ),
+            ];
+            let output_ranges_1000_0 = input_by_time
+                .partitioned_rolling_aggregate_ranges(
+                    |Tup2(partition, val)| (*partition, *val),
+                    aggregator.clone(),
+                    frames.clone(),
+                    |frames| frames[0],
+                )
+                .gather(0)
+                .integrate();
+            expected_1000_0.apply2(&output_ranges_1000_0, |expected, actual| {
+                assert_eq!(expected, actual)
+            });
+
+            let output_ranges_500_500_waterline = input_by_time
+                .partitioned_rolling_aggregate_ranges_with_waterline(
+                    &waterline,
+                    |Tup2(partition, val)| (*partition, *val),
+                    aggregator.clone(),
+                    frames,
+                    |frames| frames[2],
+                )
+                .gather(0)
+                .integrate();
+            expected_500_500.apply2(&output_ranges_500_500_waterline, |expected, actual| {
+                assert_eq!(expected, actual)
+            });
+
             let range_spec = RelRange::new(RelOffset::Before(500), RelOffset::Before(100));
             let expected_500_100 =
                 partitioned_rolling_aggregate_slow(&input_stream.inner(), range_spec);
@@ -1,5 +1,7 @@
 mod custom_ord;
 mod lag;
+mod range_aggregate;
+mod rows_aggregate;
 mod topk;
 
 pub use custom_ord::CmpFunc;
@@ -0,0 +1,127 @@
+use crate::{
+    algebra::Semigroup,
+    dynamic::{DowncastTrait, DynData, DynOpt},
+    operator::{
+        dynamic::{group::RangeAggregateCustomOrdFactories, time_series::RelRange},
+        group::custom_ord::{CmpFunc, WithCustomOrd},
+        Aggregator,
+    },
+    trace::BatchReader,
+    typed_batch::{OrdIndexedZSet, OrdZSet},
+    utils::Tup2,
+    DBData, RootCircuit, Stream, ZWeight,
+};
+use std::cmp::Ordering;
+
+impl<K, V> Stream<RootCircuit, OrdIndexedZSet<K, V>>
+where
+    K: DBData,
+    V: DBData,
+{
+    /// Compute an aggregate over a window of values for each value in each
+    /// group, where the values of the group are sorted by a custom
+    /// comparison function, and each window starts and ends either at the
+    /// bounds of the group or at the peers of the current value.
+    ///
+    /// Two values are peers if `PF` considers them equal; `PF` is usually a
+    /// prefix of the comparison performed by `CF`.  The window of a value is
+    /// given by `range`, whose bounds can only be `RelOffset::Before(u64::MAX)`
+    /// (the first value of the group), `RelOffset::After(u64::MAX)` (the last
+    /// value of the group), or an offset of 0 (the first or last peer of the
+    /// current value).  Values with negative weights are ignored.
+    /// `output_func` is applied to each value and the aggregate of its
+    /// window.
+    ///
+    /// Unlike `partitioned_rolling_aggregate`, this operator does not need a
+    /// distance between values, so it can be used for SQL `RANGE` window
+    /// frames with an arbitrary `ORDER BY` clause, as long as the frame is
+    /// not bounded by an offset.  When a group changes, only the values whose
+    /// windows contain a modified value are aggregated again.
+    ///
+    /// ## Correctness
+    ///
+    /// * `CF` must establish a _total_ order over `V`, consistent with `impl Eq
+    ///   for V`, i.e., `CF::cmp(v1, v2) == Equal <=> v1.eq(v2)`.
+    /// * `PF::cmp(v1, v2) == Equal` must be an equivalence relation whose
+    ///   classes are contiguous in the order established by `CF`.
+    ///
+    /// # Panics
+    ///
+    /// Panics if a bound of `range` is neither unbounded nor 0.
+    pub fn range_aggregate_custom_order<CF, PF, A, OF, OV>(
+        &self,
+        range: RelRange<u64>,
+        aggregator: A,
+        output_func: OF,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        CF: CmpFunc<V>,
+        PF: CmpFunc<V>,
+        A: Aggregator<V, (), ZWeight>,
+        OV: DBData,
+        OF: Fn(&V, Option<&A::Output>) -> OV + 'static,
+    {
+        let factories = RangeAggregateCustomOrdFactories::<
+            DynData,
+            DynData,
+            DynData,
+            DynData,
+            DynData,
+        >::new::<K, WithCustomOrd<V, CF>, A::Accumulator, A::Output, OV>();
+
+        let finalizer = aggregator.clone();
+        self.inner()
+            .dyn_range_aggregate_custom_order(
+                &factories,
+                range,
+                Box::new(
+                    move |v1, v2: &mut DynData /* <WithCustomOrd<V, CF>> */| unsafe {
+                        *v2.downcast_mut::<WithCustomOrd<V, CF>>() =
+                            WithCustomOrd::new(v1.downcast::<V>().clone())
+                    },
+                ),
+                Box::new(move |v1, v2| unsafe {
+                    PF::cmp(
+                        &v1.downcast::<WithCustomOrd<V, CF>>().val,
+                        &v2.downcast::<WithCustomOrd<V, CF>>().val,
+                    ) == Ordering::Equal
+                }),
+                Box::new(move |frame, acc: &mut DynOpt<DynData>| {
+                    let rows = (0..frame.len())
+                        .map(|i| {
+                            let (v, w) = frame.index(i).split();
+                            Tup2(
+                                unsafe { v.downcast::<WithCustomOrd<V, CF>>() }.val.clone(),
+                                **w,
+                            )
+                        })
+                        .collect();
+                    let frame = OrdZSet::<V>::from_keys((), rows);
+                    *unsafe { acc.downcast_mut::<Option<A::Accumulator>>() } =
+                        aggregator.aggregate(&mut frame.inner().cursor());
+                }),
+                Box::new(|acc: &mut DynOpt<DynData>, other: &DynOpt<DynData>| {
+                    let acc = unsafe { acc.downcast_mut::<Option<A::Accumulator>>() };
+                    if let Some(other) = unsafe { other.downcast::<Option<A::Accumulator>>() } {
+                        *acc = Some(match acc {
+                            Some(acc) => A::Semigroup::combine(acc, other),
+                            None => other.clone(),
+                        });
+                    }
+                }),
+                Box::new(move |acc: &DynOpt<DynData>, agg: &mut DynOpt<DynData>| unsafe {
+                    *agg.downcast_mut::<Option<A::Output>>() = acc
+                        .downcast::<Option<A::Accumulator>>()
+                        .clone()
+                        .map(|acc| finalizer.finalize(acc));
+                }),
+                Box::new(move |v2, agg, ov| unsafe {
+                    *ov.downcast_mut::<OV>() = output_func(
+                        &v2.downcast::<WithCustomOrd<V, CF>>().val,
+                        agg.downcast::<Option<A::Output>>().as_ref(),
+                    )
+                }),
+            )
+            .typed()
+    }
+}
@@ -0,0 +1,111 @@
+use crate::{
+    algebra::Semigroup,
+    dynamic::{DowncastTrait, DynData, DynOpt},
+    operator::{
+        dynamic::{group::RowsAggregateCustomOrdFactories, time_series::RelRange},
+        group::custom_ord::{CmpFunc, WithCustomOrd},
+        Aggregator,
+    },
+    trace::BatchReader,
+    typed_batch::{OrdIndexedZSet, OrdZSet},
+    utils::Tup2,
+    DBData, RootCircuit, Stream, ZWeight,
+};
+
+impl<K, V> Stream<RootCircuit, OrdIndexedZSet<K, V>>
+where
+    K: DBData,
+    V: DBData,
+{
+    /// Compute an aggregate over a window of rows for each value in each group,
+    /// where the rows are the values of the group sorted by a custom
+    /// comparison function.
+    ///
+    /// Each value occurs in the sorted group as many times as its weight;
+    /// values with negative weights are ignored.  The window of the row at
+    /// position `i` contains the rows at positions `i + range.from ..= i +
+    /// range.to`; e.g., `RelRange::new(RelOffset::Before(2),
+    /// RelOffset::Before(0))` is the current row and the two rows that precede
+    /// it.  `output_func` is applied to each row and the aggregate of its
+    /// window, which is `None` if the window is empty.
+    ///
+    /// The operator is incremental: when a group changes, only the rows whose
+    /// windows contain a modified row are aggregated again.  Windows that are
+    /// unbounded on one side are computed with a running fold that combines
+    /// the accumulators of consecutive rows through `A::Semigroup`.  This
+    /// implements SQL window aggregates with a `ROWS` frame.
+    ///
+    /// ## Correctness
+    ///
+    /// * `CF` must establish a _total_ order over `V`, consistent with `impl Eq
+    ///   for V`, i.e., `CF::cmp(v1, v2) == Equal <=> v1.eq(v2)`.
+    pub fn rows_aggregate_custom_order<CF, A, OF, OV>(
+        &self,
+        range: RelRange<u64>,
+        aggregator: A,
+        output_func: OF,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        CF: CmpFunc<V>,
+        A: Aggregator<V, (), ZWeight>,
+        OV: DBData,
+        OF: Fn(&V, Option<&A::Output>) -> OV + 'static,
+    {
+        let factories = RowsAggregateCustomOrdFactories::<
+            DynData,
+            DynData,
+            DynData,
+            DynData,
+            DynData,
+        >::new::<K, WithCustomOrd<V, CF>, A::Accumulator, A::Output, OV>();
+
+        let finalizer = aggregator.clone();
+        self.inner()
+            .dyn_rows_aggregate_custom_order(
+                &factories,
+                range,
+                Box::new(
+                    move |v1, v2: &mut DynData /* <WithCustomOrd<V, CF>> */| unsafe {
+                        *v2.downcast_mut::<WithCustomOrd<V, CF>>() =
+                            WithCustomOrd::new(v1.downcast::<V>().clone())
+                    },
+                ),
+                Box::new(move |frame, acc: &mut DynOpt<DynData>| {
+                    let rows = (0..frame.len())
+                        .map(|i| {
+                            let (v, w) = frame.index(i).split();
+                            Tup2(
+                                unsafe { v.downcast::<WithCustomOrd<V, CF>>() }.val.clone(),
+                                **w,
+                            )
+                        })
+                        .collect();
+                    let frame = OrdZSet::<V>::from_keys((), rows);
+                    *unsafe { acc.downcast_mut::<Option<A::Accumulator>>() } =
+                        aggregator.aggregate(&mut frame.inner().cursor());
+                }),
+                Box::new(|acc: &mut DynOpt<DynData>, other: &DynOpt<DynData>| {
+                    let acc = unsafe { acc.downcast_mut::<Option<A::Accumulator>>() };
+                    if let Some(other) = unsafe { other.downcast::<Option<A::Accumulator>>() } {
+                        *acc = Some(match acc {
+                            Some(acc) => A::Semigroup::combine(acc, other),
+                            None => other.clone(),
+                        });
+                    }
+                }),
+                Box::new(move |acc: &DynOpt<DynData>, agg: &mut DynOpt<DynData>| unsafe {
+                    *agg.downcast_mut::<Option<A::Output>>() = acc
+                        .downcast::<Option<A::Accumulator>>()
+                        .clone()
+                        .map(|acc| finalizer.finalize(acc));
+                }),
+                Box::new(move |v2, agg, ov| unsafe {
+                    *ov.downcast_mut::<OV>() = output_func(
+                        &v2.downcast::<WithCustomOrd<V, CF>>().val,
+                        agg.downcast::<Option<A::Output>>().as_ref(),
+                    )
+                }),
+            )
+            .typed()
+    }
+}
@@ -1,7 +1,10 @@
 use crate::{
     dynamic::{DowncastTrait, DynData},
     operator::{
-        dynamic::group::{TopKCustomOrdFactories, TopKFactories, TopKRankCustomOrdFactories},
+        dynamic::group::{
+            OrderByCustomOrdFactories, TopKCustomOrdFactories, TopKFactories,
+            TopKRankCustomOrdFactories,
+        },
         group::custom_ord::{CmpFunc, WithCustomOrd},
     },
     typed_batch::{IndexedZSet, OrdIndexedZSet},
@@ -50,6 +53,24 @@ where
     /// * `CF` must establish a _total_ order over `V`, consistent with `impl Eq
     ///   for V`, i.e., `CF::cmp(v1, v2) == Equal <=> v1.eq(v2)`.
     pub fn topk_custom_order<F>(&self, k: usize) -> Self
+    where
+        F: CmpFunc<V>,
+    {
+        self.topk_custom_order_range::<F>(0, k)
+    }
+
+    /// Skip the `offset` smallest values in each group based on a custom
+    /// comparison function and pick the next `k` values.
+    ///
+    /// This operator implements `ORDER BY ... LIMIT k OFFSET offset`.  Like
+    /// [`topk_custom_order`](`Self::topk_custom_order`), it only inspects the
+    /// first `offset + k` values of each modified group.
+    ///
+    /// ## Correctness
+    ///
+    /// * `F` must establish a _total_ order over `V`, consistent with `impl Eq
+    ///   for V`, i.e., `F::cmp(v1, v2) == Equal <=> v1.eq(v2)`.
+    pub fn topk_custom_order_range<F>(&self, offset: usize, k: usize) -> Self
     where
         F: CmpFunc<V>,
     {
@@ -61,8 +82,9 @@ where
         >();
 
         self.inner()
-            .dyn_topk_custom_order(
+            .dyn_topk_custom_order_range(
                 &factories,
+                offset,
                 k,
                 Box::new(
                     move |v1, v2: &mut DynData /* <WithCustomOrd<V, F>> */| unsafe {
@@ -214,6 +236,40 @@ where
         k: usize,
         output_func: OF,
     ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        CF: CmpFunc<V>,
+        OV: DBData,
+        OF: Fn(i64, &V) -> OV + 'static,
+    {
+        self.topk_row_number_custom_order_range::<CF, OF, OV>(0, k, output_func)
+    }
+
+    /// Skip the `offset` smallest values in each group based on a custom
+    /// comparison function and return the next `k` values along with their
+    /// row numbers.
+    ///
+    /// Row numbers are counted from the start of the group, so the first
+    /// value returned has row number `offset + 1`.  This operator implements
+    /// the behavior of the following SQL pattern:
+    ///
+    /// ```text
+    /// SELECT
+    ///     ...,
+    ///     ROW_NUMBER() OVER (PARTITION BY .. ORDER BY ...) AS row_number
+    /// FROM table
+    /// WHERE row_number > OFFSET AND row_number <= OFFSET + K
+    /// ```
+    ///
+    /// ## Correctness
+    ///
+    /// * `CF` must establish a _total_ order over `V`, consistent with `impl Eq
+    ///   for V`, i.e., `CF::cmp(v1, v2) == Equal <=> v1.eq(v2)`.
+    pub fn topk_row_number_custom_order_range<CF, OF, OV>(
+        &self,
+        offset: usize,
+        k: usize,
+        output_func: OF,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
     where
         CF: CmpFunc<V>,
         OV: DBData,
@@ -226,8 +282,9 @@ where
         >();
 
         self.inner()
-            .dyn_topk_row_number_custom_order(
+            .dyn_topk_row_number_custom_order_range(
                 &factories,
+                offset,
                 k,
                 Box::new(
                     move |v1, v2: &mut DynData /* <WithCustomOrd<V, CF>> */| unsafe {
@@ -242,4 +299,50 @@ where
             )
             .typed()
     }
+
+    /// Sort the values in each group based on a custom comparison function
+    /// and return them along with their row numbers.
+    ///
+    /// This is equivalent to
+    /// [`topk_row_number_custom_order`](`Self::topk_row_number_custom_order`)
+    /// without a limit, but it is implemented incrementally: only the part of
+    /// each group that follows the smallest modified value is renumbered, and
+    /// only the values whose row numbers change are output.  It is used to
+    /// maintain the output of a query with an `ORDER BY` clause.
+    ///
+    /// ## Correctness
+    ///
+    /// * `CF` must establish a _total_ order over `V`, consistent with `impl Eq
+    ///   for V`, i.e., `CF::cmp(v1, v2) == Equal <=> v1.eq(v2)`.
+    pub fn order_by_custom_order<CF, OF, OV>(
+        &self,
+        output_func: OF,
+    ) -> Stream<RootCircuit, OrdIndexedZSet<K, OV>>
+    where
+        CF: CmpFunc<V>,
+        OV: DBData,
+        OF: Fn(i64, &V) -> OV + 'static,
+    {
+        let factories = OrderByCustomOrdFactories::<DynData, DynData, DynData>::new::<
+            K,
+            WithCustomOrd<V, CF>,
+            OV,
+        >();
+
+        self.inner()
+            .dyn_order_by_custom_order(
+                &factories,
+                Box::new(
+                    move |v1, v2: &mut DynData /* <WithCustomOrd<V, CF>> */| unsafe {
+                        *v2.downcast_mut::<WithCustomOrd<V, CF>>() =
+                            WithCustomOrd::new(v1.downcast::<V>().clone())
+                    },
+                ),
+                Box::new(move |row_number, v2, ov| unsafe {
+                    *ov.downcast_mut() =
+                        output_func(row_number, &v2.downcast::<WithCustomOrd<V, CF>>().val)
+                }),
+            )
+            .typed()
+    }
 }
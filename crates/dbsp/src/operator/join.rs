@@ -6,11 +6,11 @@ use crate::{
         filter_map::DynFilterMap,
         join::{
             AntijoinFactories, JoinFactories, OuterJoinFactories, StreamJoinFactories,
-            TraceJoinFuncs,
+            TraceJoinFuncs, UnmatchedFunc,
         },
     },
     typed_batch::{IndexedZSet, OrdIndexedZSet, OrdZSet, ZSet},
-    Circuit, DBData, Stream,
+    Circuit, DBData, RootCircuit, Stream,
 };
 
 fn mk_trace_join_funcs<I1, I2, Z, F>(
@@ -228,6 +228,102 @@ where
     }
 }
 
+fn mk_unmatched_func<K, V, O, F>(func: F) -> Box<UnmatchedFunc<DynData, DynData, DynData>>
+where
+    K: DBData,
+    V: DBData,
+    O: DBData,
+    F: Fn(&K, &V) -> O + 'static,
+{
+    Box::new(move |k, v, cb| {
+        let mut out = unsafe { func(k.downcast(), v.downcast()) };
+        cb(out.erase_mut(), ().erase_mut());
+    })
+}
+
+impl<K1, V1> Stream<RootCircuit, OrdIndexedZSet<K1, V1>>
+where
+    K1: DBData,
+    V1: DBData,
+{
+    /// Left outer join.
+    ///
+    /// Returns the output of `join_func` for each pair of values with the
+    /// same key in `self` and `other`, and the output of `left_func` for
+    /// each value of `self` whose key is not present in `other`.
+    ///
+    /// The unmatched values of `self` are computed from the inputs and the
+    /// traces integrated by the inner join, by checking for each modified key
+    /// whether `other` had or has a value with a positive weight; the operator
+    /// keeps no state besides the traces of the inner join.
+    #[track_caller]
+    pub fn left_join<F, FL, V2, O>(
+        &self,
+        other: &Stream<RootCircuit, OrdIndexedZSet<K1, V2>>,
+        join_func: F,
+        left_func: FL,
+    ) -> Stream<RootCircuit, OrdZSet<O>>
+    where
+        V2: DBData,
+        O: DBData,
+        F: Fn(&K1, &V1, &V2) -> O + Clone + 'static,
+        FL: Fn(&K1, &V1) -> O + 'static,
+    {
+        let join_funcs =
+            mk_trace_join_funcs::<OrdIndexedZSet<K1, V1>, OrdIndexedZSet<K1, V2>, OrdZSet<O>, _>(
+                join_func,
+            );
+        let factories = JoinFactories::new::<K1, V1, V2, O, ()>();
+
+        self.inner()
+            .dyn_left_join(
+                &factories,
+                &other.inner(),
+                join_funcs,
+                mk_unmatched_func::<K1, V1, O, _>(left_func),
+                None,
+            )
+            .typed()
+    }
+
+    /// Full outer join.
+    ///
+    /// Like [`left_join`](`Self::left_join`), but also returns the output of
+    /// `right_func` for each value of `other` whose key is not present in
+    /// `self`.
+    #[track_caller]
+    pub fn full_join<F, FL, FR, V2, O>(
+        &self,
+        other: &Stream<RootCircuit, OrdIndexedZSet<K1, V2>>,
+        join_func: F,
+        left_func: FL,
+        right_func: FR,
+    ) -> Stream<RootCircuit, OrdZSet<O>>
+    where
+        V2: DBData,
+        O: DBData,
+        F: Fn(&K1, &V1, &V2) -> O + Clone + 'static,
+        FL: Fn(&K1, &V1) -> O + 'static,
+        FR: Fn(&K1, &V2) -> O + 'static,
+    {
+        let join_funcs =
+            mk_trace_join_funcs::<OrdIndexedZSet<K1, V1>, OrdIndexedZSet<K1, V2>, OrdZSet<O>, _>(
+                join_func,
+            );
+        let factories = JoinFactories::new::<K1, V1, V2, O, ()>();
+
+        self.inner()
+            .dyn_left_join(
+                &factories,
+                &other.inner(),
+                join_funcs,
+                mk_unmatched_func::<K1, V1, O, _>(left_func),
+                Some(mk_unmatched_func::<K1, V2, O, _>(right_func)),
+            )
+            .typed()
+    }
+}
+
 impl<C, I1> Stream<C, I1>
 where
     C: Circuit,
@@ -336,6 +432,27 @@ where
             .typed()
     }
 
+    /// Incremental semi-join operator.
+    ///
+    /// Returns indexed Z-set consisting of the contents of `self` whose keys
+    /// are present in `other`.  The weights of `self` are preserved.  `other`
+    /// is a set of keys: only its distinct contents are integrated, so the
+    /// operator only maintains the key set of `other` in addition to the
+    /// contents of `self`.
+    pub fn semijoin<I2>(&self, other: &Stream<C, I2>) -> Stream<C, I1>
+    where
+        I2: IndexedZSet<Key = I1::Key, DynK = I1::DynK, Val = ()>,
+        I2::InnerBatch: Send,
+        Box<I1::DynK>: Clone,
+        Box<I1::DynV>: Clone,
+    {
+        let factories = AntijoinFactories::new::<I1::Key, I1::Val, I2::Val>();
+
+        self.inner()
+            .dyn_semijoin(&factories, &other.inner())
+            .typed()
+    }
+
     /// Incremental anti-join operator.
     ///
     /// Returns indexed Z-set consisting of the contents of `self`,
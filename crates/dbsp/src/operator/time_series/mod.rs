@@ -3,4 +3,4 @@ mod waterline;
 mod window;
 
 pub use crate::operator::dynamic::time_series::{Range, RelOffset, RelRange};
-pub use rolling_aggregate::{OrdPartitionedIndexedZSet, OrdPartitionedOverStream};
+pub use rolling_aggregate::{OrdPartitionedIndexedZSet, OrdPartitionedOverStream, RollingFrame};
@@ -7,16 +7,16 @@ use crate::{
             time_series::{
                 PartitionedRollingAggregateFactories, PartitionedRollingAggregateLinearFactories,
                 PartitionedRollingAggregateWithWaterlineFactories,
-                PartitionedRollingAverageFactories, RelRange,
+                DynRollingFrame, FramesFunc, PartitionedRollingAverageFactories, RelRange,
             },
         },
         Aggregator,
     },
     typed_batch::{DynOrdIndexedZSet, TypedBatch, TypedBox},
     utils::Tup2,
-    DBData, DBWeight, OrdIndexedZSet, RootCircuit, Stream, ZWeight,
+    DBData, DBWeight, DynZWeight, OrdIndexedZSet, RootCircuit, Stream, ZWeight,
 };
-use std::{mem::take, ops::Div};
+use std::{marker::PhantomData, mem::take, ops::Div};
 
 // TODO: This should be `OrdIndexedZSet<PK, (TS, V)>`.
 pub type OrdPartitionedIndexedZSet<PK, TS, DynTS, V, DynV> =
@@ -27,6 +27,62 @@ pub type OrdPartitionedOverStream<PK, TS, A> = Stream<
     OrdPartitionedIndexedZSet<PK, TS, DynDataTyped<TS>, Option<A>, DynOpt<DynData>>,
 >;
 
+/// A window frame of
+/// [`partitioned_rolling_aggregate_ranges`](`Stream::partitioned_rolling_aggregate_ranges`).
+///
+/// The aggregator of a frame computes the aggregates of the frame using the
+/// radix tree built by the aggregator of the operator, so it has the same
+/// accumulator and output types.  It is only used to combine and finalize
+/// accumulators, and it only needs to compute the components of the
+/// accumulator used by the frame, e.g., by combining the other components with
+/// [`FirstSemigroup`](`crate::algebra::FirstSemigroup`).
+pub struct RollingFrame<TS, OV, Acc, Out> {
+    inner: DynRollingFrame<TS, DynData, DynData, DynData>,
+    phantom: PhantomData<fn(&OV, &Acc, &Out)>,
+}
+
+impl<TS, OV, Acc, Out> RollingFrame<TS, OV, Acc, Out>
+where
+    OV: DBData,
+    Acc: DBData,
+    Out: DBData,
+{
+    /// Creates a frame covering `range` evaluated by `aggregator`.
+    pub fn new<Agg>(range: RelRange<TS>, aggregator: Agg) -> Self
+    where
+        Agg: Aggregator<OV, (), ZWeight, Accumulator = Acc, Output = Out>,
+    {
+        Self {
+            inner: DynRollingFrame::new(
+                range,
+                Box::new(DynAggregatorImpl::<
+                    DynData,
+                    OV,
+                    (),
+                    DynZWeight,
+                    ZWeight,
+                    Agg,
+                    DynData,
+                    DynData,
+                >::new(aggregator)),
+            ),
+            phantom: PhantomData,
+        }
+    }
+}
+
+impl<TS, OV, Acc, Out> Clone for RollingFrame<TS, OV, Acc, Out>
+where
+    TS: Clone,
+{
+    fn clone(&self) -> Self {
+        Self {
+            inner: self.inner.clone(),
+            phantom: PhantomData,
+        }
+    }
+}
+
 impl<TS, V> Stream<RootCircuit, OrdIndexedZSet<TS, V>>
 where
     TS: DBData + UnsignedPrimInt,
@@ -117,6 +173,54 @@ where
             .typed()
     }
 
+    /// Similar to
+    /// [`partitioned_rolling_aggregate_ranges`](`Stream::partitioned_rolling_aggregate_ranges`),
+    /// but uses `waterline` to bound its memory footprint, like
+    /// [`partitioned_rolling_aggregate_with_waterline`](`Stream::partitioned_rolling_aggregate_with_waterline`).
+    /// The state kept by the operator covers the hull of the ranges of all
+    /// `frames`.
+    pub fn partitioned_rolling_aggregate_ranges_with_waterline<PK, OV, Agg, PF, OF>(
+        &self,
+        waterline: &Stream<RootCircuit, TypedBox<TS, DynDataTyped<TS>>>,
+        partition_func: PF,
+        aggregator: Agg,
+        frames: Vec<RollingFrame<TS, OV, Agg::Accumulator, Agg::Output>>,
+        output_func: OF,
+    ) -> OrdPartitionedOverStream<PK, TS, Agg::Output>
+    where
+        PK: DBData,
+        OV: DBData,
+        Agg: Aggregator<OV, (), ZWeight>,
+        PF: Fn(&V) -> (PK, OV) + Clone + 'static,
+        OF: Fn(Vec<Agg::Output>) -> Agg::Output + Clone + 'static,
+    {
+        let factories = PartitionedRollingAggregateWithWaterlineFactories::<
+            DynData,
+            TS,
+            DynData,
+            DynData,
+            DynData,
+            DynOrdIndexedZSet<DynData, DynData>,
+        >::new::<V, PK, OV, Agg::Accumulator, Agg::Output>();
+
+        self.inner()
+            .dyn_partitioned_rolling_aggregate_ranges_with_waterline::<_, TS, _, DynData, DynData>(
+                &factories,
+                &waterline.inner_data(),
+                Box::new(
+                    move |v, pk: &mut DynData /* <PK> */, ov: &mut DynData /* <OV> */| unsafe {
+                        let (tmp_pk, tmp_ov) = partition_func(v.downcast());
+                        *pk.downcast_mut() = tmp_pk;
+                        *ov.downcast_mut() = tmp_ov;
+                    },
+                ),
+                &DynAggregatorImpl::new(aggregator),
+                frames.into_iter().map(|frame| frame.inner).collect(),
+                Some(frames_func::<Agg::Output, _>(output_func)),
+            )
+            .typed()
+    }
+
     /// Rolling aggregate of a partitioned stream over time range.
     ///
     /// For each record in the input stream, computes an aggregate
@@ -164,6 +268,56 @@ where
             .typed()
     }
 
+    /// Rolling aggregate of a partitioned stream over several time ranges.
+    ///
+    /// Computes the rolling aggregates of several window frames that share
+    /// the same partitioning and ordering in a single operator: the input
+    /// is integrated and indexed only once, and the outputs of all frames are
+    /// produced together.
+    ///
+    /// `aggregator` maintains the radix tree over the input, and typically
+    /// computes the aggregates of all frames.  For each input record
+    /// `(p, (ts, v))`, the aggregator of frame `i` combines the accumulators
+    /// of the records of partition `p` in `frames[i]` relative to `ts`, and
+    /// the operator outputs `(p, (ts, Some(output_func(values))))`, where
+    /// `values[i]` is the finalized value of frame `i`, or
+    /// `Agg::Output::default()` if the frame is empty.  Typically the
+    /// aggregator of each frame only computes the aggregates of that frame,
+    /// and `output_func` selects the aggregates of each frame from its value.
+    pub fn partitioned_rolling_aggregate_ranges<PK, OV, Agg, PF, OF>(
+        &self,
+        partition_func: PF,
+        aggregator: Agg,
+        frames: Vec<RollingFrame<TS, OV, Agg::Accumulator, Agg::Output>>,
+        output_func: OF,
+    ) -> OrdPartitionedOverStream<PK, TS, Agg::Output>
+    where
+        Agg: Aggregator<OV, (), ZWeight>,
+        OV: DBData,
+        PK: DBData,
+        PF: Fn(&V) -> (PK, OV) + Clone + 'static,
+        OF: Fn(Vec<Agg::Output>) -> Agg::Output + Clone + 'static,
+    {
+        let factories =
+            PartitionedRollingAggregateFactories::new::<PK, OV, Agg::Accumulator, Agg::Output>();
+
+        self.inner()
+            .dyn_partitioned_rolling_aggregate_ranges::<_, _, _, DynData, _>(
+                &factories,
+                Box::new(
+                    move |v, pk: &mut DynData /* <PK> */, ov: &mut DynData /* <OV> */| unsafe {
+                        let (tmp_pk, tmp_ov) = partition_func(v.downcast());
+                        *pk.downcast_mut() = tmp_pk;
+                        *ov.downcast_mut() = tmp_ov;
+                    },
+                ),
+                &DynAggregatorImpl::new(aggregator),
+                frames.into_iter().map(|frame| frame.inner).collect(),
+                Some(frames_func::<Agg::Output, _>(output_func)),
+            )
+            .typed()
+    }
+
     /// A version of [`Self::partitioned_rolling_aggregate`] optimized for
     /// linear aggregation functions.  For each input record `(p, (ts, v))`,
     /// it finds all the records `(p, (ts2, x))` such that `ts2` is in
@@ -256,3 +410,18 @@ where
             .typed()
     }
 }
+
+/// Wraps a typed function that combines the values of several window frames.
+fn frames_func<O, OF>(output_func: OF) -> Box<dyn FramesFunc<DynData>>
+where
+    O: DBData,
+    OF: Fn(Vec<O>) -> O + Clone + 'static,
+{
+    Box::new(move |frames: &mut [Box<DynOpt<DynData>>], out: &mut DynOpt<DynData>| unsafe {
+        let values = frames
+            .iter_mut()
+            .map(|frame| frame.as_mut().downcast_mut::<Option<O>>().take().unwrap_or_default())
+            .collect();
+        *out.downcast_mut::<Option<O>>() = Some(output_func(values));
+    })
+}
@@ -34,6 +34,7 @@ import org.dbsp.sqlCompiler.compiler.CompilerOptions;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.backend.ToDotVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.RustModulesWriter;
 import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
 import org.dbsp.sqlCompiler.compiler.errors.SourcePositionRange;
 import org.dbsp.util.Logger;
@@ -55,16 +56,21 @@ import java.util.Map;
 /** Main entry point of the SQL compiler. */
 public class CompilerMain {
     final CompilerOptions options;
+    /** Output stream used instead of stdout. */
+    final PrintStream out;
 
-    CompilerMain() {
+    CompilerMain(PrintStream out) {
         this.options = new CompilerOptions();
+        this.out = out;
     }
 
     void usage(JCommander commander) {
         // JCommander mistakenly prints this as default value
         // if it manages to parse it partially.
         this.options.ioOptions.loggingLevel.clear();
-        commander.usage();
+        StringBuilder usage = new StringBuilder();
+        commander.getUsageFormatter().usage(usage);
+        this.out.print(usage);
     }
 
     int parseOptions(String[] argv) {
@@ -105,7 +111,7 @@ public class CompilerMain {
         PrintStream outputStream;
         @Nullable String outputFile = this.options.ioOptions.outputFile;
         if (outputFile.isEmpty()) {
-            outputStream = System.out;
+            outputStream = this.out;
         } else {
             outputStream = new PrintStream(Files.newOutputStream(Paths.get(outputFile)));
         }
@@ -144,7 +150,7 @@ public class CompilerMain {
             return compiler.messages;
         }
         if (this.options.ioOptions.verbosity >= 1)
-            System.out.println(this.options);
+            this.out.println(this.options);
 
         compiler.compileInput();
         if (compiler.hasErrors())
@@ -181,11 +187,25 @@ public class CompilerMain {
             return compiler.messages;
         }
         try {
-            PrintStream stream = this.getOutputStream();
-            RustFileWriter writer = new RustFileWriter(stream);
-            writer.add(dbsp);
-            writer.write(compiler);
-            stream.close();
+            if (this.options.ioOptions.emitModules) {
+                if (this.options.ioOptions.outputFile.isEmpty()) {
+                    compiler.reportError(SourcePositionRange.INVALID, "No output file",
+                            "`--modules` option requires specifying an output file");
+                    return compiler.messages;
+                }
+                RustModulesWriter writer = new RustModulesWriter(this.options.ioOptions.outputFile);
+                writer.add(dbsp);
+                writer.writeAndClose(compiler);
+            } else {
+                PrintStream stream = this.getOutputStream();
+                RustFileWriter writer = new RustFileWriter(stream);
+                writer.add(dbsp);
+                writer.write(compiler);
+                if (stream == this.out)
+                    stream.flush();
+                else
+                    stream.close();
+            }
         } catch (IOException e) {
             compiler.reportError(SourcePositionRange.INVALID,
                     "Error writing to file", e.getMessage());
@@ -216,7 +236,13 @@ public class CompilerMain {
     }
 
     public static CompilerMessages execute(String... argv) throws SQLException {
-        CompilerMain main = new CompilerMain();
+        return execute(System.out, argv);
+    }
+
+    /** Run the compiler.
+     * @param out  Stream used instead of stdout. */
+    public static CompilerMessages execute(PrintStream out, String... argv) throws SQLException {
+        CompilerMain main = new CompilerMain(out);
         int exitCode = main.parseOptions(argv);
         if (exitCode != 0) {
             // return empty messages
@@ -0,0 +1,122 @@
+package org.dbsp.sqlCompiler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
+import org.dbsp.util.CompilationScope;
+import org.dbsp.util.Utilities;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/** Compiler server: keeps a JVM running and compiles many programs, concurrently.
+ * This avoids paying the JVM startup and warmup costs for each program.
+ *
+ * <p>Requests are read from the input and responses are written to the output,
+ * one JSON object per line.  A request has the form
+ * <code>{"id": ..., "args": [ ... ]}</code>, where "args" are the command-line arguments
+ * accepted by {@link CompilerMain}, and "id" is any value, which is copied to the response.
+ * A response has the form
+ * <code>{"id": ..., "exitCode": 0, "messages": [ ... ], "viewCacheHits": 0}</code>, where "messages" contains
+ * the errors and warnings produced, and "viewCacheHits" is the number of views whose
+ * plans were reused from previous compilations (see the <code>--cacheViews</code> option).
+ * Responses can be produced in a different order than
+ * the requests.  Each compilation runs in its own {@link CompilationScope}, so its output
+ * does not depend on the other compilations.  Anything that the compiler would write
+ * to stdout is written to stderr instead. */
+public class CompilerServer {
+    final ObjectMapper mapper;
+    final PrintStream output;
+    final ExecutorService executor;
+
+    public CompilerServer(PrintStream output, int threads) {
+        this.mapper = Utilities.deterministicObjectMapper();
+        this.output = output;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /** Compile the program described by the command-line arguments and produce the response. */
+    ObjectNode compile(JsonNode id, String[] args) {
+        ObjectNode response = this.mapper.createObjectNode();
+        response.set("id", id);
+        try {
+            CompilerMessages messages = CompilationScope.run(new CompilationScope(), () -> {
+                try {
+                    return CompilerMain.execute(System.err, args);
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            response.put("exitCode", messages.exitCode != 0 ? messages.exitCode :
+                    messages.errorCount() > 0 ? 1 : 0);
+            response.set("messages", messages.toJson(messages.compiler.sources));
+            response.put("viewCacheHits", messages.compiler.frontend.viewCacheHits);
+        } catch (Throwable ex) {
+            response.put("exitCode", 1);
+            response.putArray("messages").add(ex.toString());
+        }
+        return response;
+    }
+
+    void respond(ObjectNode response) {
+        synchronized (this.output) {
+            this.output.println(response.toString());
+            this.output.flush();
+        }
+    }
+
+    /** Process one request, asynchronously. */
+    void request(String line) {
+        JsonNode request;
+        try {
+            request = this.mapper.readTree(line);
+        } catch (JsonProcessingException ex) {
+            ObjectNode response = this.mapper.createObjectNode();
+            response.putNull("id");
+            response.put("exitCode", 1);
+            response.putArray("messages").add("Cannot parse request: " + ex.getMessage());
+            this.respond(response);
+            return;
+        }
+        JsonNode id = request.has("id") ? request.get("id") : this.mapper.nullNode();
+        List<String> args = new ArrayList<>();
+        JsonNode array = request.get("args");
+        if (array != null && array.isArray()) {
+            for (JsonNode arg: array)
+                args.add(arg.asText());
+        }
+        this.executor.submit(() -> this.respond(this.compile(id, args.toArray(new String[0]))));
+    }
+
+    /** Serve requests until the input is closed, then wait for all compilations to complete. */
+    public void serve(InputStream input) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank())
+                continue;
+            this.request(line);
+        }
+        this.executor.shutdown();
+        //noinspection ResultOfMethodCallIgnored
+        this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    /** The optional argument is the number of programs compiled concurrently. */
+    public static void main(String[] argv) throws IOException, InterruptedException {
+        int threads = argv.length > 0 ? Integer.parseInt(argv[0]) : Runtime.getRuntime().availableProcessors();
+        CompilerServer server = new CompilerServer(System.out, threads);
+        server.serve(System.in);
+    }
+}
@@ -49,7 +49,7 @@ public abstract class DBSPAggregateOperatorBase extends DBSPUnaryOperator {
     public boolean equivalent(DBSPOperator other) {
         if (!super.equivalent(other))
             return false;
-        DBSPPartitionedRollingAggregateOperator otherOperator = other.as(DBSPPartitionedRollingAggregateOperator.class);
+        DBSPAggregateOperatorBase otherOperator = other.as(DBSPAggregateOperatorBase.class);
         if (otherOperator == null)
             return false;
         return this.isLinear == otherOperator.isLinear &&
@@ -11,9 +11,9 @@ import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeZSet;
 import javax.annotation.Nullable;
 import java.util.List;
 
-/** Implements the table function HOP.  This is desugared into a pair of
- * operators: map (computing the hop start window) followed by flat_map
- * (which generates all the windows).  It does not correspond to any DBSP
+/** Implements the table function HOP.  This is lowered by the Rust backend
+ * into a flat_map which generates the windows of each row lazily, or into a
+ * map if the windows do not overlap.  It does not correspond to any DBSP
  * Rust operator. */
 public final class DBSPHopOperator extends DBSPUnaryOperator {
     public final int timestampIndex;
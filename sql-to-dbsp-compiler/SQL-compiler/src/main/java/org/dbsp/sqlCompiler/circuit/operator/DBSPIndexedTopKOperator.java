@@ -33,6 +33,11 @@ public final class DBSPIndexedTopKOperator extends DBSPUnaryOperator {
     public final TopKNumbering numbering;
     /** Limit K used by TopK.  Expected to be a constant */
     public final DBSPExpression limit;
+    /** Optional number of elements skipped in each group before the K elements
+     * which are produced.  Expected to be a constant.  Row numbers produced
+     * by ROW_NUMBER still start at the beginning of the group. */
+    @Nullable
+    public final DBSPExpression offset;
     /** Optional closure which produces the output tuple.  The signature is
      * (i64, sorted_tuple) -> output_tuple.  i64 is the rank of the current row.
      * If this closure is missing it is assumed to produce just the sorted_tuple. */
@@ -52,15 +57,18 @@ public final class DBSPIndexedTopKOperator extends DBSPUnaryOperator {
      * @param node            CalciteObject which produced this operator.
      * @param numbering       How items in each group are numbered.
      * @param comparator      A ComparatorExpression used to sort items in each group.
+     * @param offset          Optional number of records skipped in each group.
      * @param limit           Max number of records output in each group.
      * @param outputProducer  Optional function with signature (rank, tuple) which produces the output.
      * @param source          Input operator.
      */
     public DBSPIndexedTopKOperator(CalciteObject node, TopKNumbering numbering,
-                                   DBSPExpression comparator, DBSPExpression limit,
+                                   DBSPExpression comparator, @Nullable DBSPExpression offset,
+                                   DBSPExpression limit,
                                    @Nullable DBSPClosureExpression outputProducer, DBSPOperator source) {
         super(node, "topK", comparator,
                 outputType(source.getOutputIndexedZSetType(), outputProducer), source.isMultiset, source);
+        this.offset = offset;
         this.limit = limit;
         this.numbering = numbering;
         this.outputProducer = outputProducer;
@@ -68,13 +76,21 @@ public final class DBSPIndexedTopKOperator extends DBSPUnaryOperator {
             throw new InternalCompilerError("Expected the input to be an IndexedZSet type", source.outputType);
         if (!comparator.is(DBSPComparatorExpression.class))
             throw new InternalCompilerError("Expected a comparator expression", comparator);
+        if (offset != null && outputProducer != null && numbering != TopKNumbering.ROW_NUMBER)
+            throw new InternalCompilerError("Offset is only supported with ROW_NUMBER numbering", offset);
+    }
+
+    public DBSPIndexedTopKOperator(CalciteObject node, TopKNumbering numbering,
+                                   DBSPExpression comparator, DBSPExpression limit,
+                                   @Nullable DBSPClosureExpression outputProducer, DBSPOperator source) {
+        this(node, numbering, comparator, null, limit, outputProducer, source);
     }
 
     @Override
     public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
         if (force || this.inputsDiffer(newInputs))
             return new DBSPIndexedTopKOperator(this.getNode(), this.numbering, this.getFunction(),
-                    this.limit, this.outputProducer, newInputs.get(0)).copyAnnotations(this);
+                    this.offset, this.limit, this.outputProducer, newInputs.get(0)).copyAnnotations(this);
         return this;
     }
 
@@ -87,13 +103,14 @@ public final class DBSPIndexedTopKOperator extends DBSPUnaryOperator {
             return false;
         return this.numbering == otherOperator.numbering &&
                 EquivalenceContext.equiv(this.outputProducer, otherOperator.outputProducer) &&
+                EquivalenceContext.equiv(this.offset, otherOperator.offset) &&
                 EquivalenceContext.equiv(this.limit, otherOperator.limit);
     }
 
     @Override
     public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
         return new DBSPIndexedTopKOperator(this.getNode(), this.numbering,
-                Objects.requireNonNull(expression), this.limit,
+                Objects.requireNonNull(expression), this.offset, this.limit,
                 this.outputProducer, this.input()).copyAnnotations(this);
     }
 
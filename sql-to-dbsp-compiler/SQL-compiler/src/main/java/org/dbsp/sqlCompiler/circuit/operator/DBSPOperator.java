@@ -40,6 +40,7 @@ import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
 import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeStream;
 import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeZSet;
 import org.dbsp.sqlCompiler.ir.type.IHasType;
+import org.dbsp.util.CompilationScope;
 import org.dbsp.util.IIndentStream;
 import org.dbsp.util.Linq;
 
@@ -98,19 +99,19 @@ public abstract class DBSPOperator extends DBSPNode implements IHasType, IDBSPOu
     }
 
     public String getOutputName() {
-        return "stream" + this.getId();
+        return "stream" + this.getLocalId();
     }
 
     public String getDerivedFrom() {
         if (this.derivedFrom >= 0)
-            return Long.toString(this.derivedFrom);
-        return Long.toString(this.id);
+            return Long.toString(CompilationScope.localId(this.derivedFrom));
+        return Long.toString(this.getLocalId());
     }
 
     public String getIdString() {
-        String result = Long.toString(this.id);
+        String result = Long.toString(this.getLocalId());
         if (this.derivedFrom >= 0)
-            result += "(" + this.derivedFrom + ")";
+            result += "(" + CompilationScope.localId(this.derivedFrom) + ")";
         return result;
     }
 
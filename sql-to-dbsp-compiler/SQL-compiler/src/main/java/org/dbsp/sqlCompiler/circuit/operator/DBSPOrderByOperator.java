@@ -0,0 +1,82 @@
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.errors.InternalCompilerError;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.EquivalenceContext;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPComparatorExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/** Sorts each of the groups in an indexed collection and numbers the elements
+ * of each group according to their position in the sorted order.
+ * This is like a {@link DBSPIndexedTopKOperator} using ROW_NUMBER without a limit,
+ * but it is maintained incrementally: when a group changes only the elements
+ * which follow the smallest modified element are renumbered, and only the
+ * elements whose number changes are emitted.
+ * To sort the entire collection just group by (). */
+public final class DBSPOrderByOperator extends DBSPUnaryOperator {
+    /** Closure which produces the output tuple.  The signature is
+     * (i64, sorted_tuple) -> output_tuple.  i64 is the row number of the current row,
+     * starting at 1. */
+    public final DBSPClosureExpression outputProducer;
+
+    /**
+     * Create an OrderBy operator.  This operator is incremental only.
+     * For a non-incremental version it should be sandwiched between a D-I.
+     * @param node            CalciteObject which produced this operator.
+     * @param comparator      A ComparatorExpression used to sort items in each group.
+     * @param outputProducer  Function with signature (row_number, tuple) which produces the output.
+     * @param source          Input operator.
+     */
+    public DBSPOrderByOperator(CalciteObject node, DBSPExpression comparator,
+                               DBSPClosureExpression outputProducer, DBSPOperator source) {
+        super(node, "order_by_custom_order", comparator,
+                new DBSPTypeIndexedZSet(node, source.getOutputIndexedZSetType().keyType,
+                        outputProducer.getResultType()),
+                source.isMultiset, source);
+        this.outputProducer = outputProducer;
+        if (!comparator.is(DBSPComparatorExpression.class))
+            throw new InternalCompilerError("Expected a comparator expression", comparator);
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        if (force || this.inputsDiffer(newInputs))
+            return new DBSPOrderByOperator(this.getNode(), this.getFunction(),
+                    this.outputProducer, newInputs.get(0)).copyAnnotations(this);
+        return this;
+    }
+
+    @Override
+    public boolean equivalent(DBSPOperator other) {
+        if (!super.equivalent(other))
+            return false;
+        DBSPOrderByOperator otherOperator = other.as(DBSPOrderByOperator.class);
+        if (otherOperator == null)
+            return false;
+        return EquivalenceContext.equiv(this.outputProducer, otherOperator.outputProducer);
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
+        return new DBSPOrderByOperator(this.getNode(), Objects.requireNonNull(expression),
+                this.outputProducer, this.input()).copyAnnotations(this);
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+}
@@ -0,0 +1,95 @@
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.EquivalenceContext;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeZSet;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/** Incremental outer join.  Produces the output of the join function for all
+ * pairs of matching rows, and the output of the left function for the rows of
+ * the left input whose key does not appear in the right input.  If the right
+ * function is not null this is a full outer join, and the right function is also
+ * applied to the rows of the right input whose key does not appear in the left input.
+ * The unmatched rows are found by looking up the keys of each change in the traces
+ * of the inner join, so this needs no state besides the state of the inner join.
+ * This operator is incremental only; for a non-incremental version
+ * it should be sandwiched between D-I operators. */
+public final class DBSPOuterJoinOperator extends DBSPBinaryOperator {
+    /** Closure with signature (&key, &left) -> output, applied to unmatched left rows. */
+    public final DBSPClosureExpression leftFunction;
+    /** Closure with signature (&key, &right) -> output, applied to unmatched right rows.
+     * Null for left outer joins. */
+    @Nullable
+    public final DBSPClosureExpression rightFunction;
+
+    public DBSPOuterJoinOperator(
+            CalciteObject node, DBSPTypeZSet outputType,
+            DBSPExpression function, DBSPClosureExpression leftFunction,
+            @Nullable DBSPClosureExpression rightFunction, boolean isMultiset,
+            DBSPOperator left, DBSPOperator right) {
+        super(node, rightFunction == null ? "left_join" : "full_join",
+                function, outputType, isMultiset, left, right);
+        this.leftFunction = leftFunction;
+        this.rightFunction = rightFunction;
+        this.checkResultType(function, this.getOutputZSetElementType());
+        this.checkResultType(leftFunction, this.getOutputZSetElementType());
+        if (rightFunction != null)
+            this.checkResultType(rightFunction, this.getOutputZSetElementType());
+        assert left.getOutputIndexedZSetType().keyType.sameType(right.getOutputIndexedZSetType().keyType);
+    }
+
+    public DBSPType getKeyType() {
+        return left().getOutputIndexedZSetType().keyType;
+    }
+
+    public boolean isFull() {
+        return this.rightFunction != null;
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
+        return new DBSPOuterJoinOperator(
+                this.getNode(), outputType.to(DBSPTypeZSet.class),
+                Objects.requireNonNull(expression), this.leftFunction, this.rightFunction,
+                this.isMultiset, this.left(), this.right()).copyAnnotations(this);
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        if (force || this.inputsDiffer(newInputs))
+            return new DBSPOuterJoinOperator(
+                    this.getNode(), this.getOutputZSetType(),
+                    this.getFunction(), this.leftFunction, this.rightFunction,
+                    this.isMultiset, newInputs.get(0), newInputs.get(1))
+                    .copyAnnotations(this);
+        return this;
+    }
+
+    @Override
+    public boolean equivalent(DBSPOperator other) {
+        if (!super.equivalent(other))
+            return false;
+        DBSPOuterJoinOperator otherOperator = other.as(DBSPOuterJoinOperator.class);
+        if (otherOperator == null)
+            return false;
+        return EquivalenceContext.equiv(this.leftFunction, otherOperator.leftFunction) &&
+                EquivalenceContext.equiv(this.rightFunction, otherOperator.rightFunction);
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+}
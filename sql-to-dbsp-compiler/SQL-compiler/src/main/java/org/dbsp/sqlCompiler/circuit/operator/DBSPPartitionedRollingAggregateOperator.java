@@ -1,5 +1,6 @@
 package org.dbsp.sqlCompiler.circuit.operator;
 
+import org.dbsp.sqlCompiler.compiler.errors.InternalCompilerError;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
 import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.EquivalenceContext;
@@ -15,11 +16,28 @@ import javax.annotation.Nullable;
 import java.util.List;
 
 /** This operator only operates correctly on deltas.  To operate on collections it
- * must differentiate its input, and integrate its output. */
+ * must differentiate its input, and integrate its output.
+ * The operator can compute the aggregates of several window frames which share
+ * the same partitioning and ordering; then the aggregate computes the aggregates
+ * of all frames, each frame only evaluates its own aggregates, and the
+ * framesFunction selects the results of each frame. */
 public final class DBSPPartitionedRollingAggregateOperator extends DBSPAggregateOperatorBase {
     public final DBSPExpression partitioningFunction;
-    public final DBSPWindowBoundExpression lower;
-    public final DBSPWindowBoundExpression upper;
+    /** Lower bounds of the window frames, one for each frame. */
+    public final List<DBSPWindowBoundExpression> lower;
+    /** Upper bounds of the window frames, one for each frame. */
+    public final List<DBSPWindowBoundExpression> upper;
+    /** Function with signature (Vec<aggregate_result>) -> aggregate_result which combines
+     * the results of all frames into the output.  Null when there is a single frame. */
+    @Nullable
+    public final DBSPClosureExpression framesFunction;
+    /** For each component of the aggregate the index of the frame that it belongs to.
+     * Empty when there is a single frame. */
+    public final List<Integer> frameIndex;
+    /** After lowering, when there are several frames, the function that evaluates the
+     * aggregates of each frame; it has the same accumulator and output types as 'function',
+     * but only computes the components of the frame. Empty otherwise. */
+    public final List<DBSPExpression> frameFunctions;
 
     // TODO: support the linear version of this operator.
     public DBSPPartitionedRollingAggregateOperator(
@@ -29,25 +47,62 @@ public final class DBSPPartitionedRollingAggregateOperator extends DBSPAggregate
             // After lowering 'aggregate' is not null, and 'function' has its expected shape
             @Nullable DBSPExpression function,
             @Nullable DBSPAggregate aggregate,
-            DBSPWindowBoundExpression lower,
-            DBSPWindowBoundExpression upper,
+            List<DBSPWindowBoundExpression> lower,
+            List<DBSPWindowBoundExpression> upper,
+            @Nullable DBSPClosureExpression framesFunction,
+            List<Integer> frameIndex,
+            List<DBSPExpression> frameFunctions,
             // The output type of partitioned_rolling_aggregate cannot actually be represented using
             // the current IR, so this type is a lie.
             DBSPTypeIndexedZSet outputType,
             DBSPOperator input) {
-        super(node, "partitioned_rolling_aggregate", outputType, function, aggregate, true, input, false);
+        super(node, lower.size() == 1 ? "partitioned_rolling_aggregate" : "partitioned_rolling_aggregate_ranges",
+                outputType, function, aggregate, true, input, false);
         this.lower = lower;
         this.upper = upper;
+        this.framesFunction = framesFunction;
+        this.frameIndex = frameIndex;
+        this.frameFunctions = frameFunctions;
         this.partitioningFunction = partitioningFunction;
         assert partitioningFunction.is(DBSPClosureExpression.class);
+        checkFrames(node, lower, upper, framesFunction, frameIndex, frameFunctions, function, aggregate);
+    }
+
+    static void checkFrames(CalciteObject node, List<DBSPWindowBoundExpression> lower,
+                            List<DBSPWindowBoundExpression> upper,
+                            @Nullable DBSPClosureExpression framesFunction,
+                            List<Integer> frameIndex,
+                            List<DBSPExpression> frameFunctions,
+                            @Nullable DBSPExpression function,
+                            @Nullable DBSPAggregate aggregate) {
+        if (lower.isEmpty() || lower.size() != upper.size())
+            throw new InternalCompilerError("Mismatched window frame bounds", node);
+        boolean multiple = lower.size() > 1;
+        if (multiple != (framesFunction != null))
+            throw new InternalCompilerError("A frames function is needed exactly when there are multiple frames", node);
+        if (multiple && aggregate != null && frameIndex.size() != aggregate.components.length)
+            throw new InternalCompilerError("Each aggregate needs a frame", node);
+        if (multiple && function != null && frameFunctions.size() != lower.size())
+            throw new InternalCompilerError("Each frame needs a function", node);
+        if (!multiple && (!frameIndex.isEmpty() || !frameFunctions.isEmpty()))
+            throw new InternalCompilerError("Unexpected frames for a single window frame", node);
+    }
+
+    static boolean equivalent(List<? extends DBSPExpression> left, List<? extends DBSPExpression> right) {
+        if (left.size() != right.size())
+            return false;
+        for (int i = 0; i < left.size(); i++)
+            if (!left.get(i).equivalent(right.get(i)))
+                return false;
+        return true;
     }
 
     @Override
     public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
         return new DBSPPartitionedRollingAggregateOperator(
                 this.getNode(), this.partitioningFunction,
-                expression, this.aggregate, this.lower, this.upper,
-                outputType.to(DBSPTypeIndexedZSet.class),
+                expression, this.aggregate, this.lower, this.upper, this.framesFunction,
+                this.frameIndex, this.frameFunctions, outputType.to(DBSPTypeIndexedZSet.class),
                 this.input()).copyAnnotations(this);
     }
 
@@ -56,7 +111,8 @@ public final class DBSPPartitionedRollingAggregateOperator extends DBSPAggregate
         if (force || this.inputsDiffer(newInputs))
             return new DBSPPartitionedRollingAggregateOperator(
                     this.getNode(), this.partitioningFunction, this.function, this.aggregate,
-                    this.lower, this.upper, this.getOutputIndexedZSetType(),
+                    this.lower, this.upper, this.framesFunction, this.frameIndex, this.frameFunctions,
+                    this.getOutputIndexedZSetType(),
                     newInputs.get(0)).copyAnnotations(this);
         return this;
     }
@@ -71,8 +127,11 @@ public final class DBSPPartitionedRollingAggregateOperator extends DBSPAggregate
         return this.partitioningFunction.equivalent(otherOperator.partitioningFunction) &&
                 EquivalenceContext.equiv(this.aggregate, otherOperator.aggregate) &&
                 EquivalenceContext.equiv(this.function, otherOperator.function) &&
-                this.lower.equivalent(otherOperator.lower) &&
-                this.upper.equivalent(otherOperator.upper);
+                EquivalenceContext.equiv(this.framesFunction, otherOperator.framesFunction) &&
+                this.frameIndex.equals(otherOperator.frameIndex) &&
+                equivalent(this.frameFunctions, otherOperator.frameFunctions) &&
+                equivalent(this.lower, otherOperator.lower) &&
+                equivalent(this.upper, otherOperator.upper);
     }
 
     @Override
@@ -42,8 +42,13 @@ public final class DBSPPartitionedRollingAggregateWithWaterlineOperator
     @Nullable
     public final DBSPAggregate aggregate;
     public final DBSPExpression partitioningFunction;
-    public final DBSPWindowBoundExpression lower;
-    public final DBSPWindowBoundExpression upper;
+    /** See {@link DBSPPartitionedRollingAggregateOperator}. */
+    public final List<DBSPWindowBoundExpression> lower;
+    public final List<DBSPWindowBoundExpression> upper;
+    @Nullable
+    public final DBSPClosureExpression framesFunction;
+    public final List<Integer> frameIndex;
+    public final List<DBSPExpression> frameFunctions;
 
     // TODO: support the linear version of this operator.
     public DBSPPartitionedRollingAggregateWithWaterlineOperator(
@@ -53,21 +58,31 @@ public final class DBSPPartitionedRollingAggregateWithWaterlineOperator
             // After lowering 'aggregate' is not null, and 'function' has its expected shape
             @Nullable DBSPExpression function,
             @Nullable DBSPAggregate aggregate,
-            DBSPWindowBoundExpression lower,
-            DBSPWindowBoundExpression upper,
+            List<DBSPWindowBoundExpression> lower,
+            List<DBSPWindowBoundExpression> upper,
+            @Nullable DBSPClosureExpression framesFunction,
+            List<Integer> frameIndex,
+            List<DBSPExpression> frameFunctions,
             // The output type of partitioned_rolling_aggregate_with_waterline cannot actually be represented
             // using the current IR, so this type is a lie.
             // See DBSPPartitionedRollingAggregateOperator.
             DBSPTypeIndexedZSet outputType,
             DBSPOperator dataInput,
             DBSPOperator waterlineInput) {
-        super(node, "partitioned_rolling_aggregate_with_waterline",
+        super(node, lower.size() == 1 ?
+                        "partitioned_rolling_aggregate_with_waterline" :
+                        "partitioned_rolling_aggregate_ranges_with_waterline",
                 function, outputType, true, dataInput, waterlineInput);
         this.aggregate = aggregate;
         this.lower = lower;
         this.upper = upper;
+        this.framesFunction = framesFunction;
+        this.frameIndex = frameIndex;
+        this.frameFunctions = frameFunctions;
         this.partitioningFunction = partitioningFunction;
         assert partitioningFunction.is(DBSPClosureExpression.class);
+        DBSPPartitionedRollingAggregateOperator.checkFrames(
+                node, lower, upper, framesFunction, frameIndex, frameFunctions, function, aggregate);
     }
 
     @Override
@@ -75,8 +90,8 @@ public final class DBSPPartitionedRollingAggregateWithWaterlineOperator
         return new DBSPPartitionedRollingAggregateWithWaterlineOperator(
                 this.getNode(),
                 this.partitioningFunction,
-                expression, this.aggregate, this.lower, this.upper,
-                outputType.to(DBSPTypeIndexedZSet.class),
+                expression, this.aggregate, this.lower, this.upper, this.framesFunction,
+                this.frameIndex, this.frameFunctions, outputType.to(DBSPTypeIndexedZSet.class),
                 this.left(), this.right()).copyAnnotations(this);
     }
 
@@ -87,7 +102,8 @@ public final class DBSPPartitionedRollingAggregateWithWaterlineOperator
             return new DBSPPartitionedRollingAggregateWithWaterlineOperator(
                     this.getNode(),
                     this.partitioningFunction, this.function, this.aggregate,
-                    this.lower, this.upper, this.getOutputIndexedZSetType(),
+                    this.lower, this.upper, this.framesFunction, this.frameIndex, this.frameFunctions,
+                    this.getOutputIndexedZSetType(),
                     newInputs.get(0), newInputs.get(1)).copyAnnotations(this);
         return this;
     }
@@ -102,8 +118,11 @@ public final class DBSPPartitionedRollingAggregateWithWaterlineOperator
         return EquivalenceContext.equiv(this.aggregate, otherOperator.aggregate) &&
                 EquivalenceContext.equiv(this.function, otherOperator.function) &&
                 this.partitioningFunction.equivalent(otherOperator.partitioningFunction) &&
-                this.lower.equivalent(otherOperator.lower) &&
-                this.upper.equivalent(otherOperator.upper);
+                EquivalenceContext.equiv(this.framesFunction, otherOperator.framesFunction) &&
+                this.frameIndex.equals(otherOperator.frameIndex) &&
+                DBSPPartitionedRollingAggregateOperator.equivalent(this.frameFunctions, otherOperator.frameFunctions) &&
+                DBSPPartitionedRollingAggregateOperator.equivalent(this.lower, otherOperator.lower) &&
+                DBSPPartitionedRollingAggregateOperator.equivalent(this.upper, otherOperator.upper);
     }
 
     @Override
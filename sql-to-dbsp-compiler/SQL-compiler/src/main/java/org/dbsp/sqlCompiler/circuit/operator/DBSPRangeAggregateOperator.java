@@ -0,0 +1,109 @@
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.EquivalenceContext;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPAggregate;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPComparatorExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPWindowBoundExpression;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/** Computes a window aggregate with a RANGE frame for each row of each group,
+ * when the rows are sorted by a comparator, and not by a single numeric column.
+ * Two rows are peers if they are equal on the fields compared by the comparator.
+ * The frame of each row starts either with the first row of the group or with the
+ * first peer of the row, and ends either with the last row of the group or with
+ * the last peer of the row.
+ * This operator only operates correctly on deltas.  To operate on collections it
+ * must differentiate its input, and integrate its output. */
+public final class DBSPRangeAggregateOperator extends DBSPAggregateOperatorBase {
+    public final DBSPComparatorExpression comparator;
+    /** Lower bound of the frame; either unbounded or the current row. */
+    public final DBSPWindowBoundExpression lower;
+    /** Upper bound of the frame; either unbounded or the current row. */
+    public final DBSPWindowBoundExpression upper;
+    /** Closure which produces the output tuple.  The signature is
+     * (&row, Option<&aggregate_result>) -> output_tuple.  The aggregate result
+     * is None when the frame is empty. */
+    public final DBSPClosureExpression outputProducer;
+
+    /**
+     * Create a window aggregate over a RANGE frame.
+     * @param node            CalciteObject which produced this operator.
+     * @param function        Aggregation function, after lowering.
+     * @param aggregate       Aggregate to compute, before lowering.
+     * @param comparator      Comparator used to sort the rows of each group and to find peers.
+     * @param lower           Lower bound of the frame.
+     * @param upper           Upper bound of the frame.
+     * @param outputProducer  Function which produces the output from each row and its aggregate.
+     * @param outputType      Type of the output.
+     * @param input           Input operator.
+     */
+    public DBSPRangeAggregateOperator(
+            CalciteObject node,
+            // Initially 'function' is null, and the 'aggregate' is not.
+            // After lowering 'aggregate' is not null, and 'function' has its expected shape
+            @Nullable DBSPExpression function,
+            @Nullable DBSPAggregate aggregate,
+            DBSPComparatorExpression comparator,
+            DBSPWindowBoundExpression lower,
+            DBSPWindowBoundExpression upper,
+            DBSPClosureExpression outputProducer,
+            DBSPTypeIndexedZSet outputType,
+            DBSPOperator input) {
+        super(node, "range_aggregate_custom_order", outputType, function, aggregate,
+                input.isMultiset, input, false);
+        this.comparator = comparator;
+        this.lower = lower;
+        this.upper = upper;
+        this.outputProducer = outputProducer;
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
+        return new DBSPRangeAggregateOperator(
+                this.getNode(), expression, this.aggregate, this.comparator,
+                this.lower, this.upper, this.outputProducer,
+                outputType.to(DBSPTypeIndexedZSet.class), this.input()).copyAnnotations(this);
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        if (force || this.inputsDiffer(newInputs))
+            return new DBSPRangeAggregateOperator(
+                    this.getNode(), this.function, this.aggregate, this.comparator,
+                    this.lower, this.upper, this.outputProducer,
+                    this.getOutputIndexedZSetType(), newInputs.get(0)).copyAnnotations(this);
+        return this;
+    }
+
+    @Override
+    public boolean equivalent(DBSPOperator other) {
+        if (!super.equivalent(other))
+            return false;
+        DBSPRangeAggregateOperator otherOperator = other.as(DBSPRangeAggregateOperator.class);
+        if (otherOperator == null)
+            return false;
+        return this.comparator.equivalent(otherOperator.comparator) &&
+                EquivalenceContext.equiv(this.function, otherOperator.function) &&
+                EquivalenceContext.equiv(this.outputProducer, otherOperator.outputProducer) &&
+                this.lower.equivalent(otherOperator.lower) &&
+                this.upper.equivalent(otherOperator.upper);
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+}
@@ -0,0 +1,56 @@
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.errors.InternalCompilerError;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeRawTuple;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/** Incremental semi-join: keeps the elements of the left input whose keys
+ * appear in the right input, with their original weights.
+ * The right input is a set of keys: its values are always (), and only its
+ * distinct contents are integrated, so this is much cheaper than a join
+ * followed by a distinct.
+ * This operator is incremental only; for a non-incremental version
+ * it should be sandwiched between D-I operators. */
+public final class DBSPSemiJoinOperator extends DBSPBinaryOperator {
+    public DBSPSemiJoinOperator(CalciteObject node, DBSPOperator left, DBSPOperator right) {
+        super(node, "semijoin", null, left.outputType, left.isMultiset, left, right);
+        DBSPTypeIndexedZSet leftType = left.getOutputIndexedZSetType();
+        DBSPTypeIndexedZSet rightType = right.getOutputIndexedZSetType();
+        if (!leftType.keyType.sameType(rightType.keyType))
+            throw new InternalCompilerError("Inputs do not have the same key type " + leftType.keyType +
+                    " and " + rightType.keyType, this);
+        if (!rightType.elementType.sameType(new DBSPTypeRawTuple()))
+            throw new InternalCompilerError("Expected the right input to have () values, not " +
+                    rightType.elementType, this);
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression unused, DBSPType outputType) {
+        return this;
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        if (force || this.inputsDiffer(newInputs))
+            return new DBSPSemiJoinOperator(
+                    this.getNode(), newInputs.get(0), newInputs.get(1)).copyAnnotations(this);
+        return this;
+    }
+}
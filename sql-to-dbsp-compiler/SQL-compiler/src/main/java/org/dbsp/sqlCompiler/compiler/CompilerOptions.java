@@ -56,6 +56,9 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
         @Parameter(names = "--ignoreOrder",
                 description = "Ignore ORDER BY clauses at the end")
         public boolean ignoreOrderBy = false;
+        @Parameter(names = "--sortedVector",
+                description = "Produce the output of views with ORDER BY as a single sorted vector, instead of rows paired with their row number")
+        public boolean sortedVector = false;
         @Parameter(names = "--outputsAreSets",
                 description = "Ensure that outputs never contain duplicates")
         public boolean outputsAreSets = false;
@@ -68,11 +71,18 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
         @Parameter(names = "--unquotedCasing",
                 description = "How unquoted identifiers are treated.  Choices are: 'upper', 'lower', 'unchanged'")
         public String unquotedCasing = "upper";
+        @Parameter(names = "--threads",
+                description = "Number of threads used by the optimizer.  The output does not depend on this value")
+        public int threads = 1;
+        @Parameter(names = "--cacheViews",
+                description = "Directory where the plans of views are cached, to be reused by later compilations")
+        public String cacheViews = "";
 
         public boolean same(Language language) {
             // Only compare fields that matter.
             return this.incrementalize == language.incrementalize &&
                     this.ignoreOrderBy == language.ignoreOrderBy &&
+                    this.sortedVector == language.sortedVector &&
                     this.outputsAreSets == language.outputsAreSets &&
                     this.lexicalRules.equals(language.lexicalRules);
         }
@@ -82,6 +92,7 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
             return "Language{" +
                     "incrementalize=" + this.incrementalize +
                     ", ignoreOrderBy=" + this.ignoreOrderBy +
+                    ", sortedVector=" + this.sortedVector +
                     ", outputsAreSets=" + this.outputsAreSets +
                     ", optimizationLevel=" + this.optimizationLevel +
                     ", throwOnError=" + this.throwOnError +
@@ -89,6 +100,8 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
                     ", lexicalRules=" + this.lexicalRules +
                     ", lenient=" + this.lenient +
                     ", unquotedCasing=" + this.unquotedCasing +
+                    ", threads=" + this.threads +
+                    ", cacheViews=" + this.cacheViews +
                     '}';
         }
 
@@ -110,6 +123,12 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
                         .append("!=")
                         .append(other.ignoreOrderBy)
                         .append(System.lineSeparator());
+            if (this.sortedVector != other.sortedVector)
+                result.append(", sortedVector=")
+                        .append(this.sortedVector)
+                        .append("!=")
+                        .append(other.sortedVector)
+                        .append(System.lineSeparator());
             if (this.outputsAreSets != other.outputsAreSets)
                 result.append(", outputsAreSets=")
                         .append(this.outputsAreSets)
@@ -173,6 +192,9 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
         public int verbosity = 0;
         @Parameter(names = "--handles", description = "Use handles (true) or Catalog (false) in the emitted Rust code")
         public boolean emitHandles = false;
+        @Parameter(names = "--modules", description = "Split the generated Rust code into multiple modules, " +
+                "written in the directory of the output file")
+        public boolean emitModules = false;
         @Parameter(names = "--jdbcSource", description = "Connection string to a database that contains table metadata")
         public String metadataSource = "";
 
@@ -188,6 +210,7 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
                     ", metadataSource=" + this.metadataSource +
                     ", emitJpeg=" + this.emitJpeg +
                     ", emitHandles=" + this.emitHandles +
+                    ", emitModules=" + this.emitModules +
                     ", emitPng=" + this.emitPng +
                     ", emitJsonErrors=" + this.emitJsonErrors +
                     ", emitJsonSchema=" + Utilities.singleQuote(this.emitJsonSchema) +
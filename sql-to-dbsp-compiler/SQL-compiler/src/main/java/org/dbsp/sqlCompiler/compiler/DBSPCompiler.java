@@ -350,6 +350,14 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
                 }
                 this.midend.compile(fe);
             }
+            if (!this.options.languageOptions.cacheViews.isEmpty())
+                Logger.INSTANCE.belowLevel(this, 1)
+                        .append("View plan cache: ")
+                        .append(this.frontend.viewCacheHits)
+                        .append(" hits, ")
+                        .append(this.frontend.viewCacheMisses)
+                        .append(" misses")
+                        .newline();
 
             this.optimize();
         } catch (SqlParseException e) {
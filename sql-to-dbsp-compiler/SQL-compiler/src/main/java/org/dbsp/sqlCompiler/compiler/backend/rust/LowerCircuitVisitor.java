@@ -1,16 +1,27 @@
 package org.dbsp.sqlCompiler.compiler.backend.rust;
 
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperatorBase;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFlatMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPHopOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinFilterMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateWithWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRangeAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRowsAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamAggregateOperator;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.frontend.ExpressionCompiler;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.EquivalenceContext;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitCloneVisitor;
 import org.dbsp.sqlCompiler.ir.DBSPAggregate;
+import org.dbsp.sqlCompiler.ir.IDBSPOuterNode;
 import org.dbsp.sqlCompiler.ir.expression.DBSPApplyMethodExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPBlockExpression;
@@ -19,31 +30,90 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPFlatmap;
 import org.dbsp.sqlCompiler.ir.expression.DBSPIfExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPUSizeLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPVecLiteral;
+import org.dbsp.sqlCompiler.ir.path.DBSPPath;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeAny;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeRawTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeUSize;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
 import org.dbsp.util.Linq;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
  * Lowers a circuit's representation.
  * - converts DBSPAggregate into basic operations.
  * - converts DBSPFlatmap into basic operations.
+ * - converts MIN and MAX aggregates into the DBSP Min and Max aggregators.
+ * - converts HOP operators into map or flat_map operators.
  */
 public class LowerCircuitVisitor extends CircuitCloneVisitor {
+    /** The operators which replace a MIN or MAX aggregate.
+     * @param indexed    Input of the aggregate indexed by the aggregated values.
+     * @param aggregate  DBSP Min or Max aggregator applied to 'indexed'. */
+    record LoweredMinMax(DBSPOperator indexed, DBSPOperator aggregate) {}
+
+    /** Data and control inputs of a DBSPIntegrateTraceRetainKeysOperator. */
+    record RetainKeysInputs(DBSPOperator data, DBSPOperator control) {}
+
+    /** Maps each lowered MIN or MAX aggregate to its replacement. */
+    final Map<DBSPOperator, LoweredMinMax> minMax;
+    /** Maps each DBSPIntegrateTraceRetainKeysOperator which bounds the integral of
+     * the input or of the output of an aggregate to that aggregate. */
+    final Map<DBSPOperator, DBSPOperator> retainKeysOwner;
+
     public LowerCircuitVisitor(IErrorReporter reporter) {
         super(reporter, false);
+        this.minMax = new HashMap<>();
+        this.retainKeysOwner = new HashMap<>();
+    }
+
+    @Override
+    public void startVisit(IDBSPOuterNode circuit) {
+        this.minMax.clear();
+        this.retainKeysOwner.clear();
+        if (circuit.is(DBSPCircuit.class))
+            this.findRetainKeysOwners(circuit.to(DBSPCircuit.class));
+        super.startVisit(circuit);
+    }
+
+    /** InsertLimiters bounds the integrals of an aggregate with a pair of
+     * DBSPIntegrateTraceRetainKeysOperators with the same control input:
+     * one applied to the input of the aggregate and one applied to its output.
+     * The input may be shared by other aggregates, so the owner of the first
+     * operator is found from the second one. */
+    void findRetainKeysOwners(DBSPCircuit circuit) {
+        Map<RetainKeysInputs, List<DBSPOperator>> byInputs = new HashMap<>();
+        for (DBSPOperator operator: circuit.circuit.getAllOperators()) {
+            DBSPIntegrateTraceRetainKeysOperator retain = operator.as(DBSPIntegrateTraceRetainKeysOperator.class);
+            if (retain == null)
+                continue;
+            DBSPAggregateOperatorBase aggregate = retain.left().as(DBSPAggregateOperatorBase.class);
+            if (aggregate != null) {
+                List<DBSPOperator> inputSide = byInputs.get(
+                        new RetainKeysInputs(aggregate.input(), retain.right()));
+                if (inputSide != null && !inputSide.isEmpty()) {
+                    this.retainKeysOwner.put(inputSide.remove(0), aggregate);
+                    this.retainKeysOwner.put(retain, aggregate);
+                    continue;
+                }
+            }
+            byInputs.computeIfAbsent(new RetainKeysInputs(retain.left(), retain.right()),
+                    k -> new ArrayList<>()).add(retain);
+        }
     }
 
     /** Rewrite a flatmap operation into a Rust method call.
@@ -165,6 +235,64 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
         }
     }
 
+    /** Implement a HOP table function.  Hopping windows whose size is the same as
+     * the period are tumbling windows, so each row is in exactly one window:
+     * implement them with a map.  Otherwise use a flat_map that generates the
+     * windows of each row lazily:
+     *   move |x: &Tup2<i32, Timestamp>, | -> _ {
+     *     let row = (*x).clone();
+     *     hop_windows_Timestamp_ShortInterval_ShortInterval_ShortInterval((*x).1, period, size, start)
+     *       .map(move |e: Timestamp, | -> Tup4<i32, Timestamp, Timestamp, Timestamp> {
+     *          Tup4::new(row.0, row.1.clone(), e, e + size)
+     *       })
+     *   } */
+    @Override
+    public void postorder(DBSPHopOperator node) {
+        DBSPOperator source = this.mapped(node.input());
+        CalciteObject calciteObject = node.getNode();
+        DBSPTypeTuple type = node.getOutputZSetElementType().to(DBSPTypeTuple.class);
+        DBSPTypeTuple inputRowType = source.getOutputZSetElementType().to(DBSPTypeTuple.class);
+        int inputSize = inputRowType.size();
+        // This is not the timestamp type, since windows are never null.
+        DBSPType hopType = type.tupFields[inputSize];
+        DBSPVariablePath x = inputRowType.ref().var();
+        DBSPExpression timestamp = x.deref().field(node.timestampIndex);
+
+        DBSPOperator result;
+        if (!timestamp.getType().mayBeNull && EquivalenceContext.equiv(node.interval, node.size)) {
+            DBSPExpression[] fields = new DBSPExpression[type.size()];
+            for (int i = 0; i < inputSize; i++)
+                fields[i] = x.deref().field(i).applyCloneIfNeeded();
+            fields[inputSize] = ExpressionCompiler.compilePolymorphicFunction(
+                    "tumble", calciteObject, hopType, Linq.list(timestamp, node.size, node.start), 3);
+            fields[inputSize + 1] = ExpressionCompiler.makeBinaryExpression(calciteObject,
+                    hopType, DBSPOpcode.ADD, fields[inputSize].deepCopy(), node.size);
+            DBSPClosureExpression function = new DBSPTupleExpression(fields).closure(x.asParameter());
+            result = new DBSPMapOperator(calciteObject, function, node.getOutputZSetType(), source);
+        } else {
+            DBSPLetStatement row = new DBSPLetStatement("row", x.deref().applyClone());
+            DBSPVariablePath e = new DBSPVariablePath(hopType);
+            DBSPExpression[] fields = new DBSPExpression[type.size()];
+            for (int i = 0; i < inputSize; i++)
+                fields[i] = row.getVarReference().field(i).applyCloneIfNeeded();
+            fields[inputSize] = e;
+            fields[inputSize + 1] = ExpressionCompiler.makeBinaryExpression(calciteObject,
+                    hopType, DBSPOpcode.ADD, e, node.size);
+            DBSPClosureExpression toTuple = new DBSPTupleExpression(fields).closure(e.asParameter());
+            DBSPExpression windows = ExpressionCompiler.compilePolymorphicFunction(
+                    "hop_windows", calciteObject, DBSPTypeAny.getDefault(),
+                    Linq.list(timestamp, node.interval, node.size, node.start), 4);
+            DBSPExpression iter = new DBSPApplyMethodExpression(calciteObject,
+                    "map", DBSPTypeAny.getDefault(), windows, toTuple);
+            List<DBSPStatement> statements = new ArrayList<>();
+            statements.add(row);
+            DBSPBlockExpression block = new DBSPBlockExpression(statements, iter);
+            result = new DBSPFlatMapOperator(calciteObject, block.closure(x.asParameter()),
+                    node.getOutputZSetType(), source);
+        }
+        this.map(node, result);
+    }
+
     @Override
     public void postorder(DBSPStreamAggregateOperator node) {
         if (node.function != null) {
@@ -173,6 +301,11 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
             return;
         }
 
+        if (node.getAggregate().isMinMax()) {
+            this.lowerMinMax(node, false);
+            return;
+        }
+
         DBSPExpression function;
         if (node.isLinear) {
             function = node.getAggregate().combineLinear();
@@ -192,6 +325,10 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
             super.postorder(node);
             return;
         }
+        if (node.getAggregate().isMinMax()) {
+            this.lowerMinMax(node, true);
+            return;
+        }
         DBSPExpression function;
         if (node.isLinear) {
             function = node.getAggregate().combineLinear();
@@ -205,6 +342,82 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
         this.map(node, result);
     }
 
+    /** Lower an aggregate which computes a single MIN or MAX to the DBSP Min or Max
+     * aggregator.  The input is indexed by the aggregated value; DBSP keeps the values
+     * of each group sorted in the integral of the input, with their counts, so after a
+     * change the aggregator finds the result with a seek, instead of folding again
+     * all the values of the group.
+     * @param node         Aggregate operator to lower.
+     * @param incremental  True if 'node' is a DBSPAggregateOperator, false if it
+     *                     is a DBSPStreamAggregateOperator. */
+    void lowerMinMax(DBSPAggregateOperatorBase node, boolean incremental) {
+        DBSPAggregate.Implementation impl = node.getAggregate().components[0];
+        boolean isMin = Objects.requireNonNull(impl.minMax) == DBSPOpcode.AGG_MIN;
+        DBSPOperator input = this.mapped(node.input());
+        DBSPTypeIndexedZSet inputType = input.getOutputIndexedZSetType();
+
+        // (k, row) -> (k, value)
+        DBSPVariablePath var = inputType.getKVRefType().var();
+        DBSPExpression field = Objects.requireNonNull(impl.minMaxFunction)
+                .call(var.deepCopy().field(1))
+                .reduce(this.errorReporter);
+        DBSPExpression ordered = field.applyCloneIfNeeded();
+        boolean pairWithNull = isMin && field.getType().mayBeNull;
+        if (pairWithNull) {
+            // None is the smallest Option; (is_none, value) sorts NULLs last,
+            // so they are only the minimum of a group with no other values.
+            ordered = new DBSPTupleExpression(field.deepCopy().is_null(), ordered);
+        }
+        DBSPExpression index = new DBSPRawTupleExpression(
+                var.deepCopy().field(0).deref().applyCloneIfNeeded(), ordered);
+        DBSPTypeIndexedZSet indexType = new DBSPTypeIndexedZSet(
+                node.getNode(), inputType.keyType, ordered.getType());
+        DBSPOperator indexed = new DBSPMapIndexOperator(
+                node.getNode(), index.closure(var.asParameter()), indexType, input);
+        this.addOperator(indexed);
+
+        DBSPExpression aggregator = new DBSPPath(isMin ? "Min" : "Max").toExpression();
+        DBSPOperator aggregate;
+        if (incremental)
+            aggregate = new DBSPAggregateOperator(
+                    node.getNode(), indexType, aggregator, null, indexed, false);
+        else
+            aggregate = new DBSPStreamAggregateOperator(
+                    node.getNode(), indexType, aggregator, null, indexed, false);
+        this.addOperator(aggregate);
+        this.minMax.put(node, new LoweredMinMax(indexed, aggregate));
+
+        // (k, value) -> (k, Tup1(value)), with the type of the original aggregate
+        DBSPTypeIndexedZSet outputType = node.getOutputIndexedZSetType();
+        DBSPType resultType = outputType.elementType.to(DBSPTypeTupleBase.class).tupFields[0];
+        DBSPVariablePath kv = indexType.getKVRefType().var();
+        DBSPExpression result = kv.deepCopy().field(1).deref();
+        if (pairWithNull)
+            result = result.field(1);
+        DBSPExpression output = new DBSPRawTupleExpression(
+                kv.deepCopy().field(0).deref().applyCloneIfNeeded(),
+                new DBSPTupleExpression(result.applyCloneIfNeeded().cast(resultType)));
+        DBSPOperator map = new DBSPMapIndexOperator(
+                node.getNode(), output.closure(kv.asParameter()), outputType, aggregate);
+        this.map(node, map);
+    }
+
+    @Override
+    public void postorder(DBSPIntegrateTraceRetainKeysOperator node) {
+        DBSPOperator owner = this.retainKeysOwner.get(node);
+        LoweredMinMax lowered = owner != null ? this.minMax.get(owner) : null;
+        if (lowered == null) {
+            super.postorder(node);
+            return;
+        }
+        // A lowered MIN or MAX integrates its indexed input and the output of the
+        // Min or Max aggregator, which have the same keys as the original streams:
+        // the retention policies apply to these integrals.  Other operators which
+        // integrate the original input have their own policies.
+        DBSPOperator data = node.left() == owner ? lowered.aggregate() : lowered.indexed();
+        this.map(node, node.withInputs(Linq.list(data, this.mapped(node.right())), true));
+    }
+
     public static DBSPClosureExpression lowerJoinFilterMapFunctions(
             IErrorReporter errorReporter, DBSPJoinFilterMapOperator node) {
         assert node.filter != null;
@@ -266,6 +479,17 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
         this.map(node, result);
     }
 
+    /** The functions that evaluate the aggregates of each frame of a rolling aggregate
+     * with several frames; empty if there is a single frame. */
+    List<DBSPExpression> frameFunctions(DBSPAggregate aggregate, List<Integer> frameIndex, int frames) {
+        List<DBSPExpression> result = new ArrayList<>();
+        if (frames == 1)
+            return result;
+        for (int i = 0; i < frames; i++)
+            result.add(aggregate.combineFrame(this.errorReporter, frameIndex, i).asFold());
+        return result;
+    }
+
     @Override
     public void postorder(DBSPPartitionedRollingAggregateOperator node) {
         if (node.aggregate == null) {
@@ -274,9 +498,10 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
         }
         DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
         DBSPExpression function = impl.asFold();
+        List<DBSPExpression> frameFunctions = this.frameFunctions(node.getAggregate(), node.frameIndex, node.lower.size());
         DBSPOperator result = new DBSPPartitionedRollingAggregateOperator(node.getNode(),
-                node.partitioningFunction, function, null, node.lower, node.upper,
-                node.getOutputIndexedZSetType(), this.mapped(node.input()));
+                node.partitioningFunction, function, null, node.lower, node.upper, node.framesFunction,
+                node.frameIndex, frameFunctions, node.getOutputIndexedZSetType(), this.mapped(node.input()));
         this.map(node, result);
     }
 
@@ -288,10 +513,39 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
         }
         DBSPAggregate.Implementation impl = node.aggregate.combine(this.errorReporter);
         DBSPExpression function = impl.asFold();
+        List<DBSPExpression> frameFunctions = this.frameFunctions(node.aggregate, node.frameIndex, node.lower.size());
         DBSPOperator result = new DBSPPartitionedRollingAggregateWithWaterlineOperator(node.getNode(),
-                node.partitioningFunction, function, null, node.lower, node.upper,
-                node.getOutputIndexedZSetType(),
+                node.partitioningFunction, function, null, node.lower, node.upper, node.framesFunction,
+                node.frameIndex, frameFunctions, node.getOutputIndexedZSetType(),
                 this.mapped(node.left()), this.mapped(node.right()));
         this.map(node, result);
     }
+
+    @Override
+    public void postorder(DBSPRowsAggregateOperator node) {
+        if (node.aggregate == null) {
+            super.postorder(node);
+            return;
+        }
+        DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
+        DBSPExpression function = impl.asFold();
+        DBSPOperator result = new DBSPRowsAggregateOperator(node.getNode(),
+                function, null, node.comparator, node.lower, node.upper, node.outputProducer,
+                node.getOutputIndexedZSetType(), this.mapped(node.input()));
+        this.map(node, result);
+    }
+
+    @Override
+    public void postorder(DBSPRangeAggregateOperator node) {
+        if (node.aggregate == null) {
+            super.postorder(node);
+            return;
+        }
+        DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
+        DBSPExpression function = impl.asFold();
+        DBSPOperator result = new DBSPRangeAggregateOperator(node.getNode(),
+                function, null, node.comparator, node.lower, node.upper, node.outputProducer,
+                node.getOutputIndexedZSetType(), this.mapped(node.input()));
+        this.map(node, result);
+    }
 }
@@ -99,7 +99,7 @@ public class RustFileWriter {
     static final String rustPreamble = """
                     use dbsp::{
                         algebra::{ZSet, MulByRef, F32, F64, Semigroup, SemigroupValue, ZRingValue,
-                             UnimplementedSemigroup, DefaultSemigroup, HasZero, AddByRef, NegByRef,
+                             UnimplementedSemigroup, DefaultSemigroup, FirstSemigroup, HasZero, AddByRef, NegByRef,
                              AddAssignByRef,
                         },
                         circuit::{checkpointer::Checkpoint, Circuit, CircuitConfig, Stream},
@@ -107,8 +107,10 @@ public class RustFileWriter {
                             Generator,
                             FilterMap,
                             Fold,
-                            time_series::{RelRange, RelOffset, OrdPartitionedIndexedZSet},
+                            time_series::{RelRange, RelOffset, OrdPartitionedIndexedZSet, RollingFrame},
+                            Max,
                             MaxSemigroup,
+                            Min,
                             MinSemigroup,
                             CmpFunc,
                         },
@@ -352,8 +354,8 @@ public class RustFileWriter {
         this.toWrite.add(function);
     }
 
-    public void write(DBSPCompiler compiler) {
-        // Lower the circuits
+    /** Lower the circuits and find the resources used by all the nodes to write. */
+    List<IDBSPNode> lower(DBSPCompiler compiler) {
         CircuitRewriter reducer = new BetaReduction(compiler).getCircuitVisitor();
         List<IDBSPNode> lowered = new ArrayList<>();
         FindResources findResources = new FindResources(compiler);
@@ -376,6 +378,16 @@ public class RustFileWriter {
                 lowered.add(outer);
             }
         }
+        return lowered;
+    }
+
+    /** Generate the Rust code for a lowered circuit. */
+    String circuitToRust(DBSPCompiler compiler, DBSPCircuit circuit) {
+        return ToRustVisitor.toRustString(compiler, circuit, compiler.options);
+    }
+
+    public void write(DBSPCompiler compiler) {
+        List<IDBSPNode> lowered = this.lower(compiler);
         // Emit code
         this.outputStream.println(generatePreamble(compiler, used));
         for (IDBSPNode node: lowered) {
@@ -385,7 +397,7 @@ public class RustFileWriter {
                 str = ToRustInnerVisitor.toRustString(compiler, inner, compiler.options, false);
             } else {
                 DBSPCircuit outer = node.to(DBSPCircuit.class);
-                str = ToRustVisitor.toRustString(compiler, outer, compiler.options);
+                str = this.circuitToRust(compiler, outer);
             }
             this.outputStream.println(str);
             this.outputStream.println();
@@ -0,0 +1,398 @@
+package org.dbsp.sqlCompiler.compiler.backend.rust;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.DBSPDeclaration;
+import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceBaseOperator;
+import org.dbsp.sqlCompiler.compiler.CompilerOptions;
+import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.ProgramMetadata;
+import org.dbsp.sqlCompiler.compiler.errors.SourcePositionRange;
+import org.dbsp.sqlCompiler.ir.statement.DBSPFunctionItem;
+import org.dbsp.util.IndentStream;
+import org.dbsp.util.Utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/** Generates Rust code split into multiple modules, which rustc can compile
+ * in parallel and incrementally.
+ *
+ * <p>The main file contains the preamble, the declarations, and the circuit function,
+ * which creates the sources and the sinks.  The operators which compute each view
+ * are in a function in a separate module.  An operator shared by several views
+ * is placed in the module of the first view which uses it.  Each module is
+ * written to a file in the same directory as the main file; the file name contains
+ * a hash of the file contents, so a file which already exists is not rewritten,
+ * and cargo does not rebuild the modules that have not changed.  The names of the
+ * streams and variables in a module are local to the module, so a module does not
+ * change when other views change.  The list of the files written is saved in a
+ * manifest next to the main file; the next compilation to the same main file
+ * removes the files in the manifest which it no longer uses. */
+public class RustModulesWriter extends RustFileWriter {
+    /** Directory where the modules are written. */
+    final File directory;
+    /** Names of the files of the modules written. */
+    final Set<String> written;
+    /** File listing the modules used by the main file. */
+    final File manifest;
+
+    /** Files with names of this form are produced by this writer. */
+    public static final Pattern MODULE_FILE = Pattern.compile("m_[a-z0-9_]*_[0-9a-f]{16}\\.rs");
+
+    public RustModulesWriter(String outputFile) throws IOException {
+        super(outputFile);
+        this.directory = new File(outputFile).getAbsoluteFile().getParentFile();
+        this.written = new HashSet<>();
+        this.manifest = new File(new File(outputFile).getAbsolutePath() + ".modules");
+    }
+
+    /** Operators of the circuit that compute one view. */
+    static class Module {
+        final String name;
+        final List<DBSPOperator> operators;
+        /** Streams produced outside the module and used within. */
+        final Set<DBSPOperator> inputs;
+        /** Streams produced by the module and used outside. */
+        final Set<DBSPOperator> outputs;
+
+        Module(String name) {
+            this.name = name;
+            this.operators = new ArrayList<>();
+            this.inputs = new LinkedHashSet<>();
+            this.outputs = new LinkedHashSet<>();
+        }
+
+        String functionName() {
+            return this.name;
+        }
+
+        void streamType(IndentStream stream, ToRustInnerVisitor inner, DBSPOperator operator) {
+            stream.append("Stream<dbsp::RootCircuit, ");
+            operator.outputType.accept(inner);
+            stream.append(">");
+        }
+
+        /** Generate the call of the module function in the main circuit function. */
+        void generateCall(IndentStream stream) {
+            stream.append("let (");
+            for (DBSPOperator output: this.outputs)
+                stream.append(output.getOutputName()).append(", ");
+            stream.append(") = ")
+                    .append(this.name)
+                    .append("::")
+                    .append(this.functionName())
+                    .append("(circuit");
+            for (DBSPOperator input: this.inputs)
+                stream.append(", ").append(input.getOutputName()).append(".clone()");
+            stream.append(");").newline();
+        }
+
+        /** Names of the streams within the module function.  These depend only on the
+         * position of each stream within the module, so the code of a module does not
+         * change when operators in other modules are added or removed. */
+        Map<DBSPOperator, String> localNames() {
+            Map<DBSPOperator, String> result = new HashMap<>();
+            int index = 0;
+            for (DBSPOperator input: this.inputs)
+                result.put(input, "input" + index++);
+            index = 0;
+            for (DBSPOperator operator: this.operators)
+                result.put(operator, "stream" + index++);
+            return result;
+        }
+
+        /** Generate the contents of the file of the module. */
+        String generate(IErrorReporter reporter, CompilerOptions options, ProgramMetadata metadata) {
+            StringBuilder builder = new StringBuilder();
+            IndentStream stream = new IndentStream(builder);
+            Map<DBSPOperator, String> names = this.localNames();
+            ToRustModuleVisitor visitor = new ToRustModuleVisitor(reporter, stream, options, metadata, names);
+            ToRustInnerVisitor inner = visitor.createInnerVisitor(stream);
+            stream.append("// Automatically-generated file").newline()
+                    .append("use super::*;").newline().newline()
+                    .append("pub fn ")
+                    .append(this.functionName())
+                    .append("(circuit: &dbsp::RootCircuit");
+            for (DBSPOperator input: this.inputs) {
+                stream.append(", ")
+                        .append(names.get(input))
+                        .append(": ");
+                this.streamType(stream, inner, input);
+            }
+            stream.append(") -> (");
+            for (DBSPOperator output: this.outputs) {
+                this.streamType(stream, inner, output);
+                stream.append(", ");
+            }
+            stream.append(") {").increase();
+            for (DBSPOperator operator: this.operators)
+                visitor.processNode(operator);
+            stream.append("(");
+            for (DBSPOperator output: this.outputs)
+                stream.append(names.get(output)).append(", ");
+            stream.append(")").newline()
+                    .decrease()
+                    .append("}")
+                    .newline();
+            return renameVariables(builder.toString());
+        }
+    }
+
+    /** Fresh variable names have this form; they are numbered by a counter
+     * shared by the whole program. */
+    static final Pattern FRESH_VARIABLE = Pattern.compile("t_[0-9]+");
+
+    /** Number the fresh variables of the code of a module in order of appearance,
+     * so they do not depend on the variables allocated for other modules.
+     * String literals are left unchanged. */
+    static String renameVariables(String code) {
+        Map<String, String> renamed = new HashMap<>();
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < code.length()) {
+            char c = code.charAt(i);
+            if (c == '"') {
+                int end = i + 1;
+                while (end < code.length() && code.charAt(end) != '"') {
+                    if (code.charAt(end) == '\\')
+                        end++;
+                    end++;
+                }
+                end = Math.min(end + 1, code.length());
+                result.append(code, i, end);
+                i = end;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < code.length() && Character.isJavaIdentifierPart(code.charAt(end)))
+                    end++;
+                String identifier = code.substring(i, end);
+                if (FRESH_VARIABLE.matcher(identifier).matches())
+                    identifier = renamed.computeIfAbsent(identifier, k -> "t_" + renamed.size());
+                result.append(identifier);
+                i = end;
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    /** Generates the operators of a module, using names local to the module. */
+    static class ToRustModuleVisitor extends ToRustVisitor {
+        final Map<DBSPOperator, String> names;
+
+        public ToRustModuleVisitor(IErrorReporter reporter, IndentStream builder, CompilerOptions options,
+                                   ProgramMetadata metadata, Map<DBSPOperator, String> names) {
+            super(reporter, builder, options, metadata);
+            this.names = names;
+        }
+
+        @Override
+        String streamName(DBSPOperator operator) {
+            return Utilities.getExists(this.names, operator);
+        }
+
+        @Override
+        String idString(DBSPOperator operator) {
+            return this.streamName(operator);
+        }
+
+        @Override
+        void generateOperator(DBSPOperator operator) {
+            // The Calcite node names contain global ids
+            String str = operator.getNode().toInternalString().replaceAll("#[0-9]+", "");
+            this.writeComments(str);
+            operator.accept(this);
+            this.builder.newline();
+        }
+    }
+
+    /** Split the operators of the circuit into modules, one for each view. */
+    static List<Module> split(DBSPPartialCircuit circuit) {
+        List<DBSPOperator> operators = new ArrayList<>();
+        Map<DBSPOperator, List<DBSPOperator>> consumers = new HashMap<>();
+        for (DBSPOperator operator: circuit.getAllOperators()) {
+            operators.add(operator);
+            for (DBSPOperator input: operator.inputs)
+                consumers.computeIfAbsent(input, k -> new ArrayList<>()).add(operator);
+        }
+
+        // Index of the first sink which depends on each operator.
+        // Operators are sorted topologically, so every consumer of an operator has an index
+        // at least as large as the operator itself.
+        Map<DBSPOperator, Integer> index = new HashMap<>();
+        List<Module> modules = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (DBSPSinkOperator sink: circuit.sinkOperators.values()) {
+            index.put(sink, modules.size());
+            String name = "m_" + sink.viewName.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+            String unique = name;
+            for (int i = 1; names.contains(unique); i++)
+                unique = name + "_" + i;
+            names.add(unique);
+            modules.add(new Module(unique));
+        }
+        for (int i = operators.size() - 1; i >= 0; i--) {
+            DBSPOperator operator = operators.get(i);
+            if (operator.is(DBSPSinkOperator.class))
+                continue;
+            for (DBSPOperator consumer: consumers.getOrDefault(operator, List.of())) {
+                Integer consumerIndex = index.get(consumer);
+                if (consumerIndex == null)
+                    continue;
+                Integer current = index.get(operator);
+                if (current == null || consumerIndex < current)
+                    index.put(operator, consumerIndex);
+            }
+        }
+
+        // Sources and sinks stay in the main function, as do operators which do not
+        // contribute to any view.
+        Map<DBSPOperator, Module> moduleOf = new HashMap<>();
+        for (DBSPOperator operator: operators) {
+            Integer moduleIndex = index.get(operator);
+            if (moduleIndex == null ||
+                    operator.is(DBSPSinkOperator.class) ||
+                    operator.is(DBSPSourceBaseOperator.class))
+                continue;
+            Module module = modules.get(moduleIndex);
+            module.operators.add(operator);
+            moduleOf.put(operator, module);
+        }
+        for (DBSPOperator operator: operators) {
+            Module module = moduleOf.get(operator);
+            for (DBSPOperator input: operator.inputs) {
+                Module inputModule = moduleOf.get(input);
+                if (inputModule == module)
+                    continue;
+                if (module != null)
+                    module.inputs.add(input);
+                if (inputModule != null)
+                    inputModule.outputs.add(input);
+            }
+        }
+        modules.removeIf(m -> m.operators.isEmpty());
+        return modules;
+    }
+
+    /** Generates the main circuit function, which calls the functions in the modules. */
+    static class ToRustMainVisitor extends ToRustVisitor {
+        final List<Module> modules;
+        final Set<DBSPOperator> inModules;
+
+        public ToRustMainVisitor(IErrorReporter reporter, IndentStream builder, CompilerOptions options,
+                                 ProgramMetadata metadata, List<Module> modules) {
+            super(reporter, builder, options, metadata);
+            this.modules = modules;
+            this.inModules = new HashSet<>();
+            for (Module module: modules)
+                this.inModules.addAll(module.operators);
+        }
+
+        @Override
+        void generateBody(DBSPPartialCircuit circuit) {
+            // Declarations are emitted at the top level.
+            // Sources first, then the modules, in dependency order, then the rest.
+            for (DBSPOperator operator: circuit.getAllOperators())
+                if (operator.is(DBSPSourceBaseOperator.class))
+                    this.processNode(operator);
+            for (Module module: this.modules)
+                module.generateCall(this.builder);
+            this.builder.newline();
+            for (DBSPOperator operator: circuit.getAllOperators())
+                if (!operator.is(DBSPSourceBaseOperator.class) && !this.inModules.contains(operator))
+                    this.processNode(operator);
+        }
+    }
+
+    /** Write the contents of a module to a file, unless the file already exists.
+     * @return The name of the file. */
+    String writeModule(DBSPCompiler compiler, Module module, String contents) {
+        String fileName = module.name + "_" + Utilities.hash(contents).substring(0, 16) + ".rs";
+        File file = new File(this.directory, fileName);
+        this.written.add(fileName);
+        if (file.exists())
+            return fileName;
+        try {
+            Utilities.writeFile(file.toPath(), contents);
+        } catch (IOException e) {
+            compiler.reportError(SourcePositionRange.INVALID,
+                    "Error writing to file", e.getMessage());
+        }
+        return fileName;
+    }
+
+    @Override
+    String circuitToRust(DBSPCompiler compiler, DBSPCircuit circuit) {
+        List<Module> modules = split(circuit.circuit);
+        StringBuilder builder = new StringBuilder();
+        IndentStream stream = new IndentStream(builder);
+        ProgramMetadata metadata = circuit.getMetadata();
+        for (Module module: modules) {
+            String contents = module.generate(compiler, compiler.options, metadata);
+            String fileName = this.writeModule(compiler, module, contents);
+            stream.append("#[path = ")
+                    .append(Utilities.doubleQuote(fileName))
+                    .append("]")
+                    .newline()
+                    .append("mod ")
+                    .append(module.name)
+                    .append(";")
+                    .newline();
+        }
+        stream.newline();
+
+        ToRustMainVisitor visitor = new ToRustMainVisitor(
+                compiler, stream, compiler.options, metadata, modules);
+        for (DBSPDeclaration item: circuit.circuit.declarations) {
+            if (item.item.is(DBSPFunctionItem.class)) {
+                item.accept(visitor);
+                stream.newline().newline();
+            }
+        }
+        visitor.apply(circuit);
+        return builder.toString();
+    }
+
+    /** Remove the files of modules listed in the manifest of the previous compilation
+     * which are no longer used, and write the manifest of this compilation. */
+    void updateManifest(DBSPCompiler compiler) {
+        try {
+            if (this.manifest.exists()) {
+                for (String name: Files.readAllLines(this.manifest.toPath())) {
+                    if (!MODULE_FILE.matcher(name).matches() || this.written.contains(name))
+                        continue;
+                    //noinspection ResultOfMethodCallIgnored
+                    new File(this.directory, name).delete();
+                }
+            }
+            List<String> names = new ArrayList<>(this.written);
+            Collections.sort(names);
+            Utilities.writeFile(this.manifest.toPath(), String.join("\n", names) + "\n");
+        } catch (IOException e) {
+            compiler.reportError(SourcePositionRange.INVALID,
+                    "Error writing to file", e.getMessage());
+        }
+    }
+
+    @Override
+    public void write(DBSPCompiler compiler) {
+        super.write(compiler);
+        this.updateManifest(compiler);
+    }
+}
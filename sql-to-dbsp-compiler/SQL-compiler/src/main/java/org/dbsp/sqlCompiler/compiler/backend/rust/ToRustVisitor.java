@@ -37,8 +37,12 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOpera
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOrderByOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOuterJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateWithWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRangeAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRowsAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
@@ -346,7 +350,17 @@ public class ToRustVisitor extends CircuitVisitor {
     }
 
     String handleName(DBSPOperator operator) {
-        return "handle" + operator.id;
+        return "handle" + operator.getLocalId();
+    }
+
+    /** Name of the Rust variable holding the output stream of an operator. */
+    String streamName(DBSPOperator operator) {
+        return operator.getOutputName();
+    }
+
+    /** String identifying an operator in the comments of the generated code. */
+    String idString(DBSPOperator operator) {
+        return operator.getIdString();
     }
 
     @Override
@@ -416,16 +430,7 @@ public class ToRustVisitor extends CircuitVisitor {
         if (!this.useHandles)
             this.builder.append("let mut catalog = Catalog::new();").newline();
 
-        for (DBSPDeclaration item: circuit.declarations) {
-            // Generate functions used locally
-            if (item.item.is(DBSPFunctionItem.class)) {
-                item.accept(this);
-                this.builder.newline().newline();
-            }
-        }
-
-        for (IDBSPNode node : circuit.getAllOperators())
-            this.processNode(node);
+        this.generateBody(circuit);
 
         if (!this.useHandles)
             this.builder.append("Ok(catalog)");
@@ -447,6 +452,20 @@ public class ToRustVisitor extends CircuitVisitor {
         return VisitDecision.STOP;
     }
 
+    /** Generate the code which builds the operators of the circuit. */
+    void generateBody(DBSPPartialCircuit circuit) {
+        for (DBSPDeclaration item: circuit.declarations) {
+            // Generate functions used locally
+            if (item.item.is(DBSPFunctionItem.class)) {
+                item.accept(this);
+                this.builder.newline().newline();
+            }
+        }
+
+        for (IDBSPNode node : circuit.getAllOperators())
+            this.processNode(node);
+    }
+
     void findNestedStructs(DBSPTypeStruct struct, List<DBSPTypeStruct> result) {
         for (DBSPTypeStruct str: result)
             if (str.name.equals(struct.name))
@@ -492,7 +511,7 @@ public class ToRustVisitor extends CircuitVisitor {
 
         this.writeComments(operator)
                 .append("let (")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(", ")
                 .append(this.handleName(operator))
                 .append(") = circuit.add_input_zset::<");
@@ -510,7 +529,7 @@ public class ToRustVisitor extends CircuitVisitor {
             DBSPStrLiteral json = new DBSPStrLiteral(tableDescription.asJson().toString(), false, true);
             operator.originalRowType.accept(this.innerVisitor);
             this.builder.append(">(")
-                    .append(operator.getOutputName())
+                    .append(this.streamName(operator))
                     .append(".clone(), ")
                     .append(this.handleName(operator))
                     .append(", ");
@@ -542,7 +561,7 @@ public class ToRustVisitor extends CircuitVisitor {
 
         this.writeComments(operator)
                 .append("let (")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(", ")
                 .append(this.handleName(operator))
                 .append(") = circuit.add_input_map::<");
@@ -604,7 +623,7 @@ public class ToRustVisitor extends CircuitVisitor {
             this.builder.append(", ");
             upsertStruct.accept(this.innerVisitor);
             this.builder.append(", _, _>(")
-                    .append(operator.getOutputName())
+                    .append(this.streamName(operator))
                     .append(".clone(), ")
                     .append(this.handleName(operator))
                     .append(", ");
@@ -627,11 +646,11 @@ public class ToRustVisitor extends CircuitVisitor {
         DBSPType streamType = new DBSPTypeStream(operator.outputType);
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         streamType.accept(this.innerVisitor);
         this.builder.append(" = ")
-                .append(operator.input().getOutputName())
+                .append(this.streamName(operator.input()))
                 .append(".")
                 .append(operator.operation)
                 .append("();");
@@ -643,15 +662,15 @@ public class ToRustVisitor extends CircuitVisitor {
         DBSPType streamType = new DBSPTypeStream(operator.outputType);
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         streamType.accept(this.innerVisitor);
         this.builder.append(" = ")
-                .append(operator.left().getOutputName());
+                .append(this.streamName(operator.left()));
 
         boolean isZset = operator.getType().is(DBSPTypeZSet.class);
         this.builder.append(".apply2(&")
-                .append(operator.right().getOutputName())
+                .append(this.streamName(operator.right()))
                 .append(", ");
         this.builder.append("|d, c| ");
         if (isZset)
@@ -668,14 +687,14 @@ public class ToRustVisitor extends CircuitVisitor {
     VisitDecision retainOperator(DBSPBinaryOperator operator) {
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName());
+                .append(this.streamName(operator));
         this.builder.append(" = ")
-                .append(operator.left().getOutputName());
+                .append(this.streamName(operator.left()));
 
         this.builder.append(".")
                 .append(operator.operation)
                 .append("(&")
-                .append(operator.right().getOutputName())
+                .append(this.streamName(operator.right()))
                 // FIXME: temporary workaround until the compiler learns about
                 // TypedBox's
                 .append(".apply(|bound| TypedBox::<_, DynData>::new(bound.clone()))")
@@ -699,13 +718,13 @@ public class ToRustVisitor extends CircuitVisitor {
     public VisitDecision preorder(DBSPWindowOperator operator) {
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(" = ")
-                .append(operator.left().getOutputName())
+                .append(this.streamName(operator.left()))
                 .append(".")
                 .append(operator.operation)
                 .append("(&")
-                .append(operator.right().getOutputName())
+                .append(this.streamName(operator.right()))
                 .append(");");
         return VisitDecision.STOP;
     }
@@ -715,11 +734,11 @@ public class ToRustVisitor extends CircuitVisitor {
         DBSPType streamType = new DBSPTypeStream(operator.outputType);
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         streamType.accept(this.innerVisitor);
         this.builder.append(" = ")
-                .append(operator.input().getOutputName())
+                .append(this.streamName(operator.input()))
                 .append(".")
                 .append(operator.operation)
                 .append("::<_, DynData, _, _, _>(");
@@ -754,7 +773,7 @@ public class ToRustVisitor extends CircuitVisitor {
                     .append("::<_, ");
             operator.originalRowType.accept(this.innerVisitor);
             this.builder.append(">(")
-                    .append(operator.input().getOutputName())
+                    .append(this.streamName(operator.input()))
                     .append(".clone()")
                     .append(", ");
             json.accept(this.innerVisitor);
@@ -764,7 +783,7 @@ public class ToRustVisitor extends CircuitVisitor {
             this.builder.append("let ")
                     .append(this.handleName(operator))
                     .append(" = ")
-                    .append(operator.input().getOutputName())
+                    .append(this.streamName(operator.input()))
                     .append(".output();").newline();
             this.streams.append(this.handleName(operator))
                     .append(", ");
@@ -777,12 +796,12 @@ public class ToRustVisitor extends CircuitVisitor {
         DBSPType streamType = new DBSPTypeStream(operator.outputType);
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         streamType.accept(this.innerVisitor);
         this.builder.append(" = ");
         if (!operator.inputs.isEmpty())
-            builder.append(operator.inputs.get(0).getOutputName())
+            builder.append(this.streamName(operator.inputs.get(0)))
                     .append(".");
         builder.append(operator.operation)
                 .append("(");
@@ -790,7 +809,7 @@ public class ToRustVisitor extends CircuitVisitor {
             if (i > 1)
                 builder.append(",");
             builder.append("&")
-                    .append(operator.inputs.get(i).getOutputName());
+                    .append(this.streamName(operator.inputs.get(i)));
         }
         if (operator.function != null) {
             if (operator.inputs.size() > 1)
@@ -820,6 +839,43 @@ public class ToRustVisitor extends CircuitVisitor {
                 .newline();
     }
 
+    /**
+     * Helper function for generateComparator.
+     * Compares a nullable field where the NULL values are not sorted
+     * as in the Rust Option ordering.
+     * @param fieldNo  Field index that is compared.
+     * @param ascending Comparison direction for non-null values.
+     * @param nullsFirst If true NULL values come before all other values.
+     */
+    void emitCompareNullableField(int fieldNo, boolean ascending, boolean nullsFirst) {
+        this.builder.append("let ord = match (&left.")
+                .append(fieldNo)
+                .append(", &right.")
+                .append(fieldNo)
+                .append(") {")
+                .increase()
+                .append("(None, None) => Ordering::Equal,")
+                .newline()
+                .append("(None, _) => Ordering::")
+                .append(nullsFirst ? "Less" : "Greater")
+                .append(",")
+                .newline()
+                .append("(_, None) => Ordering::")
+                .append(nullsFirst ? "Greater" : "Less")
+                .append(",")
+                .newline()
+                .append("(Some(l), Some(r)) => l.cmp(r)");
+        if (!ascending)
+            this.builder.append(".reverse()");
+        this.builder.append(",")
+                .newline()
+                .decrease()
+                .append("};")
+                .newline()
+                .append("if ord != Ordering::Equal { return ord };")
+                .newline();
+    }
+
     /**
      * Helper function for generateCmpFunc.
      * This could be part of an inner visitor too.
@@ -838,10 +894,26 @@ public class ToRustVisitor extends CircuitVisitor {
         if (fieldsCompared.contains(fieldComparator.fieldNo))
             throw new InternalCompilerError("Field " + fieldComparator.fieldNo + " used twice in sorting");
         fieldsCompared.add(fieldComparator.fieldNo);
-        this.emitCompareField(fieldComparator.fieldNo, fieldComparator.ascending);
+        DBSPType fieldType = comparator.tupleType().to(DBSPTypeTuple.class).getFieldType(fieldComparator.fieldNo);
+        if (fieldType.mayBeNull && fieldComparator.nullsFirst != fieldComparator.ascending)
+            this.emitCompareNullableField(
+                    fieldComparator.fieldNo, fieldComparator.ascending, fieldComparator.nullsFirst);
+        else
+            this.emitCompareField(fieldComparator.fieldNo, fieldComparator.ascending);
     }
 
     void generateCmpFunc(DBSPComparatorExpression comparator, String structName) {
+        this.generateCmpFunc(comparator, structName, true);
+    }
+
+    /**
+     * Generate a CmpFunc implementation for a comparator.
+     * @param comparator  Comparator to implement.
+     * @param structName  Name of the struct that implements CmpFunc.
+     * @param total       If true, the fields not compared by the comparator are
+     *                    compared too, so that only equal values compare as Equal.
+     */
+    void generateCmpFunc(DBSPComparatorExpression comparator, String structName, boolean total) {
         //    impl CmpFunc<(String, i32, i32)> for AscDesc {
         //        fn cmp(left: &(String, i32, i32), right: &(String, i32, i32)) -> std::cmp::Ordering {
         //            let ord = left.1.cmp(&right.1);
@@ -873,7 +945,7 @@ public class ToRustVisitor extends CircuitVisitor {
         this.generateComparator(comparator, fieldsCompared);
         // Now compare on the fields that we didn't compare on.
         // The order doesn't really matter.
-        for (int i = 0; i < type.to(DBSPTypeTuple.class).size(); i++) {
+        for (int i = 0; total && i < type.to(DBSPTypeTuple.class).size(); i++) {
             if (fieldsCompared.contains(i)) continue;
             this.emitCompareField(i, true);
         }
@@ -907,7 +979,7 @@ public class ToRustVisitor extends CircuitVisitor {
 
     @Override
     public VisitDecision preorder(DBSPIndexedTopKOperator operator) {
-        String structName = "Cmp" + operator.getOutputName();
+        String structName = "Cmp" + this.streamName(operator);
         this.builder.append("struct ")
                 .append(structName)
                 .append(";")
@@ -923,15 +995,17 @@ public class ToRustVisitor extends CircuitVisitor {
                 case DENSE_RANK -> "topk_dense_rank_custom_order";
             };
         }
+        if (operator.offset != null)
+            streamOperation += "_range";
 
         DBSPType streamType = new DBSPTypeStream(operator.outputType);
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         streamType.accept(this.innerVisitor);
         this.builder.append(" = ")
-                .append(operator.input().getOutputName())
+                .append(this.streamName(operator.input()))
                 .append(".")
                 .append(streamOperation)
                 .append("::<")
@@ -942,6 +1016,12 @@ public class ToRustVisitor extends CircuitVisitor {
                         this.builder.append(", _");
                 }
                 this.builder.append(">(");
+        if (operator.offset != null) {
+            DBSPExpression offset = operator.offset.cast(
+                    new DBSPTypeUSize(CalciteObject.EMPTY, operator.offset.getType().mayBeNull));
+            offset.accept(this.innerVisitor);
+            this.builder.append(", ");
+        }
         DBSPExpression cast = operator.limit.cast(
                 new DBSPTypeUSize(CalciteObject.EMPTY, operator.limit.getType().mayBeNull));
         cast.accept(this.innerVisitor);
@@ -959,9 +1039,37 @@ public class ToRustVisitor extends CircuitVisitor {
         return VisitDecision.STOP;
     }
 
+    @Override
+    public VisitDecision preorder(DBSPOrderByOperator operator) {
+        String structName = "Cmp" + this.streamName(operator);
+        this.builder.append("struct ")
+                .append(structName)
+                .append(";")
+                .newline();
+        // Generate a CmpFunc impl for the new struct.
+        this.generateCmpFunc(operator.getFunction().to(DBSPComparatorExpression.class), structName);
+
+        DBSPType streamType = new DBSPTypeStream(operator.outputType);
+        this.writeComments(operator)
+                .append("let ")
+                .append(this.streamName(operator))
+                .append(": ");
+        streamType.accept(this.innerVisitor);
+        this.builder.append(" = ")
+                .append(this.streamName(operator.input()))
+                .append(".")
+                .append(operator.operation)
+                .append("::<")
+                .append(structName)
+                .append(", _, _>(");
+        operator.outputProducer.accept(this.innerVisitor);
+        builder.append(");");
+        return VisitDecision.STOP;
+    }
+
     @Override
     public VisitDecision preorder(DBSPLagOperator operator) {
-        String structName = "Cmp" + operator.getOutputName();
+        String structName = "Cmp" + this.streamName(operator);
         this.builder.append("struct ")
                 .append(structName)
                 .append(";")
@@ -972,11 +1080,11 @@ public class ToRustVisitor extends CircuitVisitor {
         DBSPType streamType = new DBSPTypeStream(operator.outputType);
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         streamType.accept(this.innerVisitor);
         this.builder.append(" = ")
-                .append(operator.input().getOutputName())
+                .append(this.streamName(operator.input()))
                 .append(".")
                 .append(operator.operation)
                 .append("::<_, _, _, ")
@@ -1002,14 +1110,41 @@ public class ToRustVisitor extends CircuitVisitor {
         this.builder.append(")");
     }
 
+    /** Emit the ranges of the window frames of a rolling aggregate.  If there are several
+     * frames, emit each range with the function that computes the aggregates of that frame,
+     * followed by the function that combines the results of the frames. */
+    void emitWindowFrames(List<DBSPWindowBoundExpression> lower, List<DBSPWindowBoundExpression> upper,
+                          @Nullable DBSPClosureExpression framesFunction, List<DBSPExpression> frameFunctions) {
+        if (framesFunction == null) {
+            this.builder.append("RelRange::new(").increase();
+            this.emitWindowBound(lower.get(0));
+            this.builder.append(",").newline();
+            this.emitWindowBound(upper.get(0));
+            this.builder.decrease().append(")");
+            return;
+        }
+        this.builder.append("vec![").increase();
+        for (int i = 0; i < lower.size(); i++) {
+            this.builder.append("RollingFrame::new(RelRange::new(");
+            this.emitWindowBound(lower.get(i));
+            this.builder.append(", ");
+            this.emitWindowBound(upper.get(i));
+            this.builder.append("), ");
+            frameFunctions.get(i).accept(this.innerVisitor);
+            this.builder.append("),").newline();
+        }
+        this.builder.decrease().append("], ");
+        framesFunction.accept(this.innerVisitor);
+    }
+
     @Override
     public VisitDecision preorder(DBSPPartitionedRollingAggregateOperator operator) {
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 // the output type is not correct, so we don't write it
                 .append(" = ")
-                .append(operator.input().getOutputName())
+                .append(this.streamName(operator.input()))
                 .append(".")
                 .append(operator.operation)
                 .append("(");
@@ -1017,13 +1152,88 @@ public class ToRustVisitor extends CircuitVisitor {
         this.builder.append(", ");
         operator.getFunction().accept(this.innerVisitor);
         this.builder.append(", ");
-        this.builder.append("RelRange::new(").increase();
+        this.emitWindowFrames(operator.lower, operator.upper, operator.framesFunction, operator.frameFunctions);
+        this.builder.append(");")
+                .newline();
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPRowsAggregateOperator operator) {
+        String structName = "Cmp" + this.streamName(operator);
+        this.builder.append("struct ")
+                .append(structName)
+                .append(";")
+                .newline();
+        // Generate a CmpFunc impl for the new struct.
+        this.generateCmpFunc(operator.comparator, structName);
+
+        DBSPType streamType = new DBSPTypeStream(operator.outputType);
+        this.writeComments(operator)
+                .append("let ")
+                .append(this.streamName(operator))
+                .append(": ");
+        streamType.accept(this.innerVisitor);
+        this.builder.append(" = ")
+                .append(this.streamName(operator.input()))
+                .append(".")
+                .append(operator.operation)
+                .append("::<")
+                .append(structName)
+                .append(", _, _, _>(");
+        this.builder.append("RelRange::new(");
         this.emitWindowBound(operator.lower);
-        this.builder.append(",").newline();
+        this.builder.append(", ");
         this.emitWindowBound(operator.upper);
-        this.builder.decrease().append(")")
-                .append(");")
+        this.builder.append("), ");
+        operator.getFunction().accept(this.innerVisitor);
+        this.builder.append(", ");
+        operator.outputProducer.accept(this.innerVisitor);
+        this.builder.append(");");
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPRangeAggregateOperator operator) {
+        String structName = "Cmp" + this.streamName(operator);
+        String peersName = "Peers" + this.streamName(operator);
+        this.builder.append("struct ")
+                .append(structName)
+                .append(";")
+                .newline();
+        // Generate a CmpFunc impl for the new struct.
+        this.generateCmpFunc(operator.comparator, structName);
+        // Peers are equal on the fields compared by the comparator.
+        this.builder.append("struct ")
+                .append(peersName)
+                .append(";")
                 .newline();
+        this.generateCmpFunc(operator.comparator, peersName, false);
+
+        DBSPType streamType = new DBSPTypeStream(operator.outputType);
+        this.writeComments(operator)
+                .append("let ")
+                .append(this.streamName(operator))
+                .append(": ");
+        streamType.accept(this.innerVisitor);
+        this.builder.append(" = ")
+                .append(this.streamName(operator.input()))
+                .append(".")
+                .append(operator.operation)
+                .append("::<")
+                .append(structName)
+                .append(", ")
+                .append(peersName)
+                .append(", _, _, _>(");
+        this.builder.append("RelRange::new(");
+        this.emitWindowBound(operator.lower);
+        this.builder.append(", ");
+        this.emitWindowBound(operator.upper);
+        this.builder.append("), ");
+        operator.getFunction().accept(this.innerVisitor);
+        this.builder.append(", ");
+        operator.outputProducer.accept(this.innerVisitor);
+        this.builder.append(");");
         return VisitDecision.STOP;
     }
 
@@ -1031,24 +1241,20 @@ public class ToRustVisitor extends CircuitVisitor {
     public VisitDecision preorder(DBSPPartitionedRollingAggregateWithWaterlineOperator operator) {
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 // the output type is not correct, so we don't write it
                 .append(" = ")
-                .append(operator.left().getOutputName())
+                .append(this.streamName(operator.left()))
                 .append(".")
                 .append(operator.operation)
                 .append("(&")
-                .append(operator.right().getOutputName())
+                .append(this.streamName(operator.right()))
                 .append(", ");
         operator.partitioningFunction.accept(this.innerVisitor);
         this.builder.append(", ");
         operator.getFunction().accept(this.innerVisitor);
         this.builder.append(", ");
-        this.builder.append("RelRange::new(");
-        this.emitWindowBound(operator.lower);
-        this.builder.append(", ");
-        this.emitWindowBound(operator.upper);
-        this.builder.append(")");
+        this.emitWindowFrames(operator.lower, operator.upper, operator.framesFunction, operator.frameFunctions);
         this.builder.append(");")
                 .newline();
         return VisitDecision.STOP;
@@ -1059,11 +1265,11 @@ public class ToRustVisitor extends CircuitVisitor {
         DBSPType streamType = new DBSPTypeStream(operator.outputType);
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         streamType.accept(this.innerVisitor);
         this.builder.append(" = ");
-        builder.append(operator.input().getOutputName())
+        builder.append(this.streamName(operator.input()))
                     .append(".");
         builder.append(operator.operation)
                 .append("(");
@@ -1076,19 +1282,19 @@ public class ToRustVisitor extends CircuitVisitor {
     public VisitDecision preorder(DBSPSumOperator operator) {
         this.writeComments(operator)
                     .append("let ")
-                    .append(operator.getOutputName())
+                    .append(this.streamName(operator))
                     .append(": ");
         new DBSPTypeStream(operator.outputType).accept(this.innerVisitor);
         this.builder.append(" = ");
         if (!operator.inputs.isEmpty())
-            this.builder.append(operator.inputs.get(0).getOutputName())
+            this.builder.append(this.streamName(operator.inputs.get(0)))
                         .append(".");
         this.builder.append(operator.operation)
                     .append("([");
         for (int i = 1; i < operator.inputs.size(); i++) {
             if (i > 1)
                 this.builder.append(", ");
-            this.builder.append("&").append(operator.inputs.get(i).getOutputName());
+            this.builder.append("&").append(this.streamName(operator.inputs.get(i)));
         }
         this.builder.append("]);");
         return VisitDecision.STOP;
@@ -1104,7 +1310,7 @@ public class ToRustVisitor extends CircuitVisitor {
 
      IIndentStream writeComments(DBSPOperator operator) {
         return this.writeComments(operator.getClass().getSimpleName() +
-                " " + operator.getIdString() +
+                " " + this.idString(operator) +
                 (operator.comment != null ? "\n" + operator.comment : ""));
     }
 
@@ -1112,27 +1318,52 @@ public class ToRustVisitor extends CircuitVisitor {
     public VisitDecision preorder(DBSPJoinOperator operator) {
         this.writeComments(operator)
                 .append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(": ");
         new DBSPTypeStream(operator.outputType).accept(this.innerVisitor);
         this.builder.append(" = ");
         if (!operator.inputs.isEmpty())
-            this.builder.append(operator.left().getOutputName())
+            this.builder.append(this.streamName(operator.left()))
                     .append(".");
         this.builder.append(operator.operation)
                 .append("(&");
-        this.builder.append(operator.right().getOutputName());
+        this.builder.append(this.streamName(operator.right()));
         this.builder.append(", ");
         operator.getFunction().accept(this.innerVisitor);
         this.builder.append(");");
         return VisitDecision.STOP;
     }
 
+    @Override
+    public VisitDecision preorder(DBSPOuterJoinOperator operator) {
+        this.writeComments(operator)
+                .append("let ")
+                .append(this.streamName(operator))
+                .append(": ");
+        new DBSPTypeStream(operator.outputType).accept(this.innerVisitor);
+        this.builder.append(" = ")
+                .append(this.streamName(operator.left()))
+                .append(".")
+                .append(operator.operation)
+                .append("(&")
+                .append(this.streamName(operator.right()))
+                .append(", ");
+        operator.getFunction().accept(this.innerVisitor);
+        this.builder.append(", ");
+        operator.leftFunction.accept(this.innerVisitor);
+        if (operator.rightFunction != null) {
+            this.builder.append(", ");
+            operator.rightFunction.accept(this.innerVisitor);
+        }
+        this.builder.append(");");
+        return VisitDecision.STOP;
+    }
+
     @Override
     public VisitDecision preorder(DBSPConstantOperator operator) {
         assert operator.function != null;
         builder.append("let ")
-                .append(operator.getOutputName())
+                .append(this.streamName(operator))
                 .append(" = ")
                 .append("circuit.add_source(Generator::new(|| ");
         this.builder.append("if Runtime::worker_index() == 0 {");
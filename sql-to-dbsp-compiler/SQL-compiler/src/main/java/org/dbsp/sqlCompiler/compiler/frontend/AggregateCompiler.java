@@ -363,8 +363,14 @@ public class AggregateCompiler implements ICompilerComponent {
         DBSPExpression increment = this.aggregateOperation(
                 node, call, this.nullableResultType, accumulator, aggregatedValue, this.filterArgument());
         DBSPType semigroup = new DBSPTypeUser(node, SEMIGROUP, semigroupName, false, accumulator.getType());
+        // Without a filter the result only depends on the ordered values of the group
+        @Nullable
+        DBSPClosureExpression minMaxFunction = null;
+        if (this.filterArgument < 0)
+            minMaxFunction = aggregatedValue.deepCopy().closure(this.v.asParameter());
         this.setFoldingFunction(new DBSPAggregate.Implementation(
-                node, zero, this.makeRowClosure(increment, accumulator), zero, semigroup, null));
+                node, zero, this.makeRowClosure(increment, accumulator), null, zero, semigroup, null,
+                minMaxFunction != null ? call : null, minMaxFunction));
     }
 
     void processSum(SqlSumAggFunction function) {
@@ -48,6 +48,8 @@ import org.apache.calcite.rel.logical.LogicalTableScan;
 import org.apache.calcite.rel.logical.LogicalUnion;
 import org.apache.calcite.rel.logical.LogicalValues;
 import org.apache.calcite.rel.logical.LogicalWindow;
+import org.apache.calcite.rel.metadata.RelColumnOrigin;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexCall;
@@ -69,9 +71,13 @@ import org.apache.calcite.sql.ddl.SqlAttributeDefinition;
 import org.apache.calcite.sql.ddl.SqlCreateType;
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.mapping.Mapping;
+import org.apache.calcite.util.mapping.MappingType;
+import org.apache.calcite.util.mapping.Mappings;
 import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
 import org.dbsp.sqlCompiler.circuit.DBSPDeclaration;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
@@ -84,7 +90,12 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOrderByOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOuterJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRangeAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRowsAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSemiJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamAggregateOperator;
@@ -110,6 +121,7 @@ import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.RelColumnMetadata;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
 import org.dbsp.sqlCompiler.compiler.frontend.parser.SqlCreateLocalView;
 import org.dbsp.sqlCompiler.compiler.frontend.parser.SqlCreateTable;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.CalciteTableDescription;
 import org.dbsp.sqlCompiler.compiler.frontend.statements.CreateFunctionStatement;
 import org.dbsp.sqlCompiler.compiler.frontend.statements.CreateTableStatement;
 import org.dbsp.sqlCompiler.compiler.frontend.statements.CreateTypeStatement;
@@ -128,6 +140,7 @@ import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
 import org.dbsp.sqlCompiler.ir.expression.DBSPApplyExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPApplyMethodExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBlockExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPComparatorExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
@@ -149,11 +162,13 @@ import org.dbsp.sqlCompiler.ir.expression.literal.DBSPBoolLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI32Literal;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPIntervalMillisLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPUSizeLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
 import org.dbsp.sqlCompiler.ir.path.DBSPPath;
 import org.dbsp.sqlCompiler.ir.path.DBSPSimplePathSegment;
 import org.dbsp.sqlCompiler.ir.statement.DBSPFunctionItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPItem;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStructItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStructWithHelperItem;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
@@ -189,9 +204,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import static org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator.TopKNumbering.*;
@@ -219,6 +236,12 @@ public class CalciteToDBSPCompiler extends RelVisitor
     final List<RelNode> ancestors;
     final ProgramMetadata metadata;
     final Map<String, Map<String, ViewColumnMetadata>> viewMetadata = new HashMap<>();
+    /** Sorts whose output rows are paired with their row number */
+    final Set<LogicalSort> numberedSorts = new HashSet<>();
+    /** Views whose output rows are paired with their row number */
+    final Set<String> numberedViews = new HashSet<>();
+    /** True if the ORDER BY of the view being compiled must be maintained */
+    boolean sortedOutput = false;
 
     /**
      * Create a compiler that translated from calcite to DBSP circuits.
@@ -308,18 +331,37 @@ public class CalciteToDBSPCompiler extends RelVisitor
     public DBSPAggregate createAggregate(RelNode node,
             List<AggregateCall> aggregates, DBSPTypeTuple resultType,
             DBSPType inputRowType, int groupCount, ImmutableBitSet groupKeys) {
+        List<Integer> all = new ArrayList<>();
+        for (int i = 0; i < aggregates.size(); i++)
+            all.add(i);
+        return this.createAggregate(node, aggregates, all, resultType, inputRowType, groupCount, groupKeys);
+    }
+
+    /**
+     * Helper function for creating aggregates which implement only some of the aggregate calls.
+     * @param node         RelNode that generates this aggregate.
+     * @param aggregates   All aggregates of the node.
+     * @param indexes      Indexes of the aggregates to implement, in the order of the result.
+     * @param groupCount   Number of groupBy variables.
+     * @param inputRowType Type of input row.
+     * @param resultType   Type of result produced by all aggregates.
+     */
+    DBSPAggregate createAggregate(RelNode node,
+            List<AggregateCall> aggregates, List<Integer> indexes, DBSPTypeTuple resultType,
+            DBSPType inputRowType, int groupCount, ImmutableBitSet groupKeys) {
         CalciteObject obj = CalciteObject.create(node);
         DBSPVariablePath rowVar = inputRowType.ref().var();
-        DBSPAggregate.Implementation[] implementations = new DBSPAggregate.Implementation[aggregates.size()];
-        int aggIndex = 0;
+        DBSPAggregate.Implementation[] implementations = new DBSPAggregate.Implementation[indexes.size()];
+        int index = 0;
 
-        for (AggregateCall call: aggregates) {
+        for (int aggIndex: indexes) {
+            AggregateCall call = aggregates.get(aggIndex);
             DBSPType resultFieldType = resultType.getFieldType(aggIndex + groupCount);
             AggregateCompiler compiler = new AggregateCompiler(node,
                     this.compiler(), call, resultFieldType, rowVar, groupKeys);
             DBSPAggregate.Implementation implementation = compiler.compile();
-            implementations[aggIndex] =  implementation;
-            aggIndex++;
+            implementations[index] =  implementation;
+            index++;
         }
         return new DBSPAggregate(obj, rowVar, implementations, false);
     }
@@ -565,6 +607,205 @@ public class CalciteToDBSPCompiler extends RelVisitor
         return new DBSPTupleExpression(keys);
     }
 
+    /** The columns of the input of an aggregate which are read by some aggregate calls,
+     * or null if the calls cannot be evaluated on a projection of the input.
+     * @param calls   All the aggregate calls.
+     * @param indexes Indexes of the calls to analyze. */
+    @Nullable
+    static ImmutableBitSet inputColumns(List<AggregateCall> calls, List<Integer> indexes) {
+        ImmutableBitSet.Builder result = ImmutableBitSet.builder();
+        for (int index: indexes) {
+            AggregateCall call = calls.get(index);
+            SqlKind kind = call.getAggregation().getKind();
+            if (kind == SqlKind.GROUPING || kind == SqlKind.GROUP_ID || kind == SqlKind.GROUPING_ID)
+                // These compare their arguments with the group keys
+                return null;
+            result.addAll(call.getArgList());
+            if (call.filterArg >= 0)
+                result.set(call.filterArg);
+            for (RelFieldCollation field: call.collation.getFieldCollations())
+                result.set(field.getFieldIndex());
+            if (call.distinctKeys != null)
+                result.addAll(call.distinctKeys);
+        }
+        return result.build();
+    }
+
+    /** True if every table read by a relation declares its number of rows. */
+    static boolean hasRowStatistics(RelNode rel) {
+        boolean[] result = new boolean[] { true };
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, @org.checkerframework.checker.nullness.qual.Nullable RelNode parent) {
+                if (node instanceof TableScan scan) {
+                    CalciteTableDescription table = scan.getTable().unwrap(CalciteTableDescription.class);
+                    if (table == null || table.getStatistics().rows == null)
+                        result[0] = false;
+                }
+                super.visit(node, ordinal, parent);
+            }
+        }.go(rel);
+        return result[0];
+    }
+
+    /** Number of distinct values of a column of a relation, if it is declared by the
+     * statistics of the table the column comes from. */
+    @Nullable
+    static Double declaredDistinct(RelMetadataQuery mq, RelNode rel, int column) {
+        RelColumnOrigin origin = mq.getColumnOrigin(rel, column);
+        if (origin == null || origin.isDerived())
+            return null;
+        CalciteTableDescription description = origin.getOriginTable().unwrap(CalciteTableDescription.class);
+        if (description == null)
+            return null;
+        return description.getStatistics().getDistinct(
+                origin.getOriginColumnOrdinal(), description.getColumns());
+    }
+
+    /** True if an aggregate should be computed as two separate aggregates,
+     * one containing the linear components and one containing the rest, joined on
+     * the group key.  A linear aggregate keeps state proportional to the number of
+     * groups, while a non-linear aggregate keeps the integral of its input.  After
+     * the split the input of the non-linear part is projected on the columns that
+     * its components read, so the integral keeps fewer fields for every input row.
+     * In exchange each group adds a row to the output of each part and to the
+     * integral of each input of the join.
+     *
+     * <p>If all the tables read by the aggregate declare their number of rows, the
+     * fields saved for all the input rows are compared with the fields added for all
+     * the groups; the number of groups is the product of the declared numbers of
+     * distinct values of the keys, or the number of input rows when these are not all
+     * declared.  Otherwise the aggregate is only split when the split cannot increase
+     * the state: when there are no keys, so there is a single group, or when the fields
+     * saved per input row are at least the fields added per group, since every group
+     * contains at least one input row.
+     * @param aggregate  Aggregate that is being compiled.
+     * @param localKeys  Keys of the group that is being aggregated.
+     * @param fold       Aggregate containing all components. */
+    static boolean shouldSplitAggregate(LogicalAggregate aggregate, ImmutableBitSet localKeys, DBSPAggregate fold) {
+        List<Integer> linear = fold.linearComponents();
+        if (linear.isEmpty() || linear.size() == fold.components.length)
+            return false;
+        List<Integer> nonLinear = new ArrayList<>();
+        for (int i = 0; i < fold.components.length; i++)
+            if (!linear.contains(i))
+                nonLinear.add(i);
+        ImmutableBitSet columns = inputColumns(aggregate.getAggCallList(), nonLinear);
+        if (columns == null)
+            return false;
+
+        // Sizes are measured in fields
+        int keyFields = localKeys.cardinality();
+        int inputFields = aggregate.getInput().getRowType().getFieldCount();
+        int savedPerRow = inputFields - columns.cardinality();
+        int addedPerGroup = 4 * keyFields + 2 * fold.components.length;
+        if (savedPerRow <= 0)
+            return false;
+        boolean neverWorse = keyFields == 0 || savedPerRow >= addedPerGroup;
+        if (!hasRowStatistics(aggregate.getInput()))
+            return neverWorse;
+
+        RelMetadataQuery mq = aggregate.getCluster().getMetadataQuery();
+        Double inputRows = mq.getRowCount(aggregate.getInput());
+        if (inputRows == null)
+            return neverWorse;
+        double groups = 1;
+        for (int key: localKeys) {
+            Double distinct = declaredDistinct(mq, aggregate.getInput(), key);
+            if (distinct == null) {
+                groups = inputRows;
+                break;
+            }
+            groups *= distinct;
+        }
+        groups = Math.min(groups, inputRows);
+        return inputRows * savedPerRow > groups * addedPerGroup;
+    }
+
+    /** Compute the linear and non-linear components of an aggregate separately and
+     * join the results on the group key.  The non-linear part only receives the
+     * input columns read by its components.
+     * @param aggregate     Aggregate that is being compiled.
+     * @param localKeys     Keys of the group that is being aggregated.
+     * @param fold          Aggregate containing all components.
+     * @param inputRowType  Type of the input rows.
+     * @param input         Input indexed by the group keys.
+     * @param resultType    Type of the result; identical to the type produced by 'fold'. */
+    DBSPOperator splitAggregate(LogicalAggregate aggregate, ImmutableBitSet localKeys,
+                                DBSPAggregate fold, DBSPType inputRowType, DBSPOperator input,
+                                DBSPTypeIndexedZSet resultType) {
+        CalciteObject node = CalciteObject.create(aggregate);
+        List<AggregateCall> aggregateCalls = aggregate.getAggCallList();
+        DBSPTypeTuple tuple = this.convertType(aggregate.getRowType(), false).to(DBSPTypeTuple.class);
+        List<Integer> linear = fold.linearComponents();
+        List<Integer> nonLinear = new ArrayList<>();
+        for (int i = 0; i < fold.components.length; i++)
+            if (!linear.contains(i))
+                nonLinear.add(i);
+
+        DBSPType keyType = resultType.keyType;
+        DBSPAggregate linearFold = this.createAggregate(aggregate, aggregateCalls, linear, tuple,
+                inputRowType, aggregate.getGroupCount(), localKeys);
+        DBSPOperator linearAgg = new DBSPStreamAggregateOperator(node,
+                makeIndexedZSet(keyType, linearFold.defaultZeroType()), null, linearFold, input, true);
+        this.circuit.addOperator(linearAgg);
+
+        // Project the input of the non-linear part on the columns it reads,
+        // and renumber the arguments of its calls accordingly.
+        ImmutableBitSet columns = Objects.requireNonNull(inputColumns(aggregateCalls, nonLinear));
+        DBSPTypeTuple inputTuple = inputRowType.to(DBSPTypeTuple.class);
+        Mapping mapping = Mappings.create(MappingType.PARTIAL_FUNCTION,
+                inputTuple.size(), columns.cardinality());
+        DBSPType[] projectedTypes = new DBSPType[columns.cardinality()];
+        DBSPVariablePath kv = input.getOutputIndexedZSetType().getKVRefType().var();
+        DBSPExpression[] projectedFields = new DBSPExpression[columns.cardinality()];
+        int projectedIndex = 0;
+        for (int column: columns) {
+            mapping.set(column, projectedIndex);
+            projectedTypes[projectedIndex] = inputTuple.getFieldType(column);
+            projectedFields[projectedIndex] = kv.deepCopy().field(1).deref().field(column).applyCloneIfNeeded();
+            projectedIndex++;
+        }
+        DBSPTypeTuple projectedType = new DBSPTypeTuple(projectedTypes);
+        DBSPExpression project = new DBSPRawTupleExpression(
+                kv.deepCopy().field(0).deref().applyCloneIfNeeded(),
+                new DBSPTupleExpression(projectedFields));
+        DBSPOperator projected = new DBSPMapIndexOperator(node, project.closure(kv.asParameter()),
+                makeIndexedZSet(keyType, projectedType), input);
+        this.circuit.addOperator(projected);
+        List<AggregateCall> projectedCalls = new ArrayList<>();
+        for (int i = 0; i < aggregateCalls.size(); i++)
+            projectedCalls.add(nonLinear.contains(i) ? aggregateCalls.get(i).transform(mapping) : aggregateCalls.get(i));
+
+        DBSPAggregate nonLinearFold = this.createAggregate(aggregate, projectedCalls, nonLinear, tuple,
+                projectedType, aggregate.getGroupCount(), localKeys);
+        DBSPOperator nonLinearAgg = new DBSPStreamAggregateOperator(node,
+                makeIndexedZSet(keyType, nonLinearFold.defaultZeroType()), null, nonLinearFold, projected, false);
+        this.circuit.addOperator(nonLinearAgg);
+
+        // Both parts produce a row for every non-empty group, so an inner join
+        // puts the components back in their original order.
+        DBSPVariablePath k = keyType.ref().var();
+        DBSPVariablePath l = linearFold.defaultZeroType().ref().var();
+        DBSPVariablePath r = nonLinearFold.defaultZeroType().ref().var();
+        DBSPExpression[] fields = new DBSPExpression[fold.components.length];
+        for (int i = 0; i < linear.size(); i++)
+            fields[linear.get(i)] = l.deepCopy().deref().field(i).applyCloneIfNeeded();
+        for (int i = 0; i < nonLinear.size(); i++)
+            fields[nonLinear.get(i)] = r.deepCopy().deref().field(i).applyCloneIfNeeded();
+        DBSPTupleExpression joined = new DBSPTupleExpression(
+                k.deref().applyCloneIfNeeded(), new DBSPTupleExpression(fields));
+        DBSPOperator join = new DBSPStreamJoinOperator(node, this.makeZSet(joined.getType()),
+                joined.closure(k.asParameter(), l.asParameter(), r.asParameter()), false, linearAgg, nonLinearAgg);
+        this.circuit.addOperator(join);
+
+        DBSPVariablePath t = joined.getType().ref().var();
+        DBSPExpression reindex = new DBSPRawTupleExpression(
+                t.deepCopy().deref().field(0).applyCloneIfNeeded(),
+                t.deepCopy().deref().field(1).applyCloneIfNeeded());
+        return new DBSPMapIndexOperator(node, reindex.closure(t.asParameter()), resultType, join);
+    }
+
     /** Implement one aggregate from a set of rollups described by a LogicalAggregate. */
     DBSPOperator implementOneAggregate(LogicalAggregate aggregate, ImmutableBitSet localKeys) {
         CalciteObject node = CalciteObject.create(aggregate);
@@ -610,6 +851,8 @@ public class CalciteToDBSPCompiler extends RelVisitor
             agg = new DBSPMapIndexOperator(node, addEmpty.closure(var.asParameter()), aggregateType, createIndex);
           this.circuit.addOperator(agg);
             agg = new DBSPStreamDistinctOperator(node, agg);
+        } else if (shouldSplitAggregate(aggregate, localKeys, fold)) {
+            agg = this.splitAggregate(aggregate, localKeys, fold, inputRowType, createIndex, aggregateType);
         } else {
             agg = new DBSPStreamAggregateOperator(
                       node, aggregateType, null, fold, createIndex, fold.isLinear());
@@ -744,6 +987,14 @@ public class CalciteToDBSPCompiler extends RelVisitor
             // Try a view if no table with this name exists.
             source = this.circuit.getView(tableName);
             if (source != null) {
+                if (this.numberedViews.contains(tableName)) {
+                    // Drop the row numbers produced by the ORDER BY of the view
+                    DBSPVariablePath t = source.getOutputZSetElementType().ref().var();
+                    DBSPExpression row = t.deref().field(1).applyCloneIfNeeded();
+                    source = new DBSPMapOperator(node, row.closure(t.asParameter()),
+                            this.makeZSet(row.getType()), source);
+                    this.circuit.addOperator(source);
+                }
                 Utilities.putNew(this.nodeOperator, scan, source);
             } else {
                 if (!create)
@@ -925,11 +1176,185 @@ public class CalciteToDBSPCompiler extends RelVisitor
         return filter;
     }
 
-    private void visitJoin(LogicalJoin join) {
+    /** Index the rows of a collection by a key computed from each row. */
+    private DBSPOperator indexBy(CalciteObject node, DBSPOperator input,
+                                 DBSPVariablePath row, DBSPExpression key, DBSPExpression value) {
+        DBSPClosureExpression toKey = new DBSPRawTupleExpression(key, value).closure(row.asParameter());
+        DBSPOperator index = new DBSPMapIndexOperator(
+                node, toKey, makeIndexedZSet(key.getType(), value.getType()), input.isMultiset, input);
+        this.circuit.addOperator(index);
+        return index;
+    }
+
+    /** Implement a SEMI or ANTI join.  The result contains the rows of the left input
+     * that have (or do not have) a matching row in the right input.
+     * Only the distinct keys of the right input are needed.
+     * Semi-joins are created by SemiJoinRule, and anti-joins by AntiJoinRewriter;
+     * both only create joins with equality conditions. */
+    private void visitSemiJoin(LogicalJoin join) {
         CalciteObject node = CalciteObject.create(join);
-        JoinRelType joinType = join.getJoinType();
-        if (joinType == JoinRelType.ANTI || joinType == JoinRelType.SEMI)
+        boolean anti = join.getJoinType() == JoinRelType.ANTI;
+        DBSPOperator left = this.getInputAs(join.getInput(0), true);
+        DBSPOperator right = this.getInputAs(join.getInput(1), true);
+        DBSPTypeTuple leftElementType = left.getOutputZSetElementType().to(DBSPTypeTuple.class);
+        DBSPTypeTuple rightElementType = right.getOutputZSetElementType().to(DBSPTypeTuple.class);
+
+        JoinConditionAnalyzer analyzer = new JoinConditionAnalyzer(node,
+                leftElementType.size(), this.compiler.getTypeCompiler());
+        JoinConditionAnalyzer.ConditionDecomposition decomposition = analyzer.analyze(join.getCondition());
+        if (decomposition.getLeftOver() != null)
             throw new UnimplementedException(node);
+        // Rows with null keys never match; they are never part of a semi-join,
+        // and they are always part of an anti-join.
+        DBSPOperator filteredLeft = this.filterNonNullKeys(join, Linq.map(decomposition.comparisons, c -> c.leftColumn), left);
+        DBSPOperator filteredRight = this.filterNonNullKeys(join, Linq.map(decomposition.comparisons, c -> c.rightColumn), right);
+
+        DBSPVariablePath l = leftElementType.ref().var();
+        DBSPVariablePath r = rightElementType.ref().var();
+        DBSPExpression leftKey = new DBSPTupleExpression(node, Linq.map(
+                decomposition.comparisons,
+                c -> l.deepCopy().deref().field(c.leftColumn).applyCloneIfNeeded().cast(c.commonType)));
+        DBSPExpression rightKey = new DBSPTupleExpression(node, Linq.map(
+                decomposition.comparisons,
+                c -> r.deepCopy().deref().field(c.rightColumn).applyCloneIfNeeded().cast(c.commonType)));
+        DBSPTupleExpression leftRow = DBSPTupleExpression.flatten(l.deref());
+        DBSPOperator leftIndex = this.indexBy(node, filteredLeft, l, leftKey, leftRow);
+        DBSPOperator rightKeys = this.indexBy(node, filteredRight, r, rightKey, new DBSPRawTupleExpression());
+
+        // Semi-joins are always incremental, so we have to wrap them into a D-I pair
+        DBSPDifferentiateOperator leftDiff = new DBSPDifferentiateOperator(node, leftIndex);
+        this.circuit.addOperator(leftDiff);
+        DBSPDifferentiateOperator rightDiff = new DBSPDifferentiateOperator(node, rightKeys);
+        this.circuit.addOperator(rightDiff);
+        DBSPOperator semi = anti ?
+                new DBSPAntiJoinOperator(node, leftDiff, rightDiff) :
+                new DBSPSemiJoinOperator(node, leftDiff, rightDiff);
+        this.circuit.addOperator(semi);
+        DBSPIntegrateOperator integral = new DBSPIntegrateOperator(node, semi);
+        this.circuit.addOperator(integral);
+        DBSPOperator result = new DBSPDeindexOperator(node, integral);
+        if (anti && filteredLeft != left) {
+            // Add the left rows with null keys
+            this.circuit.addOperator(result);
+            DBSPOperator nullKeys = new DBSPSubtractOperator(node, left, filteredLeft);
+            this.circuit.addOperator(nullKeys);
+            result = new DBSPSumOperator(node, result, nullKeys);
+        }
+        this.assignOperator(join, result);
+    }
+
+    /** Pad a row with nulls for all the columns of the other join input.
+     * @param row         Expression producing the row.
+     * @param rowType     Type of the row in the join result.
+     * @param otherType   Type of the columns of the other input in the join result.
+     * @param rowIsLeft   True if the row comes from the left input. */
+    private static DBSPTupleExpression padWithNulls(
+            DBSPExpression row, DBSPTypeTuple rowType, DBSPTypeTuple otherType, boolean rowIsLeft) {
+        DBSPTupleExpression cast = DBSPTupleExpression.flatten(row).pointwiseCast(rowType);
+        DBSPTupleExpression nulls = new DBSPTupleExpression(
+                Linq.map(otherType.tupFields, DBSPLiteral::none, DBSPExpression.class));
+        return rowIsLeft ?
+                DBSPTupleExpression.flatten(cast, nulls) :
+                DBSPTupleExpression.flatten(nulls, cast);
+    }
+
+    /** Implement a LEFT, RIGHT, or FULL join whose condition only compares columns
+     * for equality using a {@link DBSPOuterJoinOperator}.  A RIGHT join is
+     * a LEFT join with the inputs swapped.
+     * @param left           Left input of the join.
+     * @param right          Right input of the join.
+     * @param filteredLeft   Left input without the rows with null keys.
+     * @param filteredRight  Right input without the rows with null keys.
+     * @param leftIndex      Filtered left input indexed by the join key.
+     * @param rightIndex     Filtered right input indexed by the join key. */
+    private DBSPOperator outerJoin(CalciteObject node, JoinRelType joinType, DBSPTypeTuple resultType,
+                                   DBSPOperator left, DBSPOperator right,
+                                   DBSPOperator filteredLeft, DBSPOperator filteredRight,
+                                   DBSPOperator leftIndex, DBSPOperator rightIndex) {
+        DBSPTypeIndexedZSet leftIndexType = leftIndex.getOutputIndexedZSetType();
+        DBSPTypeTuple leftElementType = leftIndexType.elementType.to(DBSPTypeTuple.class);
+        DBSPTypeTuple rightElementType = rightIndex.getOutputIndexedZSetType().elementType.to(DBSPTypeTuple.class);
+        DBSPType keyType = leftIndexType.keyType;
+        int leftColumns = leftElementType.size();
+        DBSPTypeTuple leftResultType = resultType.slice(0, leftColumns);
+        DBSPTypeTuple rightResultType = resultType.slice(leftColumns, resultType.size());
+        boolean keepLeft = joinType == JoinRelType.LEFT || joinType == JoinRelType.FULL;
+        boolean keepRight = joinType == JoinRelType.RIGHT || joinType == JoinRelType.FULL;
+
+        DBSPVariablePath k = keyType.ref().var();
+        DBSPVariablePath l = leftElementType.ref().var();
+        DBSPVariablePath r = rightElementType.ref().var();
+        DBSPTupleExpression lr = DBSPTupleExpression.flatten(l.deref(), r.deref()).pointwiseCast(resultType);
+
+        // Only the columns of the missing side are nullable, so each closure is only built if needed
+        @Nullable DBSPClosureExpression leftFunction = null;
+        if (keepLeft) {
+            DBSPVariablePath lk = keyType.ref().var();
+            DBSPVariablePath lv = leftElementType.ref().var();
+            leftFunction = padWithNulls(lv.deref(), leftResultType, rightResultType, true)
+                    .closure(lk.asParameter(), lv.asParameter());
+        }
+        @Nullable DBSPClosureExpression rightFunction = null;
+        if (keepRight) {
+            DBSPVariablePath rk = keyType.ref().var();
+            DBSPVariablePath rv = rightElementType.ref().var();
+            rightFunction = padWithNulls(rv.deref(), rightResultType, leftResultType, false)
+                    .closure(rk.asParameter(), rv.asParameter());
+        }
+
+        // The outer join is always incremental, so we have to wrap it into a D-I pair
+        DBSPDifferentiateOperator leftDiff = new DBSPDifferentiateOperator(node, leftIndex);
+        this.circuit.addOperator(leftDiff);
+        DBSPDifferentiateOperator rightDiff = new DBSPDifferentiateOperator(node, rightIndex);
+        this.circuit.addOperator(rightDiff);
+        boolean isMultiset = left.isMultiset || right.isMultiset;
+        DBSPOperator outer;
+        if (leftFunction != null) {
+            outer = new DBSPOuterJoinOperator(node, this.makeZSet(resultType),
+                    lr.closure(k.asParameter(), l.asParameter(), r.asParameter()),
+                    leftFunction, rightFunction, isMultiset, leftDiff, rightDiff);
+        } else {
+            outer = new DBSPOuterJoinOperator(node, this.makeZSet(resultType),
+                    lr.closure(k.asParameter(), r.asParameter(), l.asParameter()),
+                    Objects.requireNonNull(rightFunction), null, isMultiset, rightDiff, leftDiff);
+        }
+        this.circuit.addOperator(outer);
+        DBSPOperator result = new DBSPIntegrateOperator(node, outer);
+
+        // Rows with null keys never match
+        if (keepLeft && filteredLeft != left) {
+            this.circuit.addOperator(result);
+            DBSPOperator nullKeys = new DBSPSubtractOperator(node, left, filteredLeft);
+            this.circuit.addOperator(nullKeys);
+            DBSPVariablePath v = leftElementType.ref().var();
+            DBSPOperator padded = new DBSPMapOperator(node,
+                    padWithNulls(v.deref(), leftResultType, rightResultType, true).closure(v.asParameter()),
+                    this.makeZSet(resultType), nullKeys);
+            this.circuit.addOperator(padded);
+            result = new DBSPSumOperator(node, result, padded);
+        }
+        if (keepRight && filteredRight != right) {
+            this.circuit.addOperator(result);
+            DBSPOperator nullKeys = new DBSPSubtractOperator(node, right, filteredRight);
+            this.circuit.addOperator(nullKeys);
+            DBSPVariablePath v = rightElementType.ref().var();
+            DBSPOperator padded = new DBSPMapOperator(node,
+                    padWithNulls(v.deref(), rightResultType, leftResultType, false).closure(v.asParameter()),
+                    this.makeZSet(resultType), nullKeys);
+            this.circuit.addOperator(padded);
+            result = new DBSPSumOperator(node, result, padded);
+        }
+        return result;
+    }
+
+    private void visitJoin(LogicalJoin join) {
+        JoinRelType joinType = join.getJoinType();
+        if (joinType == JoinRelType.ANTI || joinType == JoinRelType.SEMI) {
+            this.visitSemiJoin(join);
+            return;
+        }
+
+        CalciteObject node = CalciteObject.create(join);
 
         DBSPTypeTuple resultType = this.convertType(join.getRowType(), false).to(DBSPTypeTuple.class);
         if (join.getInputs().size() != 2)
@@ -999,6 +1424,13 @@ public class CalciteToDBSPCompiler extends RelVisitor
                 makeIndexedZSet(rightKey.getType(), rightElementType), false, filteredRight);
         this.circuit.addOperator(rIndex);
 
+        if (leftOver == null && joinType != JoinRelType.INNER) {
+            DBSPOperator result = this.outerJoin(node, joinType, resultType,
+                    left, right, filteredLeft, filteredRight, leftIndex, rIndex);
+            this.assignOperator(join, result);
+            return;
+        }
+
         DBSPClosureExpression makeTuple = lr.closure(k.asParameter(), l.asParameter(), r.asParameter());
         DBSPOperator joinResult = new DBSPStreamJoinOperator(node, this.makeZSet(lr.getType()),
                 makeTuple, left.isMultiset || right.isMultiset, leftIndex, rIndex);
@@ -1264,7 +1696,9 @@ public class CalciteToDBSPCompiler extends RelVisitor
                 case DESCENDING -> false;
                 default -> throw new UnimplementedException(comparator.getNode());
             };
-            comparator = new DBSPFieldComparatorExpression(comparator.getNode(), comparator, field, ascending);
+            boolean nullsFirst = collation.nullDirection == RelFieldCollation.NullDirection.FIRST;
+            comparator = new DBSPFieldComparatorExpression(
+                    comparator.getNode(), comparator, field, ascending, nullsFirst);
         }
         return comparator;
     }
@@ -1413,6 +1847,13 @@ public class CalciteToDBSPCompiler extends RelVisitor
 
         abstract boolean isCompatible(AggregateCall call);
 
+        /** Try to compute the aggregates of 'other', which follow the aggregates of
+         * this group in the window output, in the same operator as this group.
+         * Returns true if successful. */
+        boolean fuse(GroupAndAggregates other) {
+            return false;
+        }
+
         static GroupAndAggregates newGroup(CalciteToDBSPCompiler compiler, Window window, Window.Group group,
                                            int windowFieldIndex, AggregateCall call) {
             GroupAndAggregates result = switch (call.getAggregation().getKind()) {
@@ -1571,8 +2012,39 @@ public class CalciteToDBSPCompiler extends RelVisitor
     }
 
     static class StandardAggregates extends GroupAndAggregates {
+        /** Groups with the same partition and order keys, but with different frames,
+         * whose aggregates are computed by the same operator.  The first one is 'group'. */
+        final List<Window.Group> frames;
+        /** For each aggregate call the index of its frame in 'frames'. */
+        final List<Integer> frameIndex;
+
         protected StandardAggregates(CalciteToDBSPCompiler compiler, Window window, Window.Group group, int windowFieldIndex) {
             super(compiler, window, group, windowFieldIndex);
+            this.frames = new ArrayList<>();
+            this.frames.add(group);
+            this.frameIndex = new ArrayList<>();
+        }
+
+        @Override
+        void addAggregate(AggregateCall call) {
+            super.addAggregate(call);
+            this.frameIndex.add(this.frames.size() - 1);
+        }
+
+        @Override
+        boolean fuse(GroupAndAggregates other) {
+            if (!(other instanceof StandardAggregates otherAggregates))
+                return false;
+            // These frames are computed by different operators
+            if (this.isCustomOrder() || otherAggregates.isCustomOrder())
+                return false;
+            if (!this.group.keys.equals(other.group.keys) ||
+                    !this.group.orderKeys.equals(other.group.orderKeys))
+                return false;
+            this.frames.add(other.group);
+            for (AggregateCall call: other.aggregateCalls)
+                this.addAggregate(call);
+            return true;
         }
 
         DBSPWindowBoundExpression compileWindowBound(
@@ -1611,15 +2083,122 @@ public class CalciteToDBSPCompiler extends RelVisitor
             return new DBSPWindowBoundExpression(node, bound.isPreceding(), numericBound);
         }
 
+        /** True if the rows of the window cannot be sorted by a single numeric value,
+         * so the frames are computed over the rows sorted by a comparator. */
+        boolean isCustomOrder() {
+            if (this.group.isRows)
+                return true;
+            List<RelFieldCollation> orderKeys = this.group.orderKeys.getFieldCollations();
+            if (orderKeys.size() != 1)
+                return true;
+            DBSPType sortType = this.inputRowType.getFieldType(orderKeys.get(0).getFieldIndex());
+            return !sortType.is(DBSPTypeInteger.class) &&
+                    !sortType.is(DBSPTypeTimestamp.class) &&
+                    !sortType.is(DBSPTypeDate.class) &&
+                    !sortType.is(DBSPTypeTime.class);
+        }
+
+        /** Implement a group whose frame is given in ROWS, or whose rows are not sorted
+         * by a single numeric value.  The rows of each partition of 'lastOperator' are
+         * sorted, and the aggregate over the frame of each row is appended to the row,
+         * similar to the way LAG is implemented. */
+        DBSPOperator implementCustomOrder(DBSPOperator lastOperator) {
+            DBSPTypeTuple lastTupleType = lastOperator.getOutputZSetElementType().to(DBSPTypeTuple.class);
+            DBSPVariablePath lastRowRefVar = lastTupleType.ref().var();
+
+            // Partition by the specified fields
+            List<Integer> partitionKeys = this.group.keys.toList();
+            List<DBSPExpression> expressions = Linq.map(partitionKeys,
+                    f -> lastRowRefVar.deepCopy().deref().field(f).applyCloneIfNeeded());
+            DBSPTupleExpression partition = new DBSPTupleExpression(node, expressions);
+
+            // Map each row to an expression of the form: |t| (partition, (*t).clone()))
+            DBSPExpression row = DBSPTupleExpression.flatten(
+                    lastRowRefVar.deepCopy().deref().applyClone());
+            DBSPExpression mapExpr = new DBSPRawTupleExpression(partition, row);
+            DBSPClosureExpression mapClo = mapExpr.closure(lastRowRefVar.asParameter());
+            DBSPOperator mapIndex = new DBSPMapIndexOperator(node, mapClo,
+                    CalciteToDBSPCompiler.makeIndexedZSet(partition.getType(), row.getType()), lastOperator);
+            this.compiler.circuit.addOperator(mapIndex);
+
+            // This operator is always incremental, so create the non-incremental version
+            // of it by adding a D and an I around it.
+            DBSPDifferentiateOperator diff = new DBSPDifferentiateOperator(node, mapIndex);
+            this.compiler.circuit.addOperator(diff);
+
+            DBSPComparatorExpression comparator = new DBSPNoComparatorExpression(node, row.getType());
+            comparator = CalciteToDBSPCompiler.generateComparator(this.group, comparator);
+
+            if (!this.group.isRows) {
+                // Without a numeric sort key the distance between rows is not defined.
+                for (RexWindowBound bound: Linq.list(this.group.lowerBound, this.group.upperBound)) {
+                    if (!bound.isUnbounded() && !bound.isCurrentRow())
+                        throw new UnimplementedException("Window frames with offsets must be ordered by " +
+                                "exactly one column with an integer, date, time, or timestamp type", node);
+                }
+            }
+
+            // ROWS bounds are row counts; RANGE bounds are unbounded or 0 here
+            DBSPType rowCountType = new DBSPTypeInteger(node, 64, false, false);
+            DBSPWindowBoundExpression lower = this.compileWindowBound(
+                    this.group.lowerBound, rowCountType, rowCountType, this.eComp);
+            DBSPWindowBoundExpression upper = this.compileWindowBound(
+                    this.group.upperBound, rowCountType, rowCountType, this.eComp);
+
+            List<DBSPType> types = Linq.map(aggregateCalls, c -> this.compiler.convertType(c.type, false));
+            DBSPTypeTuple tuple = new DBSPTypeTuple(types);
+            // The aggregated fields are a prefix of the fields of lastOperator
+            DBSPAggregate fd = this.compiler.createAggregate(
+                    window, aggregateCalls, tuple, lastTupleType, 0, ImmutableBitSet.of());
+            DBSPTypeTuple aggResultType = fd.defaultZeroType().to(DBSPTypeTuple.class);
+
+            // The output function appends the aggregates to the row:
+            // |row: &Row, agg: Option<&Agg>| {
+            //     let agg = if agg.is_none() { zero } else { (*agg.unwrap()).clone() };
+            //     Tup::new(row.0.clone(), ..., agg.0, ...) }
+            // The aggregate is None when the frame is empty.
+            DBSPVariablePath rowVar = lastTupleType.ref().var();
+            DBSPVariablePath aggVar = new DBSPVariablePath(aggResultType.ref().setMayBeNull(true));
+            DBSPExpression agg = new DBSPIfExpression(node, aggVar.is_null(),
+                    fd.defaultZero(), aggVar.deepCopy().unwrap().deref().applyClone());
+            DBSPLetStatement let = new DBSPLetStatement("agg", agg);
+            DBSPExpression[] allFields = new DBSPExpression[lastTupleType.size() + aggResultType.size()];
+            for (int i = 0; i < lastTupleType.size(); i++)
+                allFields[i] = rowVar.deepCopy().deref().field(i).applyCloneIfNeeded();
+            for (int i = 0; i < aggResultType.size(); i++) {
+                // Cast the results to whatever Calcite says they will be.
+                allFields[i + lastTupleType.size()] = let.getVarReference().field(i).applyCloneIfNeeded().cast(
+                        this.windowResultType.getFieldType(this.windowFieldIndex + i));
+            }
+            DBSPTupleExpression outputTuple = new DBSPTupleExpression(allFields);
+            DBSPClosureExpression outputProducer = new DBSPBlockExpression(Linq.list(let), outputTuple)
+                    .closure(rowVar.asParameter(), aggVar.asParameter());
+
+            DBSPTypeIndexedZSet outputType = CalciteToDBSPCompiler.makeIndexedZSet(
+                    diff.getOutputIndexedZSetType().keyType, outputTuple.getType());
+            DBSPOperator windowAgg;
+            if (this.group.isRows)
+                windowAgg = new DBSPRowsAggregateOperator(
+                        node, null, fd, comparator, lower, upper, outputProducer, outputType, diff);
+            else
+                windowAgg = new DBSPRangeAggregateOperator(
+                        node, null, fd, comparator, lower, upper, outputProducer, outputType, diff);
+            this.compiler.circuit.addOperator(windowAgg);
+
+            DBSPIntegrateOperator integral = new DBSPIntegrateOperator(node, windowAgg);
+            this.compiler.circuit.addOperator(integral);
+
+            return new DBSPDeindexOperator(node, integral);
+        }
+
         @Override
         DBSPOperator implement(DBSPOperator input, DBSPOperator lastOperator) {
+            if (this.isCustomOrder())
+                return this.implementCustomOrder(lastOperator);
             // The final result is accumulated using join operators, which just keep adding columns to
             // the "lastOperator".  The "lastOperator" is initially the input node itself.
             List<RelFieldCollation> orderKeys = this.group.orderKeys.getFieldCollations();
             List<Integer> partitionKeys = this.group.keys.toList();
-            if (orderKeys.size() != 1)
-                // TODO: this is only true if we have window bounds
-                throw new UnimplementedException("ORDER BY should be on exactly one column", node);
             RelFieldCollation collation = orderKeys.get(0);
             int orderColumnIndex = collation.getFieldIndex();
             DBSPType sortType;
@@ -1674,9 +2253,13 @@ public class CalciteToDBSPCompiler extends RelVisitor
                 DBSPDifferentiateOperator diff = new DBSPDifferentiateOperator(node, mapIndex);
                 this.compiler.circuit.addOperator(diff);
 
-                // Create window description
-                DBSPWindowBoundExpression lb = this.compileWindowBound(group.lowerBound, sortType, unsignedSortType, eComp);
-                DBSPWindowBoundExpression ub = this.compileWindowBound(group.upperBound, sortType, unsignedSortType, eComp);
+                // Create window description; there is one range for each frame
+                final DBSPType finalSortType = sortType;
+                final DBSPType finalUnsignedSortType = unsignedSortType;
+                List<DBSPWindowBoundExpression> lb = Linq.map(this.frames,
+                        f -> this.compileWindowBound(f.lowerBound, finalSortType, finalUnsignedSortType, eComp));
+                List<DBSPWindowBoundExpression> ub = Linq.map(this.frames,
+                        f -> this.compileWindowBound(f.upperBound, finalSortType, finalUnsignedSortType, eComp));
 
                 List<DBSPType> types = Linq.map(aggregateCalls, c -> this.compiler.convertType(c.type, false));
                 DBSPTypeTuple tuple = new DBSPTypeTuple(types);
@@ -1703,10 +2286,26 @@ public class CalciteToDBSPCompiler extends RelVisitor
                                         unsignedSortType,
                                         aggResultType.setMayBeNull(true)));
 
+                // The result for each frame has the shape of the tuple of all aggregates,
+                // but only holds the aggregates of that frame; select the results of each frame:
+                // |frames: Vec<Tup>| Tup::new(frames[0].0.clone(), frames[1].1.clone(), ...)
+                @Nullable DBSPClosureExpression framesFunction = null;
+                if (this.frames.size() > 1) {
+                    DBSPVariablePath results = new DBSPTypeVec(aggResultType, false).var();
+                    DBSPExpression[] fields = new DBSPExpression[aggResultType.size()];
+                    for (int i = 0; i < fields.length; i++) {
+                        DBSPExpression frame = new DBSPBinaryExpression(node, aggResultType, DBSPOpcode.RUST_INDEX,
+                                results.deepCopy(), new DBSPUSizeLiteral(this.frameIndex.get(i)));
+                        fields[i] = frame.field(i).applyCloneIfNeeded();
+                    }
+                    framesFunction = new DBSPTupleExpression(fields).closure(results.asParameter());
+                }
+
                 // Compute aggregates for the window
                 windowAgg = new DBSPPartitionedRollingAggregateOperator(
                         node, partitioningFunction, null, fd,
-                        lb, ub, windowOutputType, diff);
+                        lb, ub, framesFunction, this.frames.size() > 1 ? this.frameIndex : List.of(),
+                        List.of(), windowOutputType, diff);
                 this.compiler.circuit.addOperator(windowAgg);
             }
 
@@ -1831,9 +2430,6 @@ public class CalciteToDBSPCompiler extends RelVisitor
     List<GroupAndAggregates> splitWindow(LogicalWindow window, int windowFieldIndex) {
         List<GroupAndAggregates> result = new ArrayList<>();
         for (Window.Group group: window.groups) {
-            if (group.isRows)
-                throw new UnimplementedException("WINDOW aggregate with ROWS not yet implemented",
-                        CalciteObject.create(window));
             List<AggregateCall> calls = group.getAggregateCalls(window);
             GroupAndAggregates previous = null;
             // Must keep call in the same order as in the original list,
@@ -1844,16 +2440,25 @@ public class CalciteToDBSPCompiler extends RelVisitor
                 } else if (previous.isCompatible(call)) {
                     previous.addAggregate(call);
                 } else {
-                    result.add(previous);
+                    addGroup(result, previous);
                     previous = GroupAndAggregates.newGroup(this, window, group, windowFieldIndex, call);
                 }
                 windowFieldIndex++;
             }
-            result.add(previous);
+            addGroup(result, Objects.requireNonNull(previous));
         }
         return result;
     }
 
+    /** Add a group to the list of groups of a window, fusing it with the last
+     * group if they can be computed by the same operator.  Only consecutive groups
+     * are fused, since the operators append their results to the window output in order. */
+    static void addGroup(List<GroupAndAggregates> groups, GroupAndAggregates group) {
+        if (!groups.isEmpty() && Utilities.last(groups).fuse(group))
+            return;
+        groups.add(group);
+    }
+
     void visitWindow(LogicalWindow window) {
         DBSPOperator input = this.getInputAs(window.getInput(0), true);
         DBSPTypeTuple inputRowType = this.convertType(
@@ -1909,19 +2514,20 @@ public class CalciteToDBSPCompiler extends RelVisitor
         CalciteObject node = CalciteObject.create(sort);
         RelNode input = sort.getInput();
         DBSPOperator opInput = this.getOperator(input);
-        if (this.options.languageOptions.ignoreOrderBy && sort.fetch == null) {
+        // The order of the rows can only be observed in the output of a view
+        boolean observable = this.sortedOutput &&
+                this.ancestors.isEmpty() &&
+                // Otherwise this is just a limit operator
+                !sort.getCollation().getFieldCollations().isEmpty();
+        if (!observable && sort.fetch == null && sort.offset == null) {
             Utilities.putNew(this.nodeOperator, sort, opInput);
             return;
         }
+        // We expect the limit and the offset to be constants
+        ExpressionCompiler expressionCompiler = new ExpressionCompiler(null, this.compiler);
+        DBSPExpression offset = null;
         if (sort.offset != null)
-            throw new UnimplementedException(node);
-
-        DBSPExpression limit = null;
-        if (sort.fetch != null) {
-            ExpressionCompiler expressionCompiler = new ExpressionCompiler(null, this.compiler);
-            // We expect the limit to be a constant
-            limit = expressionCompiler.compile(sort.fetch);
-        }
+            offset = expressionCompiler.compile(sort.offset);
 
         DBSPType inputRowType = this.convertType(input.getRowType(), false);
         DBSPVariablePath t = inputRowType.ref().var();
@@ -1935,37 +2541,58 @@ public class CalciteToDBSPCompiler extends RelVisitor
                 opInput);
         this.circuit.addOperator(index);
 
-        // Generate comparison function for sorting the vector
+        // Generate comparison function for sorting
         DBSPComparatorExpression comparator = makeComparator(sort, node, inputRowType);
 
-        if (sort.fetch != null) {
-            // TopK operator.
-            // Since TopK is always incremental we have to wrap it into a D-I pair
+        // Number the rows unless a sorted vector is requested
+        boolean ordered = observable && !this.options.languageOptions.sortedVector;
+        DBSPClosureExpression outputProducer = null;
+        if (ordered) {
+            // Each row is produced together with its row number in the sorted order.
+            DBSPVariablePath rowNumber = new DBSPVariablePath(new DBSPTypeInteger(
+                    node, 64, true, false));
+            DBSPVariablePath row = inputRowType.ref().var();
+            DBSPExpression position = rowNumber;
+            if (offset != null) {
+                // TopK numbers the rows from the start of the group, including
+                // the ones skipped; the rows of the view are numbered from 1.
+                DBSPType i64 = rowNumber.getType();
+                position = new DBSPBinaryExpression(node, i64, DBSPOpcode.SUB,
+                        rowNumber, offset.cast(i64));
+            }
+            DBSPExpression pair = new DBSPTupleExpression(position,
+                    new DBSPTupleExpression(DBSPTypeTupleBase.flatten(row.deref()), false));
+            outputProducer = pair.closure(rowNumber.asParameter(), row.asParameter());
+        }
+
+        DBSPExpression limit = null;
+        if (sort.fetch != null)
+            limit = expressionCompiler.compile(sort.fetch);
+        if (limit != null || offset != null || ordered) {
+            // Sorting is always incremental, so we have to wrap it into a D-I pair
             DBSPDifferentiateOperator diff = new DBSPDifferentiateOperator(node, index);
             this.circuit.addOperator(diff);
-            DBSPIndexedTopKOperator topK = new DBSPIndexedTopKOperator(
-                    node, DBSPIndexedTopKOperator.TopKNumbering.ROW_NUMBER,
-                    comparator, limit, null, diff);
-            this.circuit.addOperator(topK);
-            DBSPIntegrateOperator integral = new DBSPIntegrateOperator(node, topK);
-            this.circuit.addOperator(integral);
-            // If we ignore ORDER BY this is the result.
-            boolean done = this.options.languageOptions.ignoreOrderBy;
-            // We can also ignore the order by for some ancestors
-            if (!this.ancestors.isEmpty()) {
-                RelNode last = Utilities.last(this.ancestors);
-                if (last instanceof LogicalAggregate ||
-                        last instanceof LogicalProject ||
-                        last instanceof LogicalJoin) {
-                    done = true;
-                }
+            DBSPOperator sorted;
+            if (limit != null || offset != null) {
+                sorted = new DBSPIndexedTopKOperator(
+                        node, DBSPIndexedTopKOperator.TopKNumbering.ROW_NUMBER,
+                        comparator, offset,
+                        // OFFSET without LIMIT
+                        limit != null ? limit : new DBSPUSizeLiteral(Long.MAX_VALUE),
+                        outputProducer, diff);
+            } else {
+                // Global sort.  The sorted output is maintained incrementally,
+                // only the rows whose row number changes are produced.
+                sorted = new DBSPOrderByOperator(node, comparator, Objects.requireNonNull(outputProducer), diff);
             }
-            if (sort.getCollation().getFieldCollations().isEmpty())
-                // We don't really need to sort; this is just a limit operator
-                done = true;
-            if (done) {
+            this.circuit.addOperator(sorted);
+            DBSPIntegrateOperator integral = new DBSPIntegrateOperator(node, sorted);
+            this.circuit.addOperator(integral);
+            if (ordered || !observable) {
                 // We must drop the index we built.
                 DBSPDeindexOperator deindex = new DBSPDeindexOperator(node, integral);
+                if (ordered)
+                    this.numberedSorts.add(sort);
                 this.assignOperator(sort, deindex);
                 return;
             }
@@ -1973,6 +2600,7 @@ public class CalciteToDBSPCompiler extends RelVisitor
             // Fall through, continuing from the integral.
             index = integral;
         }
+
         // Global sort.  Implemented by aggregate in a single Vec<> which is then sorted.
         // Apply an aggregation function that just creates a vector.
         DBSPTypeVec vecType = new DBSPTypeVec(inputRowType, false);
@@ -2102,29 +2730,52 @@ public class CalciteToDBSPCompiler extends RelVisitor
         Logger.INSTANCE.belowLevel(this, 2)
                 .append(CalciteCompiler.getPlan(rel))
                 .newline();
+        // Local views are only used by other views, which do not observe their order
+        this.sortedOutput = !this.options.languageOptions.ignoreOrderBy &&
+                view.kind != SqlCreateLocalView.ViewKind.LOCAL;
         this.go(rel);
+        this.sortedOutput = false;
         DBSPOperator op = this.getOperator(rel);
 
         // The operator above may not contain all columns that were computed.
         RelRoot root = view.getRoot();
+        // The output element may be a Tuple, a (row number, Tuple) pair when we sort,
+        // or a Vec<Tuple> when the sorted output is a vector.
+        boolean numbered = rel instanceof LogicalSort sort && this.numberedSorts.contains(sort);
+        if (numbered && !this.options.ioOptions.emitHandles) {
+            // The catalog registers the output with the type of the rows of the view,
+            // so the row numbers are only available through the output handles.
+            DBSPVariablePath t = op.getOutputZSetElementType().ref().var();
+            DBSPExpression row = t.deref().field(1).applyCloneIfNeeded();
+            op = new DBSPMapOperator(view.getCalciteObject(), row.closure(t.asParameter()),
+                    this.makeZSet(row.getType()), op);
+            this.circuit.addOperator(op);
+            numbered = false;
+        }
+        if (numbered)
+            this.numberedViews.add(view.relationName);
         DBSPTypeZSet producedType = op.getOutputZSetType();
-        // The output element may be a Tuple or a Vec<Tuple> when we sort;
         DBSPType elemType = producedType.getElementType();
         DBSPTypeTupleBase tuple;
         boolean isVector = false;
         if (elemType.is(DBSPTypeVec.class)) {
             isVector = true;
             tuple = elemType.to(DBSPTypeVec.class).getElementType().to(DBSPTypeTupleBase.class);
+        } else if (numbered) {
+            tuple = elemType.to(DBSPTypeTupleBase.class).getFieldType(1).to(DBSPTypeTupleBase.class);
         } else {
             tuple = elemType.to(DBSPTypeTupleBase.class);
         }
         if (root.fields.size() != tuple.size()) {
-            DBSPVariablePath t = tuple.ref().var();
+            DBSPVariablePath t = (isVector ? tuple : elemType).ref().var();
+            DBSPExpression row = numbered ? t.deref().field(1) : t.deref();
             List<DBSPExpression> resultFields = new ArrayList<>();
             for (Map.Entry<Integer, String> field: root.fields) {
-                resultFields.add(t.deref().field(field.getKey()).applyCloneIfNeeded());
+                resultFields.add(row.field(field.getKey()).applyCloneIfNeeded());
             }
             DBSPExpression all = new DBSPTupleExpression(resultFields, false);
+            if (numbered)
+                all = new DBSPTupleExpression(t.deref().field(0), all);
             DBSPClosureExpression closure = all.closure(t.asParameter());
             DBSPType outputElementType = all.getType();
             if (isVector) {
@@ -0,0 +1,90 @@
+package org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler;
+
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.RelFactories;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.tools.RelBuilder;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Replaces the anti-joins produced by decorrelating NOT EXISTS and NOT IN subqueries
+ * with joins of type {@link JoinRelType#ANTI}.
+ *
+ * <p>Calcite has no rule that creates anti-joins; it expresses them as
+ * Filter(IS NULL(c)) over a LEFT JOIN, where c is a column of the right input which
+ * is never null in a matched row: either a column with a non-nullable type, such as
+ * the indicator column added by the subquery rewrite, or a key of the join condition.
+ * Such a filter keeps exactly the left rows which have no match, padded with nulls.
+ * Only equi-joins whose keys are compared with '=' are rewritten, since these are
+ * the only anti-joins that can be implemented by the compiler. */
+public class AntiJoinRewriter extends RelShuttleImpl {
+    @Override
+    public RelNode visit(LogicalFilter filter) {
+        RelNode result = super.visit(filter);
+        if (!(result instanceof LogicalFilter visited))
+            return result;
+        if (!(visited.getInput() instanceof LogicalJoin join) || join.getJoinType() != JoinRelType.LEFT)
+            return result;
+        JoinInfo info = join.analyzeCondition();
+        if (!info.isEqui() || info.leftKeys.isEmpty())
+            return result;
+        for (RexNode conjunct: RelOptUtil.conjunctions(join.getCondition()))
+            // IS NOT DISTINCT FROM also matches null keys
+            if (conjunct.getKind() != SqlKind.EQUALS)
+                return result;
+
+        int leftSize = join.getLeft().getRowType().getFieldCount();
+        List<RelDataTypeField> rightFields = join.getRight().getRowType().getFieldList();
+        boolean found = false;
+        List<RexNode> rest = new ArrayList<>();
+        for (RexNode conjunct: RelOptUtil.conjunctions(visited.getCondition())) {
+            if (!found && conjunct.getKind() == SqlKind.IS_NULL) {
+                RexNode operand = ((RexCall) conjunct).getOperands().get(0);
+                if (operand instanceof RexInputRef ref && ref.getIndex() >= leftSize) {
+                    int rightIndex = ref.getIndex() - leftSize;
+                    if (!rightFields.get(rightIndex).getType().isNullable() ||
+                            info.rightKeys.contains(rightIndex)) {
+                        found = true;
+                        continue;
+                    }
+                }
+            }
+            rest.add(conjunct);
+        }
+        if (!found)
+            return result;
+        // The other conjuncts can only refer to the left input
+        ImmutableBitSet leftColumns = ImmutableBitSet.range(leftSize);
+        for (RexNode conjunct: rest)
+            if (!leftColumns.contains(RelOptUtil.InputFinder.bits(conjunct)))
+                return result;
+
+        RelNode anti = join.copy(join.getTraitSet(), join.getCondition(),
+                join.getLeft(), join.getRight(), JoinRelType.ANTI, join.isSemiJoinDone());
+        RelBuilder builder = RelFactories.LOGICAL_BUILDER.create(join.getCluster(), null);
+        builder.push(anti);
+        if (!rest.isEmpty())
+            builder.filter(rest);
+        // Produce the same columns as the filter, with nulls for the right input
+        RexBuilder rexBuilder = join.getCluster().getRexBuilder();
+        List<RexNode> columns = new ArrayList<>(builder.fields());
+        List<RelDataTypeField> fields = join.getRowType().getFieldList();
+        for (int i = leftSize; i < fields.size(); i++)
+            columns.add(rexBuilder.makeNullLiteral(fields.get(i).getType()));
+        builder.project(columns, join.getRowType().getFieldNames(), true);
+        return builder.build();
+    }
+}
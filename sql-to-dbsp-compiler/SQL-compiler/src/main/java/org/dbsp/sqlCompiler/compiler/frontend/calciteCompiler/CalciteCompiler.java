@@ -23,6 +23,8 @@
 
 package org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.apache.calcite.avatica.util.Casing;
 import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.config.CalciteConnectionConfigImpl;
@@ -35,10 +37,14 @@ import org.apache.calcite.plan.hep.HepPlanner;
 import org.apache.calcite.plan.hep.HepProgramBuilder;
 import org.apache.calcite.prepare.CalciteCatalogReader;
 import org.apache.calcite.prepare.Prepare;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelRoot;
 import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.externalize.RelJson;
+import org.apache.calcite.rel.externalize.RelJsonReader;
+import org.apache.calcite.rel.externalize.RelJsonWriter;
 import org.apache.calcite.rel.logical.LogicalProject;
 import org.apache.calcite.rel.logical.LogicalTableScan;
 import org.apache.calcite.rel.logical.LogicalValues;
@@ -51,6 +57,8 @@ import org.apache.calcite.rel.type.RelDataTypeSystemImpl;
 import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
+import org.apache.calcite.rex.RexSubQuery;
 import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.runtime.CalciteContextException;
 import org.apache.calcite.runtime.MapEntry;
@@ -94,6 +102,7 @@ import org.apache.calcite.sql2rel.RelDecorrelator;
 import org.apache.calcite.sql2rel.SqlToRelConverter;
 import org.apache.calcite.sql2rel.StandardConvertletTable;
 import org.apache.calcite.tools.RelBuilder;
+import org.apache.calcite.util.Pair;
 import org.dbsp.generated.parser.DbspParserImpl;
 import org.dbsp.sqlCompiler.compiler.CompilerOptions;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
@@ -116,6 +125,7 @@ import org.dbsp.sqlCompiler.compiler.frontend.statements.DropTableStatement;
 import org.dbsp.sqlCompiler.compiler.frontend.statements.FrontEndStatement;
 import org.dbsp.sqlCompiler.compiler.frontend.statements.LatenessStatement;
 import org.dbsp.sqlCompiler.compiler.frontend.statements.TableModifyStatement;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.TableStatistics;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDecimal;
 import org.dbsp.util.ICastable;
 import org.dbsp.util.IWritesLogs;
@@ -124,6 +134,7 @@ import org.dbsp.util.Logger;
 import org.dbsp.util.Utilities;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -132,7 +143,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 
 /**
@@ -166,6 +179,8 @@ public class CalciteCompiler implements IWritesLogs {
     @Nullable
     private SqlToRelConverter converter;
     @Nullable
+    private Prepare.CatalogReader catalogReader;
+    @Nullable
     private ValidateTypes validateTypes;
     private final CalciteConnectionConfig connectionConfig;
     private final IErrorReporter errorReporter;
@@ -173,6 +188,15 @@ public class CalciteCompiler implements IWritesLogs {
     private final CustomFunctions customFunctions;
     /** User-defined types */
     private final HashMap<String, RelStruct> udt;
+    /** Signature of each table and view defined, used to validate the plans
+     * found in the {@link ViewPlanCache}.  Objects without a signature are never cached. */
+    private final Map<String, String> signatures;
+    /** Text of all the types and functions defined, which can influence the plans of views. */
+    private final StringBuilder definitions;
+    /** Number of views whose plans were found in the {@link ViewPlanCache}. */
+    public int viewCacheHits;
+    /** Number of views whose plans were not found in the {@link ViewPlanCache}. */
+    public int viewCacheMisses;
 
     /** Create a copy of the 'source' compiler which can be used to compile
      * some generated SQL without affecting its data structures */
@@ -187,6 +211,10 @@ public class CalciteCompiler implements IWritesLogs {
         this.customFunctions = new CustomFunctions(source.customFunctions);
         this.calciteCatalog = new Catalog(source.calciteCatalog);
         this.udt = new HashMap<>(source.udt);
+        this.signatures = new HashMap<>(source.signatures);
+        this.definitions = new StringBuilder(source.definitions);
+        this.viewCacheHits = 0;
+        this.viewCacheMisses = 0;
         this.rootSchema = CalciteSchema.createRootSchema(false, false).plus();
         this.copySchema(source.rootSchema);
         this.rootSchema.add(this.calciteCatalog.schemaName, this.calciteCatalog);
@@ -228,6 +256,19 @@ public class CalciteCompiler implements IWritesLogs {
         public boolean shouldConvertRaggedUnionTypesToVarying() { return true; }
     };
 
+    /** Type factories are stateless, so all compilations share one. */
+    static final SqlTypeFactoryImpl TYPE_FACTORY = new SqlTypeFactoryImpl(TYPE_SYSTEM);
+
+    /** Operators from the libraries of functions supported, shared by all compilations. */
+    static final SqlOperatorTable LIBRARY_OPERATORS =
+            SqlLibraryOperatorTableFactory.INSTANCE.getOperatorTable(
+                    EnumSet.of(SqlLibrary.STANDARD,
+                            SqlLibrary.MYSQL,
+                            SqlLibrary.POSTGRESQL,
+                            SqlLibrary.BIG_QUERY,
+                            SqlLibrary.SPARK,
+                            SqlLibrary.SPATIAL));
+
     /** Additional validation tests on top of Calcite.
      * We need to do these before conversion to Rel, because Rel
      * does not have source position information anymore. */
@@ -291,6 +332,10 @@ public class CalciteCompiler implements IWritesLogs {
         Properties connConfigProp = new Properties();
         connConfigProp.put(CalciteConnectionProperty.CASE_SENSITIVE.camelName(), String.valueOf(false));
         this.udt = new HashMap<>();
+        this.signatures = new HashMap<>();
+        this.definitions = new StringBuilder();
+        this.viewCacheHits = 0;
+        this.viewCacheMisses = 0;
         this.connectionConfig = new CalciteConnectionConfigImpl(connConfigProp);
         this.parserConfig = SqlParser.config()
                 .withLex(options.languageOptions.lexicalRules)
@@ -299,7 +344,7 @@ public class CalciteCompiler implements IWritesLogs {
                 .withUnquotedCasing(unquotedCasing)
                 .withQuotedCasing(Casing.UNCHANGED)
                 .withConformance(SqlConformanceEnum.LENIENT);
-        this.typeFactory = new SqlTypeFactoryImpl(TYPE_SYSTEM);
+        this.typeFactory = TYPE_FACTORY;
         this.calciteCatalog = new Catalog("schema");
         this.rootSchema = CalciteSchema.createRootSchema(false, false).plus();
         this.rootSchema.add(calciteCatalog.schemaName, this.calciteCatalog);
@@ -337,14 +382,7 @@ public class CalciteCompiler implements IWritesLogs {
 
     SqlOperatorTable createOperatorTable() {
         return SqlOperatorTables.chain(
-                SqlLibraryOperatorTableFactory.INSTANCE.getOperatorTable(
-                        // Libraries of functions supported.
-                        EnumSet.of(SqlLibrary.STANDARD,
-                                SqlLibrary.MYSQL,
-                                SqlLibrary.POSTGRESQL,
-                                SqlLibrary.BIG_QUERY,
-                                SqlLibrary.SPARK,
-                                SqlLibrary.SPATIAL)),
+                LIBRARY_OPERATORS,
                 SqlOperatorTables.of(this.customFunctions.getInitialFunctions())
         );
     }
@@ -368,6 +406,7 @@ public class CalciteCompiler implements IWritesLogs {
         Prepare.CatalogReader catalogReader = new CalciteCatalogReader(
                 CalciteSchema.from(this.rootSchema), Collections.singletonList(calciteCatalog.schemaName),
                 this.typeFactory, connectionConfig);
+        this.catalogReader = catalogReader;
         this.validator = SqlValidatorUtil.newValidator(
                 newOperatorTable,
                 catalogReader,
@@ -858,6 +897,142 @@ public class CalciteCompiler implements IWritesLogs {
                 line, col, endLine, endCol);
     }
 
+    /** Collect the names of the tables and views read by a plan, including in subqueries. */
+    static void collectScannedTables(RelNode rel, Set<String> tables) {
+        RexShuttle subQueries = new RexShuttle() {
+            @Override
+            public RexNode visitSubQuery(RexSubQuery subQuery) {
+                collectScannedTables(subQuery.rel, tables);
+                return subQuery;
+            }
+        };
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, @Nullable RelNode parent) {
+                if (node instanceof TableScan scan) {
+                    List<String> name = scan.getTable().getQualifiedName();
+                    tables.add(name.get(name.size() - 1));
+                }
+                node.accept(subQueries);
+                super.visit(node, ordinal, parent);
+            }
+        }.go(rel);
+    }
+
+    /** Key of a view in the {@link ViewPlanCache}. */
+    String viewCacheKey(String sqlStatement) {
+        return Utilities.hash(this.options.languageOptions + "\n" + this.definitions + "\n" + sqlStatement);
+    }
+
+    /** Look up the plan of a view in the {@link ViewPlanCache}.
+     * @return null if the plan is not cached, or if it was produced for different
+     * definitions of the tables and views it reads. */
+    @Nullable
+    ViewPlanCache.Entry lookupView(String directory, String key) {
+        ViewPlanCache.Entry entry = ViewPlanCache.lookup(directory, key);
+        if (entry == null)
+            return null;
+        for (Map.Entry<String, String> dep: entry.dependencies().entrySet()) {
+            if (!dep.getValue().equals(this.signatures.get(dep.getKey())))
+                return null;
+        }
+        return entry;
+    }
+
+    /** Read a plan serialized as JSON into the cluster of this compiler. */
+    RelNode readPlan(String plan) throws IOException {
+        SqlOperatorTable operatorTable = this.getValidator().getOperatorTable();
+        RelJsonReader reader = new RelJsonReader(this.cluster, Objects.requireNonNull(this.catalogReader),
+                this.rootSchema, json -> json.withOperatorTable(operatorTable));
+        return reader.read(plan);
+    }
+
+    /** Serialize a row type or a collation as JSON, in the form used by {@link RelJsonWriter}. */
+    static String writeJson(Object value) throws JsonProcessingException {
+        return ViewPlanCache.mapper.writeValueAsString(RelJson.create().toJson(value));
+    }
+
+    /** Read a row type serialized by {@link #writeJson}. */
+    RelDataType readRowType(String json) throws JsonProcessingException {
+        Object value = ViewPlanCache.mapper.readValue(json, Object.class);
+        return RelJson.create().toType(this.typeFactory, value);
+    }
+
+    /** Read a collation serialized by {@link #writeJson}. */
+    static RelCollation readCollation(String json) throws JsonProcessingException {
+        List<Map<String, Object>> value = ViewPlanCache.mapper.readValue(json, new TypeReference<>() {});
+        return RelJson.create().toCollation(value);
+    }
+
+    /** Rebuild the root of the plan of a view from an entry of the {@link ViewPlanCache}.
+     * @return null if the plan can't be read. */
+    @Nullable
+    RelRoot readCachedView(ViewPlanCache.Entry entry) {
+        try {
+            RelNode rel = this.readPlan(entry.plan());
+            List<Pair<Integer, String>> fields = new ArrayList<>();
+            for (int i = 0; i < entry.ordinals().size(); i++)
+                fields.add(Pair.of(entry.ordinals().get(i), entry.names().get(i)));
+            RelDataType rowType = this.readRowType(entry.rowType());
+            RelCollation collation = readCollation(entry.collation());
+            return new RelRoot(rel, rowType, SqlKind.SELECT, fields, collation, List.of());
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /** Insert the plan of a view in the {@link ViewPlanCache} and compute the signature of the view.
+     * The plan is only cached if it can be read back unchanged.
+     * @return The signature of the view, or null if the view reads objects
+     * without signatures, which can't be cached. */
+    @Nullable
+    String cacheView(String directory, String key, RelRoot converted, RelNode optimized) {
+        Set<String> tables = new TreeSet<>();
+        collectScannedTables(converted.rel, tables);
+        collectScannedTables(optimized, tables);
+        Map<String, String> dependencies = new TreeMap<>();
+        for (String table: tables) {
+            String signature = this.signatures.get(table);
+            if (signature == null)
+                return null;
+            dependencies.put(table, signature);
+        }
+        try {
+            RelJsonWriter writer = new RelJsonWriter();
+            optimized.explain(writer);
+            String plan = writer.asString();
+            RelNode read = this.readPlan(plan);
+            String rowType = writeJson(converted.validatedRowType);
+            String collation = writeJson(converted.collation);
+            if (RelOptUtil.toString(read).equals(RelOptUtil.toString(optimized)) &&
+                    read.getRowType().getFullTypeString().equals(optimized.getRowType().getFullTypeString()) &&
+                    this.readRowType(rowType).getFullTypeString().equals(
+                            converted.validatedRowType.getFullTypeString()) &&
+                    readCollation(collation).equals(converted.collation)) {
+                List<Integer> ordinals = new ArrayList<>();
+                List<String> names = new ArrayList<>();
+                for (Map.Entry<Integer, String> field: converted.fields) {
+                    ordinals.add(field.getKey());
+                    names.add(field.getValue());
+                }
+                ViewPlanCache.insert(directory, key,
+                        new ViewPlanCache.Entry(dependencies, ordinals, names, rowType, collation, plan));
+            }
+        } catch (Exception ex) {
+            // Some plans have no JSON form, e.g., if they use functions unknown to Calcite;
+            // they are not cached, but the views that read them can still be cached.
+            Logger.INSTANCE.belowLevel(this, 2)
+                    .append("Cannot cache plan: ")
+                    .append(ex.getMessage())
+                    .newline();
+        }
+        return viewSignature(key, dependencies);
+    }
+
+    static String viewSignature(String key, Map<String, String> dependencies) {
+        return Utilities.hash(key + dependencies);
+    }
+
     /** Compile a SQL statement.
      * @param node         Compiled version of the SQL statement.
      * @param sqlStatement SQL statement as a string to compile. */
@@ -877,6 +1052,7 @@ public class CalciteCompiler implements IWritesLogs {
                 SqlDropTable dt = (SqlDropTable) node;
                 String tableName = dt.name.getSimple();
                 this.calciteCatalog.dropTable(tableName);
+                this.signatures.remove(tableName);
                 return new DropTableStatement(node, sqlStatement, tableName);
             }
             case CREATE_TABLE: {
@@ -886,12 +1062,17 @@ public class CalciteCompiler implements IWritesLogs {
                 String tableName = ct.name.getSimple();
                 List<RelColumnMetadata> cols = this.createTableColumnsMetadata(Objects.requireNonNull(ct.columnList));
                 @Nullable Map<String, String> properties = this.createConnectorProperties(ct.connectorProperties);
+                TableStatistics statistics = TableStatistics.create(this.errorReporter, object, cols, properties);
+                // The statistics are only used by the compiler
+                properties = TableStatistics.connectorProperties(properties);
                 CreateTableStatement table = new CreateTableStatement(
-                        node, sqlStatement, tableName, Utilities.identifierIsQuoted(ct.name), cols, properties);
+                        node, sqlStatement, tableName, Utilities.identifierIsQuoted(ct.name), cols, properties,
+                        statistics);
                 boolean success = this.calciteCatalog.addTable(
                         tableName, table.getEmulatedTable(), this.errorReporter, table);
                 if (!success)
                     return null;
+                this.signatures.put(tableName, Utilities.hash(sqlStatement));
                 return table;
             }
             case CREATE_FUNCTION: {
@@ -910,6 +1091,7 @@ public class CalciteCompiler implements IWritesLogs {
                 if (nullableResult != null)
                     returnType = this.typeFactory.createTypeWithNullability(returnType,  nullableResult);
                 RexNode bodyExp = this.createFunction(decl, sources);
+                this.definitions.append(sqlStatement).append("\n");
                 ExternalFunction function = this.customFunctions.createUDF(
                         CalciteObject.create(node), decl.getName(), structType, returnType, bodyExp);
                 return new CreateFunctionStatement(node, sqlStatement, function);
@@ -923,13 +1105,39 @@ public class CalciteCompiler implements IWritesLogs {
                 Logger.INSTANCE.belowLevel(this, 2)
                         .append(query.toString())
                         .newline();
-                RelRoot relRoot = converter.convertQuery(query, true, true);
+                String cacheDirectory = this.options.languageOptions.cacheViews;
+                boolean useCache = !cacheDirectory.isEmpty();
+                String key = useCache ? this.viewCacheKey(sqlStatement) : "";
+                @Nullable ViewPlanCache.Entry cached = useCache ? this.lookupView(cacheDirectory, key) : null;
+                @Nullable RelRoot relRoot = cached != null ? this.readCachedView(cached) : null;
+                boolean hit = relRoot != null;
+                if (hit) {
+                    Logger.INSTANCE.belowLevel(this, 2)
+                            .append("Using cached plan for view ")
+                            .append(cv.name.getSimple())
+                            .newline();
+                    this.viewCacheHits++;
+                } else {
+                    if (useCache)
+                        this.viewCacheMisses++;
+                    relRoot = converter.convertQuery(query, true, true);
+                }
                 List<RelColumnMetadata> columns = this.createColumnsMetadata(CalciteObject.create(node),
                         cv.name, true, relRoot, cv.columnList);
                 @Nullable Map<String, String> connectorProperties = this.createConnectorProperties(cv.connectorProperties);
-                RelNode optimized = this.optimize(relRoot.rel);
-                relRoot = relRoot.withRel(optimized);
                 String viewName = cv.name.getSimple();
+                @Nullable String signature = null;
+                RelNode optimized;
+                if (hit) {
+                    // Cached plans are already optimized
+                    optimized = relRoot.rel;
+                    signature = viewSignature(key, Objects.requireNonNull(cached).dependencies());
+                } else {
+                    optimized = this.optimize(relRoot.rel);
+                    if (useCache)
+                        signature = this.cacheView(cacheDirectory, key, relRoot, optimized);
+                }
+                relRoot = relRoot.withRel(optimized);
                 CreateViewStatement view = new CreateViewStatement(
                         cv, sqlStatement,
                         cv.name.getSimple(), Utilities.identifierIsQuoted(cv.name),
@@ -938,6 +1146,8 @@ public class CalciteCompiler implements IWritesLogs {
                 boolean success = this.calciteCatalog.addTable(viewName, view.getEmulatedTable(), this.errorReporter, view);
                 if (!success)
                     return null;
+                if (signature != null)
+                    this.signatures.put(viewName, signature);
                 return view;
             }
             case CREATE_TYPE: {
@@ -965,6 +1175,7 @@ public class CalciteCompiler implements IWritesLogs {
                 };
 
                 String typeName = ct.name.getSimple();
+                this.definitions.append(sqlStatement).append("\n");
                 this.rootSchema.add(typeName, proto);
                 RelDataType relDataType = proto.apply(this.typeFactory);
                 FrontEndStatement result = new CreateTypeStatement(node, sqlStatement, ct, typeName, relDataType);
@@ -8,8 +8,11 @@ import org.apache.calcite.plan.hep.HepProgramBuilder;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.rules.CoreRules;
 import org.apache.calcite.rel.rules.PruneEmptyRules;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.CalciteTableDescription;
 import org.dbsp.util.IWritesLogs;
 import org.dbsp.util.Logger;
 
@@ -110,13 +113,24 @@ public class CalciteOptimizer implements IWritesLogs {
     static class OuterJoinFinder extends RelVisitor {
         public int outerJoinCount = 0;
         public int joinCount = 0;
+        /** Joins other than inner and left joins */
+        public int otherJoinCount = 0;
+        /** Scanned tables which declare statistics */
+        public int tablesWithStatistics = 0;
         @Override public void visit(
                 RelNode node, int ordinal,
                 @org.checkerframework.checker.nullness.qual.Nullable RelNode parent) {
+            if (node instanceof TableScan scan) {
+                CalciteTableDescription table = scan.getTable().unwrap(CalciteTableDescription.class);
+                if (table != null && table.getStatistics().isKnown())
+                    ++tablesWithStatistics;
+            }
             if (node instanceof Join join) {
                 ++joinCount;
                 if (join.getJoinType().isOuterJoin())
                     ++outerJoinCount;
+                if (join.getJoinType() != JoinRelType.INNER && join.getJoinType() != JoinRelType.LEFT)
+                    ++otherJoinCount;
             }
             super.visit(node, ordinal, parent);
         }
@@ -162,6 +176,9 @@ public class CalciteOptimizer implements IWritesLogs {
                 CoreRules.AGGREGATE_EXPAND_DISTINCT_AGGREGATES));
 
         this.addStep(new BaseOptimizerStep("Join order") {
+            /** True if the joins are collected into MultiJoins, which must be reordered. */
+            boolean reorder = false;
+
             @Override
             HepProgram getProgram(RelNode node) {
                 this.addRules(
@@ -174,18 +191,45 @@ public class CalciteOptimizer implements IWritesLogs {
 
                 OuterJoinFinder finder = new OuterJoinFinder();
                 finder.run(node);
-                // Bushy join optimization fails when the query contains outer joins.
-                boolean hasOuterJoins = (finder.outerJoinCount > 0) || (finder.joinCount < 3);
-                if (!hasOuterJoins) {
+                // Joins are ordered by their incremental cost only when some
+                // table declares statistics; only inner and left joins can be reordered.
+                this.reorder = finder.tablesWithStatistics > 0 &&
+                        finder.joinCount >= 2 && finder.otherJoinCount == 0;
+                if (this.reorder) {
                     this.addRules(
                             CoreRules.JOIN_TO_MULTI_JOIN,
-                            CoreRules.PROJECT_MULTI_JOIN_MERGE,
-                            CoreRules.MULTI_JOIN_OPTIMIZE_BUSHY
+                            CoreRules.PROJECT_MULTI_JOIN_MERGE
                     );
+                } else {
+                    // Bushy join optimization fails when the query contains outer joins.
+                    boolean hasOuterJoins = (finder.outerJoinCount > 0) || (finder.joinCount < 3);
+                    if (!hasOuterJoins) {
+                        this.addRules(
+                                CoreRules.JOIN_TO_MULTI_JOIN,
+                                CoreRules.PROJECT_MULTI_JOIN_MERGE,
+                                CoreRules.MULTI_JOIN_OPTIMIZE_BUSHY
+                        );
+                    }
                 }
                 this.builder.addMatchOrder(HepMatchOrder.BOTTOM_UP);
                 return this.builder.build();
             }
+
+            @Override
+            RelNode optimize(RelNode rel) {
+                RelNode result = super.optimize(rel);
+                if (!this.reorder)
+                    return result;
+                // Replace the MultiJoins with joins in the order with the lowest incremental cost
+                RelNode reordered = result.accept(new IncrementalJoinOrder());
+                Logger.INSTANCE.belowLevel(CalciteOptimizer.this, 1)
+                        .append("After incremental join order")
+                        .increase()
+                        .append(CalciteCompiler.getPlan(reordered))
+                        .decrease()
+                        .newline();
+                return reordered;
+            }
         });
 
         SimpleOptimizerStep merge = new SimpleOptimizerStep(
@@ -213,6 +257,42 @@ public class CalciteOptimizer implements IWritesLogs {
                 CoreRules.PROJECT_JOIN_JOIN_REMOVE,
                 CoreRules.PROJECT_JOIN_REMOVE
         ));
+        // Joins with the distinct keys of a collection which only keep the
+        // left columns, e.g., decorrelated IN and EXISTS subqueries.
+        this.addStep(new SimpleOptimizerStep("Semi-joins",
+                CoreRules.PROJECT_TO_SEMI_JOIN,
+                CoreRules.JOIN_TO_SEMI_JOIN
+        ));
+        // Left joins filtered to keep only the unmatched rows, e.g., decorrelated
+        // NOT EXISTS subqueries.  Calcite has no rule that creates anti-joins.
+        this.addStep(new CalciteOptimizerStep() {
+            @Override
+            String getName() {
+                return "Anti-joins";
+            }
+
+            @Override
+            HepProgram getProgram(RelNode node) {
+                return new HepProgramBuilder().build();
+            }
+
+            @Override
+            RelNode optimize(RelNode rel) {
+                RelNode result = rel.accept(new AntiJoinRewriter());
+                if (rel != result) {
+                    Logger.INSTANCE.belowLevel(CalciteOptimizer.this, 1)
+                            .append("After ")
+                            .append(this.getName())
+                            .increase()
+                            .append(CalciteCompiler.getPlan(result))
+                            .decrease()
+                            .newline();
+                }
+                return result;
+            }
+        });
+        // Merge the projections that pad the anti-joins with nulls
+        this.addStep(merge);
         /*
         return Linq.list(
             CoreRules.AGGREGATE_PROJECT_PULL_UP_CONSTANTS,
@@ -35,11 +35,12 @@ import org.dbsp.util.Utilities;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Maintains the catalog: a mapping from names to objects. */
 // I am not sure this class is needed.
 public class Catalog extends AbstractSchema {
-    private static int crtid = 0;
+    private static final AtomicInteger crtid = new AtomicInteger();
 
     public final String schemaName;
     private final int id;
@@ -49,7 +50,7 @@ public class Catalog extends AbstractSchema {
     private final Map<String, RelProtoDataType> typeMap;
 
     public Catalog(String schemaName) {
-        this.id = crtid++;
+        this.id = crtid.getAndIncrement();
         this.schemaName = schemaName;
         this.tableMap = new HashMap<>();
         this.definition = new HashMap<>();
@@ -58,7 +59,7 @@ public class Catalog extends AbstractSchema {
     }
 
     public Catalog(Catalog other) {
-        this.id = crtid++;
+        this.id = crtid.getAndIncrement();
         this.schemaName = other.schemaName;
         this.tableMap = new HashMap<>(other.tableMap);
         this.definition = new HashMap<>(other.definition);
@@ -0,0 +1,487 @@
+package org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler;
+
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.RelVisitor;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.RelFactories;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.metadata.RelColumnOrigin;
+import org.apache.calcite.rel.metadata.RelMdUtil;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.rules.MultiJoin;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.tools.RelBuilder;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.CalciteTableDescription;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.TableStatistics;
+import org.dbsp.util.IWritesLogs;
+import org.dbsp.util.Logger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** Replaces each {@link MultiJoin} with a tree of joins, choosing the order of the
+ * joins that minimizes the cost of the incremental circuit.
+ *
+ * <p>An incremental circuit computes the changes of A join B as
+ * dA join B + A join dB, where A and B are the integrals of the inputs, kept in traces.
+ * The work is proportional to the size of the changes of each input,
+ * times the cost of a lookup in the trace of the other input, plus the size
+ * of the changes produced.  So the best order is the one with the smallest changes of
+ * the intermediate results, which is not always the one with the smallest intermediate
+ * results.  The sizes and the rates of change of the tables are supplied as
+ * {@link TableStatistics}; Calcite's metadata estimates the effect of the operations
+ * applied to the tables before they are joined.
+ *
+ * <p>Left outer joins are reordered only where this is legal: a null-generating input
+ * is joined by itself, as the right input of a left join, to a tree that contains all
+ * the inputs referred by its join condition.  Inner join conditions are applied as soon
+ * as all the inputs they refer to are present. */
+public class IncrementalJoinOrder extends RelShuttleImpl implements IWritesLogs {
+    /** Up to this number of inputs all join trees are considered;
+     * for more inputs the joins are chosen greedily. */
+    static final int MAX_EXHAUSTIVE = 10;
+
+    @Override
+    public RelNode visit(RelNode other) {
+        RelNode result = super.visit(other);
+        if (result instanceof MultiJoin multiJoin)
+            return new Planner(multiJoin).plan();
+        return result;
+    }
+
+    /** Estimated fraction of the rows of a relation which changes in each step. */
+    static double changeRate(RelNode rel) {
+        double[] rate = new double[1];
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, @Nullable RelNode parent) {
+                if (node instanceof TableScan scan) {
+                    CalciteTableDescription table = scan.getTable().unwrap(CalciteTableDescription.class);
+                    rate[0] += table != null ? table.getStatistics().changeRate :
+                            TableStatistics.DEFAULT_CHANGE_RATE;
+                }
+                super.visit(node, ordinal, parent);
+            }
+        }.go(rel);
+        return Math.min(1, rate[0]);
+    }
+
+    static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    /** A conjunct of the join condition.
+     * @param condition   Condition, referring to the fields of the MultiJoin.
+     * @param factors     Bitmap of the inputs referred by the condition.
+     * @param selectivity Estimated fraction of the rows that satisfy the condition. */
+    record Conjunct(RexNode condition, long factors, double selectivity) {}
+
+    /** A join tree.
+     * @param rel     Tree of joins.
+     * @param factors Inputs of the MultiJoin whose fields the tree produces, in order. */
+    record Plan(RelNode rel, List<Integer> factors) {}
+
+    /** Chooses the join order for one MultiJoin. */
+    class Planner {
+        final MultiJoin multiJoin;
+        final RelMetadataQuery mq;
+        final RexBuilder rexBuilder;
+        final List<RelNode> inputs;
+        final int count;
+        /** Index of the first field of each input in the MultiJoin output. */
+        final int[] offsets;
+        final int fieldCount;
+        /** Estimated number of rows of each input. */
+        final double[] rows;
+        /** Estimated fraction of the rows of each input which changes in each step. */
+        final double[] rates;
+        /** For null-generating inputs, the outer join condition. */
+        final List<@Nullable RexNode> outerConditions;
+        /** For null-generating inputs, the inputs referred by the outer join condition. */
+        final long[] dependencies;
+        final double[] outerSelectivity;
+        final List<Conjunct> conjuncts;
+        final Map<Long, Double> setRows;
+        /** For each join tree, the left input of its root. */
+        final Map<Long, Long> splits;
+
+        Planner(MultiJoin multiJoin) {
+            this.multiJoin = multiJoin;
+            this.mq = multiJoin.getCluster().getMetadataQuery();
+            this.rexBuilder = multiJoin.getCluster().getRexBuilder();
+            this.inputs = multiJoin.getInputs();
+            this.count = this.inputs.size();
+            this.offsets = new int[this.count];
+            int offset = 0;
+            for (int i = 0; i < this.count; i++) {
+                this.offsets[i] = offset;
+                offset += this.inputs.get(i).getRowType().getFieldCount();
+            }
+            this.fieldCount = offset;
+            this.rows = new double[this.count];
+            this.rates = new double[this.count];
+            for (int i = 0; i < this.count; i++) {
+                Double estimate = this.mq.getRowCount(this.inputs.get(i));
+                this.rows[i] = estimate == null ? 100 : Math.max(1, estimate);
+                this.rates[i] = changeRate(this.inputs.get(i));
+            }
+            this.outerConditions = new ArrayList<>();
+            this.dependencies = new long[this.count];
+            this.outerSelectivity = new double[this.count];
+            for (int i = 0; i < this.count; i++) {
+                @Nullable RexNode condition = null;
+                if (multiJoin.getJoinTypes().get(i) == JoinRelType.LEFT) {
+                    condition = multiJoin.getOuterJoinConditions().get(i);
+                    if (condition == null)
+                        condition = this.rexBuilder.makeLiteral(true);
+                    this.dependencies[i] = this.factors(condition) & ~(1L << i);
+                    double selectivity = 1;
+                    for (RexNode conjunct: RelOptUtil.conjunctions(condition))
+                        selectivity *= this.selectivity(conjunct);
+                    this.outerSelectivity[i] = selectivity;
+                }
+                this.outerConditions.add(condition);
+            }
+            this.conjuncts = new ArrayList<>();
+            for (RexNode conjunct: RelOptUtil.conjunctions(multiJoin.getJoinFilter())) {
+                if (conjunct.isAlwaysTrue())
+                    continue;
+                this.conjuncts.add(new Conjunct(conjunct, this.factors(conjunct), this.selectivity(conjunct)));
+            }
+            this.setRows = new HashMap<>();
+            this.splits = new HashMap<>();
+        }
+
+        boolean isNullGenerating(int factor) {
+            return this.outerConditions.get(factor) != null;
+        }
+
+        int factorOf(int field) {
+            for (int i = this.count - 1; i > 0; i--)
+                if (field >= this.offsets[i])
+                    return i;
+            return 0;
+        }
+
+        /** Bitmap of the inputs referred by an expression. */
+        long factors(RexNode expression) {
+            long result = 0;
+            for (int field: RelOptUtil.InputFinder.bits(expression))
+                result |= 1L << this.factorOf(field);
+            return result;
+        }
+
+        /** Estimated number of distinct values of a field of the MultiJoin. */
+        double distinct(int field) {
+            int factor = this.factorOf(field);
+            double result = this.rows[factor];
+            RelColumnOrigin origin = this.mq.getColumnOrigin(
+                    this.inputs.get(factor), field - this.offsets[factor]);
+            if (origin != null && !origin.isDerived()) {
+                RelOptTable table = origin.getOriginTable();
+                CalciteTableDescription description = table.unwrap(CalciteTableDescription.class);
+                if (description != null) {
+                    Double distinct = description.getStatistics().getDistinct(
+                            origin.getOriginColumnOrdinal(), description.getColumns());
+                    if (distinct != null)
+                        result = Math.min(result, distinct);
+                }
+            }
+            return Math.max(1, result);
+        }
+
+        /** Estimated selectivity of a condition.  For an equality between fields of two
+         * inputs this is 1 / the larger number of distinct values of the two fields. */
+        double selectivity(RexNode condition) {
+            if (condition.isA(SqlKind.EQUALS) || condition.isA(SqlKind.IS_NOT_DISTINCT_FROM)) {
+                RexCall call = (RexCall) condition;
+                RexNode left = RexUtil.removeCast(call.getOperands().get(0));
+                RexNode right = RexUtil.removeCast(call.getOperands().get(1));
+                if (left instanceof RexInputRef l && right instanceof RexInputRef r &&
+                        this.factorOf(l.getIndex()) != this.factorOf(r.getIndex()))
+                    return 1.0 / Math.max(this.distinct(l.getIndex()), this.distinct(r.getIndex()));
+            }
+            return RelMdUtil.guessSelectivity(condition);
+        }
+
+        /** Estimated number of rows of the join of a set of inputs. */
+        double rows(long set) {
+            Double cached = this.setRows.get(set);
+            if (cached != null)
+                return cached;
+            double result = 1;
+            for (int i = 0; i < this.count; i++) {
+                if ((set & (1L << i)) == 0)
+                    continue;
+                if (this.isNullGenerating(i))
+                    // A left join does not reduce the rows of the left input
+                    result *= Math.max(1, this.rows[i] * this.outerSelectivity[i]);
+                else
+                    result *= this.rows[i];
+            }
+            for (Conjunct conjunct: this.conjuncts)
+                if ((conjunct.factors & ~set) == 0)
+                    result *= conjunct.selectivity;
+            result = Math.max(1, result);
+            this.setRows.put(set, result);
+            return result;
+        }
+
+        /** Estimated size of the changes of the join of a set of inputs in each step.
+         * The changes of a join are roughly (dA/A + dB/B) * (A join B). */
+        double changes(long set) {
+            double rate = 0;
+            for (int i = 0; i < this.count; i++)
+                if ((set & (1L << i)) != 0)
+                    rate += this.rates[i];
+            return Math.min(1, rate) * this.rows(set);
+        }
+
+        /** Cost of one step of the incremental join of two join trees. */
+        double joinCost(long left, long right) {
+            return this.changes(left) * log2(2 + this.rows(right)) +
+                    this.changes(right) * log2(2 + this.rows(left)) +
+                    this.changes(left | right);
+        }
+
+        /** True if the inputs in 'right' can be joined as the right input to a tree
+         * containing the inputs in 'left'.  Null-generating inputs must be on the right,
+         * by themselves, and can only be joined with trees containing all
+         * the inputs referred by the outer join condition. */
+        boolean canJoin(long left, long right) {
+            if (Long.bitCount(left) == 1 && this.isNullGenerating(Long.numberOfTrailingZeros(left)))
+                return false;
+            if (Long.bitCount(right) == 1) {
+                int factor = Long.numberOfTrailingZeros(right);
+                if (this.isNullGenerating(factor))
+                    return (this.dependencies[factor] & ~left) == 0;
+            }
+            return true;
+        }
+
+        /** Cost of joining all the inputs from left to right, in the original order. */
+        double originalOrder() {
+            double cost = 0;
+            long set = 1;
+            for (int i = 1; i < this.count; i++) {
+                cost += this.joinCost(set, 1L << i);
+                this.splits.put(set | (1L << i), set);
+                set |= 1L << i;
+            }
+            return cost;
+        }
+
+        /** Find the best join tree by dynamic programming over all sets of inputs. */
+        double exhaustive(Map<Long, Long> best) {
+            int sets = 1 << this.count;
+            double[] cost = new double[sets];
+            boolean[] legal = new boolean[sets];
+            for (int set = 1; set < sets; set++) {
+                if (Integer.bitCount(set) == 1) {
+                    legal[set] = true;
+                    continue;
+                }
+                cost[set] = Double.POSITIVE_INFINITY;
+                for (int left = (set - 1) & set; left > 0; left = (left - 1) & set) {
+                    int right = set ^ left;
+                    if (!legal[left] || !legal[right] || !this.canJoin(left, right))
+                        continue;
+                    double c = cost[left] + cost[right] + this.joinCost(left, right);
+                    if (c < cost[set]) {
+                        cost[set] = c;
+                        best.put((long) set, (long) left);
+                        legal[set] = true;
+                    }
+                }
+            }
+            return cost[sets - 1];
+        }
+
+        /** Build the join tree greedily, always performing the cheapest join next. */
+        double greedy(Map<Long, Long> best) {
+            List<Long> trees = new ArrayList<>();
+            for (int i = 0; i < this.count; i++)
+                trees.add(1L << i);
+            double cost = 0;
+            while (trees.size() > 1) {
+                int bestLeft = -1, bestRight = -1;
+                double bestCost = Double.POSITIVE_INFINITY;
+                for (int l = 0; l < trees.size(); l++) {
+                    for (int r = 0; r < trees.size(); r++) {
+                        if (l == r || !this.canJoin(trees.get(l), trees.get(r)))
+                            continue;
+                        double c = this.joinCost(trees.get(l), trees.get(r));
+                        if (c < bestCost) {
+                            bestCost = c;
+                            bestLeft = l;
+                            bestRight = r;
+                        }
+                    }
+                }
+                if (bestLeft < 0)
+                    return Double.POSITIVE_INFINITY;
+                long left = trees.get(bestLeft);
+                long right = trees.get(bestRight);
+                best.put(left | right, left);
+                cost += bestCost;
+                trees.remove(Math.max(bestLeft, bestRight));
+                trees.remove(Math.min(bestLeft, bestRight));
+                trees.add(left | right);
+            }
+            return cost;
+        }
+
+        /** Rewrites references to the fields of the MultiJoin into references
+         * to the fields of a join tree. */
+        RexNode rewrite(RexNode expression, int[] positions, List<RelDataTypeField> fields) {
+            return expression.accept(new RexShuttle() {
+                @Override
+                public RexNode visitInputRef(RexInputRef ref) {
+                    int position = positions[ref.getIndex()];
+                    return new RexInputRef(position, fields.get(position).getType());
+                }
+            });
+        }
+
+        /** Position of each field of the MultiJoin in the output of a join tree. */
+        int[] positions(List<Integer> factors) {
+            int[] result = new int[this.fieldCount];
+            int position = 0;
+            for (int factor: factors) {
+                int fields = this.inputs.get(factor).getRowType().getFieldCount();
+                for (int i = 0; i < fields; i++)
+                    result[this.offsets[factor] + i] = position++;
+            }
+            return result;
+        }
+
+        RelNode filter(RelNode input, List<RexNode> conditions, List<Integer> factors) {
+            if (conditions.isEmpty())
+                return input;
+            int[] positions = this.positions(factors);
+            List<RelDataTypeField> fields = input.getRowType().getFieldList();
+            List<RexNode> rewritten = new ArrayList<>();
+            for (RexNode condition: conditions)
+                rewritten.add(this.rewrite(condition, positions, fields));
+            return LogicalFilter.create(input, RexUtil.composeConjunction(this.rexBuilder, rewritten));
+        }
+
+        Plan build(long set) {
+            if (Long.bitCount(set) == 1) {
+                int factor = Long.numberOfTrailingZeros(set);
+                List<Integer> factors = List.of(factor);
+                // Conditions on a single input are applied to the input,
+                // unless the input is null-generating.
+                List<RexNode> conditions = new ArrayList<>();
+                if (!this.isNullGenerating(factor))
+                    for (Conjunct conjunct: this.conjuncts)
+                        if (conjunct.factors == set)
+                            conditions.add(conjunct.condition);
+                return new Plan(this.filter(this.inputs.get(factor), conditions, factors), factors);
+            }
+            long leftSet = this.splits.get(set);
+            long rightSet = set ^ leftSet;
+            Plan left = this.build(leftSet);
+            Plan right = this.build(rightSet);
+            List<Integer> factors = new ArrayList<>(left.factors);
+            factors.addAll(right.factors);
+            int[] positions = this.positions(factors);
+            List<RelDataTypeField> fields = new ArrayList<>(left.rel.getRowType().getFieldList());
+            fields.addAll(right.rel.getRowType().getFieldList());
+
+            // Inner join conditions which can be applied now, but not earlier
+            List<RexNode> conditions = new ArrayList<>();
+            for (Conjunct conjunct: this.conjuncts) {
+                if (conjunct.factors == 0 || (conjunct.factors & ~set) != 0)
+                    continue;
+                if ((conjunct.factors & ~leftSet) != 0 && (conjunct.factors & ~rightSet) != 0)
+                    conditions.add(conjunct.condition);
+                else if (conjunct.factors == rightSet && Long.bitCount(rightSet) == 1 &&
+                        this.isNullGenerating(Long.numberOfTrailingZeros(rightSet)))
+                    conditions.add(conjunct.condition);
+            }
+
+            int rightFactor = Long.numberOfTrailingZeros(rightSet);
+            boolean outer = Long.bitCount(rightSet) == 1 && this.isNullGenerating(rightFactor);
+            RelNode join;
+            if (outer) {
+                // The outer join condition goes in the join, the inner conditions are applied after
+                RexNode condition = this.rewrite(
+                        Objects.requireNonNull(this.outerConditions.get(rightFactor)), positions, fields);
+                join = LogicalJoin.create(left.rel, right.rel, List.of(), condition, Set.of(), JoinRelType.LEFT);
+                join = this.filter(join, conditions, factors);
+            } else {
+                List<RexNode> rewritten = new ArrayList<>();
+                for (RexNode condition: conditions)
+                    rewritten.add(this.rewrite(condition, positions, fields));
+                RexNode condition = RexUtil.composeConjunction(this.rexBuilder, rewritten);
+                join = LogicalJoin.create(left.rel, right.rel, List.of(), condition, Set.of(), JoinRelType.INNER);
+            }
+            return new Plan(join, factors);
+        }
+
+        RelNode plan() {
+            if (this.multiJoin.isFullOuterJoin() || this.count > Long.SIZE - 1)
+                return this.multiJoin;
+            double original = this.originalOrder();
+            Map<Long, Long> best = new HashMap<>();
+            double cost = this.count <= MAX_EXHAUSTIVE ? this.exhaustive(best) : this.greedy(best);
+            // Keep the original order unless the new one is cheaper
+            if (cost < original * (1 - 1e-9)) {
+                this.splits.clear();
+                this.splits.putAll(best);
+            }
+            Logger.INSTANCE.belowLevel(IncrementalJoinOrder.this, 1)
+                    .append("Join order for ")
+                    .append(this.count)
+                    .append(" inputs: estimated cost ")
+                    .append(String.format("%.2f", Math.min(cost, original)))
+                    .append(", original order ")
+                    .append(String.format("%.2f", original))
+                    .newline();
+
+            Plan plan = this.build((1L << this.count) - 1);
+            List<RexNode> conditions = new ArrayList<>();
+            for (Conjunct conjunct: this.conjuncts)
+                if (conjunct.factors == 0)
+                    conditions.add(conjunct.condition);
+            if (this.multiJoin.getPostJoinFilter() != null)
+                conditions.add(this.multiJoin.getPostJoinFilter());
+            RelNode result = this.filter(plan.rel, conditions, plan.factors);
+
+            // Restore the order of the fields of the MultiJoin
+            int[] positions = this.positions(plan.factors);
+            List<RelDataTypeField> expected = this.multiJoin.getRowType().getFieldList();
+            List<RexNode> projections = new ArrayList<>();
+            for (int i = 0; i < this.fieldCount; i++) {
+                RexNode ref = this.rexBuilder.makeInputRef(result, positions[i]);
+                RelDataType type = expected.get(i).getType();
+                if (!ref.getType().equals(type))
+                    ref = this.rexBuilder.makeCast(type, ref);
+                projections.add(ref);
+            }
+            RelBuilder builder = RelFactories.LOGICAL_BUILDER.create(this.multiJoin.getCluster(), null);
+            return builder.push(result)
+                    .project(projections, this.multiJoin.getRowType().getFieldNames(), true)
+                    .build();
+        }
+    }
+}
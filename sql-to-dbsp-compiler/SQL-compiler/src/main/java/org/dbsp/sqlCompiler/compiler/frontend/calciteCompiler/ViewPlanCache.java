@@ -0,0 +1,97 @@
+package org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Caches the Calcite plans of views across compilations.
+ * When a program is recompiled after a change, only the views that have changed,
+ * or which depend on tables or views that have changed, are converted and optimized
+ * by Calcite again.
+ *
+ * <p>An entry is keyed by a hash of the text of the view, of the types and functions
+ * defined in the program, and of the compiler options.  The entry records a signature
+ * for each table or view that the plan reads; the entry can only be used when the
+ * current program defines all these objects with the same signatures.
+ *
+ * <p>Plans are stored in the JSON form produced by Calcite's {@code RelJsonWriter},
+ * which does not depend on the cluster or the planner that produced them;
+ * they are read back into the cluster of the compilation that uses them.
+ * Each entry is written to a file in the cache directory, so it can be used by
+ * later invocations of the compiler; the most recently used entries are also
+ * kept in memory, e.g., for the {@link org.dbsp.sqlCompiler.CompilerServer}. */
+public final class ViewPlanCache {
+    /** Maximum number of plans kept in memory; the least recently used plans are evicted first. */
+    public static final int CAPACITY = 1000;
+
+    /** A cached plan.
+     * @param dependencies Signature of each table or view read by the plan.
+     * @param ordinals     Index in the plan output of each column of the view.
+     * @param names        Name of each column of the view.
+     * @param rowType      Row type of the validated query, serialized as JSON.
+     * @param collation    Required order of the rows of the view, serialized as JSON.
+     * @param plan         Optimized plan, serialized as JSON. */
+    public record Entry(Map<String, String> dependencies, List<Integer> ordinals,
+                        List<String> names, String rowType, String collation, String plan) {}
+
+    static final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return this.size() > CAPACITY;
+        }
+    };
+
+    static final ObjectMapper mapper = Utilities.deterministicObjectMapper();
+
+    private ViewPlanCache() {}
+
+    static File file(String directory, String key) {
+        return new File(directory, key + ".json");
+    }
+
+    /** Find an entry, in memory or in the cache directory.
+     * Entries that can't be read are ignored. */
+    @Nullable
+    public static synchronized Entry lookup(String directory, String key) {
+        Entry entry = cache.get(key);
+        if (entry != null)
+            return entry;
+        File file = file(directory, key);
+        if (!file.exists())
+            return null;
+        try {
+            entry = mapper.readValue(file, Entry.class);
+        } catch (IOException ex) {
+            return null;
+        }
+        cache.put(key, entry);
+        return entry;
+    }
+
+    /** Insert an entry in memory and in the cache directory.
+     * The file is written under a temporary name and then renamed, so concurrent
+     * compilations never read a partially written entry. */
+    public static synchronized void insert(String directory, String key, Entry entry) throws IOException {
+        cache.put(key, entry);
+        File dir = new File(directory);
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        File temp = File.createTempFile(key, ".tmp", dir);
+        mapper.writeValue(temp, entry);
+        Files.move(temp.toPath(), file(directory, key).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Remove the entries kept in memory; the entries in the cache directories are kept. */
+    public static synchronized void clear() {
+        cache.clear();
+    }
+}
@@ -5,10 +5,14 @@ import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
 import org.apache.calcite.schema.impl.AbstractTable;
 import org.dbsp.sqlCompiler.compiler.errors.UnsupportedException;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.RelColumnMetadata;
 
+import java.util.List;
+
 /** A description of a table wrapping the attributes that Calcite needs
  * to compile SQL programs that refer to this table. */
 public class CalciteTableDescription extends AbstractTable implements ScannableTable {
@@ -32,6 +36,27 @@ public class CalciteTableDescription extends AbstractTable implements ScannableT
         return builder.build();
     }
 
+    /** The statistics supplied for this table, if any. */
+    public TableStatistics getStatistics() {
+        if (this.schema instanceof CreateTableStatement table)
+            return table.statistics;
+        return TableStatistics.UNKNOWN;
+    }
+
+    public List<RelColumnMetadata> getColumns() {
+        return this.schema.getColumns();
+    }
+
+    @Override
+    public Statistic getStatistic() {
+        // Only the row count is exposed to Calcite; primary keys are not reported,
+        // since that would enable optimizations which remove DISTINCT operations.
+        Double rows = this.getStatistics().rows;
+        if (rows == null)
+            return super.getStatistic();
+        return Statistics.of(rows, List.of());
+    }
+
     @Override
     public String toString() {
         return this.schema.toString();
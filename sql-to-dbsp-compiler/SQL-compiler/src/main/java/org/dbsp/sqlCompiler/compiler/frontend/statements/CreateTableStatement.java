@@ -34,11 +34,16 @@ import java.util.Map;
 
 /** Describes a table as produced by a CREATE TABLE DDL statement. */
 public class CreateTableStatement extends CreateRelationStatement {
+    /** Statistics supplied in the table properties. */
+    public final TableStatistics statistics;
+
     public CreateTableStatement(SqlNode node, String statement,
                                 String tableName, boolean nameIsQuoted,
                                 List<RelColumnMetadata> columns,
-                                @Nullable Map<String, String> properties) {
+                                @Nullable Map<String, String> properties,
+                                TableStatistics statistics) {
         super(node, statement, tableName, nameIsQuoted, columns, properties);
+        this.statistics = statistics;
     }
 
     public boolean isMaterialized() {
@@ -0,0 +1,151 @@
+package org.dbsp.sqlCompiler.compiler.frontend.statements;
+
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.RelColumnMetadata;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Statistics about the contents of a table, used to choose the order of joins
+ * and whether to split aggregates.
+ * They are supplied as table properties:
+ * <pre>
+ * CREATE TABLE T(id INT, ...) WITH (
+ *    'rows' = '1000000',        -- estimated number of rows
+ *    'change_rate' = '0.001',   -- fraction of the rows changed in each step
+ *    'distinct.ID' = '50000'    -- number of distinct values in column ID
+ * )
+ * </pre> */
+public class TableStatistics {
+    public static final String ROWS = "rows";
+    public static final String CHANGE_RATE = "change_rate";
+    public static final String DISTINCT_PREFIX = "distinct.";
+    /** Used for tables which do not specify a change rate. */
+    public static final double DEFAULT_CHANGE_RATE = 0.01;
+
+    public static final TableStatistics UNKNOWN = new TableStatistics(null, DEFAULT_CHANGE_RATE, Map.of());
+
+    /** Estimated number of rows, if known. */
+    @Nullable
+    public final Double rows;
+    /** Expected fraction of the rows which change in each step. */
+    public final double changeRate;
+    /** Number of distinct values for some columns, indexed by column number. */
+    public final Map<Integer, Double> distinct;
+
+    public TableStatistics(@Nullable Double rows, double changeRate, Map<Integer, Double> distinct) {
+        this.rows = rows;
+        this.changeRate = changeRate;
+        this.distinct = distinct;
+    }
+
+    /** True if the table declares any statistics. */
+    public boolean isKnown() {
+        return this != UNKNOWN;
+    }
+
+    /** True if the property describes the table statistics. */
+    public static boolean isStatisticsProperty(String key) {
+        return key.equals(ROWS) || key.equals(CHANGE_RATE) || key.startsWith(DISTINCT_PREFIX);
+    }
+
+    /** The table properties without the statistics, which are not passed to connectors. */
+    @Nullable
+    public static Map<String, String> connectorProperties(@Nullable Map<String, String> properties) {
+        if (properties == null)
+            return null;
+        Map<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, String> entry: properties.entrySet()) {
+            if (!isStatisticsProperty(entry.getKey()))
+                result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /** Number of distinct values in the specified column, if known.
+     * A column which is the whole primary key has one distinct value for each row. */
+    @Nullable
+    public Double getDistinct(int column, List<RelColumnMetadata> columns) {
+        Double result = this.distinct.get(column);
+        if (result != null)
+            return result;
+        long keys = columns.stream().filter(c -> c.isPrimaryKey).count();
+        if (keys == 1 && columns.get(column).isPrimaryKey)
+            return this.rows;
+        return null;
+    }
+
+    @Nullable
+    static Double parse(IErrorReporter reporter, CalciteObject node, String property, String value,
+                        boolean fraction) {
+        try {
+            double result = Double.parseDouble(value);
+            if (result < 0 || Double.isNaN(result) || Double.isInfinite(result) || (fraction && result > 1))
+                throw new NumberFormatException();
+            return result;
+        } catch (NumberFormatException ex) {
+            reporter.reportError(node.getPositionRange(), "Illegal property value",
+                    "Value of property " + Utilities.singleQuote(property) + " must be a " +
+                            (fraction ? "number between 0 and 1" : "non-negative number") +
+                            ", found " + Utilities.singleQuote(value));
+            return null;
+        }
+    }
+
+    /** Extract the statistics from the properties of a table. */
+    public static TableStatistics create(IErrorReporter reporter, CalciteObject node,
+                                         List<RelColumnMetadata> columns,
+                                         @Nullable Map<String, String> properties) {
+        if (properties == null)
+            return UNKNOWN;
+        Double rows = null;
+        double changeRate = DEFAULT_CHANGE_RATE;
+        Map<Integer, Double> distinct = new HashMap<>();
+        for (Map.Entry<String, String> entry: properties.entrySet()) {
+            String key = entry.getKey();
+            if (key.equals(ROWS)) {
+                rows = parse(reporter, node, key, entry.getValue(), false);
+            } else if (key.equals(CHANGE_RATE)) {
+                Double rate = parse(reporter, node, key, entry.getValue(), true);
+                if (rate != null)
+                    changeRate = rate;
+            } else if (key.startsWith(DISTINCT_PREFIX)) {
+                String column = key.substring(DISTINCT_PREFIX.length());
+                int index = -1;
+                for (int i = 0; i < columns.size(); i++) {
+                    if (columns.get(i).getName().equals(column)) {
+                        index = i;
+                        break;
+                    }
+                    if (columns.get(i).getName().equalsIgnoreCase(column))
+                        index = i;
+                }
+                if (index < 0) {
+                    reporter.reportError(node.getPositionRange(), "No such column",
+                            "Property " + Utilities.singleQuote(key) + " refers to a column that does not exist");
+                    continue;
+                }
+                Double count = parse(reporter, node, key, entry.getValue(), false);
+                if (count != null)
+                    distinct.put(index, count);
+            }
+        }
+        if (rows == null && distinct.isEmpty() && changeRate == DEFAULT_CHANGE_RATE)
+            return UNKNOWN;
+        return new TableStatistics(rows, changeRate, distinct);
+    }
+
+    @Override
+    public String toString() {
+        return "TableStatistics{" +
+                "rows=" + this.rows +
+                ", changeRate=" + this.changeRate +
+                ", distinct=" + this.distinct +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package org.dbsp.sqlCompiler.compiler.visitors.inner;
+
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+
+import javax.annotation.Nullable;
+
+/** Computes a hash of the shape of an IR tree which is compatible with
+ * {@link EquivalenceContext}: equivalent trees always have the same fingerprint.
+ * Variable names and types are ignored, since equivalence is modulo
+ * renaming of the declarations. */
+public class Fingerprint extends InnerVisitor {
+    int hash;
+
+    public Fingerprint(IErrorReporter reporter) {
+        super(reporter);
+        this.hash = 0;
+    }
+
+    void add(int value) {
+        this.hash = 31 * this.hash + value;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPType type) {
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPBinaryExpression expression) {
+        this.add(expression.operation.hashCode());
+        return super.preorder(expression);
+    }
+
+    @Override
+    public VisitDecision preorder(IDBSPInnerNode node) {
+        // All literals are compared by value, irrespective of their class
+        if (node.is(DBSPLiteral.class))
+            this.add(DBSPLiteral.class.hashCode());
+        else
+            this.add(node.getClass().hashCode());
+        return VisitDecision.CONTINUE;
+    }
+
+    @Override
+    public void startVisit(IDBSPInnerNode node) {
+        super.startVisit(node);
+        this.hash = 0;
+    }
+
+    public static int fingerprint(IErrorReporter reporter, @Nullable IDBSPInnerNode node) {
+        if (node == null)
+            return 0;
+        Fingerprint fingerprint = new Fingerprint(reporter);
+        fingerprint.apply(node);
+        return fingerprint.hash;
+    }
+}
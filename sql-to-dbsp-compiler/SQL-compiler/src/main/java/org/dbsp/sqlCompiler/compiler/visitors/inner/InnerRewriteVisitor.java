@@ -808,7 +808,7 @@ public abstract class InnerRewriteVisitor
         this.pop(expression);
         DBSPExpression result = new DBSPFieldComparatorExpression(
                     expression.getNode(), source.to(DBSPComparatorExpression.class),
-                    expression.fieldNo, expression.ascending);
+                    expression.fieldNo, expression.ascending, expression.nullsFirst);
         this.map(expression, result);
         return VisitDecision.STOP;
     }
@@ -1144,6 +1144,7 @@ public abstract class InnerRewriteVisitor
         DBSPExpression emptySetResult = this.transform(implementation.emptySetResult);
         DBSPType semiGroup = this.transform(implementation.semigroup);
         DBSPExpression linear = this.transformN(implementation.linearFunction);
+        DBSPExpression minMax = this.transformN(implementation.minMaxFunction);
         this.pop(implementation);
 
         DBSPAggregate.Implementation result = new DBSPAggregate.Implementation(
@@ -1151,7 +1152,9 @@ public abstract class InnerRewriteVisitor
                 increment.to(DBSPClosureExpression.class),
                 postProcess != null ? postProcess.to(DBSPClosureExpression.class) : null,
                 emptySetResult, semiGroup,
-                linear != null ? linear.to(DBSPClosureExpression.class) : null);
+                linear != null ? linear.to(DBSPClosureExpression.class) : null,
+                implementation.minMax,
+                minMax != null ? minMax.to(DBSPClosureExpression.class) : null);
         result.validate();
         this.map(implementation, result);
         return VisitDecision.STOP;
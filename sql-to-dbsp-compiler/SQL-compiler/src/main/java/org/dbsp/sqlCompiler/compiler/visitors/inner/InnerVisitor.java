@@ -163,17 +163,18 @@ import org.dbsp.util.Utilities;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Depth-first traversal of an DBSPInnerNode hierarchy. */
 @SuppressWarnings({"SameReturnValue, EmptyMethod", "unused"})
 public abstract class InnerVisitor implements IRTransform, IWritesLogs, IHasId {
     final long id;
-    static long crtId = 0;
+    static final AtomicLong crtId = new AtomicLong();
     protected final IErrorReporter errorReporter;
     protected final List<IDBSPInnerNode> context;
 
     public InnerVisitor(IErrorReporter reporter) {
-        this.id = crtId++;
+        this.id = crtId.getAndIncrement();
         this.errorReporter = reporter;
         this.context = new ArrayList<>();
     }
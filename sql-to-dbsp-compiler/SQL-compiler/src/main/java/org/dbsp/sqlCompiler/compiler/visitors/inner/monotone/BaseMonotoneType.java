@@ -1,12 +1,14 @@
 package org.dbsp.sqlCompiler.compiler.visitors.inner.monotone;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /** Base class for monotone type information */
 public abstract class BaseMonotoneType implements IMaybeMonotoneType {
-    static long nextId = 0;
+    static final AtomicLong nextId = new AtomicLong();
     final long id;
 
     protected BaseMonotoneType() {
-        this.id = nextId++;
+        this.id = nextId.getAndIncrement();
     }
 
     public long getId() {
@@ -5,10 +5,11 @@ import org.dbsp.sqlCompiler.ir.type.DBSPType;
 
 import javax.annotation.Nullable;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Representation of an expression and its monotonicity */
 public class MonotoneExpression {
-    static long crtId = 0;
+    static final AtomicLong crtId = new AtomicLong();
 
     final long id;
     /** Original expression which is represented */
@@ -24,7 +25,7 @@ public class MonotoneExpression {
         this.expression = expression;
         this.type = type;
         this.reducedExpression = reducedExpression;
-        this.id = crtId++;
+        this.id = crtId.getAndIncrement();
         DBSPType expressionType = expression.getType();
         DBSPType monotoneType = type.getType();
         assert expressionType.sameType(monotoneType):
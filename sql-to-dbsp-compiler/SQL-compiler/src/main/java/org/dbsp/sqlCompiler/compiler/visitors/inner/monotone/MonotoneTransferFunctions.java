@@ -472,6 +472,12 @@ public class MonotoneTransferFunctions extends TranslateVisitor<MonotoneExpressi
                         right.getReducedExpression());
             }
         }
+        if (expression.operation == DBSPOpcode.MIN && lm && rm) {
+            // The MIN of two monotone expressions is monotone
+            resultType = new MonotoneType(expression.type);
+            reduced = expression.replaceSources(
+                    left.getReducedExpression(), right.getReducedExpression());
+        }
         // Some expressions are monotone if some of their operands are constant
         if (left.mayBeMonotone() && expression.operation == DBSPOpcode.SUB) {
             // Subtracting a constant from a monotone expression produces a monotone result
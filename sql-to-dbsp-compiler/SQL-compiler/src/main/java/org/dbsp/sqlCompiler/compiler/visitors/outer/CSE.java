@@ -3,13 +3,16 @@ package org.dbsp.sqlCompiler.compiler.visitors.outer;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.Fingerprint;
+import org.dbsp.sqlCompiler.ir.DBSPNode;
+import org.dbsp.sqlCompiler.ir.IDBSPOuterNode;
+import org.dbsp.util.Linq;
 import org.dbsp.util.Logger;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /** Common-subexpression elimination */
 public class CSE extends Repeat {
@@ -18,7 +21,6 @@ public class CSE extends Repeat {
     }
 
     /** One CSE pass:
-     * - build circuit graph,
      * - find common subexpressions,
      * - remove them */
     static class OneCSEPass extends Passes {
@@ -27,64 +29,75 @@ public class CSE extends Repeat {
 
         OneCSEPass(IErrorReporter reporter) {
             super(reporter);
-            Graph graph = new Graph(reporter);
-            this.add(graph);
-            this.add(new FindCSE(reporter, graph.graph, this.canonical));
+            this.add(new FindCSE(reporter, this.canonical));
             this.add(new RemoveCSE(reporter, this.canonical));
         }
     }
 
-    /** Find common subexpressions, write them into the 'canonical' map */
+    /** Find common subexpressions, write them into the 'canonical' map.
+     * Operators are visited in topological order, and each operator is looked up in a
+     * hash table keyed by its structure: operator class and operation,
+     * canonical representatives of the inputs, and a fingerprint of the function.
+     * Since the inputs are replaced with their canonical representatives, this also
+     * finds common subgraphs that are arbitrarily deep (e.g., the same chain of operators
+     * appearing in multiple views), and not just operators that share the same inputs. */
     public static class FindCSE extends CircuitVisitor {
         /** Maps each operator to its canonical representative */
         final Map<DBSPOperator, DBSPOperator> canonical;
-        final CircuitGraph graph;
-        final Set<DBSPConstantOperator> constants;
+        /** Maps the structure of an operator to the list of representatives which have it.
+         * Each representative is stored with its inputs replaced by their canonical versions. */
+        final Map<Key, List<Representative>> representatives;
 
-        public FindCSE(IErrorReporter errorReporter, CircuitGraph graph,
-                       Map<DBSPOperator, DBSPOperator> canonical) {
+        record Key(Class<?> clazz, String operation, List<Long> inputs, int fingerprint) {}
+
+        /** A representative operator, and its version with canonical inputs. */
+        record Representative(DBSPOperator operator, DBSPOperator canonicalInputs) {}
+
+        public FindCSE(IErrorReporter errorReporter, Map<DBSPOperator, DBSPOperator> canonical) {
             super(errorReporter);
-            this.graph = graph;
             this.canonical = canonical;
-            this.constants = new HashSet<>();
+            this.representatives = new HashMap<>();
+        }
+
+        DBSPOperator getCanonical(DBSPOperator operator) {
+            return this.canonical.getOrDefault(operator, operator);
         }
 
         @Override
-        public void postorder(DBSPConstantOperator operator) {
-            for (DBSPConstantOperator op: this.constants) {
-                if (op.equivalent(operator)) {
-                    this.canonical.put(operator, op);
-                } else {
-                    this.constants.add(op);
-                }
-            }
+        public void startVisit(IDBSPOuterNode node) {
+            super.startVisit(node);
+            this.canonical.clear();
+            this.representatives.clear();
         }
 
         @Override
         public void postorder(DBSPOperator operator) {
-            List<DBSPOperator> destinations = this.graph.getDestinations(operator);
-            // Compare every pair of destinations
-            for (int i = 0; i < destinations.size(); i++) {
-                DBSPOperator base = destinations.get(i);
-                for (int j = i + 1; j < destinations.size(); j++) {
-                    DBSPOperator compare = destinations.get(j);
-                    if (this.canonical.containsKey(compare))
-                        // Already found a canonical representative
-                        continue;
-                    if (compare == base)
-                        // E.g., a join where both inputs come from the same source
-                        continue;
-                    if (base.equivalent(compare)) {
-                        Logger.INSTANCE.belowLevel(this, 1)
-                                .append("CSE ")
-                                .append(compare.toString())
-                                .append(" -> ")
-                                .append(base.toString())
-                                .newline();
-                        this.canonical.put(compare, base);
-                    }
+            // Operators without inputs, e.g., delay outputs, are never merged, except constants
+            if (operator.inputs.isEmpty() && !operator.is(DBSPConstantOperator.class))
+                return;
+            List<DBSPOperator> inputs = Linq.map(operator.inputs, this::getCanonical);
+            Key key = new Key(operator.getClass(), operator.operation,
+                    Linq.map(inputs, DBSPOperator::getId),
+                    Fingerprint.fingerprint(this.errorReporter, operator.function));
+            // Operators created only to be compared; they should not perturb the numbering.
+            DBSPOperator[] withCanonicalInputs = new DBSPOperator[1];
+            DBSPNode.isolated(() -> withCanonicalInputs[0] = operator.withInputs(inputs, false));
+            DBSPOperator compare = withCanonicalInputs[0];
+
+            List<Representative> candidates = this.representatives.computeIfAbsent(key, k -> new ArrayList<>());
+            for (Representative base: candidates) {
+                if (base.canonicalInputs.equivalent(compare)) {
+                    Logger.INSTANCE.belowLevel(this, 1)
+                            .append("CSE ")
+                            .append(operator.toString())
+                            .append(" -> ")
+                            .append(base.operator.toString())
+                            .newline();
+                    this.canonical.put(operator, base.operator);
+                    return;
                 }
             }
+            candidates.add(new Representative(operator, compare));
         }
     }
 
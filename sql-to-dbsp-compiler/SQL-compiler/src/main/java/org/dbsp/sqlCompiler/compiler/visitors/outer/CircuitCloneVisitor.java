@@ -164,6 +164,12 @@ public class CircuitCloneVisitor extends CircuitVisitor implements IWritesLogs {
     @Override
     public void postorder(DBSPPartitionedRollingAggregateOperator operator) { this.replace(operator); }
 
+    @Override
+    public void postorder(DBSPRowsAggregateOperator operator) { this.replace(operator); }
+
+    @Override
+    public void postorder(DBSPRangeAggregateOperator operator) { this.replace(operator); }
+
     @Override
     public void postorder(DBSPPartitionedRollingAggregateWithWaterlineOperator operator) { this.replace(operator); }
 
@@ -201,6 +207,9 @@ public class CircuitCloneVisitor extends CircuitVisitor implements IWritesLogs {
     @Override
     public void postorder(DBSPIndexedTopKOperator operator) { this.replace(operator); }
 
+    @Override
+    public void postorder(DBSPOrderByOperator operator) { this.replace(operator); }
+
     @Override
     public void postorder(DBSPMapIndexOperator operator) { this.replace(operator); }
 
@@ -310,6 +319,21 @@ public class CircuitCloneVisitor extends CircuitVisitor implements IWritesLogs {
         this.replace(operator);
     }
 
+    @Override
+    public void postorder(DBSPSemiJoinOperator operator) {
+        this.replace(operator);
+    }
+
+    @Override
+    public void postorder(DBSPOuterJoinOperator operator) {
+        this.replace(operator);
+    }
+
+    @Override
+    public void postorder(DBSPAntiJoinOperator operator) {
+        this.replace(operator);
+    }
+
     @Override
     public void postorder(DBSPJoinFilterMapOperator operator) {
         this.replace(operator);
@@ -30,14 +30,26 @@ import org.dbsp.sqlCompiler.compiler.ICompilerComponent;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.EliminateFunctions;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.ExpandWriteLog;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.IRTransform;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.Simplify;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 /** Very high level circuit-level optimizations.
  * Does not really look at the functions inside the circuit. */
 public record CircuitOptimizer(DBSPCompiler compiler) implements ICompilerComponent {
+    /** A pass which applies an inner transform to all the functions in the circuit.
+     * Runs in parallel if the compiler is configured to use multiple threads.
+     * @param factory  Creates a new instance of the inner transform. */
+    CircuitTransform innerPass(Supplier<IRTransform> factory) {
+        int threads = this.compiler().options.languageOptions.threads;
+        if (threads > 1)
+            return new ParallelCircuitRewriter(this.compiler(), factory, threads);
+        return new CircuitRewriter(this.compiler(), factory.get());
+    }
+
     CircuitTransform getOptimizer() {
         List<CircuitTransform> passes = new ArrayList<>();
         IErrorReporter reporter = this.compiler();
@@ -63,7 +75,7 @@ public record CircuitOptimizer(DBSPCompiler compiler) implements ICompilerCompon
                 passes.add(new OptimizeIncrementalVisitor(reporter));
             }
             passes.add(new DeadCode(reporter, true, false));
-            passes.add(new Simplify(reporter).circuitRewriter());
+            passes.add(this.innerPass(() -> new Simplify(reporter)));
             passes.add(new OptimizeWithGraph(reporter, g -> new OptimizeProjectionVisitor(reporter, g)));
             passes.add(new OptimizeWithGraph(reporter, g -> new OptimizeMaps(reporter, g)));
             passes.add(new OptimizeWithGraph(reporter, g -> new FilterJoinVisitor(reporter, g)));
@@ -77,13 +89,12 @@ public record CircuitOptimizer(DBSPCompiler compiler) implements ICompilerCompon
                 passes.add(new IndexedInputs(reporter));
             passes.add(new OptimizeWithGraph(reporter, g -> new FilterJoinVisitor(reporter, g)));
             passes.add(new DeadCode(reporter, true, false));
-            passes.add(new Simplify(reporter).circuitRewriter());
+            passes.add(this.innerPass(() -> new Simplify(reporter)));
             // The predicate below controls which nodes have their output dumped at runtime
             passes.add(new InstrumentDump(reporter, t -> false));
             if (options.languageOptions.incrementalize)
                 passes.add(new NoIntegralVisitor(reporter));
         }
-        passes.add(new ExpandHop(reporter));
         passes.add(new RemoveDeindexOperators(reporter));
         passes.add(new RemoveViewOperators(reporter));
         if (options.languageOptions.optimizationLevel >= 2) {
@@ -91,9 +102,9 @@ public record CircuitOptimizer(DBSPCompiler compiler) implements ICompilerCompon
             // optimize the maps introduced by the deindex removal
             passes.add(new OptimizeWithGraph(reporter, g -> new OptimizeMaps(reporter, g)));
         }
-        passes.add(new EliminateFunctions(reporter).circuitRewriter());
-        passes.add(new ExpandWriteLog(reporter).circuitRewriter());
-        passes.add(new Simplify(reporter).circuitRewriter());
+        passes.add(this.innerPass(() -> new EliminateFunctions(reporter)));
+        passes.add(this.innerPass(() -> new ExpandWriteLog(reporter)));
+        passes.add(this.innerPass(() -> new Simplify(reporter)));
         passes.add(new CSE(reporter));
         return new Passes(reporter, passes);
     }
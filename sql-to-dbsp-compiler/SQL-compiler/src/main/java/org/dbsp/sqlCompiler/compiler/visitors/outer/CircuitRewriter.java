@@ -36,8 +36,12 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOrderByOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOuterJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateWithWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRangeAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPRowsAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
@@ -50,6 +54,7 @@ import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.IRTransform;
 import org.dbsp.sqlCompiler.ir.DBSPAggregate;
 import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPComparatorExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPWindowBoundExpression;
@@ -104,6 +109,8 @@ public class CircuitRewriter extends CircuitCloneVisitor {
     // - DBSPDeindexOperator
     // - DBSPApplyOperator
     // - DBSPApply2Operator
+    // - DBSPSemiJoinOperator
+    // - DBSPAntiJoinOperator
     @Override
     public void replace(DBSPOperator operator) {
         DBSPExpression function = null;
@@ -372,6 +379,23 @@ public class CircuitRewriter extends CircuitCloneVisitor {
         this.map(operator, result);
     }
 
+    @Override
+    public void postorder(DBSPOrderByOperator operator) {
+        DBSPType type = this.transform(operator.getType());
+        DBSPOperator input = this.mapped(operator.input());
+        DBSPExpression comparator = this.transform(operator.getFunction());
+        DBSPClosureExpression outputProducer = this.transform(operator.outputProducer)
+                .to(DBSPClosureExpression.class);
+        DBSPOperator result = operator;
+        if (!type.sameType(operator.getType())
+                || input != operator.input()
+                || comparator != operator.getFunction()
+                || outputProducer != operator.outputProducer) {
+            result = new DBSPOrderByOperator(operator.getNode(), comparator, outputProducer, input);
+        }
+        this.map(operator, result);
+    }
+
     @Override
     public void postorder(DBSPMapOperator operator) {
         DBSPType type = this.transform(operator.getType());
@@ -387,28 +411,123 @@ public class CircuitRewriter extends CircuitCloneVisitor {
     }
 
     @Override
-    public void postorder(DBSPPartitionedRollingAggregateOperator operator) {
+    public void postorder(DBSPRowsAggregateOperator operator) {
         DBSPTypeIndexedZSet type = this.transform(operator.getType()).to(DBSPTypeIndexedZSet.class);
         DBSPOperator input = this.mapped(operator.input());
         @Nullable DBSPExpression function = this.transformN(operator.function);
-        DBSPExpression partitioningFunction = this.transform(operator.partitioningFunction);
         @Nullable DBSPAggregate aggregate = null;
         if (operator.aggregate != null) {
             IDBSPInnerNode transformed = this.transform.apply(operator.aggregate);
             aggregate = transformed.to(DBSPAggregate.class);
         }
+        DBSPComparatorExpression comparator = this.transform(operator.comparator)
+                .to(DBSPComparatorExpression.class);
         DBSPWindowBoundExpression lower = this.transform(operator.lower).to(DBSPWindowBoundExpression.class);
         DBSPWindowBoundExpression upper = this.transform(operator.upper).to(DBSPWindowBoundExpression.class);
+        DBSPClosureExpression outputProducer = this.transform(operator.outputProducer)
+                .to(DBSPClosureExpression.class);
+        DBSPOperator result = operator;
+        if (!type.sameType(operator.getType())
+                || input != operator.input()
+                || function != operator.function
+                || aggregate != operator.aggregate
+                || comparator != operator.comparator
+                || lower != operator.lower
+                || upper != operator.upper
+                || outputProducer != operator.outputProducer) {
+            result = new DBSPRowsAggregateOperator(
+                    operator.getNode(), function, aggregate, comparator, lower, upper,
+                    outputProducer, type, input);
+        }
+        this.map(operator, result);
+    }
+
+    @Override
+    public void postorder(DBSPOuterJoinOperator operator) {
+        DBSPType type = this.transform(operator.getType());
+        List<DBSPOperator> sources = Linq.map(operator.inputs, this::mapped);
+        DBSPExpression function = this.transform(operator.getFunction());
+        DBSPClosureExpression leftFunction = this.transform(operator.leftFunction)
+                .to(DBSPClosureExpression.class);
+        @Nullable DBSPClosureExpression rightFunction = null;
+        if (operator.rightFunction != null)
+            rightFunction = this.transform(operator.rightFunction).to(DBSPClosureExpression.class);
+        DBSPOperator result = operator;
+        if (!type.sameType(operator.getType())
+                || Linq.different(sources, operator.inputs)
+                || function != operator.function
+                || leftFunction != operator.leftFunction
+                || rightFunction != operator.rightFunction) {
+            result = new DBSPOuterJoinOperator(
+                    operator.getNode(), type.to(DBSPTypeZSet.class), function, leftFunction,
+                    rightFunction, operator.isMultiset, sources.get(0), sources.get(1));
+        }
+        this.map(operator, result);
+    }
+
+    @Override
+    public void postorder(DBSPRangeAggregateOperator operator) {
+        DBSPTypeIndexedZSet type = this.transform(operator.getType()).to(DBSPTypeIndexedZSet.class);
+        DBSPOperator input = this.mapped(operator.input());
+        @Nullable DBSPExpression function = this.transformN(operator.function);
+        @Nullable DBSPAggregate aggregate = null;
+        if (operator.aggregate != null) {
+            IDBSPInnerNode transformed = this.transform.apply(operator.aggregate);
+            aggregate = transformed.to(DBSPAggregate.class);
+        }
+        DBSPComparatorExpression comparator = this.transform(operator.comparator)
+                .to(DBSPComparatorExpression.class);
+        DBSPWindowBoundExpression lower = this.transform(operator.lower).to(DBSPWindowBoundExpression.class);
+        DBSPWindowBoundExpression upper = this.transform(operator.upper).to(DBSPWindowBoundExpression.class);
+        DBSPClosureExpression outputProducer = this.transform(operator.outputProducer)
+                .to(DBSPClosureExpression.class);
         DBSPOperator result = operator;
         if (!type.sameType(operator.getType())
                 || input != operator.input()
-                || partitioningFunction != operator.partitioningFunction
                 || function != operator.function
                 || aggregate != operator.aggregate
+                || comparator != operator.comparator
                 || lower != operator.lower
-                || upper != operator.upper) {
+                || upper != operator.upper
+                || outputProducer != operator.outputProducer) {
+            result = new DBSPRangeAggregateOperator(
+                    operator.getNode(), function, aggregate, comparator, lower, upper,
+                    outputProducer, type, input);
+        }
+        this.map(operator, result);
+    }
+
+    @Override
+    public void postorder(DBSPPartitionedRollingAggregateOperator operator) {
+        DBSPTypeIndexedZSet type = this.transform(operator.getType()).to(DBSPTypeIndexedZSet.class);
+        DBSPOperator input = this.mapped(operator.input());
+        @Nullable DBSPExpression function = this.transformN(operator.function);
+        DBSPExpression partitioningFunction = this.transform(operator.partitioningFunction);
+        @Nullable DBSPAggregate aggregate = null;
+        if (operator.aggregate != null) {
+            IDBSPInnerNode transformed = this.transform.apply(operator.aggregate);
+            aggregate = transformed.to(DBSPAggregate.class);
+        }
+        List<DBSPWindowBoundExpression> lower = Linq.map(operator.lower,
+                b -> this.transform(b).to(DBSPWindowBoundExpression.class));
+        List<DBSPWindowBoundExpression> upper = Linq.map(operator.upper,
+                b -> this.transform(b).to(DBSPWindowBoundExpression.class));
+        @Nullable DBSPExpression framesFunction = this.transformN(operator.framesFunction);
+        List<DBSPExpression> frameFunctions = Linq.map(operator.frameFunctions, this::transform);
+        DBSPOperator result = operator;
+        if (!type.sameType(operator.getType())
+                || input != operator.input()
+                || partitioningFunction != operator.partitioningFunction
+                || function != operator.function
+                || aggregate != operator.aggregate
+                || Linq.different(lower, operator.lower)
+                || Linq.different(upper, operator.upper)
+                || framesFunction != operator.framesFunction
+                || Linq.different(frameFunctions, operator.frameFunctions)) {
             result = new DBSPPartitionedRollingAggregateOperator(
-                    operator.getNode(), partitioningFunction, function, aggregate, lower, upper, type, input);
+                    operator.getNode(), partitioningFunction, function, aggregate, lower, upper,
+                    framesFunction != null ? framesFunction.to(DBSPClosureExpression.class) : null,
+                    operator.frameIndex, frameFunctions, type, input);
         }
         this.map(operator, result);
     }
@@ -425,8 +544,12 @@ public class CircuitRewriter extends CircuitCloneVisitor {
             IDBSPInnerNode transformed = this.transform.apply(operator.aggregate);
             aggregate = transformed.to(DBSPAggregate.class);
         }
-        DBSPWindowBoundExpression lower = this.transform(operator.lower).to(DBSPWindowBoundExpression.class);
-        DBSPWindowBoundExpression upper = this.transform(operator.upper).to(DBSPWindowBoundExpression.class);
+        List<DBSPWindowBoundExpression> lower = Linq.map(operator.lower,
+                b -> this.transform(b).to(DBSPWindowBoundExpression.class));
+        List<DBSPWindowBoundExpression> upper = Linq.map(operator.upper,
+                b -> this.transform(b).to(DBSPWindowBoundExpression.class));
+        @Nullable DBSPExpression framesFunction = this.transformN(operator.framesFunction);
+        List<DBSPExpression> frameFunctions = Linq.map(operator.frameFunctions, this::transform);
         DBSPOperator result = operator;
         if (!type.sameType(operator.getType())
                 || left != operator.left()
@@ -434,11 +557,14 @@ public class CircuitRewriter extends CircuitCloneVisitor {
                 || partitioningFunction != operator.partitioningFunction
                 || function != operator.function
                 || aggregate != operator.aggregate
-                || lower != operator.lower
-                || upper != operator.upper) {
+                || Linq.different(lower, operator.lower)
+                || Linq.different(upper, operator.upper)
+                || framesFunction != operator.framesFunction
+                || Linq.different(frameFunctions, operator.frameFunctions)) {
             result = new DBSPPartitionedRollingAggregateWithWaterlineOperator(
-                    operator.getNode(), partitioningFunction, function, aggregate,
-                    lower, upper, type, left, right);
+                    operator.getNode(), partitioningFunction, function, aggregate, lower, upper,
+                    framesFunction != null ? framesFunction.to(DBSPClosureExpression.class) : null,
+                    operator.frameIndex, frameFunctions, type, left, right);
         }
         this.map(operator, result);
     }
@@ -39,13 +39,14 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Depth-first traversal of an IDBSOuterNode hierarchy. */
 @SuppressWarnings({"SameReturnValue", "BooleanMethodIsAlwaysInverted"})
 public abstract class CircuitVisitor
         implements CircuitTransform, IWritesLogs, IHasId {
     final long id;
-    static long crtId = 0;
+    static final AtomicLong crtId = new AtomicLong();
 
     @Nullable
     private DBSPCircuit circuit = null;
@@ -55,7 +56,7 @@ public abstract class CircuitVisitor
 
 
     public CircuitVisitor(IErrorReporter errorReporter) {
-        this.id = crtId++;
+        this.id = crtId.getAndIncrement();
         this.errorReporter = errorReporter;
         this.current = new ArrayList<>();
     }
@@ -130,6 +131,10 @@ public abstract class CircuitVisitor
         return this.preorder(node.to(DBSPUnaryOperator.class));
     }
 
+    public VisitDecision preorder(DBSPOrderByOperator node) {
+        return this.preorder(node.to(DBSPUnaryOperator.class));
+    }
+
     public VisitDecision preorder(DBSPNoopOperator node) {
         return this.preorder(node.to(DBSPUnaryOperator.class));
     }
@@ -154,6 +159,18 @@ public abstract class CircuitVisitor
         return this.preorder(node.to(DBSPBinaryOperator.class));
     }
 
+    public VisitDecision preorder(DBSPSemiJoinOperator node) {
+        return this.preorder(node.to(DBSPBinaryOperator.class));
+    }
+
+    public VisitDecision preorder(DBSPOuterJoinOperator node) {
+        return this.preorder(node.to(DBSPBinaryOperator.class));
+    }
+
+    public VisitDecision preorder(DBSPAntiJoinOperator node) {
+        return this.preorder(node.to(DBSPBinaryOperator.class));
+    }
+
     public VisitDecision preorder(DBSPAggregateOperatorBase node) {
         return this.preorder(node.to(DBSPUnaryOperator.class));
     }
@@ -170,6 +187,14 @@ public abstract class CircuitVisitor
         return this.preorder((DBSPAggregateOperatorBase) node);
     }
 
+    public VisitDecision preorder(DBSPRowsAggregateOperator node) {
+        return this.preorder((DBSPAggregateOperatorBase) node);
+    }
+
+    public VisitDecision preorder(DBSPRangeAggregateOperator node) {
+        return this.preorder((DBSPAggregateOperatorBase) node);
+    }
+
     public VisitDecision preorder(DBSPPartitionedRollingAggregateWithWaterlineOperator node) {
         return this.preorder((DBSPBinaryOperator) node);
     }
@@ -332,6 +357,10 @@ public abstract class CircuitVisitor
         this.postorder(node.to(DBSPUnaryOperator.class));
     }
 
+    public void postorder(DBSPOrderByOperator node) {
+        this.postorder(node.to(DBSPUnaryOperator.class));
+    }
+
     public void postorder(DBSPSubtractOperator node) {
         this.postorder(node.to(DBSPBinaryOperator.class));
     }
@@ -348,6 +377,18 @@ public abstract class CircuitVisitor
         this.postorder(node.to(DBSPBinaryOperator.class));
     }
 
+    public void postorder(DBSPSemiJoinOperator node) {
+        this.postorder(node.to(DBSPBinaryOperator.class));
+    }
+
+    public void postorder(DBSPOuterJoinOperator node) {
+        this.postorder(node.to(DBSPBinaryOperator.class));
+    }
+
+    public void postorder(DBSPAntiJoinOperator node) {
+        this.postorder(node.to(DBSPBinaryOperator.class));
+    }
+
     public void postorder(DBSPJoinFilterMapOperator node) {
         this.postorder(node.to(DBSPBinaryOperator.class));
     }
@@ -368,6 +409,14 @@ public abstract class CircuitVisitor
         this.postorder((DBSPAggregateOperatorBase) node);
     }
 
+    public void postorder(DBSPRowsAggregateOperator node) {
+        this.postorder((DBSPAggregateOperatorBase) node);
+    }
+
+    public void postorder(DBSPRangeAggregateOperator node) {
+        this.postorder((DBSPAggregateOperatorBase) node);
+    }
+
     public void postorder(DBSPPartitionedRollingAggregateWithWaterlineOperator node) {
         this.postorder((DBSPBinaryOperator) node);
     }
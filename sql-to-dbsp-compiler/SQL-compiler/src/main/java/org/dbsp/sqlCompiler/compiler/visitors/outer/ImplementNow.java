@@ -1,16 +1,23 @@
 package org.dbsp.sqlCompiler.compiler.visitors.outer;
 
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPApplyOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPUnaryOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowOperator;
 import org.dbsp.sqlCompiler.compiler.ICompilerComponent;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
 import org.dbsp.sqlCompiler.compiler.errors.CompilationError;
+import org.dbsp.sqlCompiler.compiler.frontend.ExpressionCompiler;
 import org.dbsp.sqlCompiler.compiler.frontend.TypeCompiler;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
 import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
@@ -23,21 +30,31 @@ import org.dbsp.sqlCompiler.ir.IDBSPDeclaration;
 import org.dbsp.sqlCompiler.ir.IDBSPOuterNode;
 import org.dbsp.sqlCompiler.ir.annotation.AlwaysMonotone;
 import org.dbsp.sqlCompiler.ir.expression.DBSPApplyExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCastExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
 import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPIntervalMillisLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeRawTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeRef;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeTimestamp;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeTypedBox;
 import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeZSet;
 import org.dbsp.util.Linq;
 import org.dbsp.util.Logger;
 import org.dbsp.util.Utilities;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -171,15 +188,206 @@ public class ImplementNow extends Passes {
         }
     }
 
+    /** A filter whose condition is a conjunction of comparisons between a TIMESTAMP column
+     * of the input and an expression of the form now() +/- constant, and of other terms
+     * which do not involve now().  Since now() only grows, such a filter keeps the rows
+     * whose column is in a range [lower, upper) whose bounds only grow with time.
+     * It can be implemented by a DBSP window over the input indexed by the column, which
+     * keeps the rows sorted by the column, only emits the rows crossing the bounds at each
+     * step, and discards the rows which fall below the lower bound. */
+    static class TemporalFilter {
+        /** Parameter of the filter closure */
+        final DBSPParameter param;
+        /** Variable with type &Tup1<Timestamp> which stands for now() in the bounds */
+        final DBSPVariablePath now;
+        /** Index of the column compared with now(); -1 if no such column was found */
+        int column = -1;
+        /** Lower bound of the column, inclusive; null if not bounded */
+        @Nullable DBSPExpression lower = null;
+        /** Upper bound of the column, exclusive; null if not bounded */
+        @Nullable DBSPExpression upper = null;
+        /** Conjuncts which do not involve now() */
+        final List<DBSPExpression> residual = new ArrayList<>();
+        final IErrorReporter reporter;
+
+        TemporalFilter(IErrorReporter reporter, DBSPClosureExpression closure) {
+            assert closure.parameters.length == 1;
+            this.reporter = reporter;
+            this.param = closure.parameters[0];
+            this.now = new DBSPTypeTuple(ContainsNow.timestampType()).ref().var();
+        }
+
+        boolean containsNow(DBSPExpression expression) {
+            ContainsNow cn = new ContainsNow(this.reporter);
+            cn.apply(expression);
+            return cn.found();
+        }
+
+        /** Remove casts which only change the nullability of an expression */
+        static DBSPExpression stripNullableCasts(DBSPExpression expression) {
+            while (expression.is(DBSPCastExpression.class)) {
+                DBSPCastExpression cast = expression.to(DBSPCastExpression.class);
+                if (!cast.source.getType().setMayBeNull(false).sameType(cast.getType().setMayBeNull(false)))
+                    break;
+                expression = cast.source;
+            }
+            return expression;
+        }
+
+        /** Given an expression which is a monotone function of now(), return the
+         * same expression written as a function of the 'now' variable, or null
+         * if the expression does not have this shape. */
+        @Nullable
+        DBSPExpression boundOf(DBSPExpression expression) {
+            expression = stripNullableCasts(expression);
+            if (expression.is(DBSPApplyExpression.class)) {
+                if (ContainsNow.isNow(expression.to(DBSPApplyExpression.class)))
+                    return this.now.deepCopy().deref().field(0);
+                return null;
+            }
+            DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+            if (binary == null)
+                return null;
+            if (binary.operation != DBSPOpcode.ADD && binary.operation != DBSPOpcode.SUB)
+                return null;
+            if (!binary.right.is(DBSPLiteral.class))
+                return null;
+            DBSPExpression left = this.boundOf(binary.left);
+            if (left == null)
+                return null;
+            return ExpressionCompiler.makeBinaryExpression(binary.getNode(),
+                    binary.getType().setMayBeNull(false), binary.operation, left, binary.right);
+        }
+
+        /** Analyze a comparison which involves now().
+         * @return true if it is a comparison between a column and a bound. */
+        boolean addComparison(DBSPExpression expression) {
+            DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+            if (binary == null)
+                return false;
+            DBSPOpcode opcode = binary.operation;
+            DBSPExpression columnSide = stripNullableCasts(binary.left);
+            DBSPExpression boundSide = binary.right;
+            int column = Monotonicity.Comparisons.isColumn(columnSide, this.param);
+            if (column < 0) {
+                columnSide = stripNullableCasts(binary.right);
+                boundSide = binary.left;
+                column = Monotonicity.Comparisons.isColumn(columnSide, this.param);
+                // Flip the comparison so that the column is on the left
+                switch (opcode) {
+                    case LT: opcode = DBSPOpcode.GT; break;
+                    case LTE: opcode = DBSPOpcode.GTE; break;
+                    case GT: opcode = DBSPOpcode.LT; break;
+                    case GTE: opcode = DBSPOpcode.LTE; break;
+                    default: return false;
+                }
+            }
+            if (column < 0 || (this.column >= 0 && column != this.column))
+                return false;
+            if (!columnSide.getType().is(DBSPTypeTimestamp.class))
+                return false;
+            DBSPExpression bound = this.boundOf(boundSide);
+            if (bound == null)
+                return false;
+            this.column = column;
+
+            CalciteObject node = binary.getNode();
+            DBSPType type = ContainsNow.timestampType();
+            // The window is right-open, and timestamps have a precision of 1 millisecond
+            DBSPExpression next = ExpressionCompiler.makeBinaryExpression(node, type, DBSPOpcode.ADD,
+                    bound, new DBSPIntervalMillisLiteral(1, false));
+            switch (opcode) {
+                case GT:
+                    this.lower = this.combine(node, DBSPOpcode.MAX, this.lower, next);
+                    break;
+                case GTE:
+                    this.lower = this.combine(node, DBSPOpcode.MAX, this.lower, bound);
+                    break;
+                case LT:
+                    this.upper = this.combine(node, DBSPOpcode.MIN, this.upper, bound);
+                    break;
+                case LTE:
+                    this.upper = this.combine(node, DBSPOpcode.MIN, this.upper, next);
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+
+        DBSPExpression combine(CalciteObject node, DBSPOpcode opcode,
+                               @Nullable DBSPExpression previous, DBSPExpression bound) {
+            if (previous == null)
+                return bound;
+            return ExpressionCompiler.makeBinaryExpression(
+                    node, bound.getType(), opcode, previous, bound);
+        }
+
+        void conjuncts(DBSPExpression expression, List<DBSPExpression> result) {
+            DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+            if (binary != null && binary.operation == DBSPOpcode.AND) {
+                this.conjuncts(binary.left, result);
+                this.conjuncts(binary.right, result);
+            } else {
+                result.add(expression);
+            }
+        }
+
+        /** Analyze the body of the filter closure.
+         * @return true if the filter can be implemented as a temporal filter. */
+        boolean analyze(DBSPClosureExpression closure) {
+            DBSPExpression expression = closure.body;
+            DBSPUnaryExpression unary = expression.as(DBSPUnaryExpression.class);
+            if (unary != null && unary.operation == DBSPOpcode.WRAP_BOOL)
+                expression = unary.source;
+            List<DBSPExpression> conjuncts = new ArrayList<>();
+            this.conjuncts(expression, conjuncts);
+            for (DBSPExpression conjunct: conjuncts) {
+                if (!this.containsNow(conjunct))
+                    this.residual.add(conjunct);
+                else if (!this.addComparison(conjunct))
+                    return false;
+            }
+            return this.column >= 0;
+        }
+
+        DBSPType columnType() {
+            DBSPTypeTuple rowType = this.param.getType().deref().to(DBSPTypeTuple.class);
+            return rowType.getFieldType(this.column);
+        }
+
+        /** Closure which computes the bounds of the window from the current value of now() */
+        DBSPClosureExpression getBounds() {
+            DBSPType type = this.columnType();
+            DBSPTypeTimestamp timestamp = ContainsNow.timestampType();
+            DBSPExpression lower = this.lower != null ? this.lower : timestamp.getMinValue();
+            DBSPExpression upper = this.upper != null ? this.upper : timestamp.getMaxValue();
+            // NULL values sort before all other values, so they are never in the window
+            DBSPExpression pair = new DBSPRawTupleExpression(
+                    wrapTypedBox(lower.cast(type)), wrapTypedBox(upper.cast(type)));
+            return pair.closure(this.now.asParameter());
+        }
+
+        static DBSPExpression wrapTypedBox(DBSPExpression expression) {
+            DBSPType type = new DBSPTypeTypedBox(expression.getType(), false);
+            return new DBSPUnaryExpression(expression.getNode(), type, DBSPOpcode.TYPEDBOX, expression);
+        }
+    }
+
     /** Replace map operators that contain now() as an expression with
      * map operators that take an extra field and use that instead of the now() call.
      * Insert a join prior to such operators (which also requires a MapIndex operator.
      * Also inserts a MapIndex operator to index the 'NOW' built-in table.
-     * Same for filter operators. */
+     * Same for filter operators, except the ones that can be implemented
+     * as temporal filters, which use a window operator instead of a join. */
     static class RewriteNow extends CircuitCloneVisitor {
         // Holds the indexed version of the 'now' operator (indexed with an empty key).
         @Nullable
         DBSPOperator nowIndexed = null;
+        // Holds the monotone value of the 'now' operator, used to compute the bounds
+        // of temporal filters; created on demand.
+        @Nullable
+        DBSPOperator nowWaterline = null;
         final ICompilerComponent compiler;
 
         public RewriteNow(IErrorReporter reporter, ICompilerComponent compiler) {
@@ -232,12 +440,91 @@ public class ImplementNow extends Passes {
             }
         }
 
+        DBSPOperator getNowWaterline(CalciteObject node) {
+            if (this.nowWaterline != null)
+                return this.nowWaterline;
+            DBSPOperator now = Objects.requireNonNull(this.nowIndexed).to(DBSPMapIndexOperator.class).input();
+            DBSPTypeTimestamp timestamp = ContainsNow.timestampType();
+            DBSPTupleExpression min = new DBSPTupleExpression(timestamp.getMinValue());
+            DBSPVariablePath t = min.getType().ref().var();
+            DBSPClosureExpression extractTs = new DBSPTupleExpression(t.deref().field(0))
+                    // Second parameter unused for timestamp
+                    .closure(t.asParameter(), new DBSPTypeRawTuple().ref().var().asParameter());
+            DBSPVariablePath left = min.getType().ref().var();
+            DBSPVariablePath right = min.getType().ref().var();
+            DBSPExpression max = new DBSPTupleExpression(ExpressionCompiler.makeBinaryExpression(
+                    node, timestamp, DBSPOpcode.MAX, left.deref().field(0), right.deref().field(0)));
+            this.nowWaterline = new DBSPWaterlineOperator(node, min.closure(),
+                    extractTs,
+                    max.closure(left.asParameter(), right.asParameter()), now);
+            this.addOperator(this.nowWaterline);
+            return this.nowWaterline;
+        }
+
+        /** Implement a filter which is a temporal filter using a window.
+         * @return The operator producing the filter result, or null if the
+         * filter is not a temporal filter. */
+        @Nullable
+        DBSPOperator temporalFilter(DBSPFilterOperator operator) {
+            CalciteObject node = operator.getNode();
+            DBSPClosureExpression function = operator.getClosureFunction();
+            TemporalFilter temporal = new TemporalFilter(this.errorReporter, function);
+            if (!temporal.analyze(function))
+                return null;
+            Logger.INSTANCE.belowLevel(this, 1)
+                    .append("Implementing temporal filter ")
+                    .append(operator.toString())
+                    .newline();
+
+            DBSPOperator input = this.mapped(operator.input());
+            if (!temporal.residual.isEmpty()) {
+                DBSPExpression condition = temporal.residual.get(0);
+                for (int i = 1; i < temporal.residual.size(); i++)
+                    condition = ExpressionCompiler.makeBinaryExpression(node,
+                            condition.getType().setMayBeNull(condition.getType().mayBeNull ||
+                                    temporal.residual.get(i).getType().mayBeNull),
+                            DBSPOpcode.AND, condition, temporal.residual.get(i));
+                condition = ExpressionCompiler.wrapBoolIfNeeded(condition);
+                input = new DBSPFilterOperator(node, condition.closure(temporal.param), input);
+                this.addOperator(input);
+            }
+
+            DBSPClosureExpression makeBounds = temporal.getBounds();
+            DBSPOperator bounds = new DBSPApplyOperator(node, makeBounds,
+                    makeBounds.getResultType(), this.getNowWaterline(node),
+                    "(" + operator.getDerivedFrom() + ")");
+            this.addOperator(bounds);
+
+            // The window operator works on changes
+            DBSPOperator diff = new DBSPDifferentiateOperator(node, input);
+            this.addOperator(diff);
+            DBSPType rowType = operator.getOutputZSetElementType();
+            DBSPVariablePath t = rowType.ref().var();
+            DBSPExpression field = t.deref().field(temporal.column);
+            // Window requires data to be indexed
+            DBSPOperator ix = new DBSPMapIndexOperator(node,
+                    new DBSPRawTupleExpression(field.applyCloneIfNeeded(), t.deref().applyClone())
+                            .closure(t.asParameter()),
+                    new DBSPTypeIndexedZSet(node, field.getType(), rowType), operator.isMultiset, diff);
+            this.addOperator(ix);
+            DBSPWindowOperator window = new DBSPWindowOperator(node, ix, bounds);
+            this.addOperator(window);
+            DBSPOperator deindex = new DBSPDeindexOperator(node, window);
+            this.addOperator(deindex);
+            return new DBSPIntegrateOperator(node, deindex);
+        }
+
         @Override
         public void postorder(DBSPFilterOperator operator) {
             ContainsNow cn = new ContainsNow(this.errorReporter);
             DBSPExpression function = operator.getFunction();
             cn.apply(function);
             if (cn.found()) {
+                DBSPOperator temporal = this.temporalFilter(operator);
+                if (temporal != null) {
+                    this.map(operator, temporal);
+                    return;
+                }
                 DBSPStreamJoinOperator join = this.createJoin(operator);
                 RewriteNowExpression rn = new RewriteNowExpression(this.errorReporter);
                 function = rn.apply(function).to(DBSPExpression.class);
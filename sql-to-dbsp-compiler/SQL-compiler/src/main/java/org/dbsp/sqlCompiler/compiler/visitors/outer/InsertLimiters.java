@@ -12,19 +12,26 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayedIntegralOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFlatMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPHopOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinFilterMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOuterJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateWithWaterlineOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSumOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPUnaryOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPViewOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPWaterlineOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowOperator;
@@ -48,6 +55,7 @@ import org.dbsp.sqlCompiler.compiler.visitors.outer.expansion.DistinctExpansion;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.expansion.JoinExpansion;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.expansion.JoinFilterMapExpansion;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.expansion.OperatorExpansion;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.expansion.OuterJoinExpansion;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.expansion.ReplacementExpansion;
 import org.dbsp.sqlCompiler.ir.DBSPParameter;
 import org.dbsp.sqlCompiler.ir.annotation.AlwaysMonotone;
@@ -197,6 +205,40 @@ public class InsertLimiters extends CircuitCloneVisitor {
         super.postorder(operator);
     }
 
+    @Override
+    public void postorder(DBSPNegateOperator operator) {
+        this.unaryBounds(operator);
+    }
+
+    @Override
+    public void postorder(DBSPFlatMapOperator operator) {
+        this.unaryBounds(operator);
+    }
+
+    @Override
+    public void postorder(DBSPIndexedTopKOperator operator) {
+        this.unaryBounds(operator);
+    }
+
+    @Override
+    public void postorder(DBSPLagOperator operator) {
+        this.unaryBounds(operator);
+    }
+
+    /** Compute the bounds of a unary operator whose monotonicity is a function
+     * of the monotonicity of its input. */
+    void unaryBounds(DBSPUnaryOperator operator) {
+        ReplacementExpansion expanded = this.getReplacement(operator);
+        if (expanded != null) {
+            DBSPOperator bound = this.addBounds(expanded.replacement, 0);
+            if (operator != expanded.replacement && bound != null)
+                this.markBound(operator, bound);
+        } else {
+            this.nonMonotone(operator);
+        }
+        this.replace(operator);
+    }
+
     @Override
     public void postorder(DBSPFilterOperator operator) {
         ReplacementExpansion expanded = this.getReplacement(operator);
@@ -357,7 +399,9 @@ public class InsertLimiters extends CircuitCloneVisitor {
         DBSPPartitionedRollingAggregateWithWaterlineOperator replacement =
                 new DBSPPartitionedRollingAggregateWithWaterlineOperator(operator.getNode(),
                         operator.partitioningFunction, operator.function, operator.aggregate,
-                        operator.lower, operator.upper, operator.getOutputIndexedZSetType(),
+                        operator.lower, operator.upper, operator.framesFunction,
+                        operator.frameIndex, operator.frameFunctions,
+                        operator.getOutputIndexedZSetType(),
                         this.mapped(operator.input()), waterline);
         this.map(operator, replacement);
     }
@@ -465,6 +509,31 @@ public class InsertLimiters extends CircuitCloneVisitor {
         this.map(join, result, true);
     }
 
+    @Override
+    public void postorder(DBSPOuterJoinOperator join) {
+        OperatorExpansion expanded = this.expandedInto.get(join);
+        if (expanded == null) {
+            super.postorder(join);
+            this.nonMonotone(join);
+            return;
+        }
+        // An unmatched row may later become matched, so the output is not monotone,
+        // but the traces of the inputs, which are the only state of the operator,
+        // can be garbage-collected like for an inner join.
+        OuterJoinExpansion expansion = expanded.to(OuterJoinExpansion.class);
+        DBSPOperator result = this.gcJoin(join, expansion);
+        if (result == null) {
+            super.postorder(join);
+            this.nonMonotone(join);
+            return;
+        }
+
+        this.processIntegral(expansion.leftIntegrator);
+        this.processIntegral(expansion.rightIntegrator);
+        this.nonMonotone(join);
+        this.map(join, result, true);
+    }
+
     private void processIntegral(DBSPDelayedIntegralOperator replacement) {
         if (replacement.hasAnnotation(a -> a.is(AlwaysMonotone.class))) {
             DBSPOperator limiter = this.bound.get(replacement.input());
@@ -848,18 +917,77 @@ public class InsertLimiters extends CircuitCloneVisitor {
                 timestamp.closure(t.asParameter(), new DBSPTypeRawTuple().ref().var().asParameter()),
                 max, replacement);
         this.addOperator(waterline);
-        this.markBound(replacement, waterline);
+
+        // Only the columns with LATENESS are filtered, but in a view the
+        // bound may also cover columns which are monotone in the input.
+        IMaybeMonotoneType filterProjection = Monotonicity.getBodyType(expression);
+        DBSPOperator bound = waterline;
+        if (operator.is(DBSPViewOperator.class)) {
+            PartiallyMonotoneTuple declared = Monotonicity.getLatenessProjection(
+                    operator.to(DBSPViewOperator.class));
+            bound = this.mergeLatenessBound(expansion, waterline, declared,
+                    filterProjection.to(PartiallyMonotoneTuple.class));
+            filterProjection = declared;
+        }
+        this.markBound(replacement, bound);
         if (operator != replacement)
-            this.markBound(operator, waterline);
+            this.markBound(operator, bound);
         if (operator != expansion)
-            this.markBound(expansion, waterline);
+            this.markBound(expansion, bound);
 
         // Waterline fed through a delay
         DBSPDelayOperator delay = new DBSPDelayOperator(operator.getNode(), min, waterline);
         this.addOperator(delay);
         this.markBound(delay, waterline);
         return DBSPControlledFilterOperator.create(
-                operator.getNode(), replacement, Monotonicity.getBodyType(expression), delay);
+                operator.getNode(), replacement, filterProjection, delay);
+    }
+
+    /** Combine the waterline of a view with LATENESS annotations with the bound
+     * of the input of the view.
+     * @param expansion  Expansion of the view.
+     * @param waterline  Operator computing the waterline of the declared columns.
+     * @param declared   Projection where only the columns with LATENESS are monotone.
+     * @param merged     Projection of the view: a column is monotone if it has
+     *                   LATENESS, or if it is monotone in the input.
+     * @return An operator which computes a bound for the monotone columns of merged.
+     * For columns that are monotone in both the result is the largest of the two bounds. */
+    DBSPOperator mergeLatenessBound(DBSPOperator expansion, DBSPOperator waterline,
+                                    PartiallyMonotoneTuple declared, PartiallyMonotoneTuple merged) {
+        DBSPOperator source = expansion.inputs.get(0);
+        MonotoneExpression inputValue = this.expansionMonotoneValues.get(source);
+        if (inputValue == null || !inputValue.mayBeMonotone())
+            // The view is monotone only in the declared columns
+            return waterline;
+
+        PartiallyMonotoneTuple input = Monotonicity.getBodyType(inputValue).to(PartiallyMonotoneTuple.class);
+        DBSPOperator inputBound = Utilities.getExists(this.bound, source);
+        DBSPVariablePath w = waterline.outputType.ref().var();
+        DBSPVariablePath b = inputBound.outputType.ref().var();
+        List<DBSPExpression> fields = new ArrayList<>();
+        for (int i = 0; i < merged.size(); i++) {
+            if (!merged.getField(i).mayBeMonotone())
+                continue;
+            IMaybeMonotoneType inputField = input.getField(i);
+            DBSPExpression field;
+            if (declared.getField(i).mayBeMonotone()) {
+                field = w.deref().field(declared.compressedIndex(i));
+                if (inputField.is(ScalarMonotoneType.class) && inputField.mayBeMonotone()) {
+                    DBSPExpression inputBoundField = b.deref().field(input.compressedIndex(i));
+                    field = ExpressionCompiler.makeBinaryExpression(expansion.getNode(), field.getType(),
+                            DBSPOpcode.MAX, field, inputBoundField);
+                }
+            } else {
+                field = b.deref().field(input.compressedIndex(i));
+            }
+            fields.add(field);
+        }
+        DBSPClosureExpression closure = new DBSPTupleExpression(fields, false)
+                .closure(w.asParameter(), b.asParameter());
+        DBSPOperator result = new DBSPApply2Operator(expansion.getNode(), closure,
+                closure.getResultType(), waterline, inputBound);
+        this.addOperator(result);
+        return result;
     }
 
     DBSPExpression wrapTypedBox(DBSPExpression expression, boolean typed) {
@@ -895,20 +1023,14 @@ public class InsertLimiters extends CircuitCloneVisitor {
             index++;
         }
 
-        // Currently we only support at most 1 watermark column per table.
-        // TODO: support multiple fields.
-        if (minimums.size() > 1) {
-            throw new UnimplementedException("More than 1 watermark per table not yet supported", operator.getNode());
-        }
-
         if (!minimums.isEmpty()) {
-            assert fields.size() == 1;
             this.addOperator(expansion);
 
             DBSPTupleExpression min = new DBSPTupleExpression(minimums, false);
             DBSPTupleExpression timestamp = new DBSPTupleExpression(timestamps, false);
             DBSPParameter parameter = t.asParameter();
             DBSPClosureExpression max = this.timestampMax(operator.getNode(), min.getTupleType());
+            // A single waterline tracks all the watermark columns
             DBSPWaterlineOperator waterline = new DBSPWaterlineOperator(
                     operator.getNode(), min.closure(),
                     // Second parameter unused for timestamp
@@ -916,24 +1038,31 @@ public class InsertLimiters extends CircuitCloneVisitor {
                     max, operator);
             this.addOperator(waterline);
 
-            DBSPVariablePath var = timestamp.getType().ref().var();
-            DBSPExpression makePair = new DBSPRawTupleExpression(
-                    this.wrapTypedBox(minimums.get(0), false),
-                    this.wrapTypedBox(var.deref().field(0), false));
-            DBSPApplyOperator apply = new DBSPApplyOperator(
-                    operator.getNode(), makePair.closure(var.asParameter()), makePair.getType(), waterline,
-                    "(" + operator.getDerivedFrom() + ")");
-            this.addOperator(apply);
-
-            // Window requires data to be indexed
-            DBSPOperator ix = new DBSPMapIndexOperator(operator.getNode(),
-                    new DBSPRawTupleExpression(fields.get(0), t.deref()).closure(t.asParameter()),
-                    new DBSPTypeIndexedZSet(operator.getNode(),
-                            fields.get(0).getType(), dataType), true, expansion);
-            this.addOperator(ix);
-            DBSPWindowOperator window = new DBSPWindowOperator(operator.getNode(), ix, apply);
-            this.addOperator(window);
-            expansion = new DBSPDeindexOperator(operator.getNode(), window);
+            // A row is released when all its watermark columns are below the
+            // corresponding waterline fields, so apply one window per column.
+            for (int i = 0; i < fields.size(); i++) {
+                DBSPExpression field = fields.get(i);
+                DBSPVariablePath var = timestamp.getType().ref().var();
+                DBSPExpression makePair = new DBSPRawTupleExpression(
+                        this.wrapTypedBox(minimums.get(i), false),
+                        this.wrapTypedBox(var.deref().field(i), false));
+                DBSPApplyOperator apply = new DBSPApplyOperator(
+                        operator.getNode(), makePair.closure(var.asParameter()), makePair.getType(), waterline,
+                        "(" + operator.getDerivedFrom() + ")");
+                this.addOperator(apply);
+
+                // Window requires data to be indexed
+                DBSPOperator ix = new DBSPMapIndexOperator(operator.getNode(),
+                        new DBSPRawTupleExpression(field.deepCopy(), t.deref()).closure(t.asParameter()),
+                        new DBSPTypeIndexedZSet(operator.getNode(),
+                                field.getType(), dataType), true, expansion);
+                this.addOperator(ix);
+                DBSPWindowOperator window = new DBSPWindowOperator(operator.getNode(), ix, apply);
+                this.addOperator(window);
+                expansion = new DBSPDeindexOperator(operator.getNode(), window);
+                if (i < fields.size() - 1)
+                    this.addOperator(expansion);
+            }
         }
 
         if (expansion == operator) {
@@ -957,6 +1086,20 @@ public class InsertLimiters extends CircuitCloneVisitor {
         super.postorder(operator);
     }
 
+    @Override
+    public void postorder(DBSPSubtractOperator operator) {
+        // Treat like a sum
+        ReplacementExpansion expanded = this.getReplacement(operator);
+        if (expanded != null) {
+            DBSPOperator bound = this.processSum(expanded.replacement);
+            if (bound != null && expanded.replacement != operator)
+                this.markBound(operator, bound);
+        } else {
+            this.nonMonotone(operator);
+        }
+        super.postorder(operator);
+    }
+
     /** Compute an expression which projects a source expression into a subset of
      * its fields.  For example, the source may be v: (i32), while the sourceProjection
      * is (NonMonotone(i64), Monotone(i32)).  The destination may be (Monotone(i32)).
@@ -1035,7 +1178,7 @@ public class InsertLimiters extends CircuitCloneVisitor {
     }
 
     @Nullable
-    DBSPOperator processSum(DBSPSumOperator expanded) {
+    DBSPOperator processSum(DBSPOperator expanded) {
         String comment = "(" + expanded.getDerivedFrom() + ")";
         MonotoneExpression monotoneValue = this.expansionMonotoneValues.get(expanded);
         if (monotoneValue == null || !monotoneValue.mayBeMonotone()) {
@@ -50,7 +50,7 @@ public class InstrumentDump extends CircuitCloneVisitor {
         DBSPTypeZSet zset = type.to(DBSPTypeZSet.class);
         DBSPVariablePath row = new DBSPVariablePath(zset.elementType.ref());
         DBSPExpression dump = new DBSPApplyExpression(operator.getNode(), "dump", zset.elementType,
-                new DBSPStringLiteral(Long.toString(operator.id)), row);
+                new DBSPStringLiteral(Long.toString(operator.getLocalId())), row);
         DBSPExpression function = dump.closure(row.asParameter());
         DBSPOperator map = new DBSPMapOperator(operator.getNode(), function, zset, input);
         this.map(operator, map);
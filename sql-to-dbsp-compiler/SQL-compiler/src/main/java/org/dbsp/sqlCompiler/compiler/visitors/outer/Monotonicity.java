@@ -6,9 +6,13 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayedIntegralOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctIncrementalOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFlatMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPHopOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPNoopOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateOperator;
@@ -16,6 +20,7 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPPrimitiveAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSumOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPUnaryOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPUpsertFeedbackOperator;
@@ -42,11 +47,13 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPDerefExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPFieldExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPFlatmap;
 import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
 import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.DBSPWindowBoundExpression;
 import org.dbsp.sqlCompiler.ir.expression.NoExpression;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeRef;
@@ -214,10 +221,9 @@ public class Monotonicity extends CircuitVisitor {
 
     @Override
     public void postorder(DBSPViewOperator node) {
-        // If the view has LATENESS declarations, we use these.
+        // If the view has LATENESS declarations, a column is monotone if it has
+        // a declared lateness, or if it is monotone in the input.
         // Otherwise, we treat it as an identity function.
-        // We could do better: merge the input with the declared lateness.
-        // This is still TODO.
         DBSPTypeTuple tuple = node.getOutputZSetElementType().as(DBSPTypeTuple.class);
         if (tuple == null) {
             // This must be an ORDER BY node
@@ -225,74 +231,38 @@ public class Monotonicity extends CircuitVisitor {
         }
 
         if (node.hasLateness()) {
-            // Trust the annotations, and forget what we know about the input.
-            // This code parallels DBSPSourceMultisetOperator
-            List<IMaybeMonotoneType> fields = new ArrayList<>();
-            for (ViewColumnMetadata metadata: node.metadata.columns) {
-                IMaybeMonotoneType columnType = new NonMonotoneType(metadata.getType());
-                if (metadata.lateness != null)
-                    columnType = new MonotoneType(metadata.getType());
-                fields.add(columnType);
-            }
-            IMaybeMonotoneType projection = new PartiallyMonotoneTuple(fields, false, false);
+            // This code parallels DBSPSourceMultisetOperator.
+            // The result is an identity function on the merged projection, so
+            // the monotone output columns are not extracted out of "thin air":
+            // InsertLimiters computes their bounds by combining the waterline
+            // of the view with the bounds of its input.
+            IMaybeMonotoneType projection = getLatenessProjection(node);
+            MonotoneExpression input = this.getMonotoneExpression(node.input());
+            if (input != null && input.mayBeMonotone())
+                projection = projection.union(getBodyType(input));
             MonotoneExpression result = this.identity(node, projection, false);
             this.set(node, result);
         } else {
             // Treat this like an identity function.
             this.identity(node);
         }
+    }
 
-        /*
-        This is an attempt to blend the two monotonicities, but the other passes
-        are confused by this result.  The main problem is that there is an output
-        which is monotone which is extracted out of "thin air", since the corresponding
-        tuple input field is not monotone.
-
-        DBSPVariablePath var = new DBSPVariablePath("t", tuple);
-        PartiallyMonotoneTuple monotoneInput = null;
-        if (inputFunction != null)
-            monotoneInput = getBodyType(inputFunction).to(PartiallyMonotoneTuple.class);
-
-        MonotoneExpression result;
-        List<IMaybeMonotoneType> fieldTypes = new ArrayList<>();
-        List<DBSPExpression> allFields = new ArrayList<>();
-        List<DBSPExpression> monotoneFields = new ArrayList<>();
-
+    /** The projection of a view where exactly the columns with a declared
+     * LATENESS are monotone. */
+    public static PartiallyMonotoneTuple getLatenessProjection(DBSPViewOperator node) {
+        DBSPTypeTuple tuple = node.getOutputZSetElementType().to(DBSPTypeTuple.class);
+        List<IMaybeMonotoneType> fields = new ArrayList<>();
         int index = 0;
-        for (DBSPTypeStruct.Field field: struct.fields.values()) {
-            // Iterate over struct so we can get field names.
+        for (ViewColumnMetadata metadata: node.metadata.columns) {
             DBSPType type = tuple.getFieldType(index);
-            boolean isMonotone = monotoneInput != null && monotoneInput.getField(index).mayBeMonotone();
-            DBSPExpression lateness = null;
-            for (ViewColumnMetadata meta: node.metadata) {
-                if (meta.columnName.equalsIgnoreCase(field.name)) {
-                    lateness = meta.getLateness();
-                }
-            }
-            if (lateness != null)
-                isMonotone = true;
-            IMaybeMonotoneType fieldType;
-            DBSPExpression expression = null;
-            if (isMonotone) {
-                fieldType = new MonotoneType(type);
-                expression = var.field(index);
-                monotoneFields.add(expression);
-            } else {
-                fieldType = new NonMonotoneType(type);
-            }
-            allFields.add(var.field(index));
-            fieldTypes.add(fieldType);
+            IMaybeMonotoneType columnType = NonMonotoneType.nonMonotone(type);
+            if (metadata.lateness != null)
+                columnType = new MonotoneType(type);
+            fields.add(columnType);
             index++;
         }
-
-        DBSPParameter param = var.asParameter();
-        result = new MonotoneExpression(
-                new DBSPTupleExpression(allFields, false).closure(param),
-                new MonotoneClosureType(new PartiallyMonotoneTuple(fieldTypes, false), param, param),
-                new DBSPTupleExpression(monotoneFields, false).closure(param));
-        if (result.mayBeMonotone())
-            this.set(node, result);
-         */
+        return new PartiallyMonotoneTuple(fields, false, false);
     }
 
     @Override
@@ -405,6 +375,22 @@ public class Monotonicity extends CircuitVisitor {
 
     @Override
     public void postorder(DBSPSumOperator node) {
+        this.union(node);
+    }
+
+    @Override
+    public void postorder(DBSPSubtractOperator node) {
+        // The output contains the rows of both inputs, with some weights negated
+        this.union(node);
+    }
+
+    @Override
+    public void postorder(DBSPNegateOperator node) {
+        this.identity(node);
+    }
+
+    /** Analyze an operator whose output contains rows from all its inputs. */
+    void union(DBSPOperator node) {
         List<MonotoneExpression> inputFunctions = Linq.map(node.inputs, this::getMonotoneExpression);
         // All the inputs must be monotone for the result to have a chance of being monotone
         if (inputFunctions.contains(null))
@@ -469,11 +455,79 @@ public class Monotonicity extends CircuitVisitor {
         this.identity(node);
     }
 
+    @Override
+    public void postorder(DBSPIndexedTopKOperator node) {
+        // A change in a group can remove from the output any row of the group,
+        // so only the keys are monotone.
+        this.keyMonotonicity(node, node.input());
+    }
+
+    @Override
+    public void postorder(DBSPLagOperator node) {
+        // A change in a group can modify the output for any row of the group,
+        // so only the keys are monotone.
+        this.keyMonotonicity(node, node.input());
+    }
+
+    @Override
+    public void postorder(DBSPFlatMapOperator node) {
+        MonotoneExpression input = this.getMonotoneExpression(node.input());
+        if (input == null)
+            return;
+        DBSPFlatmap flatmap = node.getFunction().as(DBSPFlatmap.class);
+        if (flatmap == null)
+            // Not an UNNEST; we cannot analyze an arbitrary iterator
+            return;
+        IMaybeMonotoneType projection = getBodyType(input);
+        if (!projection.mayBeMonotone())
+            return;
+
+        // The fields copied from the input row keep their monotonicity;
+        // the fields produced from the collection elements are not monotone.
+        // Compute the index in the input row of each output field, or -1.
+        List<Integer> sources = new ArrayList<>(flatmap.leftCollectionIndexes);
+        if (flatmap.emitIteratedElement) {
+            int elementFields = 1;
+            if (flatmap.collectionIndexType == null) {
+                if (flatmap.rightProjections != null)
+                    elementFields = flatmap.rightProjections.size();
+                else if (flatmap.collectionElementType.is(DBSPTypeTupleBase.class))
+                    elementFields = flatmap.collectionElementType.to(DBSPTypeTupleBase.class).size();
+            }
+            for (int i = 0; i < elementFields; i++)
+                sources.add(-1);
+        }
+        if (flatmap.collectionIndexType != null)
+            sources.add(-1);
+        sources = flatmap.shuffle.shuffle(sources);
+
+        DBSPTypeTupleBase outputType = node.getOutputZSetElementType().to(DBSPTypeTupleBase.class);
+        assert sources.size() == outputType.size() :
+                "Expected " + outputType.size() + " fields, got " + sources.size();
+        DBSPVariablePath var = flatmap.inputElementType.ref().var();
+        DBSPExpression[] fields = new DBSPExpression[outputType.size()];
+        for (int i = 0; i < fields.length; i++) {
+            int source = sources.get(i);
+            if (source >= 0)
+                fields[i] = var.deepCopy().deref().field(source);
+            else
+                fields[i] = makeNoExpression(outputType.getFieldType(i));
+        }
+        DBSPClosureExpression closure = outputType.makeTuple(fields).closure(var.asParameter());
+        MonotoneTransferFunctions analyzer = new MonotoneTransferFunctions(
+                this.errorReporter, node, MonotoneTransferFunctions.ArgumentKind.ZSet, projection);
+        MonotoneExpression result = analyzer.applyAnalysis(closure);
+        this.set(node, result);
+    }
+
     /** Helper class for analyzing filters */
     static class Comparisons {
         /** A comparison between an output column and an expression which
          * may be monotone */
         static class Comparison implements ToIndentableString {
+            /** For an IndexedZSet 0 if the column is in the key, and 1 if it is
+             * in the value; -1 for a ZSet. */
+            public final int part;
             /** Output column involved in comparison */
             public final int columnIndex;
             /** Expression that is compared with column; column >= expression */
@@ -481,8 +535,9 @@ public class Monotonicity extends CircuitVisitor {
             /** Parameter that represents the row */
             final DBSPParameter parameter;
 
-            Comparison(int columnIndex, DBSPExpression comparedTo, DBSPParameter parameter) {
+            Comparison(int part, int columnIndex, DBSPExpression comparedTo, DBSPParameter parameter) {
                 assert columnIndex >= 0;
+                this.part = part;
                 this.columnIndex = columnIndex;
                 this.comparedTo = comparedTo;
                 this.parameter = parameter;
@@ -492,6 +547,7 @@ public class Monotonicity extends CircuitVisitor {
             public IIndentStream toString(IIndentStream builder) {
                 return builder
                         .append(this.parameter.name)
+                        .append(this.part >= 0 ? this.part + "." : "")
                         .append(this.columnIndex)
                         .append(" >= ")
                         .append(this.comparedTo);
@@ -499,7 +555,8 @@ public class Monotonicity extends CircuitVisitor {
 
             @Override
             public String toString() {
-                return this.parameter.name + "." + this.columnIndex + " >= " + this.comparedTo;
+                String part = this.part >= 0 ? this.part + "." : "";
+                return this.parameter.name + "." + part + this.columnIndex + " >= " + this.comparedTo;
             }
         }
 
@@ -531,13 +588,41 @@ public class Monotonicity extends CircuitVisitor {
             return -1;
         }
 
+        /** Check if `expression` is a reference to a column of the key (part 0)
+         * or of the value (part 1) of a `parameter` which is a pair of references.
+         * Return the column index if it is, or -1 otherwise. */
+        static int isIndexedColumn(DBSPExpression expression, DBSPParameter param, int part) {
+            DBSPFieldExpression field = expression.as(DBSPFieldExpression.class);
+            if (field == null)
+                return -1;
+            DBSPDerefExpression deref = field.expression.as(DBSPDerefExpression.class);
+            if (deref == null)
+                return -1;
+            DBSPFieldExpression pair = deref.expression.as(DBSPFieldExpression.class);
+            if (pair == null || pair.fieldNo != part)
+                return -1;
+            DBSPVariablePath var = pair.expression.as(DBSPVariablePath.class);
+            if (var == null)
+                return -1;
+            if (var.variable.equals(param.name))
+                return field.fieldNo;
+            return -1;
+        }
+
         /** If `larger` is a column reference, create a new comparison and add it to the list */
         void addIfIsColumn(DBSPExpression smaller, DBSPExpression larger, DBSPParameter param) {
             int index = isColumn(larger, param);
-            if (index < 0)
+            if (index >= 0) {
+                this.comparisons.add(new Comparison(-1, index, smaller, param));
                 return;
-            Comparison comp = new Comparison(index, smaller, param);
-            this.comparisons.add(comp);
+            }
+            for (int part = 0; part < 2; part++) {
+                index = isIndexedColumn(larger, param, part);
+                if (index >= 0) {
+                    this.comparisons.add(new Comparison(part, index, smaller, param));
+                    return;
+                }
+            }
         }
 
         /** Check if `expression` is a comparison and if so add it to the list */
@@ -589,10 +674,11 @@ public class Monotonicity extends CircuitVisitor {
             this.analyzeConjunction(expression, param);
         }
 
-        /** Get all the expressions that are below the specified output column */
-        List<DBSPExpression> getLowerBounds(int columnIndex) {
+        /** Get all the expressions that are below the specified output column
+         * @param part  Part of the IndexedZSet containing the column, or -1 for a ZSet. */
+        List<DBSPExpression> getLowerBounds(int part, int columnIndex) {
             return Linq.map(
-                    Linq.where(this.comparisons, c -> c.columnIndex == columnIndex),
+                    Linq.where(this.comparisons, c -> c.part == part && c.columnIndex == columnIndex),
                     c -> c.comparedTo);
         }
     }
@@ -603,11 +689,6 @@ public class Monotonicity extends CircuitVisitor {
         if (input == null)
             return;
         boolean pairOfReferences = node.getType().is(DBSPTypeIndexedZSet.class);
-        if (pairOfReferences) {
-            // TODO: if this is useful we should implement it
-            this.identity(node);
-            return;
-        }
 
         // Find out if the filter condition is a conjunction of comparisons.
         // Extract all the comparisons of the form column >= expression.
@@ -625,24 +706,53 @@ public class Monotonicity extends CircuitVisitor {
             return;
         DBSPTypeTupleBase tuple = projection.getType().to(DBSPTypeTupleBase.class);
         DBSPVariablePath var = node.getClosureFunction().parameters[0].asVariable();
-        DBSPExpression[] fields = new DBSPExpression[tuple.size()];
-        for (int i = 0; i < tuple.size(); i++) {
-            DBSPExpression field = var.deepCopy().deref().field(i);
-            List<DBSPExpression> comp = comparisons.getLowerBounds(i);
-            for (DBSPExpression exp: comp) {
-                field = ExpressionCompiler.makeBinaryExpression(node.getNode(),
-                        field.getType(), DBSPOpcode.MAX, field, exp);
+        DBSPExpression body;
+        MonotoneTransferFunctions.ArgumentKind argumentType;
+        if (pairOfReferences) {
+            // The parameter is a pair of references (&key, &value)
+            DBSPExpression[] parts = new DBSPExpression[2];
+            for (int part = 0; part < 2; part++) {
+                DBSPExpression row = var.deepCopy().field(part).deref();
+                DBSPTypeTupleBase partType = tuple.tupFields[part].as(DBSPTypeTupleBase.class);
+                if (partType == null)
+                    parts[part] = row;
+                else
+                    parts[part] = this.addLowerBounds(node, row, partType, comparisons, part);
             }
-            fields[i] = field;
+            body = new DBSPRawTupleExpression(parts);
+            argumentType = MonotoneTransferFunctions.ArgumentKind.IndexedZSet;
+        } else {
+            body = this.addLowerBounds(node, var.deref(), tuple, comparisons, -1);
+            argumentType = MonotoneTransferFunctions.ArgumentKind.ZSet;
         }
-        DBSPClosureExpression closure = tuple.makeTuple(fields).closure(var.asParameter());
-        MonotoneTransferFunctions.ArgumentKind argumentType = MonotoneTransferFunctions.ArgumentKind.ZSet;
+        DBSPClosureExpression closure = body.closure(var.asParameter());
         MonotoneTransferFunctions analyzer = new MonotoneTransferFunctions(
                 this.errorReporter, node, argumentType, projection);
         MonotoneExpression output = Objects.requireNonNull(analyzer.applyAnalysis(closure));
         this.set(node, output);
     }
 
+    /** Build a copy of a row where each field is replaced by the maximum of the
+     * field and all the lower bounds found for it in the comparisons.
+     * @param row         Expression denoting the row.
+     * @param type        Type of the row.
+     * @param comparisons Comparisons extracted from a filter condition.
+     * @param part        Part of an IndexedZSet the row belongs to, or -1 for a ZSet. */
+    DBSPExpression addLowerBounds(DBSPFilterOperator node, DBSPExpression row, DBSPTypeTupleBase type,
+                                  Comparisons comparisons, int part) {
+        DBSPExpression[] fields = new DBSPExpression[type.size()];
+        for (int i = 0; i < type.size(); i++) {
+            DBSPExpression field = row.deepCopy().field(i);
+            List<DBSPExpression> comp = comparisons.getLowerBounds(part, i);
+            for (DBSPExpression exp: comp) {
+                field = ExpressionCompiler.makeBinaryExpression(node.getNode(),
+                        field.getType(), DBSPOpcode.MAX, field, exp);
+            }
+            fields[i] = field;
+        }
+        return type.makeTuple(fields);
+    }
+
     /** Create a NoExpression with the specified type.
      * NoExpressions are never monotone, so we can use them as placeholders for
      * expressions that we do not want to look at. */
@@ -664,7 +774,15 @@ public class Monotonicity extends CircuitVisitor {
     public void postorder(DBSPPrimitiveAggregateOperator node) {
         // Input type is IndexedZSet<key, tuple>
         // Output type is IndexedZSet<key, aggregateType>
-        MonotoneExpression inputValue = this.getMonotoneExpression(node.inputs.get(0));
+        this.keyMonotonicity(node, node.inputs.get(0));
+    }
+
+    /** Analyze an operator which produces an IndexedZSet with the same keys as
+     * its input, and whose output for each key only depends on the input for the
+     * same key.  The keys of the output are as monotone as the keys of the input,
+     * while the values are not monotone. */
+    void keyMonotonicity(DBSPOperator node, DBSPOperator input) {
+        MonotoneExpression inputValue = this.getMonotoneExpression(input);
         if (inputValue == null)
             return;
         IMaybeMonotoneType projection = Monotonicity.getBodyType(inputValue);
@@ -717,8 +835,18 @@ public class Monotonicity extends CircuitVisitor {
         assert varType.size() == 2 : "Expected a pair, got " + varType;
         varType = new DBSPTypeRawTuple(varType.tupFields[0].ref(), varType.tupFields[1].ref());
         DBSPVariablePath var = varType.var();
-        DBSPExpression lowerBound = ExpressionCompiler.makeBinaryExpression(node.getNode(),
-                timestampType, DBSPOpcode.SUB, var.field(0).deref(), node.lower.representation);
+        // With several frames the bound is the smallest of the bounds of the frames
+        DBSPExpression lowerBound = null;
+        for (DBSPWindowBoundExpression lower: node.lower) {
+            DBSPExpression frameBound = ExpressionCompiler.makeBinaryExpression(node.getNode(),
+                    timestampType, DBSPOpcode.SUB, var.deepCopy().field(0).deref(), lower.representation);
+            if (lowerBound == null)
+                lowerBound = frameBound;
+            else
+                lowerBound = ExpressionCompiler.makeBinaryExpression(node.getNode(),
+                        timestampType, DBSPOpcode.MIN, lowerBound, frameBound);
+        }
+        Objects.requireNonNull(lowerBound);
 
         DBSPExpression body =
                 new DBSPRawTupleExpression(
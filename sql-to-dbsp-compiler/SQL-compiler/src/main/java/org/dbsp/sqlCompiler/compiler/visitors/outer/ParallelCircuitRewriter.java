@@ -0,0 +1,192 @@
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.IRTransform;
+import org.dbsp.sqlCompiler.ir.DBSPNode;
+import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
+import org.dbsp.util.CompilationScope;
+import org.dbsp.util.IWritesLogs;
+import org.dbsp.util.Logger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/** Has the same effect as a {@link CircuitRewriter}, applying an inner transform
+ * to every function and type within the circuit, but the inner nodes are
+ * rewritten in parallel.
+ *
+ * <p>Works in three phases:
+ * - find all the inner nodes which a CircuitRewriter would transform
+ * - split these nodes into groups of consecutive nodes, and rewrite each group
+ *   in its own task, in a fork-join pool shared by all the passes
+ * - run a CircuitRewriter which uses the precomputed results.
+ * The last phase runs sequentially and visits the operators in the same order as a
+ * sequential CircuitRewriter, so the result (including the operator numbering, which
+ * is visible in the generated code) is identical.
+ *
+ * <p>The inner transform must behave like a function of its input:
+ * it must not carry state between invocations, and it must not allocate fresh
+ * variable names.  Each task uses its own instance, produced by the factory. */
+public class ParallelCircuitRewriter implements IWritesLogs, CircuitTransform {
+    final IErrorReporter errorReporter;
+    final Supplier<IRTransform> factory;
+    final int parallelism;
+    /** Used only to describe the transform. */
+    final String name;
+    /** Number of groups rewritten by the last application. */
+    int groupCount;
+
+    /** Number of tasks created for each thread, so that the threads stay busy
+     * when some groups take longer than others. */
+    static final int TASKS_PER_THREAD = 4;
+
+    /** Pools shared by all the rewriters, indexed by parallelism.
+     * The worker threads are daemons, so the pools are never shut down. */
+    static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    public ParallelCircuitRewriter(IErrorReporter reporter, Supplier<IRTransform> factory, int parallelism) {
+        this.errorReporter = reporter;
+        this.factory = factory;
+        this.parallelism = parallelism;
+        this.name = factory.get().toString();
+        this.groupCount = 0;
+    }
+
+    static ForkJoinPool pool(int parallelism) {
+        return pools.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    /** Number of groups of inner nodes rewritten in parallel by the last application. */
+    public int getGroupCount() {
+        return this.groupCount;
+    }
+
+    /** An inner node which is transformed when visiting the circuit. */
+    record Occurrence(IDBSPInnerNode node) {}
+
+    /** The result of transforming an occurrence, and the number of nodes created
+     * while computing it. */
+    record Rewritten(IDBSPInnerNode result, long created) {}
+
+    /** An IRTransform which does not change anything, but records all the nodes it is applied to. */
+    static class Collector implements IRTransform {
+        final List<Occurrence> occurrences = new ArrayList<>();
+
+        @Override
+        public IDBSPInnerNode apply(IDBSPInnerNode node) {
+            this.occurrences.add(new Occurrence(node));
+            return node;
+        }
+    }
+
+    /** An IRTransform which replays the results computed in parallel, in order. */
+    class Replay implements IRTransform {
+        final List<Occurrence> occurrences;
+        final List<Rewritten> results;
+        int next = 0;
+        @Nullable IRTransform fallback = null;
+
+        Replay(List<Occurrence> occurrences, List<Rewritten> results) {
+            this.occurrences = occurrences;
+            this.results = results;
+        }
+
+        @Override
+        public IDBSPInnerNode apply(IDBSPInnerNode node) {
+            if (this.next < this.occurrences.size() &&
+                    this.occurrences.get(this.next).node == node) {
+                Rewritten rewritten = this.results.get(this.next++);
+                DBSPNode.skipIds(rewritten.created);
+                return rewritten.result;
+            }
+            // Should not happen: the visit order is different from the recorded one.
+            Logger.INSTANCE.belowLevel(ParallelCircuitRewriter.this, 1)
+                    .append("Node not precomputed, rewriting sequentially ")
+                    .append(node.toString())
+                    .newline();
+            if (this.fallback == null)
+                this.fallback = ParallelCircuitRewriter.this.factory.get();
+            return this.fallback.apply(node);
+        }
+    }
+
+    /** Rewrite all the occurrences with the specified indexes using a fresh transform. */
+    List<Rewritten> rewrite(IRTransform transform, List<Occurrence> occurrences, List<Integer> indexes) {
+        List<Rewritten> result = new ArrayList<>(indexes.size());
+        for (int index: indexes) {
+            IDBSPInnerNode node = occurrences.get(index).node;
+            IDBSPInnerNode[] rewritten = new IDBSPInnerNode[1];
+            long created = DBSPNode.isolated(() -> rewritten[0] = transform.apply(node));
+            result.add(new Rewritten(rewritten[0], created));
+        }
+        return result;
+    }
+
+    @Override
+    public DBSPCircuit apply(DBSPCircuit circuit) {
+        // Phase 1: collect the inner nodes
+        Collector collector = new Collector();
+        CircuitRewriter collect = new CircuitRewriter(this.errorReporter, collector);
+        // The result of this pass is discarded, so don't let it influence the numbering.
+        DBSPNode.isolated(() -> collect.apply(circuit));
+        List<Occurrence> occurrences = collector.occurrences;
+
+        // Split the occurrences into groups of consecutive occurrences.  The transform
+        // is a function of each node, so the groups don't need to follow the circuit structure.
+        int groupSize = Math.max(1, Math.ceilDiv(occurrences.size(), this.parallelism * TASKS_PER_THREAD));
+        List<List<Integer>> indexes = new ArrayList<>();
+        for (int start = 0; start < occurrences.size(); start += groupSize) {
+            List<Integer> group = new ArrayList<>(groupSize);
+            for (int i = start; i < Math.min(start + groupSize, occurrences.size()); i++)
+                group.add(i);
+            indexes.add(group);
+        }
+        this.groupCount = indexes.size();
+        Logger.INSTANCE.belowLevel(this, 1)
+                .append("Rewriting ")
+                .append(occurrences.size())
+                .append(" nodes in ")
+                .append(indexes.size())
+                .append(" groups")
+                .newline();
+
+        // Phase 2: rewrite in parallel.  Transforms are allocated on this thread.
+        List<IRTransform> transforms = new ArrayList<>();
+        for (int i = 0; i < indexes.size(); i++)
+            transforms.add(this.factory.get());
+        Rewritten[] results = new Rewritten[occurrences.size()];
+        ForkJoinPool pool = pool(this.parallelism);
+        // The tasks run in the scope of this compilation
+        CompilationScope scope = CompilationScope.current();
+        List<ForkJoinTask<List<Rewritten>>> tasks = new ArrayList<>();
+        for (int i = 0; i < indexes.size(); i++) {
+            List<Integer> group = indexes.get(i);
+            IRTransform transform = transforms.get(i);
+            tasks.add(pool.submit(() -> CompilationScope.run(
+                    scope, () -> this.rewrite(transform, occurrences, group))));
+        }
+        // Merge in a deterministic order
+        for (int i = 0; i < tasks.size(); i++) {
+            List<Rewritten> rewritten = tasks.get(i).join();
+            List<Integer> group = indexes.get(i);
+            for (int j = 0; j < group.size(); j++)
+                results[group.get(j)] = rewritten.get(j);
+        }
+
+        // Phase 3: rebuild the circuit sequentially
+        Replay replay = new Replay(occurrences, List.of(results));
+        return new CircuitRewriter(this.errorReporter, replay).apply(circuit);
+    }
+
+    @Override
+    public String toString() {
+        return "Parallel-" + this.name;
+    }
+}
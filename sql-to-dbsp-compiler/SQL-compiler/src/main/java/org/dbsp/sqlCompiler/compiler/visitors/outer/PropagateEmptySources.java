@@ -1,6 +1,7 @@
 package org.dbsp.sqlCompiler.compiler.visitors.outer;
 
 import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
@@ -12,6 +13,8 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPNoopOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOuterJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSemiJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamDistinctOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
@@ -222,4 +225,52 @@ public class PropagateEmptySources extends CircuitCloneVisitor {
         }
         super.postorder(operator);
     }
+
+    @Override
+    public void postorder(DBSPSemiJoinOperator operator) {
+        for (DBSPOperator prev: operator.inputs) {
+            DBSPOperator source = this.mapped(prev);
+            if (this.emptySources.contains(source)) {
+                DBSPLiteral value = this.emptyLiteral(operator.getType());
+                DBSPConstantOperator result = new DBSPConstantOperator(operator.getNode(), value, operator.isMultiset);
+                this.emptySources.add(result);
+                this.map(operator, result);
+                return;
+            }
+        }
+        super.postorder(operator);
+    }
+
+    @Override
+    public void postorder(DBSPOuterJoinOperator operator) {
+        DBSPOperator left = this.mapped(operator.left());
+        DBSPOperator right = this.mapped(operator.right());
+        // A full join with one empty input still produces the rows of the other one
+        if (this.emptySources.contains(left) &&
+                (!operator.isFull() || this.emptySources.contains(right))) {
+            DBSPLiteral value = this.emptyLiteral(operator.getType());
+            DBSPConstantOperator result = new DBSPConstantOperator(operator.getNode(), value, operator.isMultiset);
+            this.emptySources.add(result);
+            this.map(operator, result);
+            return;
+        }
+        super.postorder(operator);
+    }
+
+    @Override
+    public void postorder(DBSPAntiJoinOperator operator) {
+        DBSPOperator left = this.mapped(operator.left());
+        DBSPOperator right = this.mapped(operator.right());
+        if (this.emptySources.contains(left)) {
+            DBSPLiteral value = this.emptyLiteral(operator.getType());
+            DBSPConstantOperator result = new DBSPConstantOperator(operator.getNode(), value, operator.isMultiset);
+            this.emptySources.add(result);
+            this.map(operator, result);
+            return;
+        } else if (this.emptySources.contains(right)) {
+            this.map(operator, left, false);
+            return;
+        }
+        super.postorder(operator);
+    }
 }
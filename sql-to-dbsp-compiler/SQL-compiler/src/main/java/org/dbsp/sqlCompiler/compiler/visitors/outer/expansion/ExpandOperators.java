@@ -1,25 +1,34 @@
 package org.dbsp.sqlCompiler.compiler.visitors.outer.expansion;
 
 import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPBinaryOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayedIntegralOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctIncrementalOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFlatMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPHopOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinFilterMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPNoopOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOuterJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPrimitiveAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSemiJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSumOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPUpsertFeedbackOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPViewOperator;
@@ -75,8 +84,8 @@ public class ExpandOperators extends CircuitCloneVisitor {
 
     @Override
     public void postorder(DBSPHopOperator operator) {
-        // This is not exactly true, since hop operators are expanded into a map and
-        // a flatmap, but it turns out that for monotonicity analysis it's simpler
+        // This is not exactly true, since hop operators are lowered into a flatmap,
+        // but it turns out that for monotonicity analysis it's simpler
         // to analyze the original operator.
         this.identity(operator);
     }
@@ -116,6 +125,33 @@ public class ExpandOperators extends CircuitCloneVisitor {
         this.identity(node);
     }
 
+    @Override
+    public void postorder(DBSPNegateOperator node) {
+        this.identity(node);
+    }
+
+    @Override
+    public void postorder(DBSPSubtractOperator node) {
+        this.identity(node);
+    }
+
+    @Override
+    public void postorder(DBSPFlatMapOperator node) {
+        this.identity(node);
+    }
+
+    @Override
+    public void postorder(DBSPIndexedTopKOperator node) {
+        // Like the rolling aggregate, we don't care about the internal structure
+        this.identity(node);
+    }
+
+    @Override
+    public void postorder(DBSPLagOperator node) {
+        // Like the rolling aggregate, we don't care about the internal structure
+        this.identity(node);
+    }
+
     @Override
     public void postorder(DBSPStreamAggregateOperator operator) {
         if (operator.isLinear) {
@@ -207,6 +243,43 @@ public class ExpandOperators extends CircuitCloneVisitor {
                 leftJoin, rightJoin, deltaJoin, sum));
     }
 
+    @Override
+    public void postorder(DBSPOuterJoinOperator operator) {
+        List<DBSPOperator> inputs = Linq.map(operator.inputs, this::mapped);
+        DBSPDelayedIntegralOperator leftIntegrator = new DBSPDelayedIntegralOperator(operator.getNode(), inputs.get(0));
+        leftIntegrator.copyAnnotations(operator.left());
+        this.addOperator(leftIntegrator);
+        DBSPDelayedIntegralOperator rightIntegrator = new DBSPDelayedIntegralOperator(operator.getNode(), inputs.get(1));
+        rightIntegrator.copyAnnotations(operator.right());
+        this.addOperator(rightIntegrator);
+        DBSPOperator result = operator.withInputs(inputs, true);
+        this.map(operator, result);
+        this.addExpansion(operator, new OuterJoinExpansion(leftIntegrator, rightIntegrator, result));
+    }
+
+    @Override
+    public void postorder(DBSPSemiJoinOperator operator) {
+        this.semiJoin(operator);
+    }
+
+    @Override
+    public void postorder(DBSPAntiJoinOperator operator) {
+        this.semiJoin(operator);
+    }
+
+    /** Semi-joins and anti-joins only keep the distinct keys of their right input. */
+    void semiJoin(DBSPBinaryOperator operator) {
+        List<DBSPOperator> inputs = Linq.map(operator.inputs, this::mapped);
+        DBSPIntegrateOperator rightIntegrator = new DBSPIntegrateOperator(operator.getNode(), inputs.get(1));
+        this.addOperator(rightIntegrator);
+        DBSPDistinctIncrementalOperator rightKeys =
+                new DBSPDistinctIncrementalOperator(operator.getNode(), rightIntegrator, inputs.get(1));
+        this.addOperator(rightKeys);
+        DBSPOperator result = operator.withInputs(Linq.list(inputs.get(0), rightKeys), true);
+        this.map(operator, result);
+        this.addExpansion(operator, new SemiJoinExpansion(rightIntegrator, rightKeys, result));
+    }
+
     @Override
     public void postorder(DBSPJoinFilterMapOperator operator) {
         List<DBSPOperator> inputs = Linq.map(operator.inputs, this::mapped);
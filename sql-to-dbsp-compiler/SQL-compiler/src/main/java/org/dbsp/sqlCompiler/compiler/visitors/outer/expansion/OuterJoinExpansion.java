@@ -0,0 +1,34 @@
+package org.dbsp.sqlCompiler.compiler.visitors.outer.expansion;
+
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayedIntegralOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+
+/** Expansion of an outer join operator.  The integrators stand for the
+ * traces of the two inputs, which are used both to compute the inner join
+ * and to find the unmatched rows. */
+public final class OuterJoinExpansion
+        extends OperatorExpansion
+        implements CommonJoinExpansion {
+    public final DBSPDelayedIntegralOperator leftIntegrator;
+    public final DBSPDelayedIntegralOperator rightIntegrator;
+    /** Outer join applied to the expanded inputs */
+    public final DBSPOperator join;
+
+    public OuterJoinExpansion(DBSPDelayedIntegralOperator leftIntegrator,
+                              DBSPDelayedIntegralOperator rightIntegrator,
+                              DBSPOperator join) {
+        this.leftIntegrator = leftIntegrator;
+        this.rightIntegrator = rightIntegrator;
+        this.join = join;
+    }
+
+    @Override
+    public DBSPDelayedIntegralOperator getLeftIntegrator() {
+        return this.leftIntegrator;
+    }
+
+    @Override
+    public DBSPDelayedIntegralOperator getRightIntegrator() {
+        return this.rightIntegrator;
+    }
+}
@@ -0,0 +1,22 @@
+package org.dbsp.sqlCompiler.compiler.visitors.outer.expansion;
+
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctIncrementalOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+
+/** Expansion of a semi-join or anti-join operator. */
+public final class SemiJoinExpansion extends OperatorExpansion {
+    public final DBSPIntegrateOperator rightIntegrator;
+    /** Distinct keys of the right input */
+    public final DBSPDistinctIncrementalOperator rightKeys;
+    /** Semi-join or anti-join with the distinct keys */
+    public final DBSPOperator join;
+
+    public SemiJoinExpansion(DBSPIntegrateOperator rightIntegrator,
+                             DBSPDistinctIncrementalOperator rightKeys,
+                             DBSPOperator join) {
+        this.rightIntegrator = rightIntegrator;
+        this.rightKeys = rightKeys;
+        this.join = join;
+    }
+}
@@ -11,6 +11,7 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPAssignmentExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPBlockExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
 import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
@@ -23,6 +24,7 @@ import org.dbsp.sqlCompiler.ir.type.DBSPTypeAny;
 import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeSemigroup;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeUser;
 import org.dbsp.util.IIndentStream;
 import org.dbsp.util.Linq;
 
@@ -31,6 +33,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import static org.dbsp.sqlCompiler.ir.type.DBSPTypeCode.SEMIGROUP;
+
 
 /** Description of an aggregate.
  * In general an aggregate performs multiple simple aggregates simultaneously. */
@@ -227,6 +231,15 @@ public final class DBSPAggregate extends DBSPNode
          * is weighted by the row weight, and the results are added. */
         @Nullable
         public final DBSPClosureExpression linearFunction;
+        /** AGG_MIN or AGG_MAX if this aggregate can be computed from the ordered
+         * values of each group; null otherwise. */
+        @Nullable
+        public final DBSPOpcode minMax;
+        /** If 'minMax' is non-null this is a function with the signature
+         * |row| value, which produces the value whose minimum or maximum is computed.
+         * NULL values are ignored. */
+        @Nullable
+        public final DBSPClosureExpression minMaxFunction;
 
         public Implementation(
                 CalciteObject origin,
@@ -237,7 +250,11 @@ public final class DBSPAggregate extends DBSPNode
                 DBSPExpression emptySetResult,
                 DBSPType semigroup,
                 @Nullable
-                DBSPClosureExpression linearFunction) {
+                DBSPClosureExpression linearFunction,
+                @Nullable
+                DBSPOpcode minMax,
+                @Nullable
+                DBSPClosureExpression minMaxFunction) {
             super(origin);
             this.zero = zero;
             this.increment = increment;
@@ -245,6 +262,22 @@ public final class DBSPAggregate extends DBSPNode
             this.emptySetResult = emptySetResult;
             this.semigroup = semigroup;
             this.linearFunction = linearFunction;
+            this.minMax = minMax;
+            this.minMaxFunction = minMaxFunction;
+            assert (minMax == null) == (minMaxFunction == null);
+        }
+
+        public Implementation(
+                CalciteObject origin,
+                DBSPExpression zero,
+                DBSPClosureExpression increment,
+                @Nullable
+                DBSPClosureExpression postProcess,
+                DBSPExpression emptySetResult,
+                DBSPType semigroup,
+                @Nullable
+                DBSPClosureExpression linearFunction) {
+            this(origin, zero, increment, postProcess, emptySetResult, semigroup, linearFunction, null, null);
         }
 
         public Implementation(
@@ -359,6 +392,12 @@ public final class DBSPAggregate extends DBSPNode
                         .append("linearFunction=")
                         .append(this.linearFunction);
             }
+            if (this.minMaxFunction != null) {
+                builder.newline()
+                        .append(Objects.requireNonNull(this.minMax).toString())
+                        .append("=")
+                        .append(this.minMaxFunction);
+            }
             builder.newline().decrease().append("]");
             return builder;
         }
@@ -369,6 +408,8 @@ public final class DBSPAggregate extends DBSPNode
                     context.equivalent(this.postProcess, other.postProcess) &&
                     context.equivalent(this.emptySetResult, other.emptySetResult) &&
                     context.equivalent(this.linearFunction, other.linearFunction) &&
+                    this.minMax == other.minMax &&
+                    context.equivalent(this.minMaxFunction, other.minMaxFunction) &&
                     this.semigroup.sameType(other.semigroup);
         }
     }
@@ -377,6 +418,23 @@ public final class DBSPAggregate extends DBSPNode
         return Linq.all(this.components, c -> c.linearFunction != null);
     }
 
+    /** True if this aggregate is a single MIN or MAX which can be computed
+     * from the ordered values of each group. */
+    public boolean isMinMax() {
+        return !this.isWindowAggregate &&
+                this.components.length == 1 &&
+                this.components[0].minMaxFunction != null;
+    }
+
+    /** Indexes of the components which have a linear implementation. */
+    public List<Integer> linearComponents() {
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < this.components.length; i++)
+            if (this.components[i].linearFunction != null)
+                result.add(i);
+        return result;
+    }
+
     @Override
     public boolean sameFields(IDBSPNode other) {
         DBSPAggregate o = other.as(DBSPAggregate.class);
@@ -397,6 +455,26 @@ public final class DBSPAggregate extends DBSPNode
 
     /** Combines multiple DBSPAggregate.Implementation objects into one. */
     public DBSPAggregate.Implementation combine(IErrorReporter reporter) {
+        return this.combine(reporter, null);
+    }
+
+    /** Combines multiple DBSPAggregate.Implementation objects into one which only
+     * computes the components of a window frame.  The result has the same accumulator
+     * and output types as the result of {@link #combine}; the other components keep
+     * their accumulator unchanged and produce a default value.
+     *
+     * @param frameIndex For each component the index of its frame.
+     * @param frame      Frame whose components are computed. */
+    public DBSPAggregate.Implementation combineFrame(
+            IErrorReporter reporter, List<Integer> frameIndex, int frame) {
+        if (frameIndex.size() != this.components.length)
+            throw new InternalCompilerError("Expected a frame for each aggregate component", this);
+        return this.combine(reporter, Linq.map(frameIndex, f -> f == frame));
+    }
+
+    /** Combines the Implementation objects into one.
+     * @param used If not null, only the components for which this is true are computed. */
+    DBSPAggregate.Implementation combine(IErrorReporter reporter, @Nullable List<Boolean> used) {
         int parts = this.components.length;
         DBSPExpression[] zeros = new DBSPExpression[parts];
         DBSPExpression[] increments = new DBSPExpression[parts];
@@ -427,6 +505,9 @@ public final class DBSPAggregate extends DBSPNode
             semigroups[i] = implementation.semigroup;
             posts[i] = implementation.getPostprocessing();
             emptySetResults[i] = implementation.emptySetResult;
+            if (used != null && !used.get(i))
+                semigroups[i] = new DBSPTypeUser(
+                        CalciteObject.EMPTY, SEMIGROUP, "FirstSemigroup", false, accumulatorTypes[i]);
         }
 
         DBSPTypeTuple accumulatorType = new DBSPTypeTuple(accumulatorTypes);
@@ -436,6 +517,12 @@ public final class DBSPAggregate extends DBSPNode
         DBSPVariablePath weightVar = new DBSPVariablePath(Objects.requireNonNull(weightType));
         for (int i = 0; i < parts; i++) {
             DBSPExpression accumulatorField = accumulator.deref().field(i);
+            if (used != null && !used.get(i)) {
+                increments[i] = accumulatorField.applyCloneIfNeeded();
+                posts[i] = Objects.requireNonNull(
+                        this.components[i].getPostprocessing().getResultType()).defaultValue();
+                continue;
+            }
             DBSPExpression expr = increments[i].call(
                     accumulatorField, this.rowVar, weightVar);
             BetaReduction reducer = new BetaReduction(reporter);
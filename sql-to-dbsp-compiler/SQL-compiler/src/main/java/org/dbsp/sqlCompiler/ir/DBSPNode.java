@@ -25,6 +25,7 @@ package org.dbsp.sqlCompiler.ir;
 
 import org.dbsp.sqlCompiler.compiler.errors.SourcePositionRange;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
+import org.dbsp.util.CompilationScope;
 import org.dbsp.util.IndentStream;
 import org.dbsp.util.Utilities;
 
@@ -34,6 +35,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Base class for all DBSP nodes. */
 public abstract class DBSPNode
@@ -41,6 +43,13 @@ public abstract class DBSPNode
     static long crtId = 0;
     public final long id;
 
+    /** Ids for the nodes created by {@link #isolated} computations.
+     * This range is disjoint from the one used by the compiler thread. */
+    static final AtomicLong isolatedId = new AtomicLong(Long.MAX_VALUE / 2);
+    /** Non-null while the current thread executes an {@link #isolated} computation;
+     * counts the nodes created by the computation. */
+    static final ThreadLocal<long[]> isolatedCount = new ThreadLocal<>();
+
     /** Original Calcite object node that produced this node. */
     private final
     CalciteObject node;
@@ -127,9 +136,55 @@ public abstract class DBSPNode
 
     protected DBSPNode(CalciteObject node) {
         this.node = node;
-        this.id = crtId++;
-        if (log != null)
-            log.add(this);
+        long[] count = isolatedCount.get();
+        if (count == null) {
+            CompilationScope scope = CompilationScope.current();
+            if (scope != null) {
+                this.id = scope.nextNodeId();
+            } else {
+                this.id = crtId++;
+                if (log != null)
+                    log.add(this);
+            }
+        } else {
+            count[0]++;
+            this.id = isolatedId.getAndIncrement();
+        }
+    }
+
+    /** Run a computation which may create nodes, possibly on a thread other than
+     * the compiler thread.  The nodes created are numbered from a separate range,
+     * so the computation does not perturb the numbering of the compiler thread.
+     * The numbering is visible in the generated code (e.g., in stream names).
+     * @param work  Computation to run.
+     * @return      The number of nodes created by the computation.  Passing this value to
+     *              {@link #skipIds} on the compiler thread produces the same numbering for
+     *              all subsequent nodes as if the computation had run on the compiler thread. */
+    public static long isolated(Runnable work) {
+        long[] previous = isolatedCount.get();
+        long[] count = new long[1];
+        isolatedCount.set(count);
+        try {
+            work.run();
+        } finally {
+            isolatedCount.set(previous);
+        }
+        return count[0];
+    }
+
+    /** Advance the node numbering as if 'count' nodes had been created.
+     * See {@link #isolated}. */
+    public static void skipIds(long count) {
+        long[] isolated = isolatedCount.get();
+        if (isolated != null) {
+            isolated[0] += count;
+            return;
+        }
+        CompilationScope scope = CompilationScope.current();
+        if (scope != null)
+            scope.skipNodeIds(count);
+        else
+            crtId += count;
     }
 
     /** Do not call this method!
@@ -145,6 +200,12 @@ public abstract class DBSPNode
         return this.id;
     }
 
+    /** The id of this node within its compilation, which is used in the generated code.
+     * See {@link CompilationScope}. */
+    public long getLocalId() {
+        return CompilationScope.localId(this.id);
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
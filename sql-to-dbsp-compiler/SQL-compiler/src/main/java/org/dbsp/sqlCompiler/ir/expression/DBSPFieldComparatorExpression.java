@@ -33,17 +33,28 @@ import org.dbsp.util.IIndentStream;
 
 /** A comparator that looks at the field of a tuple.
  * A comparator takes a field of a tuple and compares tuples on the specified field.
- * It also takes a direction, indicating whether the sort is ascending or descending. */
+ * It also takes a direction, indicating whether the sort is ascending or descending,
+ * and whether NULL values of the field come first or last. */
 public final class DBSPFieldComparatorExpression extends DBSPComparatorExpression {
     public final DBSPComparatorExpression source;
     public final boolean ascending;
+    /** True if NULL values of the field are sorted before the other values.
+     * This is only honored by the comparators generated as CmpFunc implementations. */
+    public final boolean nullsFirst;
     public final int fieldNo;
 
-    public DBSPFieldComparatorExpression(CalciteObject node, DBSPComparatorExpression source, int fieldNo, boolean ascending) {
+    public DBSPFieldComparatorExpression(CalciteObject node, DBSPComparatorExpression source,
+                                         int fieldNo, boolean ascending, boolean nullsFirst) {
         super(node);
         this.source = source;
         this.fieldNo = fieldNo;
         this.ascending = ascending;
+        this.nullsFirst = nullsFirst;
+    }
+
+    /** Create a comparator where NULL values are smaller than all other values. */
+    public DBSPFieldComparatorExpression(CalciteObject node, DBSPComparatorExpression source, int fieldNo, boolean ascending) {
+        this(node, source, fieldNo, ascending, ascending);
     }
 
     @Override
@@ -67,6 +78,7 @@ public final class DBSPFieldComparatorExpression extends DBSPComparatorExpressio
             return false;
         return this.source == o.source &&
                 this.ascending == o.ascending &&
+                this.nullsFirst == o.nullsFirst &&
                 this.fieldNo == o.fieldNo &&
                 this.hasSameType(o);
     }
@@ -85,7 +97,7 @@ public final class DBSPFieldComparatorExpression extends DBSPComparatorExpressio
     public DBSPExpression deepCopy() {
         return new DBSPFieldComparatorExpression(
                 this.getNode(), this.source.deepCopy().to(DBSPComparatorExpression.class),
-                this.fieldNo, this.ascending);
+                this.fieldNo, this.ascending, this.nullsFirst);
     }
 
     @Override
@@ -94,6 +106,7 @@ public final class DBSPFieldComparatorExpression extends DBSPComparatorExpressio
         if (otherExpression == null)
             return false;
         return this.ascending == otherExpression.ascending &&
+                this.nullsFirst == otherExpression.nullsFirst &&
                 this.fieldNo == otherExpression.fieldNo &&
                 this.source.equivalent(context, otherExpression.source);
     }
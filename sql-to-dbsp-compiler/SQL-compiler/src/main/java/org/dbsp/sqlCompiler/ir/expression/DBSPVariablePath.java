@@ -30,6 +30,7 @@ import org.dbsp.sqlCompiler.ir.DBSPParameter;
 import org.dbsp.sqlCompiler.ir.IDBSPDeclaration;
 import org.dbsp.sqlCompiler.ir.IDBSPNode;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.util.CompilationScope;
 import org.dbsp.util.IIndentStream;
 import org.dbsp.util.Utilities;
 
@@ -48,7 +49,14 @@ public final class DBSPVariablePath extends DBSPExpression {
 
     /** Allocate a likely new variable name */
     public DBSPVariablePath(DBSPType type) {
-        this(uniquePrefix + crtId++, type);
+        this(uniquePrefix + nextId(), type);
+    }
+
+    static long nextId() {
+        CompilationScope scope = CompilationScope.current();
+        if (scope != null)
+            return scope.next(uniquePrefix);
+        return crtId++;
     }
 
     public DBSPParameter asParameter() {
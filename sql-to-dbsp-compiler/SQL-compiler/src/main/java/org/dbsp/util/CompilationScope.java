@@ -0,0 +1,81 @@
+package org.dbsp.util;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/** State which is private to one compilation: the logger, and the counters used
+ * to number nodes and to generate fresh names.
+ *
+ * <p>By default all compilations in a process share global state, so compilations
+ * must run one at a time.  A compilation that runs concurrently with others
+ * executes within its own scope, see {@link #run}.  The scope is attached to
+ * the current thread; work handed to other threads must be run in the same scope.
+ * Within a scope numbering starts from 0, so the generated code does not depend on
+ * other compilations running in the same process. */
+public final class CompilationScope {
+    /** The node ids of each scope are taken from a separate block.
+     * Blocks are disjoint from the ids of nodes created outside any scope. */
+    public static final long BLOCK_SIZE = 1L << 32;
+    static final AtomicLong nextBlock = new AtomicLong(1L << 40);
+    static final ThreadLocal<CompilationScope> current = new ThreadLocal<>();
+
+    public final Logger logger;
+    /** First node id of this scope. */
+    public final long nodeBase;
+    long nextNode;
+    final Map<String, Long> counters;
+
+    public CompilationScope() {
+        this.logger = Logger.create();
+        this.nodeBase = nextBlock.getAndAdd(BLOCK_SIZE);
+        this.nextNode = 0;
+        this.counters = new HashMap<>();
+    }
+
+    /** @return The scope of the current thread, or null if running outside any scope. */
+    @Nullable
+    public static CompilationScope current() {
+        return current.get();
+    }
+
+    /** Run a computation in the specified scope.
+     * @param scope Scope to use; if null the computation runs in the global scope. */
+    public static <T> T run(@Nullable CompilationScope scope, Supplier<T> work) {
+        CompilationScope previous = current.get();
+        current.set(scope);
+        try {
+            return work.get();
+        } finally {
+            current.set(previous);
+        }
+    }
+
+    /** Allocate a new node id in this scope. */
+    public synchronized long nextNodeId() {
+        return this.nodeBase + this.nextNode++;
+    }
+
+    /** Advance the node numbering as if 'count' nodes had been created. */
+    public synchronized void skipNodeIds(long count) {
+        this.nextNode += count;
+    }
+
+    /** Get the next value of the counter with the specified name,
+     * starting from 0, and increment the counter. */
+    public synchronized long next(String counter) {
+        long result = this.counters.getOrDefault(counter, 0L);
+        this.counters.put(counter, result + 1);
+        return result;
+    }
+
+    /** The id of a node relative to the start of the scope where it was created.
+     * This is the id displayed in the generated code. */
+    public static long localId(long id) {
+        if (id >= (1L << 40) && id < nextBlock.get())
+            return id % BLOCK_SIZE;
+        return id;
+    }
+}
@@ -37,7 +37,8 @@ public class Logger {
     private final IIndentStream noStream;
 
     /**
-     * There is only one instance of the logger for the whole program.
+     * The logger of the whole program.  When running within a
+     * {@link CompilationScope} this forwards to the logger of the scope.
      */
     public static final Logger INSTANCE = new Logger();
 
@@ -46,6 +47,21 @@ public class Logger {
         this.noStream = new NullIndentStream();
     }
 
+    /** Create a logger for a {@link CompilationScope}. */
+    static Logger create() {
+        return new Logger();
+    }
+
+    /** The logger which does the work for this one. */
+    private Logger target() {
+        if (this != INSTANCE)
+            return this;
+        CompilationScope scope = CompilationScope.current();
+        if (scope == null)
+            return this;
+        return scope.logger;
+    }
+
     /**
      * Get the logging stream for messages below this logging level.
      * @param clazz   Class which does the logging.
@@ -53,6 +69,9 @@ public class Logger {
      * @return        A stream where the message can be appended.
      */
     public IIndentStream belowLevel(String clazz, int level) {
+        Logger target = this.target();
+        if (target != this)
+            return target.belowLevel(clazz, level);
         int debugLevel = this.getLoggingLevel(clazz);
         if (debugLevel >= level)
             return this.debugStream;
@@ -74,6 +93,9 @@ public class Logger {
      * @param level   Debugging level.
      * @return Previous logging level for this module. */
     public int setLoggingLevel(String clazz, int level) {
+        Logger target = this.target();
+        if (target != this)
+            return target.setLoggingLevel(clazz, level);
         int previous = this.loggingLevel.getOrDefault(clazz, 0);
         this.loggingLevel.put(clazz, level);
         return previous;
@@ -83,11 +105,14 @@ public class Logger {
      * The current debug level for the specified class.
      */
     public int getLoggingLevel(String clazz) {
+        Logger target = this.target();
+        if (target != this)
+            return target.getLoggingLevel(clazz);
         return this.loggingLevel.getOrDefault(clazz, 0);
     }
 
     public <T> int getLoggingLevel(Class<T> clazz) {
-        return this.loggingLevel.getOrDefault(clazz.getSimpleName(), 0);
+        return this.getLoggingLevel(clazz.getSimpleName());
     }
 
     public <T> int setLoggingLevel(Class<T> clazz, int level) {
@@ -99,6 +124,9 @@ public class Logger {
      * Notice that the indentation is *not* reset when the stream is changed.
      */
     public Appendable setDebugStream(Appendable writer) {
+        Logger target = this.target();
+        if (target != this)
+            return target.setDebugStream(writer);
         return this.debugStream.setOutputStream(writer);
     }
 }
@@ -49,20 +49,17 @@ public class NameGen {
      */
     public NameGen(String prefix) {
         this.prefix = prefix;
-        if (!nextId.containsKey(this.prefix))
-            nextId.put(this.prefix, 0);
-    }
-
-    public int getNext() {
-        if (!nextId.containsKey(this.prefix))
-            nextId.put(this.prefix, 0);
-        return nextId.get(this.prefix);
     }
 
     public String nextName() {
-        int id = this.getNext();
-        nextId.put(this.prefix, id+1);
-        return this.prefix + id;
+        CompilationScope scope = CompilationScope.current();
+        if (scope != null)
+            return this.prefix + scope.next(NameGen.class.getSimpleName() + ":" + this.prefix);
+        synchronized (nextId) {
+            int id = nextId.getOrDefault(this.prefix, 0);
+            nextId.put(this.prefix, id + 1);
+            return this.prefix + id;
+        }
     }
 
     /**
@@ -70,6 +67,8 @@ public class NameGen {
      * It is for testing only.
      */
     public static void reset() {
-        nextId.clear();
+        synchronized (nextId) {
+            nextId.clear();
+        }
     }
 }
@@ -139,7 +139,8 @@ public class ComplexQueriesTest extends BaseSQLTests {
 
             @Override
             public void endVisit() {
-                Assert.assertEquals(4, this.count);
+                // One operator for the windows partitioned by cc_num, and one for avg_spend_p3m_over_d
+                Assert.assertEquals(2, this.count);
             }
         };
         visitor.apply(circuit);
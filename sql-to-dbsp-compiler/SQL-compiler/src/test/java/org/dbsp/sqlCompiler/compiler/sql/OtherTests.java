@@ -30,6 +30,7 @@ import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.jdbc.CalciteConnection;
 import org.apache.calcite.schema.SchemaPlus;
 import org.dbsp.sqlCompiler.CompilerMain;
+import org.dbsp.sqlCompiler.CompilerServer;
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPControlledFilterOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
@@ -42,14 +43,19 @@ import org.dbsp.sqlCompiler.compiler.StderrErrorReporter;
 import org.dbsp.sqlCompiler.compiler.TestUtil;
 import org.dbsp.sqlCompiler.compiler.backend.ToCsvVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.RustModulesWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustVisitor;
 import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.CalciteCompiler;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.ViewPlanCache;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteObject.CalciteObject;
 import org.dbsp.sqlCompiler.compiler.sql.simple.EndToEndTests;
 import org.dbsp.sqlCompiler.compiler.sql.tools.BaseSQLTests;
 import org.dbsp.sqlCompiler.compiler.sql.tools.Change;
 import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.Simplify;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.ParallelCircuitRewriter;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.Passes;
 import org.dbsp.sqlCompiler.ir.DBSPFunction;
 import org.dbsp.sqlCompiler.ir.DBSPNode;
@@ -86,6 +92,7 @@ import org.junit.Test;
 
 import javax.imageio.ImageIO;
 import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
@@ -93,6 +100,8 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -156,6 +165,128 @@ public class OtherTests extends BaseSQLTests
         Assert.assertEquals(expected, str);
     }
 
+    String compileWithThreads(String sql, int threads) {
+        NameGen.reset();
+        DBSPNode.reset();
+        DBSPVariablePath.reset();
+        CompilerOptions options = this.testOptions(true, true);
+        options.languageOptions.threads = threads;
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatements(sql);
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        return ToRustVisitor.toRustString(compiler, circuit, compiler.options);
+    }
+
+    @Test
+    public void parallelOptimizerTest() {
+        // The parallel optimizer must produce exactly the same code as the sequential one
+        String sql = """
+                CREATE TABLE T0(id INT, v INT, s VARCHAR);
+                CREATE TABLE T1(id INT, w INT);
+                CREATE TABLE T2(id INT, v INT, s VARCHAR);
+                CREATE TABLE T3(id INT, w INT);
+                CREATE TABLE T4(id INT, w INT);
+                CREATE VIEW V0 AS SELECT id, v + 1 AS x FROM T0 WHERE v > 10;
+                CREATE VIEW V1 AS SELECT id, SUM(w) AS w FROM T1 GROUP BY id;
+                CREATE VIEW V2 AS SELECT T2.id, s, w FROM T2 JOIN T3 ON T2.id = T3.id;
+                CREATE VIEW V3 AS SELECT id, MAX(w) FROM T4 WHERE w IS NOT NULL GROUP BY id;""";
+        String sequential = this.compileWithThreads(sql, 1);
+        String parallel = this.compileWithThreads(sql, 4);
+        Assert.assertEquals(sequential, parallel);
+
+        // The inner nodes are rewritten by several tasks
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(sql);
+        DBSPCircuit circuit = getCircuit(compiler);
+        ParallelCircuitRewriter rewriter = new ParallelCircuitRewriter(compiler, () -> new Simplify(compiler), 4);
+        rewriter.apply(circuit);
+        Assert.assertTrue(rewriter.getGroupCount() > 1);
+    }
+
+    DBSPCompiler compileWithViewCache(String sql, File directory) {
+        NameGen.reset();
+        DBSPNode.reset();
+        DBSPVariablePath.reset();
+        CompilerOptions options = this.testOptions(true, true);
+        options.languageOptions.cacheViews = directory.getPath();
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatements(sql);
+        return compiler;
+    }
+
+    @Test
+    public void viewCacheTest() throws IOException {
+        ViewPlanCache.clear();
+        File directory = Files.createTempDirectory("views").toFile();
+        String tables = """
+                CREATE TABLE T(id INT, v INT);
+                CREATE TABLE S(id INT, w INT);
+                """;
+        String views = """
+                CREATE VIEW V0 AS SELECT id, v + 1 AS x FROM T WHERE v > 10;
+                CREATE VIEW V1 AS SELECT id, SUM(w) AS w FROM S GROUP BY id;
+                CREATE VIEW V2 AS SELECT V0.id, x, w FROM V0 JOIN V1 ON V0.id = V1.id;""";
+        DBSPCompiler first = this.compileWithViewCache(tables + views, directory);
+        String expected = ToRustVisitor.toRustString(first, first.getFinalCircuit("circuit"), first.options);
+        Assert.assertEquals(0, first.frontend.viewCacheHits);
+        Assert.assertEquals(3, first.frontend.viewCacheMisses);
+        File[] entries = directory.listFiles((d, name) -> name.endsWith(".json"));
+        Assert.assertNotNull(entries);
+        Assert.assertEquals(3, entries.length);
+
+        // Cached plans produce the same code
+        DBSPCompiler second = this.compileWithViewCache(tables + views, directory);
+        String actual = ToRustVisitor.toRustString(second, second.getFinalCircuit("circuit"), second.options);
+        Assert.assertEquals(3, second.frontend.viewCacheHits);
+        Assert.assertEquals(expected, actual);
+
+        // Plans are read from the directory by a compilation in a new process
+        ViewPlanCache.clear();
+        DBSPCompiler fresh = this.compileWithViewCache(tables + views, directory);
+        actual = ToRustVisitor.toRustString(fresh, fresh.getFinalCircuit("circuit"), fresh.options);
+        Assert.assertEquals(3, fresh.frontend.viewCacheHits);
+        Assert.assertEquals(expected, actual);
+
+        // Changing table S invalidates V1 and V2, which depends on it
+        DBSPCompiler third = this.compileWithViewCache(
+                tables.replace("w INT", "w BIGINT") + views, directory);
+        Assert.assertEquals(1, third.frontend.viewCacheHits);
+        Assert.assertEquals(2, third.frontend.viewCacheMisses);
+        Assert.assertFalse(third.hasErrors());
+        ViewPlanCache.clear();
+        for (File file: Objects.requireNonNull(directory.listFiles()))
+            Assert.assertTrue(file.delete());
+        Assert.assertTrue(directory.delete());
+    }
+
+    @Test
+    public void viewCacheRootTest() throws IOException {
+        // The cached plans restore the validated row types and the collations of the views
+        ViewPlanCache.clear();
+        File directory = Files.createTempDirectory("views").toFile();
+        String sql = """
+                CREATE TABLE T(id INT NOT NULL, v INT, s VARCHAR);
+                CREATE VIEW V0 AS SELECT id, v FROM T ORDER BY v DESC, id;
+                CREATE VIEW V1 AS SELECT s, COUNT(*) AS c FROM T GROUP BY s ORDER BY c LIMIT 3;
+                CREATE VIEW V2(x, y) AS SELECT CAST(v AS DECIMAL(10, 2)), 'a' FROM T WHERE id > 0;""";
+        DBSPCompiler first = this.compileWithViewCache(sql, directory);
+        String expected = ToRustVisitor.toRustString(first, first.getFinalCircuit("circuit"), first.options);
+        Assert.assertEquals(0, first.frontend.viewCacheHits);
+        Assert.assertEquals(3, first.frontend.viewCacheMisses);
+
+        DBSPCompiler second = this.compileWithViewCache(sql, directory);
+        String actual = ToRustVisitor.toRustString(second, second.getFinalCircuit("circuit"), second.options);
+        Assert.assertEquals(3, second.frontend.viewCacheHits);
+        Assert.assertFalse(second.hasErrors());
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(first.getIOMetadataAsJson().toString(), second.getIOMetadataAsJson().toString());
+
+        ViewPlanCache.clear();
+        for (File file: Objects.requireNonNull(directory.listFiles()))
+            Assert.assertTrue(file.delete());
+        Assert.assertTrue(directory.delete());
+    }
+
     @Test
     public void connectorPropertiesTest() {
         String ddl = """
@@ -519,6 +650,130 @@ public class OtherTests extends BaseSQLTests
         Utilities.compileAndTestRust(BaseSQLTests.rustDirectory, false);
     }
 
+    @Test
+    public void testModules() throws IOException, InterruptedException, SQLException {
+        File file = createInputScript(
+                "CREATE TABLE T(id INT, name VARCHAR)",
+                "CREATE VIEW V0 AS SELECT id + 1 AS x FROM T",
+                "CREATE VIEW V1 AS SELECT name, COUNT(*) AS c FROM T GROUP BY name");
+        CompilerMessages messages = CompilerMain.execute(
+                "-o", BaseSQLTests.testFilePath, "--modules", file.getPath());
+        if (messages.errorCount() > 0)
+            throw new RuntimeException(messages.toString());
+        File directory = new File(BaseSQLTests.rustDirectory);
+        File[] modules = directory.listFiles((d, name) -> RustModulesWriter.MODULE_FILE.matcher(name).matches());
+        Assert.assertNotNull(modules);
+        Assert.assertEquals(2, modules.length);
+        long[] modified = new long[modules.length];
+        for (int i = 0; i < modules.length; i++)
+            modified[i] = modules[i].lastModified();
+
+        // Compiling again does not rewrite the modules
+        messages = CompilerMain.execute("-o", BaseSQLTests.testFilePath, "--modules", file.getPath());
+        if (messages.errorCount() > 0)
+            throw new RuntimeException(messages.toString());
+        for (int i = 0; i < modules.length; i++) {
+            Assert.assertTrue(modules[i].exists());
+            Assert.assertEquals(modified[i], modules[i].lastModified());
+        }
+        String main = Utilities.readFile(Paths.get(BaseSQLTests.testFilePath));
+        for (File module: modules)
+            Assert.assertTrue(main.contains(module.getName()));
+        Utilities.compileAndTestRust(BaseSQLTests.rustDirectory, false);
+        for (File module: modules)
+            Assert.assertTrue(module.delete());
+        Assert.assertTrue(new File(BaseSQLTests.testFilePath + ".modules").delete());
+    }
+
+    File[] compileModules(String... statements) throws IOException {
+        File file = createInputScript(statements);
+        CompilerMessages messages = CompilerMain.execute(
+                "-o", BaseSQLTests.testFilePath, "--modules", file.getPath());
+        if (messages.errorCount() > 0)
+            throw new RuntimeException(messages.toString());
+        File directory = new File(BaseSQLTests.rustDirectory);
+        File[] modules = directory.listFiles((d, name) -> RustModulesWriter.MODULE_FILE.matcher(name).matches());
+        Assert.assertNotNull(modules);
+        return modules;
+    }
+
+    @Test
+    public void testModulesChangeView() throws IOException, InterruptedException, SQLException {
+        // A file which looks like a module, but was not produced by the compiler
+        File other = new File(BaseSQLTests.rustDirectory, "m_other_0123456789abcdef.rs");
+        Utilities.writeFile(other.toPath(), "// not a module\n");
+
+        File[] modules = this.compileModules(
+                "CREATE TABLE T(id INT, name VARCHAR)",
+                "CREATE VIEW V0 AS SELECT id + 1 AS x FROM T",
+                "CREATE VIEW V1 AS SELECT name, COUNT(*) AS c FROM T WHERE id > 0 GROUP BY name");
+        File v1 = null;
+        for (File module: modules)
+            if (module.getName().startsWith("m_v1_"))
+                v1 = module;
+        Assert.assertNotNull(v1);
+        String contents = Utilities.readFile(v1.toPath());
+        long modified = v1.lastModified();
+
+        // Changing V0 renumbers the operators of the circuit, but does not change the module of V1
+        modules = this.compileModules(
+                "CREATE TABLE T(id INT, name VARCHAR)",
+                "CREATE VIEW V0 AS SELECT id + 1 AS x, id * 2 AS y FROM T WHERE name IS NOT NULL",
+                "CREATE VIEW V1 AS SELECT name, COUNT(*) AS c FROM T WHERE id > 0 GROUP BY name");
+        Assert.assertTrue(v1.exists());
+        Assert.assertEquals(modified, v1.lastModified());
+        Assert.assertEquals(contents, Utilities.readFile(v1.toPath()));
+        // The old module of V0 is removed, but other files are not
+        Assert.assertEquals(3, modules.length);
+        Assert.assertTrue(other.exists());
+        Utilities.compileAndTestRust(BaseSQLTests.rustDirectory, false);
+
+        Assert.assertTrue(other.delete());
+        for (File module: modules)
+            if (!module.equals(other))
+                Assert.assertTrue(module.delete());
+        Assert.assertTrue(new File(BaseSQLTests.testFilePath + ".modules").delete());
+    }
+
+    @Test
+    public void testServer() throws IOException, InterruptedException {
+        File script = createInputScript(
+                "CREATE TABLE T(id INT, name VARCHAR)",
+                "CREATE VIEW V AS SELECT name, SUM(id) AS s FROM T GROUP BY name");
+        File first = File.createTempFile("out", ".rs", new File(rustDirectory));
+        File second = File.createTempFile("out", ".rs", new File(rustDirectory));
+        ObjectMapper mapper = new ObjectMapper();
+        StringBuilder requests = new StringBuilder();
+        int id = 0;
+        for (File output: List.of(first, second)) {
+            ObjectNode request = mapper.createObjectNode();
+            request.put("id", id++);
+            request.putArray("args")
+                    .add("-o").add(output.getPath())
+                    .add(script.getPath());
+            requests.append(request).append(System.lineSeparator());
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(os, true, StandardCharsets.UTF_8);
+        CompilerServer server = new CompilerServer(output, 2);
+        server.serve(new ByteArrayInputStream(requests.toString().getBytes(StandardCharsets.UTF_8)));
+
+        String[] responses = os.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+        Assert.assertEquals(2, responses.length);
+        for (String response: responses) {
+            JsonNode node = mapper.readTree(response);
+            Assert.assertEquals(0, node.get("exitCode").asInt());
+        }
+        // Concurrent compilations produce the same code
+        Assert.assertEquals(
+                Utilities.readFile(first.toPath()),
+                Utilities.readFile(second.toPath()));
+        Assert.assertTrue(first.delete());
+        Assert.assertTrue(second.delete());
+        Assert.assertTrue(script.delete());
+    }
+
     @Test
     public void testUDFWarning() throws IOException, SQLException {
         File file = createInputScript("CREATE FUNCTION myfunction(d DATE, i INTEGER) RETURNS VARCHAR",
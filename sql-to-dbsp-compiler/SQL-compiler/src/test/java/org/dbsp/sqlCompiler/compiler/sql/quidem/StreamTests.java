@@ -141,6 +141,23 @@ public class StreamTests extends SqlIoTest {
                 (10 rows)""");
     }
 
+    @Test
+    public void testHopTumble() {
+        // A hop whose slide is the same as the size behaves like a tumble
+        this.qs("""
+                SELECT * FROM TABLE(HOP(TABLE ORDERS, DESCRIPTOR(ROWTIME), INTERVAL '10' MINUTE, INTERVAL '10' MINUTE, INTERVAL '3' MINUTE));
+                +---------------------+----+---------+-------+-------------------------+-------------------------+
+                | ROWTIME             | ID | PRODUCT | UNITS | window_start            | window_end              |
+                +---------------------+----+---------+-------+-------------------------+-------------------------+
+                | 2015-02-15 10:15:00 |  1 | paint|       10 | 2015-02-15 10:13:00.000 | 2015-02-15 10:23:00.000 |
+                | 2015-02-15 10:24:15 |  2 | paper|        5 | 2015-02-15 10:23:00.000 | 2015-02-15 10:33:00.000 |
+                | 2015-02-15 10:24:45 |  3 | brush|       12 | 2015-02-15 10:23:00.000 | 2015-02-15 10:33:00.000 |
+                | 2015-02-15 10:58:00 |  4 | paint|        3 | 2015-02-15 10:53:00.000 | 2015-02-15 11:03:00.000 |
+                | 2015-02-15 11:10:00 |  5 | paint|        3 | 2015-02-15 11:03:00.000 | 2015-02-15 11:13:00.000 |
+                +---------------------+----+---------+-------+-------------------------+-------------------------+
+                (5 rows)""");
+    }
+
     @Test
     public void testHop4() {
         this.qs("""
@@ -35,6 +35,78 @@ public class WinAggTests extends ScottBaseTests {
                 (14 rows)""", false);
     }
 
+    @Test
+    public void testWindowsRows() {
+        this.qs("""
+                select empno, deptno,
+                 count(*) over (order by deptno) c1,
+                 count(*) over (order by deptno rows unbounded preceding) c4,
+                 count(*) over (order by deptno rows between unbounded preceding and current row) c5,
+                 count(*) over (order by deptno rows between 1 preceding and 1 following) c8
+                from emp;
+                +-------+--------+----+----+----+----+
+                | EMPNO | DEPTNO | C1 | C4 | C5 | C8 |
+                +-------+--------+----+----+----+----+
+                |  7900 |     30 | 14 | 14 | 14 |  2 |
+                |  7902 |     20 |  8 |  8 |  8 |  3 |
+                |  7934 |     10 |  3 |  3 |  3 |  3 |
+                |  7369 |     20 |  8 |  4 |  4 |  3 |
+                |  7499 |     30 | 14 |  9 |  9 |  3 |
+                |  7521 |     30 | 14 | 10 | 10 |  3 |
+                |  7566 |     20 |  8 |  5 |  5 |  3 |
+                |  7654 |     30 | 14 | 11 | 11 |  3 |
+                |  7698 |     30 | 14 | 12 | 12 |  3 |
+                |  7782 |     10 |  3 |  1 |  1 |  2 |
+                |  7788 |     20 |  8 |  6 |  6 |  3 |
+                |  7839 |     10 |  3 |  2 |  2 |  3 |
+                |  7844 |     30 | 14 | 13 | 13 |  3 |
+                |  7876 |     20 |  8 |  7 |  7 |  3 |
+                +-------+--------+----+----+----+----+
+                (14 rows)
+
+                select empno,
+                  count(comm) over (order by empno rows unbounded preceding) as c,
+                  sum(comm) over (order by empno rows between 2 preceding and 1 preceding) as s
+                from emp
+                where deptno = 30;
+                +-------+---+---------+
+                | EMPNO | c | s       |
+                +-------+---+---------+
+                |  7499 | 1 |         |
+                |  7521 | 2 |  300.00 |
+                |  7654 | 3 |  800.00 |
+                |  7698 | 3 | 1900.00 |
+                |  7844 | 4 | 1400.00 |
+                |  7900 | 4 |    0.00 |
+                +-------+---+---------+
+                (6 rows)""", false);
+    }
+
+    @Test
+    public void testWindowsCustomOrder() {
+        // Windows ordered by strings, decimals, multiple columns, or not ordered
+        this.qs("""
+                select empno, ename,
+                 count(*) over (order by ename) c1,
+                 sum(sal) over (order by sal) s,
+                 count(*) over (order by job, empno) c2,
+                 count(*) over (partition by job) c3,
+                 max(sal) over (order by job range between current row and unbounded following) m
+                from emp
+                where deptno = 30;
+                +-------+--------+----+---------+----+----+---------+
+                | EMPNO | ENAME  | C1 | S       | C2 | C3 | M       |
+                +-------+--------+----+---------+----+----+---------+
+                |  7499 | ALLEN  |  1 | 6550.00 |  3 |  4 | 1600.00 |
+                |  7521 | WARD   |  6 | 3450.00 |  4 |  4 | 1600.00 |
+                |  7654 | MARTIN |  4 | 3450.00 |  5 |  4 | 1600.00 |
+                |  7698 | BLAKE  |  2 | 9400.00 |  2 |  1 | 2850.00 |
+                |  7844 | TURNER |  5 | 4950.00 |  6 |  4 | 1600.00 |
+                |  7900 | JAMES  |  3 |  950.00 |  1 |  1 | 2850.00 |
+                +-------+--------+----+---------+----+----+---------+
+                (6 rows)""", false);
+    }
+
     @Test @Ignore("ROWS not yet implemented in WINDOW https://github.com/feldera/feldera/issues/457")
     public void testWindows() {
         this.qs("""
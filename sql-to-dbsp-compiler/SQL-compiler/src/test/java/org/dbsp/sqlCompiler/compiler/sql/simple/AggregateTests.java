@@ -1,7 +1,13 @@
 package org.dbsp.sqlCompiler.compiler.sql.simple;
 
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperatorBase;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.rust.LowerCircuitVisitor;
 import org.dbsp.sqlCompiler.compiler.sql.tools.SqlIoTest;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPPathExpression;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class AggregateTests extends SqlIoTest {
@@ -47,6 +53,132 @@ public class AggregateTests extends SqlIoTest {
                 """);
     }
 
+    /** Number of linear and of non-linear aggregate operators in the circuit compiled from 'sql'. */
+    int[] countAggregates(String sql) {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(sql);
+        DBSPCircuit circuit = getCircuit(compiler);
+        int[] aggregates = new int[2];
+        CircuitVisitor visitor = new CircuitVisitor(compiler) {
+            @Override
+            public void postorder(DBSPAggregateOperatorBase operator) {
+                aggregates[operator.isLinear ? 0 : 1]++;
+            }
+        };
+        visitor.apply(circuit);
+        return aggregates;
+    }
+
+    @Test
+    public void testSplitLinearAggregate() {
+        // The COUNT aggregates are linear, and are computed separately from MIN;
+        // the statistics declare many rows in each group
+        int[] aggregates = this.countAggregates("""
+                CREATE TABLE NN(I INT NOT NULL, J INT, K INT) WITH (
+                   'rows' = '1000000',
+                   'distinct.K' = '10'
+                );
+                CREATE VIEW V AS SELECT K, COUNT(*), COUNT(I), COUNT(J), MIN(I) FROM NN GROUP BY K;""");
+        Assert.assertEquals(1, aggregates[0]);
+        Assert.assertEquals(1, aggregates[1]);
+
+        // Without statistics, an aggregate without keys has a single group,
+        // so dropping column J from the input of MIN always saves state
+        aggregates = this.countAggregates("""
+                CREATE TABLE NN(I INT NOT NULL, J INT, K INT);
+                CREATE VIEW V AS SELECT COUNT(*), COUNT(J), MIN(I) FROM NN;""");
+        Assert.assertEquals(1, aggregates[0]);
+        Assert.assertEquals(1, aggregates[1]);
+
+        this.qs("""
+                SELECT K, COUNT(*), COUNT(I), COUNT(J), MIN(I) FROM NN GROUP BY K;
+                 k | c | ci | cj | m
+                ---------------------
+                 0 | 2 | 2  | 1  | 0
+                 1 | 2 | 2  | 1  | 1
+                (2 rows)
+
+                SELECT COUNT(*), COUNT(I), COUNT(J), MIN(I) FROM NN;
+                 c | ci | cj | m
+                -----------------
+                 4 | 4  | 2  | 0
+                (1 row)""");
+    }
+
+    @Test
+    public void testMinMaxAggregator() {
+        // MIN and MAX are lowered to the DBSP Min and Max aggregators
+        String sql = """
+                CREATE TABLE NN(I INT NOT NULL, J INT, K INT);
+                CREATE VIEW V AS SELECT K, MIN(J) FROM NN GROUP BY K;
+                CREATE VIEW W AS SELECT K, MAX(I) FROM NN GROUP BY K;""";
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(sql);
+        DBSPCircuit circuit = getCircuit(compiler);
+        circuit = new LowerCircuitVisitor(compiler).apply(circuit);
+        int[] aggregators = new int[1];
+        CircuitVisitor visitor = new CircuitVisitor(compiler) {
+            @Override
+            public void postorder(DBSPAggregateOperatorBase operator) {
+                if (operator.getFunction().is(DBSPPathExpression.class))
+                    aggregators[0]++;
+            }
+        };
+        visitor.apply(circuit);
+        Assert.assertEquals(2, aggregators[0]);
+
+        this.qs("""
+                SELECT I, MIN(J), MAX(J) FROM NN GROUP BY I;
+                 i | min  | max
+                -----------------
+                 0 | 0    | 0
+                 1 | 1    | 1
+                 2 | NULL | NULL
+                 3 | NULL | NULL
+                (4 rows)
+
+                SELECT K, MIN(J), MAX(J), MIN(I), MAX(I) FROM NN GROUP BY K;
+                 k | mj | xj | mi | xi
+                -----------------------
+                 0 | 0  | 0  | 0  | 2
+                 1 | 1  | 1  | 1  | 3
+                (2 rows)
+
+                SELECT MIN(I), MAX(I), MAX(B) FROM T;
+                 min | max | b
+                ---------------
+                 0   | 2   | 2
+                (1 row)""");
+    }
+
+    @Test
+    public void testNoSplitAggregate() {
+        // Without statistics the groups may contain a single row each, and then
+        // the join of the two parts adds more state than the projection saves
+        int[] aggregates = this.countAggregates("""
+                CREATE TABLE NN(I INT NOT NULL, J INT, K INT);
+                CREATE VIEW V AS SELECT K, COUNT(*), COUNT(I), COUNT(J), MIN(I), MAX(J) FROM NN GROUP BY K;""");
+        Assert.assertEquals(0, aggregates[0]);
+        Assert.assertEquals(1, aggregates[1]);
+
+        // The statistics declare a single row in each group
+        aggregates = this.countAggregates("""
+                CREATE TABLE NN(I INT NOT NULL, K INT) WITH (
+                   'rows' = '1000',
+                   'distinct.K' = '1000'
+                );
+                CREATE VIEW V AS SELECT K, COUNT(*), COUNT(I), SUM(I), MIN(I) FROM NN GROUP BY K;""");
+        Assert.assertEquals(0, aggregates[0]);
+        Assert.assertEquals(1, aggregates[1]);
+
+        // MIN reads all the columns of the input, so nothing is saved
+        aggregates = this.countAggregates("""
+                CREATE TABLE NN(I INT NOT NULL, J INT, K INT);
+                CREATE VIEW V AS SELECT COUNT(*), SUM(I), MIN(I) FROM NN;""");
+        Assert.assertEquals(0, aggregates[0]);
+        Assert.assertEquals(1, aggregates[1]);
+    }
+
     @Test
     public void issue2042() {
         this.qs("""
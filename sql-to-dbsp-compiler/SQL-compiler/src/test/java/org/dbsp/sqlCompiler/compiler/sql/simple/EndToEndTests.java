@@ -71,8 +71,12 @@ public class EndToEndTests extends BaseSQLTests {
             , COL5 INT
             , COL6 DOUBLE PRECISION)""";
 
+    /** If true views with ORDER BY produce a single sorted vector. */
+    boolean sortedVector = false;
+
     public DBSPCompiler compileQuery(String query) {
         DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.sortedVector = this.sortedVector;
         compiler.compileStatement(E2E_TABLE);
         compiler.compileStatement(query);
         return compiler;
@@ -143,6 +147,11 @@ public class EndToEndTests extends BaseSQLTests {
             new DBSPStringLiteral("Hi"),
             new DBSPI32Literal(1, true)
     );
+    /** The output of a view with ORDER BY pairs each row with its row number. */
+    static DBSPTupleExpression numbered(long rowNumber, DBSPExpression row) {
+        return new DBSPTupleExpression(new DBSPI64Literal(rowNumber), row);
+    }
+
     static final DBSPZSetLiteral z0 = new DBSPZSetLiteral(e0);
     static final DBSPZSetLiteral z1 = new DBSPZSetLiteral(e1);
     static final DBSPZSetLiteral empty = DBSPZSetLiteral.emptyWithElementType(z0.getElementType());
@@ -977,6 +986,15 @@ public class EndToEndTests extends BaseSQLTests {
 
     @Test
     public void orderbyTest() {
+        String query = "SELECT * FROM T ORDER BY T.COL2";
+        this.testQuery(query, new DBSPZSetLiteral(
+                numbered(1, e1), numbered(2, e0)
+        ));
+    }
+
+    @Test
+    public void sortedVectorTest() {
+        this.sortedVector = true;
         String query = "SELECT * FROM T ORDER BY T.COL2";
         this.testQuery(query, new DBSPZSetLiteral(
                 new DBSPVecLiteral(e1, e0)
@@ -986,11 +1004,53 @@ public class EndToEndTests extends BaseSQLTests {
     @Test
     public void limitTest() {
         String query = "SELECT * FROM T ORDER BY T.COL2 LIMIT 1";
+        this.testQuery(query, new DBSPZSetLiteral(
+                numbered(1, e1)
+        ));
+    }
+
+    @Test
+    public void sortedVectorLimitTest() {
+        this.sortedVector = true;
+        String query = "SELECT * FROM T ORDER BY T.COL2 LIMIT 1";
+        this.testQuery(query, new DBSPZSetLiteral(
+                new DBSPVecLiteral(e1)
+        ));
+    }
+
+    @Test
+    public void offsetTest() {
+        String query = "SELECT * FROM T ORDER BY T.COL2 OFFSET 1";
+        this.testQuery(query, new DBSPZSetLiteral(
+                numbered(1, e0)
+        ));
+    }
+
+    @Test
+    public void limitOffsetTest() {
+        String query = "SELECT * FROM T ORDER BY T.COL2 DESC LIMIT 1 OFFSET 1";
+        this.testQuery(query, new DBSPZSetLiteral(
+                numbered(1, e1)
+        ));
+    }
+
+    @Test
+    public void sortedVectorLimitOffsetTest() {
+        this.sortedVector = true;
+        String query = "SELECT * FROM T ORDER BY T.COL2 DESC LIMIT 1 OFFSET 1";
         this.testQuery(query, new DBSPZSetLiteral(
                 new DBSPVecLiteral(e1)
         ));
     }
 
+    @Test
+    public void nestedLimitOffsetTest() {
+        // The offset cannot be ignored, even if the order is not observable.
+        String query = "SELECT COL3 FROM (SELECT * FROM T ORDER BY T.COL2 LIMIT 1 OFFSET 1)";
+        this.testQuery(query, new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPBoolLiteral(true))));
+    }
+
     @Test
     public void nestedOrderbyTest() {
         // If the optimizer doesn't remove the inner ORDER BY this test
@@ -1005,7 +1065,7 @@ public class EndToEndTests extends BaseSQLTests {
     public void orderbyDescendingTest() {
         String query = "SELECT * FROM T ORDER BY T.COL2 DESC";
         this.testQuery(query, new DBSPZSetLiteral(
-                new DBSPVecLiteral(e0, e1)
+                numbered(1, e0), numbered(2, e1)
         ));
     }
 
@@ -1013,7 +1073,7 @@ public class EndToEndTests extends BaseSQLTests {
     public void orderby2Test() {
         String query = "SELECT * FROM T ORDER BY T.COL2, T.COL1";
         this.testQuery(query, new DBSPZSetLiteral(
-                new DBSPVecLiteral(e1, e0)
+                numbered(1, e1), numbered(2, e0)
         ));
     }
 }
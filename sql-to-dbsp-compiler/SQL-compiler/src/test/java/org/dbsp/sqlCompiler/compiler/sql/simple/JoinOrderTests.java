@@ -0,0 +1,201 @@
+package org.dbsp.sqlCompiler.compiler.sql.simple;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelVisitor;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.CalciteCompiler;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.CreateTableStatement;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.CreateViewStatement;
+import org.dbsp.sqlCompiler.compiler.frontend.statements.FrontEndStatement;
+import org.dbsp.sqlCompiler.compiler.sql.tools.SqlIoTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Tests for the join order chosen using the table statistics */
+public class JoinOrderTests extends SqlIoTest {
+    static final String TABLES = """
+            CREATE TABLE F(id INT, b INT, note VARCHAR) WITH (
+               'rows' = '100000000',
+               'change_rate' = '0.01'
+            );
+            CREATE TABLE B(b INT, c INT) WITH (
+               'rows' = '1000',
+               'change_rate' = '0',
+               'distinct.B' = '1000'
+            );
+            CREATE TABLE C(c INT, name VARCHAR) WITH (
+               'rows' = '10',
+               'change_rate' = '0',
+               'distinct.C' = '10'
+            );""";
+
+    @Override
+    public void prepareInputs(DBSPCompiler compiler) {
+        compiler.compileStatements(TABLES + """
+                INSERT INTO F VALUES(1, 10, 'one'), (2, 20, 'two'), (3, 30, 'three'), (4, NULL, 'four');
+                INSERT INTO B VALUES(10, 100), (20, 200), (30, NULL);
+                INSERT INTO C VALUES(100, 'hundred'), (200, 'two hundred');""");
+    }
+
+    /** Compile some statements using only the Calcite front-end. */
+    List<FrontEndStatement> compile(String statements) throws SqlParseException {
+        DBSPCompiler compiler = this.testCompiler();
+        CalciteCompiler frontend = compiler.frontend;
+        List<FrontEndStatement> result = new ArrayList<>();
+        for (SqlNode node: frontend.parseStatements(statements)) {
+            FrontEndStatement statement = frontend.compile(node.toString(), node, compiler.sources);
+            Assert.assertNotNull(statement);
+            result.add(statement);
+        }
+        return result;
+    }
+
+    /** Compile a view using only the Calcite front-end and return its optimized plan. */
+    RelNode plan(String tables, String view) throws SqlParseException {
+        List<FrontEndStatement> statements = this.compile(tables + view);
+        return statements.get(statements.size() - 1).to(CreateViewStatement.class).getRelNode();
+    }
+
+    RelNode plan(String view) throws SqlParseException {
+        return this.plan(TABLES, view);
+    }
+
+    /** The sets of tables joined by each join in the plan. */
+    static List<Set<String>> joinedTables(RelNode plan) {
+        List<Set<String>> result = new ArrayList<>();
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, @Nullable RelNode parent) {
+                if (node instanceof Join)
+                    result.add(tables(node));
+                super.visit(node, ordinal, parent);
+            }
+        }.go(plan);
+        return result;
+    }
+
+    static Set<String> tables(RelNode rel) {
+        Set<String> result = new TreeSet<>();
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, @Nullable RelNode parent) {
+                if (node instanceof TableScan scan) {
+                    List<String> name = scan.getTable().getQualifiedName();
+                    result.add(name.get(name.size() - 1));
+                }
+                super.visit(node, ordinal, parent);
+            }
+        }.go(rel);
+        return result;
+    }
+
+    @Test
+    public void testStaticTablesJoinedFirst() throws SqlParseException {
+        // F changes, while B and C do not: joining B with C first keeps
+        // the changes of the intermediate results small.
+        RelNode plan = this.plan("""
+                CREATE VIEW V AS SELECT F.id, C.name
+                FROM F JOIN B ON F.b = B.b JOIN C ON B.c = C.c;""");
+        List<Set<String>> joins = joinedTables(plan);
+        Assert.assertEquals(2, joins.size());
+        Assert.assertTrue(joins.contains(Set.of("B", "C")));
+    }
+
+    @Test
+    public void testLeftJoinOrder() throws SqlParseException {
+        // The joins can be reordered, but C must remain the right input of a left join.
+        RelNode plan = this.plan("""
+                CREATE VIEW V AS SELECT F.id, C.name
+                FROM F JOIN B ON F.b = B.b LEFT JOIN C ON B.c = C.c;""");
+        List<Join> joins = new ArrayList<>();
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, @Nullable RelNode parent) {
+                if (node instanceof Join join && tables(join).contains("C"))
+                    joins.add(join);
+                super.visit(node, ordinal, parent);
+            }
+        }.go(plan);
+        Assert.assertFalse(joins.isEmpty());
+        Join join = joins.get(joins.size() - 1);
+        Assert.assertEquals(JoinRelType.LEFT, join.getJoinType());
+        Assert.assertEquals(Set.of("C"), tables(join.getRight()));
+    }
+
+    @Test
+    public void testNoStatistics() throws SqlParseException {
+        // Without statistics the joins keep the order in the query
+        RelNode plan = this.plan("""
+                CREATE TABLE F(id INT, b INT, note VARCHAR);
+                CREATE TABLE B(b INT, c INT);
+                CREATE TABLE C(c INT, name VARCHAR);""", """
+                CREATE VIEW V AS SELECT F.id, C.name
+                FROM F JOIN B ON F.b = B.b JOIN C ON B.c = C.c;""");
+        List<Set<String>> joins = joinedTables(plan);
+        Assert.assertEquals(2, joins.size());
+        Assert.assertTrue(joins.contains(Set.of("B", "F")));
+        Assert.assertFalse(joins.contains(Set.of("B", "C")));
+    }
+
+    @Test
+    public void testStatisticsNotConnectorProperties() throws SqlParseException {
+        List<FrontEndStatement> statements = this.compile("""
+                CREATE TABLE T(id INT) WITH (
+                   'rows' = '1000',
+                   'change_rate' = '0.5',
+                   'distinct.ID' = '10',
+                   'materialized' = 'true'
+                );""");
+        CreateTableStatement table = statements.get(0).to(CreateTableStatement.class);
+        Assert.assertEquals(Map.of("materialized", "true"), table.getProperties());
+        Assert.assertTrue(table.statistics.isKnown());
+        Assert.assertEquals(1000.0, Objects.requireNonNull(table.statistics.rows), 0.0);
+        Assert.assertEquals(0.5, table.statistics.changeRate, 0.0);
+        Assert.assertEquals(10.0, Objects.requireNonNull(table.statistics.distinct.get(0)), 0.0);
+    }
+
+    @Test
+    public void testInnerJoins() {
+        this.qs("""
+                SELECT F.id, C.name FROM F JOIN B ON F.b = B.b JOIN C ON B.c = C.c;
+                 id | name
+                ----------------
+                  1 | hundred
+                  2 | two hundred
+                (2 rows)""");
+    }
+
+    @Test
+    public void testLeftJoins() {
+        this.qs("""
+                SELECT F.id, C.name FROM F JOIN B ON F.b = B.b LEFT JOIN C ON B.c = C.c;
+                 id | name
+                ----------------
+                  1 | hundred
+                  2 | two hundred
+                  3 |NULL
+                (3 rows)
+
+                SELECT F.id, C.name FROM F LEFT JOIN B ON F.b = B.b LEFT JOIN C ON B.c = C.c;
+                 id | name
+                ----------------
+                  1 | hundred
+                  2 | two hundred
+                  3 |NULL
+                  4 |NULL
+                (4 rows)""");
+    }
+}
@@ -77,6 +77,22 @@ public class NaiveIncrementalTests extends EndToEndTests {
                         .addPair(new Change(input.getSet(0).negate()), thirdOutput));  // Subtract the first input
     }
 
+    @Test
+    public void orderbyPositionalChangesTest() {
+        // Only the rows whose row number changes are produced
+        String query = "SELECT * FROM T ORDER BY T.COL2";
+        this.invokeTestQueryBase(query,
+                new InputOutputChangeStream()
+                        .addPair(new Change(z0), new Change(new DBSPZSetLiteral(numbered(1, e0))))
+                        // e1 is smaller than e0, which moves to the second position
+                        .addPair(new Change(z1), new Change(
+                                new DBSPZSetLiteral(numbered(1, e1), numbered(2, e0))
+                                        .add(numbered(1, e0), -1)))
+                        // Deleting the last row does not renumber the first one
+                        .addPair(new Change(z0.negate()), new Change(
+                                new DBSPZSetLiteral(numbered(2, e0)).negate())));
+    }
+
     @Test
     public void divTest2() {
         // Do not run this test in incremental mode, since it produces
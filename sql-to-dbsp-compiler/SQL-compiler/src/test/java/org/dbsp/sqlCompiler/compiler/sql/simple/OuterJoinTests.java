@@ -0,0 +1,88 @@
+package org.dbsp.sqlCompiler.compiler.sql.simple;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOuterJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamDistinctOperator;
+import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.sql.tools.SqlIoTest;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for queries compiled using outer joins */
+public class OuterJoinTests extends SqlIoTest {
+    @Override
+    public void prepareInputs(DBSPCompiler compiler) {
+        compiler.compileStatements("""
+                CREATE TABLE T(id INT, x INT);
+                CREATE TABLE S(id INT, y INT);
+                INSERT INTO T VALUES(1, 10), (1, 10), (2, 20), (NULL, 30);
+                INSERT INTO S VALUES(2, 200), (3, 300), (NULL, 400);""");
+    }
+
+    @Test
+    public void testOuterJoinOperator() {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements("""
+                CREATE TABLE T(id INT, x INT);
+                CREATE TABLE S(id INT, y INT);
+                CREATE VIEW V AS SELECT x, y FROM T FULL JOIN S ON T.id = S.id;""");
+        DBSPCircuit circuit = getCircuit(compiler);
+        int[] counts = new int[2];
+        CircuitVisitor visitor = new CircuitVisitor(compiler) {
+            @Override
+            public void postorder(DBSPOuterJoinOperator operator) {
+                counts[0]++;
+            }
+
+            @Override
+            public void postorder(DBSPStreamDistinctOperator operator) {
+                counts[1]++;
+            }
+        };
+        visitor.apply(circuit);
+        Assert.assertEquals(1, counts[0]);
+        Assert.assertEquals(0, counts[1]);
+    }
+
+    @Test
+    public void testLeftJoin() {
+        // Unmatched rows keep their multiplicity; rows with NULL keys never match
+        this.qs("""
+                SELECT x, y FROM T LEFT JOIN S ON T.id = S.id;
+                 x  | y
+                ----+-----
+                 10 |\s
+                 10 |\s
+                 20 | 200
+                 30 |\s
+                (4 rows)""");
+    }
+
+    @Test
+    public void testRightJoin() {
+        this.qs("""
+                SELECT x, y FROM T RIGHT JOIN S ON T.id = S.id;
+                 x  | y
+                ----+-----
+                 20 | 200
+                    | 300
+                    | 400
+                (3 rows)""");
+    }
+
+    @Test
+    public void testFullJoin() {
+        this.qs("""
+                SELECT x, y FROM T FULL JOIN S ON T.id = S.id;
+                 x  | y
+                ----+-----
+                 10 |\s
+                 10 |\s
+                 20 | 200
+                 30 |\s
+                    | 300
+                    | 400
+                (6 rows)""");
+    }
+}
@@ -3,7 +3,9 @@ package org.dbsp.sqlCompiler.compiler.sql.simple;
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinFilterMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateWithWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.StderrErrorReporter;
 import org.dbsp.sqlCompiler.compiler.TestUtil;
@@ -13,6 +15,9 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class RegressionTests extends SqlIoTest {
     @Test
     public void issue2090() {
@@ -363,6 +368,34 @@ public class RegressionTests extends SqlIoTest {
         visitor.apply(circuit);
     }
 
+    @Test
+    public void cseAcrossViews() {
+        // The two views compute the same chain of operators, which should be shared
+        String sql = """
+                CREATE TABLE T(x INT, y INT);
+                CREATE VIEW V0 AS SELECT x + 1 AS a, SUM(y) AS s FROM T WHERE x > 0 GROUP BY x + 1;
+                CREATE VIEW V1 AS SELECT x + 1 AS a, SUM(y) AS s FROM T WHERE x > 0 GROUP BY x + 1;""";
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.incrementalize = true;
+        compiler.compileStatements(sql);
+        DBSPCircuit circuit = getCircuit(compiler);
+        CircuitVisitor visitor = new CircuitVisitor(new StderrErrorReporter()) {
+            final List<DBSPOperator> sinkInputs = new ArrayList<>();
+
+            @Override
+            public void postorder(DBSPSinkOperator operator) {
+                this.sinkInputs.add(operator.input());
+            }
+
+            @Override
+            public void endVisit() {
+                Assert.assertEquals(2, this.sinkInputs.size());
+                Assert.assertSame(this.sinkInputs.get(0), this.sinkInputs.get(1));
+            }
+        };
+        visitor.apply(circuit);
+    }
+
     @Test
     public void missingCast() {
         String sql = """
@@ -463,7 +496,8 @@ public class RegressionTests extends SqlIoTest {
 
             @Override
             public void endVisit() {
-                Assert.assertEquals(3, this.count);
+                // All windows have the same partition and order keys
+                Assert.assertEquals(1, this.count);
             }
         };
         visitor.apply(circuit);
@@ -0,0 +1,144 @@
+package org.dbsp.sqlCompiler.compiler.sql.simple;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinFilterMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSemiJoinOperator;
+import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.sql.tools.SqlIoTest;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for queries compiled using semi-joins */
+public class SemiJoinTests extends SqlIoTest {
+    @Override
+    public void prepareInputs(DBSPCompiler compiler) {
+        compiler.compileStatements("""
+                CREATE TABLE T(id INT, x INT);
+                CREATE TABLE S(x INT, y INT);
+                INSERT INTO T VALUES(1, 10), (2, 20), (3, 30), (4, NULL), (5, 10);
+                INSERT INTO S VALUES(10, 1), (10, 2), (30, 3), (NULL, 4);""");
+    }
+
+    @Test
+    public void testSemiJoinOperator() {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements("""
+                CREATE TABLE T(id INT, x INT);
+                CREATE TABLE S(x INT, y INT);
+                CREATE VIEW V AS SELECT id FROM T WHERE x IN (SELECT x FROM S);""");
+        DBSPCircuit circuit = getCircuit(compiler);
+        int[] semiJoins = new int[1];
+        CircuitVisitor visitor = new CircuitVisitor(compiler) {
+            @Override
+            public void postorder(DBSPSemiJoinOperator operator) {
+                semiJoins[0]++;
+            }
+        };
+        visitor.apply(circuit);
+        Assert.assertEquals(1, semiJoins[0]);
+    }
+
+    @Test
+    public void testAntiJoinOperator() {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements("""
+                CREATE TABLE T(id INT, x INT);
+                CREATE TABLE S(x INT, y INT);
+                CREATE VIEW V AS SELECT id FROM T WHERE NOT EXISTS (SELECT * FROM S WHERE S.x = T.x);""");
+        DBSPCircuit circuit = getCircuit(compiler);
+        int[] antiJoins = new int[1];
+        int[] joins = new int[1];
+        CircuitVisitor visitor = new CircuitVisitor(compiler) {
+            @Override
+            public void postorder(DBSPAntiJoinOperator operator) {
+                antiJoins[0]++;
+            }
+
+            @Override
+            public void postorder(DBSPJoinOperator operator) {
+                joins[0]++;
+            }
+
+            @Override
+            public void postorder(DBSPJoinFilterMapOperator operator) {
+                joins[0]++;
+            }
+        };
+        visitor.apply(circuit);
+        Assert.assertEquals(1, antiJoins[0]);
+        // NOT EXISTS is no longer a left join
+        Assert.assertEquals(0, joins[0]);
+    }
+
+    @Test
+    public void testIn() {
+        // Duplicate keys in S do not duplicate the rows of T
+        this.qs("""
+                SELECT id FROM T WHERE x IN (SELECT x FROM S);
+                 id
+                ----
+                  1
+                  3
+                  5
+                (3 rows)""");
+    }
+
+    @Test
+    public void testExists() {
+        this.qs("""
+                SELECT id FROM T WHERE EXISTS (SELECT * FROM S WHERE S.x = T.x);
+                 id
+                ----
+                  1
+                  3
+                  5
+                (3 rows)
+
+                SELECT id FROM T WHERE EXISTS (SELECT * FROM S WHERE S.x = T.x AND S.y > 1);
+                 id
+                ----
+                  1
+                  3
+                  5
+                (3 rows)
+
+                SELECT id FROM T WHERE EXISTS (SELECT * FROM S WHERE S.x = T.x AND S.y > 2);
+                 id
+                ----
+                  3
+                (1 row)""");
+    }
+
+    @Test
+    public void testExistsNonEqui() {
+        // The correlated condition is not an equality, so this is not a semi-join
+        this.qs("""
+                SELECT id FROM T WHERE EXISTS (SELECT * FROM S WHERE S.x = T.x AND S.y > T.id);
+                 id
+                ----
+                  1
+                (1 row)""");
+    }
+
+    @Test
+    public void testNotExists() {
+        // Rows of T with a NULL key never match
+        this.qs("""
+                SELECT id FROM T WHERE NOT EXISTS (SELECT * FROM S WHERE S.x = T.x);
+                 id
+                ----
+                  2
+                  4
+                (2 rows)
+
+                SELECT id FROM T WHERE id > 2 AND NOT EXISTS (SELECT * FROM S WHERE S.x = T.x AND S.y > 2);
+                 id
+                ----
+                  4
+                  5
+                (2 rows)""");
+    }
+}
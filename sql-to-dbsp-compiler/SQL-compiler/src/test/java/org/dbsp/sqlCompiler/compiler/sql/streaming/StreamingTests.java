@@ -1,14 +1,35 @@
 package org.dbsp.sqlCompiler.compiler.sql.streaming;
 
 import org.dbsp.sqlCompiler.CompilerMain;
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPPartitionedRollingAggregateWithWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowOperator;
+import org.dbsp.sqlCompiler.compiler.CompilerOptions;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.StderrErrorReporter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.LowerCircuitVisitor;
 import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
 import org.dbsp.sqlCompiler.compiler.sql.tools.BaseSQLTests;
 import org.dbsp.sqlCompiler.compiler.sql.StreamingTestBase;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.monotone.MonotoneExpression;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitCloneVisitor;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.Monotonicity;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.expansion.ExpandOperators;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPPathExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPBoolLiteral;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
 import org.dbsp.util.Linq;
 import org.dbsp.util.Utilities;
 import org.junit.Assert;
@@ -23,7 +44,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
 
 /** Tests that exercise streaming features. */
 public class StreamingTests extends StreamingTestBase {
@@ -290,6 +314,71 @@ public class StreamingTests extends StreamingTestBase {
         new CompilerCircuitStream(compiler);
     }
 
+    @Test
+    public void testTemporalFilter() {
+        // now() used in a range predicate is implemented with a window instead of a join
+        String sql = """
+                CREATE TABLE T(id INT, ts TIMESTAMP);
+                CREATE VIEW V AS SELECT * FROM T
+                WHERE ts > NOW() - INTERVAL 1 DAY AND ts <= NOW() AND id > 0;""";
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(sql);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        ccs.step("""
+                        INSERT INTO T VALUES (1, '2024-01-01 00:00:00'), (2, '2024-01-01 12:00:00'),
+                        (3, '2024-01-02 00:00:00'), (-1, '2024-01-01 12:00:00'), (4, NULL);
+                        INSERT INTO now VALUES ('2024-01-01 12:00:00');
+                        """,
+                """
+                         id | ts                  | weight
+                        ---------------------------------
+                         1  | 2024-01-01 00:00:00 | 1
+                         2  | 2024-01-01 12:00:00 | 1""");
+        ccs.step("""
+                        REMOVE FROM now VALUES ('2024-01-01 12:00:00');
+                        INSERT INTO now VALUES ('2024-01-02 06:00:00');
+                        """,
+                """
+                         id | ts                  | weight
+                        ---------------------------------
+                         1  | 2024-01-01 00:00:00 | -1
+                         3  | 2024-01-02 00:00:00 | 1""");
+        ccs.step("""
+                        INSERT INTO T VALUES (5, '2024-01-01 00:00:00'), (6, '2024-01-02 05:00:00');
+                        """,
+                """
+                         id | ts                  | weight
+                        ---------------------------------
+                         6  | 2024-01-02 05:00:00 | 1""");
+        this.addRustTestCase("testTemporalFilter", ccs);
+        CircuitVisitor visitor = new CircuitVisitor(new StderrErrorReporter()) {
+            int window = 0;
+            int join = 0;
+
+            @Override
+            public void postorder(DBSPWindowOperator operator) {
+                this.window++;
+            }
+
+            @Override
+            public void postorder(DBSPStreamJoinOperator operator) {
+                this.join++;
+            }
+
+            @Override
+            public void postorder(DBSPJoinOperator operator) {
+                this.join++;
+            }
+
+            @Override
+            public void endVisit() {
+                Assert.assertEquals(1, this.window);
+                Assert.assertEquals(0, this.join);
+            }
+        };
+        visitor.apply(ccs.circuit);
+    }
+
     @Test
     public void issue2003() {
         String sql = """
@@ -375,6 +464,273 @@ public class StreamingTests extends StreamingTestBase {
         this.compileRustTestCase(sql);
     }
 
+    @Test
+    public void viewLatenessMergeTest() {
+        // The aggregate can only be garbage-collected if the monotonicity of
+        // ts flows through the local view, which declares its own LATENESS.
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    ot   TIMESTAMP NOT NULL,
+                    v    INT
+                );
+
+                CREATE LOCAL VIEW local_events AS
+                SELECT ts, ot, v FROM event;
+
+                LATENESS local_events.ot INTERVAL 1 HOURS;
+
+                CREATE VIEW totals AS
+                SELECT ts, SUM(v) FROM local_events GROUP BY ts;""";
+        int retained = this.countRetainKeys(sql, "viewLatenessMergeTest");
+        // One for the input and one for the output of the aggregate
+        Assert.assertEquals(2, retained);
+    }
+
+    @Test
+    public void minMaxRetainKeysTest() {
+        // The lowered MIN integrates its input indexed by the aggregated value
+        // and the output of the Min aggregator; both integrals are bounded.
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    v    INT
+                );
+
+                CREATE VIEW mins AS
+                SELECT ts, MIN(v) FROM event GROUP BY ts;""";
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(sql);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        this.addRustTestCase("minMaxRetainKeysTest", ccs);
+        DBSPCircuit lowered = new LowerCircuitVisitor(compiler).apply(ccs.circuit);
+        Set<DBSPOperator> aggregators = new HashSet<>();
+        CircuitVisitor findAggregators = new CircuitVisitor(new StderrErrorReporter()) {
+            @Override
+            public void postorder(DBSPAggregateOperator operator) {
+                if (operator.getFunction().is(DBSPPathExpression.class))
+                    aggregators.add(operator);
+            }
+        };
+        findAggregators.apply(lowered);
+        Assert.assertEquals(1, aggregators.size());
+        DBSPOperator aggregator = aggregators.iterator().next();
+
+        CircuitVisitor visitor = new CircuitVisitor(new StderrErrorReporter()) {
+            int input = 0;
+            int output = 0;
+
+            @Override
+            public void postorder(DBSPIntegrateTraceRetainKeysOperator operator) {
+                if (operator.left() == aggregator)
+                    this.output++;
+                else if (operator.left() == aggregator.inputs.get(0))
+                    this.input++;
+                else
+                    Assert.fail("Retain keys applied to " + operator.left());
+            }
+
+            @Override
+            public void endVisit() {
+                Assert.assertEquals(1, this.input);
+                Assert.assertEquals(1, this.output);
+            }
+        };
+        visitor.apply(lowered);
+    }
+
+    /** Compile the program, add it as a Rust test case, and return the number
+     * of operators which garbage-collect the traces of the circuit. */
+    int countRetainKeys(String sql, String name) {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(sql);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        this.addRustTestCase(name, ccs);
+        int[] integrateTrace = new int[1];
+        CircuitVisitor visitor = new CircuitVisitor(new StderrErrorReporter()) {
+            @Override
+            public void postorder(DBSPIntegrateTraceRetainKeysOperator operator) {
+                integrateTrace[0]++;
+            }
+        };
+        visitor.apply(ccs.circuit);
+        return integrateTrace[0];
+    }
+
+    /** Check that the program garbage-collects the aggregate at its end. */
+    void checkRetainKeys(String sql, String name) {
+        Assert.assertTrue(this.countRetainKeys(sql, name) > 0);
+    }
+
+    /** Compile the program without optimizations, so the operators produced
+     * by the front-end are preserved. */
+    DBSPCircuit unoptimizedCircuit(String sql) {
+        CompilerOptions options = this.testOptions(false, false);
+        // The monotonicity analysis does not look through integrals
+        options.languageOptions.incrementalize = false;
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatements(sql);
+        return getCircuit(compiler);
+    }
+
+    /** Run the monotonicity analysis on a circuit and check that the output of
+     * some operator accepted by the predicate is monotone. */
+    void checkMonotone(DBSPCircuit circuit, Predicate<DBSPOperator> operator) {
+        StderrErrorReporter reporter = new StderrErrorReporter();
+        ExpandOperators expander = new ExpandOperators(reporter);
+        Monotonicity monotonicity = new Monotonicity(reporter);
+        DBSPCircuit expanded = monotonicity.apply(expander.apply(circuit));
+        int found = 0;
+        int monotone = 0;
+        for (DBSPOperator op: expanded.circuit.getAllOperators()) {
+            if (!operator.test(op))
+                continue;
+            found++;
+            MonotoneExpression expression = monotonicity.getMonotoneExpression(op);
+            if (expression != null && expression.mayBeMonotone())
+                monotone++;
+        }
+        Assert.assertTrue(found > 0);
+        Assert.assertTrue(monotone > 0);
+    }
+
+    @Test
+    public void negateMonotoneTest() {
+        // EXCEPT ALL negates its right input
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    v    INT
+                );
+
+                CREATE TABLE cancelled(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    v    INT
+                );
+
+                CREATE LOCAL VIEW remaining AS
+                SELECT ts, v FROM event EXCEPT ALL SELECT ts, v FROM cancelled;
+
+                CREATE VIEW totals AS
+                SELECT ts, SUM(v) FROM remaining GROUP BY ts;""";
+        this.checkMonotone(this.unoptimizedCircuit(sql), o -> o.is(DBSPNegateOperator.class));
+        this.checkRetainKeys(sql, "negateMonotoneTest");
+    }
+
+    @Test
+    public void subtractMonotoneTest() {
+        // The anti-join adds the rows of event with a NULL key,
+        // computed as the difference between event and its rows with a non-NULL key
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    id   INT,
+                    v    INT
+                );
+
+                CREATE TABLE cancelled(id INT);
+
+                CREATE VIEW remaining AS
+                SELECT ts, v FROM event
+                WHERE NOT EXISTS (SELECT * FROM cancelled WHERE cancelled.id = event.id);""";
+        this.checkMonotone(this.unoptimizedCircuit(sql), o -> o.is(DBSPSubtractOperator.class));
+        this.compileRustTestCase(sql);
+    }
+
+    @Test
+    public void indexedFilterMonotoneTest() {
+        // The compiler does not produce filters over indexed collections,
+        // so one is inserted in front of the aggregate.
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    v    INT
+                );
+
+                CREATE VIEW totals AS
+                SELECT ts, SUM(v) FROM event GROUP BY ts;""";
+        DBSPCircuit circuit = this.unoptimizedCircuit(sql);
+        CircuitCloneVisitor insertFilters = new CircuitCloneVisitor(new StderrErrorReporter(), false) {
+            @Override
+            public void postorder(DBSPMapIndexOperator operator) {
+                DBSPOperator index = operator.withInputs(Linq.map(operator.inputs, this::mapped), false);
+                this.addOperator(index);
+                DBSPVariablePath var = new DBSPVariablePath(index.getOutputIndexedZSetType().getKVRefType());
+                DBSPExpression condition = new DBSPBoolLiteral(true).closure(var.asParameter());
+                this.map(operator, new DBSPFilterOperator(operator.getNode(), condition, index));
+            }
+        };
+        circuit = insertFilters.apply(circuit);
+        this.checkMonotone(circuit, o -> o.is(DBSPFilterOperator.class) &&
+                o.getType().is(DBSPTypeIndexedZSet.class));
+    }
+
+    @Test
+    public void unnestMonotoneTest() {
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    vals INT ARRAY
+                );
+
+                CREATE VIEW totals AS
+                SELECT ts, SUM(v) FROM event CROSS JOIN UNNEST(event.vals) AS x(v) GROUP BY ts;""";
+        this.checkRetainKeys(sql, "unnestMonotoneTest");
+    }
+
+    @Test
+    public void topKMonotoneTest() {
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    v    INT
+                );
+
+                CREATE LOCAL VIEW ranked AS
+                SELECT * FROM (
+                   SELECT ts, v, ROW_NUMBER() OVER (PARTITION BY ts ORDER BY v DESC) AS rn
+                   FROM event)
+                WHERE rn <= 2;
+
+                CREATE VIEW totals AS
+                SELECT ts, SUM(v) FROM ranked GROUP BY ts;""";
+        this.checkRetainKeys(sql, "topKMonotoneTest");
+    }
+
+    @Test
+    public void lagMonotoneTest() {
+        String sql = """
+                CREATE TABLE event(
+                    ts   TIMESTAMP NOT NULL LATENESS INTERVAL 1 HOURS,
+                    v    INT
+                );
+
+                CREATE LOCAL VIEW lagged AS
+                SELECT ts, v - LAG(v) OVER (PARTITION BY ts ORDER BY v) AS d
+                FROM event;
+
+                CREATE VIEW totals AS
+                SELECT ts, SUM(d) FROM lagged GROUP BY ts;""";
+        this.checkRetainKeys(sql, "lagMonotoneTest");
+    }
+
+    @Test
+    public void leftJoinMonotoneTest() {
+        String sql = """
+                CREATE TABLE series (
+                        metadata VARCHAR,
+                        event_time TIMESTAMP NOT NULL LATENESS INTERVAL '1:00' HOURS TO MINUTES
+                );
+
+                CREATE TABLE shift(
+                        person VARCHAR,
+                        on_call DATE
+                );
+                CREATE VIEW V AS SELECT metadata, person FROM series
+                LEFT JOIN shift ON CAST(series.event_time AS DATE) = shift.on_call;""";
+        this.checkRetainKeys(sql, "leftJoinMonotoneTest");
+    }
+
     @Test
     public void hoppingTest() {
         String sql = """
@@ -771,6 +1127,37 @@ public class StreamingTests extends StreamingTestBase {
         this.addRustTestCase("latenessTest", ccs);
     }
 
+    @Test
+    public void multipleWatermarksTest() {
+        String ddl = """
+                CREATE TABLE series (
+                        distance DOUBLE,
+                        pickup TIMESTAMP NOT NULL WATERMARK INTERVAL '1:00' HOURS TO MINUTES,
+                        ingested TIMESTAMP NOT NULL WATERMARK INTERVAL '0:10' HOURS TO MINUTES
+                );
+                CREATE VIEW V AS SELECT distance FROM series;""";
+        DBSPCompiler compiler = testCompiler();
+        compiler.compileStatements(ddl);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        ccs.step("INSERT INTO series VALUES(1, '2023-12-30 10:00:00', '2023-12-30 10:00:00');",
+                """
+                         distance | weight
+                        -------------------""");
+        // Before the pickup waterline, but not before the ingested waterline
+        ccs.step("INSERT INTO series VALUES(2, '2023-12-29 10:00:00', '2023-12-30 11:00:00');",
+                """
+                         distance | weight
+                        -------------------""");
+        // Both waterlines advance past the first two rows
+        ccs.step("INSERT INTO series VALUES(3, '2023-12-30 12:00:00', '2023-12-30 12:00:00');",
+                """
+                         distance | weight
+                        -------------------
+                         1        | 1
+                         2        | 1""");
+        this.addRustTestCase("multipleWatermarksTest", ccs);
+    }
+
     @Test
     public void latenessTest() {
         String ddl = """
@@ -631,6 +631,75 @@ pub fn hop_TimestampN_ShortInterval_ShortInterval_ShortInterval(
     }
 }
 
+/// Iterator over the start timestamps of all the hopping windows which
+/// contain a timestamp.  Produces the same values as `hop_...`, without
+/// allocating a vector.
+pub struct HopWindows {
+    next: i64,
+    end: i64,
+    period: i64,
+}
+
+impl HopWindows {
+    fn empty() -> Self {
+        Self {
+            next: 0,
+            end: 0,
+            period: 1,
+        }
+    }
+}
+
+impl Iterator for HopWindows {
+    type Item = Timestamp;
+
+    fn next(&mut self) -> Option<Timestamp> {
+        if self.next >= self.end {
+            return None;
+        }
+        let result = Timestamp::new(self.next);
+        self.next += self.period;
+        Some(result)
+    }
+
+    fn size_hint(&self) -> (usize, Option<usize>) {
+        let count = if self.next >= self.end {
+            0
+        } else {
+            ((self.end - self.next + self.period - 1) / self.period) as usize
+        };
+        (count, Some(count))
+    }
+}
+
+pub fn hop_windows_Timestamp_ShortInterval_ShortInterval_ShortInterval(
+    ts: Timestamp,
+    period: ShortInterval,
+    size: ShortInterval,
+    start: ShortInterval,
+) -> HopWindows {
+    let round = hop_start(ts, period, size, start);
+    HopWindows {
+        next: round,
+        end: round + size.milliseconds(),
+        period: period.milliseconds(),
+    }
+}
+
+pub fn hop_windows_TimestampN_ShortInterval_ShortInterval_ShortInterval(
+    ts: Option<Timestamp>,
+    period: ShortInterval,
+    size: ShortInterval,
+    start: ShortInterval,
+) -> HopWindows {
+    match ts {
+        None => HopWindows::empty(),
+        Some(ts) => {
+            hop_windows_Timestamp_ShortInterval_ShortInterval_ShortInterval(ts, period, size, start)
+        }
+    }
+}
+
 //////////////////////////// Date
 
 #[derive(
@@ -1180,7 +1249,12 @@ pub fn extract_hour_Time(value: Time) -> i64 {
 
 #[cfg(test)]
 mod test {
-    use super::{Date, Time, Timestamp};
+    use super::{
+        hop_Timestamp_ShortInterval_ShortInterval_ShortInterval,
+        hop_windows_TimestampN_ShortInterval_ShortInterval_ShortInterval,
+        hop_windows_Timestamp_ShortInterval_ShortInterval_ShortInterval, Date, Time, Timestamp,
+    };
+    use crate::ShortInterval;
     use lazy_static::lazy_static;
     use pipeline_types::format::json::JsonFlavor;
     use pipeline_types::serde_with_context::{
@@ -1309,6 +1383,29 @@ mod test {
             r#"{"date":"2023-09-28","time":"23:21:15.123","timestamp":"2018-06-20 13:37:03"}"#
         );
     }
+
+    #[test]
+    fn hop_windows() {
+        let ts = Timestamp::new(1529501823000);
+        let minute = ShortInterval::new(60_000);
+        let hour = ShortInterval::new(3_600_000);
+        let start = ShortInterval::new(1_000);
+        let windows: Vec<Timestamp> =
+            hop_windows_Timestamp_ShortInterval_ShortInterval_ShortInterval(
+                ts, minute, hour, start,
+            )
+            .collect();
+        assert_eq!(windows.len(), 60);
+        assert_eq!(
+            windows,
+            hop_Timestamp_ShortInterval_ShortInterval_ShortInterval(ts, minute, hour, start)
+        );
+        let iter = hop_windows_TimestampN_ShortInterval_ShortInterval_ShortInterval(
+            None, minute, hour, start,
+        );
+        assert_eq!(iter.size_hint(), (0, Some(0)));
+        assert_eq!(iter.count(), 0);
+    }
 }
 
 num_entries_scalar! {
@@ -0,0 +1,603 @@
+package org.dbsp.sqlCompiler.compiler.backend.simulator;
+
+import org.dbsp.simulator.types.DecimalSqlType;
+import org.dbsp.simulator.types.StringSqlType;
+import org.dbsp.simulator.values.BigintSqlValue;
+import org.dbsp.simulator.values.BooleanSqlValue;
+import org.dbsp.simulator.values.DecimalSqlValue;
+import org.dbsp.simulator.values.DoubleSqlValue;
+import org.dbsp.simulator.values.DynamicSqlValue;
+import org.dbsp.simulator.values.IntegerSqlValue;
+import org.dbsp.simulator.values.SqlTuple;
+import org.dbsp.simulator.values.StringSqlValue;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.errors.UnimplementedException;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.InnerVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBlockExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBorrowExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCastExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCloneExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPConditionalAggregateExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPDerefExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPFieldExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPIfExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPIsNullExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPSomeExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPUnwrapExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPBoolLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPDecimalLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPDoubleLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI32Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI64Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStringLiteral;
+import org.dbsp.sqlCompiler.ir.statement.DBSPExpressionStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDecimal;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeString;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/** Evaluates closures from the inner IR on values of the simulator.
+ * Scalar values are represented by Java objects (Boolean, Integer, Long,
+ * Double, BigDecimal, String), with null standing for both SQL NULL and None.
+ * Tuples are represented as {@link SqlTuple}, raw tuples as Object[].
+ * References are represented by the values they refer to.
+ * Only a subset of the IR is supported; other constructs throw
+ * {@link UnimplementedException}. */
+public class ExpressionInterpreter extends InnerVisitor {
+    /** Values of the expressions evaluated; may contain nulls. */
+    final List<Object> stack;
+    /** Each block and closure body introduces a new scope. */
+    final List<Map<String, Object>> scopes;
+
+    public ExpressionInterpreter(IErrorReporter reporter) {
+        super(reporter);
+        this.stack = new ArrayList<>();
+        this.scopes = new ArrayList<>();
+    }
+
+    /** Apply a closure to the specified arguments. */
+    @Nullable
+    public Object call(DBSPClosureExpression closure, Object... arguments) {
+        if (closure.parameters.length != arguments.length)
+            throw new RuntimeException("Closure expects " + closure.parameters.length +
+                    " arguments, but received " + arguments.length);
+        Map<String, Object> scope = new HashMap<>();
+        for (int i = 0; i < arguments.length; i++) {
+            DBSPParameter param = closure.parameters[i];
+            scope.put(param.name, arguments[i]);
+        }
+        this.scopes.add(scope);
+        try {
+            return this.evaluate(closure.body);
+        } finally {
+            Utilities.removeLast(this.scopes);
+        }
+    }
+
+    @Nullable
+    public Object evaluate(DBSPExpression expression) {
+        int depth = this.stack.size();
+        expression.accept(this);
+        assert this.stack.size() == depth + 1;
+        return Utilities.removeLast(this.stack);
+    }
+
+    void pushValue(@Nullable Object value) {
+        this.stack.add(value);
+    }
+
+    @Nullable
+    Object lookup(String variable) {
+        for (int i = this.scopes.size() - 1; i >= 0; i--) {
+            Map<String, Object> scope = this.scopes.get(i);
+            if (scope.containsKey(variable))
+                return scope.get(variable);
+        }
+        throw new RuntimeException("Undefined variable " + variable);
+    }
+
+    /** Convert a scalar value to a simulator value of the specified type. */
+    public static DynamicSqlValue toSqlValue(@Nullable Object value, DBSPType type) {
+        return switch (type.code) {
+            case BOOL -> new BooleanSqlValue((Boolean) value);
+            case INT32 -> new IntegerSqlValue((Integer) value);
+            case INT64 -> new BigintSqlValue((Long) value);
+            case DOUBLE -> new DoubleSqlValue((Double) value);
+            case DECIMAL -> {
+                DBSPTypeDecimal dec = type.to(DBSPTypeDecimal.class);
+                yield new DecimalSqlValue((BigDecimal) value, new DecimalSqlType(dec.precision, dec.scale));
+            }
+            case STRING -> {
+                DBSPTypeString str = type.to(DBSPTypeString.class);
+                StringSqlType sqlType = str.precision == DBSPTypeString.UNLIMITED_PRECISION ?
+                        new StringSqlType() : new StringSqlType(str.precision);
+                yield new StringSqlValue((String) value, sqlType);
+            }
+            default -> throw new UnimplementedException("Simulation of values with type", type);
+        };
+    }
+
+    // Nodes that are not explicitly handled cannot be evaluated
+
+    @Override
+    public VisitDecision preorder(IDBSPInnerNode node) {
+        throw new UnimplementedException("Simulation of", node);
+    }
+
+    // Literals
+
+    @Override
+    public VisitDecision preorder(DBSPLiteral node) {
+        if (!node.isNull)
+            throw new UnimplementedException("Simulation of literal", node);
+        this.pushValue(null);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPBoolLiteral node) {
+        this.pushValue(node.value);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPI32Literal node) {
+        this.pushValue(node.value);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPI64Literal node) {
+        this.pushValue(node.value);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPDoubleLiteral node) {
+        this.pushValue(node.value);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPDecimalLiteral node) {
+        this.pushValue(node.value);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPStringLiteral node) {
+        this.pushValue(node.value);
+        return VisitDecision.STOP;
+    }
+
+    // Expressions which do not change the value
+
+    @Override
+    public VisitDecision preorder(DBSPBorrowExpression node) {
+        this.pushValue(this.evaluate(node.expression));
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPDerefExpression node) {
+        this.pushValue(this.evaluate(node.expression));
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPCloneExpression node) {
+        this.pushValue(this.evaluate(node.expression));
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPSomeExpression node) {
+        this.pushValue(this.evaluate(node.expression));
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPUnwrapExpression node) {
+        Object value = this.evaluate(node.expression);
+        if (value == null)
+            throw new RuntimeException("Unwrapping a NULL value in " + node);
+        this.pushValue(value);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPIsNullExpression node) {
+        this.pushValue(this.evaluate(node.expression) == null);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPVariablePath node) {
+        this.pushValue(this.lookup(node.variable));
+        return VisitDecision.STOP;
+    }
+
+    // Tuples
+
+    @Override
+    public VisitDecision preorder(DBSPTupleExpression node) {
+        DBSPTypeTuple type = node.getType().to(DBSPTypeTuple.class);
+        SqlTuple result = new SqlTuple();
+        for (int i = 0; i < node.fields.length; i++) {
+            Object value = this.evaluate(node.fields[i]);
+            result.add(toSqlValue(value, type.tupFields[i]));
+        }
+        this.pushValue(result);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPRawTupleExpression node) {
+        Object[] result = new Object[node.fields.length];
+        for (int i = 0; i < node.fields.length; i++)
+            result[i] = this.evaluate(node.fields[i]);
+        this.pushValue(result);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPFieldExpression node) {
+        Object value = this.evaluate(node.expression);
+        if (value == null)
+            this.pushValue(null);
+        else if (value instanceof SqlTuple tuple)
+            this.pushValue(tuple.get(node.fieldNo).getValue());
+        else
+            this.pushValue(((Object[]) value)[node.fieldNo]);
+        return VisitDecision.STOP;
+    }
+
+    // Control flow
+
+    @Override
+    public VisitDecision preorder(DBSPIfExpression node) {
+        Object condition = this.evaluate(node.condition);
+        if (Objects.equals(condition, true))
+            this.pushValue(this.evaluate(node.positive));
+        else
+            this.pushValue(this.evaluate(node.negative));
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPBlockExpression node) {
+        this.scopes.add(new HashMap<>());
+        try {
+            for (DBSPStatement statement: node.contents)
+                statement.accept(this);
+            this.pushValue(node.lastExpression == null ? null : this.evaluate(node.lastExpression));
+        } finally {
+            Utilities.removeLast(this.scopes);
+        }
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPLetStatement node) {
+        if (node.initializer == null)
+            throw new UnimplementedException("Simulation of uninitialized variable", node);
+        Object value = this.evaluate(node.initializer);
+        Utilities.last(this.scopes).put(node.variable, value);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPExpressionStatement node) {
+        this.evaluate(node.expression);
+        return VisitDecision.STOP;
+    }
+
+    // Operations
+
+    @Override
+    public VisitDecision preorder(DBSPCastExpression node) {
+        Object value = this.evaluate(node.source);
+        this.pushValue(cast(value, node.getType(), node));
+        return VisitDecision.STOP;
+    }
+
+    @Nullable
+    static Object cast(@Nullable Object value, DBSPType type, DBSPExpression node) {
+        if (value == null) {
+            if (!type.mayBeNull)
+                throw new RuntimeException("Cast of NULL value to non-nullable type in " + node);
+            return null;
+        }
+        switch (type.code) {
+            case BOOL:
+                if (value instanceof Boolean)
+                    return value;
+                break;
+            case INT32:
+                if (value instanceof String str)
+                    return Integer.parseInt(str.trim());
+                if (value instanceof BigDecimal dec)
+                    return dec.setScale(0, RoundingMode.DOWN).intValueExact();
+                if (value instanceof Double d)
+                    return d.intValue();
+                if (value instanceof Number n)
+                    return Math.toIntExact(n.longValue());
+                break;
+            case INT64:
+                if (value instanceof String str)
+                    return Long.parseLong(str.trim());
+                if (value instanceof BigDecimal dec)
+                    return dec.setScale(0, RoundingMode.DOWN).longValueExact();
+                if (value instanceof Number n)
+                    return n.longValue();
+                break;
+            case DOUBLE:
+                if (value instanceof String str)
+                    return Double.parseDouble(str.trim());
+                if (value instanceof Number n)
+                    return n.doubleValue();
+                break;
+            case DECIMAL: {
+                DBSPTypeDecimal dec = type.to(DBSPTypeDecimal.class);
+                BigDecimal result;
+                if (value instanceof String str)
+                    result = new BigDecimal(str.trim());
+                else if (value instanceof BigDecimal d)
+                    result = d;
+                else if (value instanceof Double d)
+                    result = BigDecimal.valueOf(d);
+                else if (value instanceof Number n)
+                    result = BigDecimal.valueOf(n.longValue());
+                else
+                    break;
+                result = result.setScale(dec.scale, RoundingMode.HALF_UP);
+                if (result.precision() > dec.precision)
+                    throw new RuntimeException("Value " + result + " does not fit in " + type);
+                return result;
+            }
+            case STRING: {
+                if (value instanceof Boolean)
+                    break;
+                String result = value instanceof BigDecimal dec ? dec.toPlainString() : value.toString();
+                DBSPTypeString str = type.to(DBSPTypeString.class);
+                if (str.precision != DBSPTypeString.UNLIMITED_PRECISION) {
+                    if (result.length() > str.precision)
+                        result = result.substring(0, str.precision);
+                    else if (str.fixed)
+                        result = result + " ".repeat(str.precision - result.length());
+                }
+                return result;
+            }
+            default:
+                break;
+        }
+        throw new UnimplementedException("Simulation of cast from " + value.getClass().getSimpleName() +
+                " to " + type, node);
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPUnaryExpression node) {
+        Object value = this.evaluate(node.source);
+        Object result = switch (node.operation) {
+            case WRAP_BOOL -> Objects.equals(value, true);
+            case IS_TRUE -> Objects.equals(value, true);
+            case IS_FALSE -> Objects.equals(value, false);
+            case IS_NOT_TRUE -> !Objects.equals(value, true);
+            case IS_NOT_FALSE -> !Objects.equals(value, false);
+            case INDICATOR -> value == null ? 0L : 1L;
+            case UNARY_PLUS -> value;
+            case NOT -> value == null ? null : !(Boolean) value;
+            case NEG -> {
+                if (value == null)
+                    yield null;
+                if (value instanceof Integer i)
+                    yield Math.negateExact(i);
+                if (value instanceof Long l)
+                    yield Math.negateExact(l);
+                if (value instanceof Double d)
+                    yield -d;
+                if (value instanceof BigDecimal d)
+                    yield d.negate();
+                throw new UnimplementedException("Simulation of", node);
+            }
+            default -> throw new UnimplementedException("Simulation of", node);
+        };
+        this.pushValue(result);
+        return VisitDecision.STOP;
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(Object left, Object right) {
+        return ((Comparable<Object>) left).compareTo(right);
+    }
+
+    static boolean equal(@Nullable Object left, @Nullable Object right) {
+        if (left instanceof BigDecimal l && right instanceof BigDecimal r)
+            return l.compareTo(r) == 0;
+        return Objects.equals(left, right);
+    }
+
+    @Nullable
+    static Object arithmetic(DBSPOpcode opcode, Object left, Object right, DBSPExpression node) {
+        if (left instanceof Integer l && right instanceof Integer r) {
+            return switch (opcode) {
+                case ADD -> Math.addExact(l, r);
+                case SUB -> Math.subtractExact(l, r);
+                case MUL -> Math.multiplyExact(l, r);
+                case DIV -> l / r;
+                case DIV_NULL -> r == 0 ? null : l / r;
+                case MOD -> l % r;
+                default -> throw new UnimplementedException("Simulation of", node);
+            };
+        }
+        if (left instanceof Long l && right instanceof Long r) {
+            return switch (opcode) {
+                case ADD -> Math.addExact(l, r);
+                case SUB -> Math.subtractExact(l, r);
+                case MUL -> Math.multiplyExact(l, r);
+                case DIV -> l / r;
+                case DIV_NULL -> r == 0 ? null : l / r;
+                case MOD -> l % r;
+                default -> throw new UnimplementedException("Simulation of", node);
+            };
+        }
+        if (left instanceof Double l && right instanceof Double r) {
+            return switch (opcode) {
+                case ADD -> l + r;
+                case SUB -> l - r;
+                case MUL -> l * r;
+                case DIV -> l / r;
+                case DIV_NULL -> r == 0 ? null : l / r;
+                case MOD -> l % r;
+                default -> throw new UnimplementedException("Simulation of", node);
+            };
+        }
+        if (left instanceof BigDecimal l && right instanceof BigDecimal r) {
+            BigDecimal result = switch (opcode) {
+                case ADD -> l.add(r);
+                case SUB -> l.subtract(r);
+                case MUL -> l.multiply(r);
+                case DIV -> l.divide(r, MathContext.DECIMAL128);
+                case DIV_NULL -> r.signum() == 0 ? null : l.divide(r, MathContext.DECIMAL128);
+                case MOD -> l.remainder(r);
+                default -> throw new UnimplementedException("Simulation of", node);
+            };
+            if (result == null)
+                return null;
+            DBSPTypeDecimal type = node.getType().to(DBSPTypeDecimal.class);
+            return result.setScale(type.scale, RoundingMode.HALF_UP);
+        }
+        throw new UnimplementedException("Simulation of", node);
+    }
+
+    /** Combine an accumulator with a value; aggregation operations ignore NULL values. */
+    @Nullable
+    static Object aggregate(DBSPOpcode opcode, @Nullable Object left, @Nullable Object right, DBSPExpression node) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        return switch (opcode) {
+            case AGG_ADD -> arithmetic(DBSPOpcode.ADD, left, right, node);
+            case AGG_MAX -> compare(left, right) >= 0 ? left : right;
+            case AGG_MIN -> compare(left, right) <= 0 ? left : right;
+            case AGG_AND -> (Boolean) left && (Boolean) right;
+            case AGG_OR -> (Boolean) left || (Boolean) right;
+            default -> throw new UnimplementedException("Simulation of", node);
+        };
+    }
+
+    /** Multiply a value by the weight of the row it comes from; the result has the type of the value. */
+    static Object multiplyWeight(Object value, long weight, DBSPExpression node) {
+        if (value instanceof Integer i)
+            return Math.multiplyExact(i, Math.toIntExact(weight));
+        if (value instanceof Long l)
+            return Math.multiplyExact(l, weight);
+        if (value instanceof Double d)
+            return d * weight;
+        if (value instanceof BigDecimal d)
+            return d.multiply(BigDecimal.valueOf(weight));
+        throw new UnimplementedException("Simulation of", node);
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPConditionalAggregateExpression node) {
+        Object left = this.evaluate(node.left);
+        Object right = this.evaluate(node.right);
+        Object result = left;
+        if (node.condition == null || Objects.equals(this.evaluate(node.condition), true))
+            result = aggregate(node.opcode, left, right, node);
+        this.pushValue(result);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPBinaryExpression node) {
+        Object left = this.evaluate(node.left);
+        // SQL three-valued logic; the right operand is only evaluated
+        // if the left one does not determine the result, as in Rust.
+        if (node.operation == DBSPOpcode.AND || node.operation == DBSPOpcode.OR) {
+            boolean dominant = node.operation == DBSPOpcode.OR;
+            Object result;
+            if (Objects.equals(left, dominant)) {
+                result = dominant;
+            } else {
+                Object right = this.evaluate(node.right);
+                if (Objects.equals(right, dominant))
+                    result = dominant;
+                else if (left == null || right == null)
+                    result = null;
+                else
+                    result = !dominant;
+            }
+            this.pushValue(result);
+            return VisitDecision.STOP;
+        }
+
+        Object right = this.evaluate(node.right);
+        Object result;
+        switch (node.operation) {
+            case IS_DISTINCT:
+                result = !equal(left, right);
+                break;
+            case IS_NOT_DISTINCT:
+                result = equal(left, right);
+                break;
+            case AGG_ADD:
+            case AGG_MAX:
+            case AGG_MIN:
+            case AGG_AND:
+            case AGG_OR:
+                result = aggregate(node.operation, left, right, node);
+                break;
+            case MUL_WEIGHT:
+                result = left == null ? null : multiplyWeight(left, (Long) Objects.requireNonNull(right), node);
+                break;
+            default:
+                if (left == null || right == null) {
+                    result = null;
+                    break;
+                }
+                result = switch (node.operation) {
+                    case EQ -> equal(left, right);
+                    case NEQ -> !equal(left, right);
+                    case LT -> compare(left, right) < 0;
+                    case GT -> compare(left, right) > 0;
+                    case LTE -> compare(left, right) <= 0;
+                    case GTE -> compare(left, right) >= 0;
+                    case MAX -> compare(left, right) >= 0 ? left : right;
+                    case MIN -> compare(left, right) <= 0 ? left : right;
+                    case CONCAT -> (String) left + right;
+                    default -> arithmetic(node.operation, left, right, node);
+                };
+                break;
+        }
+        this.pushValue(result);
+        return VisitDecision.STOP;
+    }
+}
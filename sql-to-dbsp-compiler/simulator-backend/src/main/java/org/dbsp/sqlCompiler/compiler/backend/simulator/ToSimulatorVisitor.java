@@ -0,0 +1,401 @@
+package org.dbsp.sqlCompiler.compiler.backend.simulator;
+
+import org.dbsp.simulator.AggregateDescription;
+import org.dbsp.simulator.Circuit;
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.operators.AggregateOperator;
+import org.dbsp.simulator.operators.BaseOperator;
+import org.dbsp.simulator.operators.ConstantOperator;
+import org.dbsp.simulator.operators.DelayOperator;
+import org.dbsp.simulator.operators.DifferentiateOperator;
+import org.dbsp.simulator.operators.DistinctOperator;
+import org.dbsp.simulator.operators.FilterOperator;
+import org.dbsp.simulator.operators.FlattenOperator;
+import org.dbsp.simulator.operators.IncrementalAggregateOperator;
+import org.dbsp.simulator.operators.IncrementalDistinctOperator;
+import org.dbsp.simulator.operators.IncrementalJoinOperator;
+import org.dbsp.simulator.operators.InputOperator;
+import org.dbsp.simulator.operators.IntegrateOperator;
+import org.dbsp.simulator.operators.JoinFlatMapOperator;
+import org.dbsp.simulator.operators.MapIndexOperator;
+import org.dbsp.simulator.operators.NegateOperator;
+import org.dbsp.simulator.operators.ReindexOperator;
+import org.dbsp.simulator.operators.SelectOperator;
+import org.dbsp.simulator.operators.ShardedOperator;
+import org.dbsp.simulator.operators.SubtractOperator;
+import org.dbsp.simulator.operators.SumOperator;
+import org.dbsp.simulator.types.LongWeight;
+import org.dbsp.simulator.util.TriFunction;
+import org.dbsp.simulator.values.SqlTuple;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperatorBase;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayedIntegralOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinFilterMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNoopOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamDistinctOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSumOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPUnaryOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPViewOperator;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.errors.UnimplementedException;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPAggregate;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.user.DBSPTypeIndexedZSet;
+import org.dbsp.util.Linq;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/** Converts a DBSPCircuit into a {@link Circuit} of the simulator, which can
+ * execute it directly in Java, without generating Rust.
+ * The closures of the operators are evaluated by an {@link ExpressionInterpreter}.
+ * Each input of the simulated circuit is named after a table, and receives a
+ * Z-set of {@link SqlTuple}; each output is named after a view.
+ * Weights are longs, and the Z-sets which are not indexed are represented
+ * as {@link LongZSet}s.
+ * Both non-incremental and incremental circuits are supported; the stateful
+ * operators of incremental circuits keep their traces in the simulator, so
+ * a stream of changes can be replayed with {@link Circuit#run}.
+ * Delays which create back-edges, and the other unsupported operators,
+ * throw {@link UnimplementedException}.
+ * When more than one worker is requested the joins, aggregates and distincts
+ * are executed by a {@link ShardedOperator}, which partitions their inputs by key
+ * across the workers, like the DBSP runtime; the statistics of the simulated
+ * circuit then show the work of each operator on its busiest worker. */
+public class ToSimulatorVisitor extends CircuitVisitor {
+    final Circuit<Long> simulator;
+    /** Interpreters are not thread-safe; each worker thread uses its own. */
+    final ThreadLocal<ExpressionInterpreter> interpreter;
+    /** Maps each DBSP operator to the simulator operator which computes its output. */
+    final Map<DBSPOperator, BaseOperator<Long>> operators;
+    final int workers;
+
+    /** @param workers Number of shards of the joins, aggregates and distincts. */
+    public ToSimulatorVisitor(IErrorReporter reporter, int workers) {
+        super(reporter);
+        if (workers < 1)
+            throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+        this.simulator = new Circuit<>(LongWeight.INSTANCE);
+        this.interpreter = ThreadLocal.withInitial(() -> new ExpressionInterpreter(reporter));
+        this.operators = new HashMap<>();
+        this.workers = workers;
+    }
+
+    public ToSimulatorVisitor(IErrorReporter reporter) {
+        this(reporter, 1);
+    }
+
+    ExpressionInterpreter interpreter() {
+        return this.interpreter.get();
+    }
+
+    public Circuit<Long> getSimulator() {
+        return this.simulator;
+    }
+
+    BaseOperator<Long> getInput(DBSPOperator operator, int index) {
+        return Objects.requireNonNull(this.operators.get(operator.inputs.get(index)));
+    }
+
+    void map(DBSPOperator operator, BaseOperator<Long> simulated) {
+        Utilities.putNew(this.operators, operator, simulated);
+    }
+
+    void add(DBSPOperator operator, BaseOperator<Long> simulated) {
+        this.map(operator, this.simulator.addOperator(simulated));
+    }
+
+    SqlTuple evaluateTuple(DBSPClosureExpression closure, Object... arguments) {
+        return (SqlTuple) Objects.requireNonNull(this.interpreter().call(closure, arguments));
+    }
+
+    Map.Entry<SqlTuple, SqlTuple> evaluatePair(DBSPClosureExpression closure, Object... arguments) {
+        Object[] pair = (Object[]) Objects.requireNonNull(this.interpreter().call(closure, arguments));
+        return Map.entry((SqlTuple) pair[0], (SqlTuple) pair[1]);
+    }
+
+    /** Add an operator which only combines inputs with the same key;
+     * it is sharded if there are multiple workers. */
+    void addKeyed(DBSPOperator operator, Function<List<BaseOperator<Long>>, BaseOperator<Long>> factory) {
+        List<BaseOperator<Long>> inputs = Linq.map(operator.inputs, this.operators::get);
+        if (this.workers == 1) {
+            this.add(operator, factory.apply(inputs));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        BaseOperator<Long>[] array = inputs.toArray(new BaseOperator[0]);
+        // The common pool is shared, so the simulator has no threads to shut down
+        this.add(operator, new ShardedOperator<>(
+                LongWeight.INSTANCE, this.workers, ForkJoinPool.commonPool(), factory, array));
+    }
+
+    boolean isIndexed(DBSPOperator operator) {
+        return operator.outputType.is(DBSPTypeIndexedZSet.class);
+    }
+
+    @Override
+    public void postorder(DBSPOperator node) {
+        throw new UnimplementedException("Simulation of operator " + node.operation, node);
+    }
+
+    @Override
+    public void postorder(DBSPSourceMultisetOperator node) {
+        this.map(node, this.simulator.addInput(node.tableName));
+    }
+
+    @Override
+    public void postorder(DBSPSourceMapOperator node) {
+        // The simulator receives the rows, and indexes them by the key fields
+        InputOperator<Long> input = this.simulator.addInput(node.tableName);
+        List<Integer> keyFields = node.keyFields;
+        this.add(node, new MapIndexOperator<>(LongWeight.INSTANCE, row -> {
+            SqlTuple key = new SqlTuple();
+            for (int field: keyFields)
+                key.add(row.get(field));
+            return Map.entry(key, row);
+        }, input));
+    }
+
+    @Override
+    public void postorder(DBSPSinkOperator node) {
+        BaseOperator<Long> input = this.getInput(node, 0);
+        this.map(node, input);
+        this.simulator.addOutput(node.viewName, input);
+    }
+
+    void identity(DBSPUnaryOperator node) {
+        this.map(node, this.getInput(node, 0));
+    }
+
+    @Override
+    public void postorder(DBSPViewOperator node) {
+        this.identity(node);
+    }
+
+    @Override
+    public void postorder(DBSPNoopOperator node) {
+        this.identity(node);
+    }
+
+    @Override
+    public void postorder(DBSPConstantOperator node) {
+        DBSPZSetLiteral literal = node.getFunction().to(DBSPZSetLiteral.class);
+        LongZSet<SqlTuple> value = new LongZSet<>(literal.size());
+        for (Map.Entry<DBSPExpression, Long> entry: literal.data.entrySet()) {
+            SqlTuple tuple = (SqlTuple) Objects.requireNonNull(this.interpreter().evaluate(entry.getKey()));
+            value.append(tuple, entry.getValue());
+        }
+        this.add(node, new ConstantOperator<>(LongWeight.INSTANCE, value));
+    }
+
+    @Override
+    public void postorder(DBSPMapOperator node) {
+        DBSPClosureExpression function = node.getClosureFunction();
+        BaseOperator<Long> input = this.getInput(node, 0);
+        if (this.isIndexed(node.input()))
+            this.add(node, new FlattenOperator<>(LongWeight.INSTANCE,
+                    (k, v) -> this.evaluateTuple(function, (Object) new Object[] { k, v }), input));
+        else
+            this.add(node, new SelectOperator<>(LongWeight.INSTANCE,
+                    row -> this.evaluateTuple(function, row), input));
+    }
+
+    @Override
+    public void postorder(DBSPDeindexOperator node) {
+        DBSPClosureExpression function = node.getClosureFunction();
+        this.add(node, new FlattenOperator<>(LongWeight.INSTANCE,
+                (k, v) -> this.evaluateTuple(function, (Object) new Object[] { k, v }),
+                this.getInput(node, 0)));
+    }
+
+    @Override
+    public void postorder(DBSPMapIndexOperator node) {
+        DBSPClosureExpression function = node.getClosureFunction();
+        BaseOperator<Long> input = this.getInput(node, 0);
+        if (this.isIndexed(node.input()))
+            this.add(node, new ReindexOperator<>(LongWeight.INSTANCE,
+                    (k, v) -> this.evaluatePair(function, (Object) new Object[] { k, v }), input));
+        else
+            this.add(node, new MapIndexOperator<>(LongWeight.INSTANCE,
+                    row -> this.evaluatePair(function, row), input));
+    }
+
+    @Override
+    public void postorder(DBSPFilterOperator node) {
+        if (this.isIndexed(node.input()))
+            throw new UnimplementedException("Simulation of filter on indexed collection", node);
+        DBSPClosureExpression function = node.getClosureFunction();
+        this.add(node, new FilterOperator<>(LongWeight.INSTANCE,
+                row -> Objects.equals(this.interpreter().call(function, row), true),
+                this.getInput(node, 0)));
+    }
+
+    @Override
+    public void postorder(DBSPStreamJoinOperator node) {
+        DBSPClosureExpression function = node.getClosureFunction();
+        this.addKeyed(node, inputs -> new JoinFlatMapOperator<>(LongWeight.INSTANCE,
+                (k, l, r) -> this.evaluateTuple(function, k, l, r), inputs.get(0), inputs.get(1)));
+    }
+
+    @Override
+    public void postorder(DBSPSumOperator node) {
+        List<BaseOperator<Long>> inputs = Linq.map(node.inputs, this.operators::get);
+        @SuppressWarnings("unchecked")
+        BaseOperator<Long>[] array = inputs.toArray(new BaseOperator[0]);
+        this.add(node, new SumOperator<>(LongWeight.INSTANCE, array));
+    }
+
+    @Override
+    public void postorder(DBSPSubtractOperator node) {
+        this.add(node, new SubtractOperator<>(LongWeight.INSTANCE,
+                this.getInput(node, 0), this.getInput(node, 1)));
+    }
+
+    @Override
+    public void postorder(DBSPNegateOperator node) {
+        this.add(node, new NegateOperator<>(LongWeight.INSTANCE, this.getInput(node, 0)));
+    }
+
+    @Override
+    public void postorder(DBSPStreamDistinctOperator node) {
+        this.addKeyed(node, inputs -> new DistinctOperator<>(LongWeight.INSTANCE, inputs.get(0)));
+    }
+
+    @Override
+    public void postorder(DBSPIntegrateOperator node) {
+        this.add(node, new IntegrateOperator<>(LongWeight.INSTANCE, this.getInput(node, 0)));
+    }
+
+    @Override
+    public void postorder(DBSPDifferentiateOperator node) {
+        this.add(node, new DifferentiateOperator<>(LongWeight.INSTANCE, this.getInput(node, 0)));
+    }
+
+    /** An empty collection with the output type of the operator. */
+    BaseCollection<Long> empty(DBSPOperator operator) {
+        if (this.isIndexed(operator))
+            return new IndexedZSet<SqlTuple, SqlTuple, Long>(LongWeight.INSTANCE);
+        return new LongZSet<SqlTuple>();
+    }
+
+    @Override
+    public void postorder(DBSPDelayOperator node) {
+        if (node.output != null || node.function != null)
+            throw new UnimplementedException("Simulation of delay with back-edge or initial value", node);
+        this.add(node, new DelayOperator<>(LongWeight.INSTANCE, this.empty(node), this.getInput(node, 0)));
+    }
+
+    @Override
+    public void postorder(DBSPDelayedIntegralOperator node) {
+        IntegrateOperator<Long> integral = this.simulator.addOperator(
+                new IntegrateOperator<>(LongWeight.INSTANCE, this.getInput(node, 0)));
+        this.add(node, new DelayOperator<>(LongWeight.INSTANCE, this.empty(node), integral));
+    }
+
+    @Override
+    public void postorder(DBSPDistinctOperator node) {
+        this.addKeyed(node, inputs -> new IncrementalDistinctOperator<>(LongWeight.INSTANCE, inputs.get(0)));
+    }
+
+    @Override
+    public void postorder(DBSPJoinOperator node) {
+        DBSPClosureExpression function = node.getClosureFunction();
+        this.addKeyed(node, inputs -> new IncrementalJoinOperator<>(LongWeight.INSTANCE,
+                (k, l, r) -> this.evaluateTuple(function, k, l, r), inputs.get(0), inputs.get(1)));
+    }
+
+    @Override
+    public void postorder(DBSPJoinFilterMapOperator node) {
+        DBSPClosureExpression function = node.getClosureFunction();
+        @Nullable
+        DBSPClosureExpression filter = node.filter == null ? null : node.filter.to(DBSPClosureExpression.class);
+        @Nullable
+        DBSPClosureExpression map = node.map == null ? null : node.map.to(DBSPClosureExpression.class);
+        TriFunction<SqlTuple, SqlTuple, SqlTuple, SqlTuple> combiner = (k, l, r) -> {
+            // Without a filter the function returns None for the rows it drops
+            Object result = this.interpreter().call(function, k, l, r);
+            if (result == null)
+                return null;
+            if (filter != null && !Objects.equals(this.interpreter().call(filter, result), true))
+                return null;
+            if (map != null)
+                result = this.interpreter().call(map, result);
+            return (SqlTuple) result;
+        };
+        this.addKeyed(node, inputs -> new IncrementalJoinOperator<>(LongWeight.INSTANCE, combiner,
+                inputs.get(0), inputs.get(1)));
+    }
+
+    /** Describe a DBSP aggregate for the simulator.  The accumulator holds
+     * one value for each component of the aggregate. */
+    AggregateDescription<SqlTuple, Object[], SqlTuple, Long> describe(DBSPAggregateOperatorBase node) {
+        if (node.aggregate == null)
+            throw new UnimplementedException("Simulation of lowered aggregate", node);
+        DBSPAggregate aggregate = node.getAggregate();
+        DBSPAggregate.Implementation[] components = aggregate.components;
+        DBSPType[] resultTypes = node.getOutputIndexedZSetType().elementType.to(DBSPTypeTuple.class).tupFields;
+        Object[] zero = new Object[components.length];
+        for (int i = 0; i < components.length; i++)
+            zero[i] = this.interpreter().evaluate(components[i].zero);
+        return new AggregateDescription<>(zero,
+                (accumulator, row, weight) -> {
+                    Object[] result = new Object[components.length];
+                    for (int i = 0; i < components.length; i++)
+                        result[i] = this.interpreter().call(
+                                components[i].increment, accumulator[i], row, weight);
+                    return result;
+                },
+                accumulator -> {
+                    SqlTuple result = new SqlTuple();
+                    for (int i = 0; i < components.length; i++) {
+                        Object value = this.interpreter().call(components[i].getPostprocessing(), accumulator[i]);
+                        result.add(ExpressionInterpreter.toSqlValue(value, resultTypes[i]));
+                    }
+                    return result;
+                });
+    }
+
+    @Override
+    public void postorder(DBSPStreamAggregateOperator node) {
+        AggregateDescription<SqlTuple, Object[], SqlTuple, Long> aggregate = this.describe(node);
+        this.addKeyed(node, inputs -> new AggregateOperator<>(LongWeight.INSTANCE, aggregate, inputs.get(0)));
+    }
+
+    @Override
+    public void postorder(DBSPAggregateOperator node) {
+        AggregateDescription<SqlTuple, Object[], SqlTuple, Long> aggregate = this.describe(node);
+        this.addKeyed(node, inputs -> new IncrementalAggregateOperator<>(
+                LongWeight.INSTANCE, aggregate, inputs.get(0)));
+    }
+}
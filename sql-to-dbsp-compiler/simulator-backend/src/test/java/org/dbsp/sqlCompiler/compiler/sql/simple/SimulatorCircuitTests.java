@@ -0,0 +1,190 @@
+package org.dbsp.sqlCompiler.compiler.sql.simple;
+
+import org.dbsp.simulator.Circuit;
+import org.dbsp.simulator.StepStatistics;
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.StringSqlType;
+import org.dbsp.simulator.values.BigintSqlValue;
+import org.dbsp.simulator.values.IntegerSqlValue;
+import org.dbsp.simulator.values.SqlTuple;
+import org.dbsp.simulator.values.StringSqlValue;
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.simulator.ToSimulatorVisitor;
+import org.dbsp.sqlCompiler.compiler.sql.tools.BaseSQLTests;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+/** Tests that execute compiled circuits in the Java simulator */
+public class SimulatorCircuitTests extends BaseSQLTests {
+    Circuit<Long> simulate(String sql) {
+        return this.simulate(this.testCompiler(), sql);
+    }
+
+    Circuit<Long> simulate(DBSPCompiler compiler, String sql) {
+        return this.simulate(compiler, sql, 1);
+    }
+
+    Circuit<Long> simulate(DBSPCompiler compiler, String sql, int workers) {
+        compiler.compileStatements(sql);
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = getCircuit(compiler);
+        ToSimulatorVisitor visitor = new ToSimulatorVisitor(compiler, workers);
+        visitor.apply(circuit);
+        return visitor.getSimulator();
+    }
+
+    static LongZSet<SqlTuple> zset(SqlTuple... tuples) {
+        LongZSet<SqlTuple> result = new LongZSet<>();
+        for (SqlTuple tuple: tuples)
+            result.append(tuple);
+        return result;
+    }
+
+    static SqlTuple t(@Nullable Integer id, @Nullable Integer v, @Nullable String s) {
+        return new SqlTuple()
+                .add(new IntegerSqlValue(id))
+                .add(new IntegerSqlValue(v))
+                .add(new StringSqlValue(s, new StringSqlType()));
+    }
+
+    static SqlTuple s(@Nullable Integer id, @Nullable Long w) {
+        return new SqlTuple()
+                .add(new IntegerSqlValue(id))
+                .add(new BigintSqlValue(w));
+    }
+
+    @SuppressWarnings("unchecked")
+    static void check(Map<String, BaseCollection<Long>> outputs, String view, LongZSet<SqlTuple> expected) {
+        BaseCollection<Long> output = outputs.get(view);
+        Assert.assertNotNull(output);
+        // Operators which are not specialized for LongZSet produce a ZSet
+        LongZSet<SqlTuple> actual = output instanceof LongZSet ?
+                (LongZSet<SqlTuple>) output :
+                LongZSet.fromZSet((ZSet<SqlTuple, Long>) output);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSimulateCircuit() {
+        Circuit<Long> circuit = this.simulate("""
+                CREATE TABLE T(id INT NOT NULL, v INT, s VARCHAR);
+                CREATE TABLE S(id INT NOT NULL, w BIGINT);
+                CREATE VIEW V0 AS SELECT id, v + 1 AS x FROM T WHERE v > 10;
+                CREATE VIEW V1 AS SELECT T.id, s, w FROM T JOIN S ON T.id = S.id;
+                CREATE VIEW V2 AS SELECT id FROM T UNION SELECT id FROM S;""");
+
+        // Each step receives a new input; the circuit is not incremental
+        Map<String, BaseCollection<Long>> outputs = circuit.step(Map.of(
+                "T", zset(t(1, 20, "a"), t(2, null, "b"), t(3, 5, null)),
+                "S", zset(s(1, 10L), s(1, null), s(4, 40L))));
+        check(outputs, "V0", zset(new SqlTuple()
+                .add(new IntegerSqlValue(1))
+                .add(new IntegerSqlValue(21))));
+        LongZSet<SqlTuple> v1 = zset(
+                new SqlTuple()
+                        .add(new IntegerSqlValue(1))
+                        .add(new StringSqlValue("a", new StringSqlType()))
+                        .add(new BigintSqlValue(10L)),
+                new SqlTuple()
+                        .add(new IntegerSqlValue(1))
+                        .add(new StringSqlValue("a", new StringSqlType()))
+                        .add(new BigintSqlValue(null)));
+        check(outputs, "V1", v1);
+        LongZSet<SqlTuple> v2 = zset(
+                new SqlTuple().add(new IntegerSqlValue(1)),
+                new SqlTuple().add(new IntegerSqlValue(2)),
+                new SqlTuple().add(new IntegerSqlValue(3)),
+                new SqlTuple().add(new IntegerSqlValue(4)));
+        check(outputs, "V2", v2);
+
+        // Inputs which are not supplied are empty
+        outputs = circuit.step(Map.of("S", zset(s(2, 2L))));
+        check(outputs, "V0", zset());
+        check(outputs, "V1", zset());
+        check(outputs, "V2", zset(new SqlTuple().add(new IntegerSqlValue(2))));
+    }
+
+    static SqlTuple iv(@Nullable Integer id, @Nullable Integer v) {
+        return new SqlTuple()
+                .add(new IntegerSqlValue(id))
+                .add(new IntegerSqlValue(v));
+    }
+
+    static SqlTuple group(int id, long count, @Nullable Integer sum) {
+        return new SqlTuple()
+                .add(new IntegerSqlValue(id))
+                .add(new BigintSqlValue(count))
+                .add(new IntegerSqlValue(sum));
+    }
+
+    static SqlTuple value(@Nullable Integer v) {
+        return new SqlTuple().add(new IntegerSqlValue(v));
+    }
+
+    static final String INCREMENTAL_PROGRAM = """
+            CREATE TABLE T(id INT NOT NULL, v INT);
+            CREATE VIEW V3 AS SELECT id, COUNT(*) AS c, SUM(v) AS s FROM T GROUP BY id;
+            CREATE VIEW V4 AS SELECT DISTINCT v FROM T;""";
+
+    /** Replay changes through a circuit compiled from INCREMENTAL_PROGRAM and check the outputs. */
+    static List<StepStatistics> checkIncremental(Circuit<Long> circuit) {
+        // The inputs and outputs are changes
+        LongZSet<SqlTuple> second = zset(iv(2, 20)).append(iv(1, 10), -1);
+        List<Map<String, BaseCollection<Long>>> outputs = circuit.run(List.of(
+                Map.of("T", zset(iv(1, 10), iv(1, 20), iv(2, null))),
+                Map.of("T", second),
+                Map.of()));
+
+        check(outputs.get(0), "V3", zset(group(1, 2, 30), group(2, 1, null)));
+        check(outputs.get(0), "V4", zset(value(10), value(20), value(null)));
+
+        check(outputs.get(1), "V3", zset(group(1, 1, 20), group(2, 2, 20))
+                .append(group(1, 2, 30), -1)
+                .append(group(2, 1, null), -1));
+        // 20 is still present in T
+        check(outputs.get(1), "V4", zset().append(value(10), -1));
+
+        check(outputs.get(2), "V3", zset());
+        check(outputs.get(2), "V4", zset());
+
+        return circuit.getStatistics();
+    }
+
+    @Test
+    public void testSimulateIncrementalCircuit() {
+        Circuit<Long> circuit = this.simulate(
+                new DBSPCompiler(this.testOptions(true, true)), INCREMENTAL_PROGRAM);
+        List<StepStatistics> statistics = checkIncremental(circuit);
+
+        // Without changes the traces are retained, but they are not read
+        Assert.assertEquals(3, statistics.size());
+        StepStatistics last = statistics.get(2);
+        Assert.assertTrue(last.totalStateSize() > 0);
+        Assert.assertTrue(last.totalWork() < statistics.get(1).totalWork());
+    }
+
+    @Test
+    public void testSimulateShardedCircuit() {
+        Circuit<Long> single = this.simulate(
+                new DBSPCompiler(this.testOptions(true, true)), INCREMENTAL_PROGRAM);
+        Circuit<Long> sharded = this.simulate(
+                new DBSPCompiler(this.testOptions(true, true)), INCREMENTAL_PROGRAM, 4);
+        List<StepStatistics> singleStatistics = checkIncremental(single);
+        List<StepStatistics> shardedStatistics = checkIncremental(sharded);
+
+        // Sharding does not change the total work or state, but the busiest
+        // shard of an operator does at most as much work as the whole operator
+        StepStatistics first = shardedStatistics.get(0);
+        Assert.assertEquals(singleStatistics.get(0).totalWork(), first.totalWork());
+        Assert.assertEquals(singleStatistics.get(0).totalStateSize(), first.totalStateSize());
+        Assert.assertTrue(first.criticalPathWork() <= first.totalWork());
+        Assert.assertTrue(first.estimatedSpeedup() >= 1.0);
+    }
+}
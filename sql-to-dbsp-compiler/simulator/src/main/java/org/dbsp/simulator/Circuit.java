@@ -0,0 +1,99 @@
+package org.dbsp.simulator;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.operators.BaseOperator;
+import org.dbsp.simulator.operators.InputOperator;
+import org.dbsp.simulator.types.WeightType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/** A collection of operators which are executed together.
+ * Operators must be added in topological order; each step executes
+ * all operators in the order they were added, and then lets each operator
+ * update its state.  A delay operator only reads its input when the state
+ * is updated, so it may be added before the operator which computes its input.
+ * The work and the state size of each operator are recorded for every step. */
+public class Circuit<Weight> {
+    public final WeightType<Weight> weightType;
+    final List<BaseOperator<Weight>> operators;
+    final Map<String, InputOperator<Weight>> inputs;
+    final Map<String, BaseOperator<Weight>> outputs;
+    final List<StepStatistics> statistics;
+
+    public Circuit(WeightType<Weight> weightType) {
+        this.weightType = weightType;
+        this.operators = new ArrayList<>();
+        this.inputs = new LinkedHashMap<>();
+        this.outputs = new LinkedHashMap<>();
+        this.statistics = new ArrayList<>();
+    }
+
+    public <T extends BaseOperator<Weight>> T addOperator(T operator) {
+        this.operators.add(operator);
+        return operator;
+    }
+
+    public InputOperator<Weight> addInput(String name) {
+        InputOperator<Weight> input = this.addOperator(new InputOperator<>(this.weightType));
+        this.inputs.put(name, input);
+        return input;
+    }
+
+    public void addOutput(String name, BaseOperator<Weight> operator) {
+        this.outputs.put(name, operator);
+    }
+
+    public InputOperator<Weight> getInput(String name) {
+        return Objects.requireNonNull(this.inputs.get(name), "No input named " + name);
+    }
+
+    public Iterable<String> getInputNames() {
+        return this.inputs.keySet();
+    }
+
+    public Iterable<String> getOutputNames() {
+        return this.outputs.keySet();
+    }
+
+    /** Execute one step of the circuit.
+     * @param inputs  Value for each input; inputs not present receive an empty collection.
+     * @return        The value produced by each output. */
+    public Map<String, BaseCollection<Weight>> step(Map<String, ? extends BaseCollection<Weight>> inputs) {
+        for (Map.Entry<String, ? extends BaseCollection<Weight>> entry: inputs.entrySet())
+            this.getInput(entry.getKey()).setValue(entry.getValue());
+        for (BaseOperator<Weight> operator: this.operators)
+            operator.step();
+        StepStatistics stats = new StepStatistics(this.statistics.size());
+        for (int i = 0; i < this.operators.size(); i++) {
+            BaseOperator<Weight> operator = this.operators.get(i);
+            operator.endStep();
+            stats.add(new StepStatistics.OperatorStatistics(
+                    i + " " + operator.getClass().getSimpleName(),
+                    operator.getWork(), operator.getMaxShardWork(), operator.getStateSize()));
+        }
+        this.statistics.add(stats);
+        Map<String, BaseCollection<Weight>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, BaseOperator<Weight>> entry: this.outputs.entrySet())
+            result.put(entry.getKey(), entry.getValue().getOutput());
+        return result;
+    }
+
+    /** Replay a stream of changes.
+     * @param changes  Inputs for each step, in order.
+     * @return         The outputs produced by each step. */
+    public List<Map<String, BaseCollection<Weight>>> run(List<? extends Map<String, ? extends BaseCollection<Weight>>> changes) {
+        List<Map<String, BaseCollection<Weight>>> result = new ArrayList<>();
+        for (Map<String, ? extends BaseCollection<Weight>> change: changes)
+            result.add(this.step(change));
+        return result;
+    }
+
+    /** Statistics for each step executed so far. */
+    public List<StepStatistics> getStatistics() {
+        return this.statistics;
+    }
+}
@@ -0,0 +1,98 @@
+package org.dbsp.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Work performed and state retained by the operators of a circuit in one step. */
+public class StepStatistics {
+    public static class OperatorStatistics {
+        /** Operator description: index in the circuit and operator class. */
+        public final String name;
+        /** Number of entries processed by the operator in this step. */
+        public final long work;
+        /** Work of the busiest shard; equal to work if the operator is not sharded. */
+        public final long maxShardWork;
+        /** Number of entries retained by the operator at the end of this step. */
+        public final long stateSize;
+
+        public OperatorStatistics(String name, long work, long maxShardWork, long stateSize) {
+            this.name = name;
+            this.work = work;
+            this.maxShardWork = maxShardWork;
+            this.stateSize = stateSize;
+        }
+
+        public OperatorStatistics(String name, long work, long stateSize) {
+            this(name, work, work, stateSize);
+        }
+
+        @Override
+        public String toString() {
+            String result = this.name + " work=" + this.work;
+            if (this.maxShardWork != this.work)
+                result += " maxShard=" + this.maxShardWork;
+            return result + " state=" + this.stateSize;
+        }
+    }
+
+    /** Step number, starting at 0. */
+    public final int step;
+    public final List<OperatorStatistics> operators;
+
+    public StepStatistics(int step) {
+        this.step = step;
+        this.operators = new ArrayList<>();
+    }
+
+    public void add(OperatorStatistics statistics) {
+        this.operators.add(statistics);
+    }
+
+    public long totalWork() {
+        long result = 0;
+        for (OperatorStatistics op: this.operators)
+            result += op.work;
+        return result;
+    }
+
+    /** Work on the critical path when the shards of each operator run in parallel:
+     * the operators execute one after the other, and each takes as long as its busiest shard.
+     * Operators which are not sharded, such as the stateless maps and filters, count with
+     * all their work, although the DBSP runtime executes them on every worker. */
+    public long criticalPathWork() {
+        long result = 0;
+        for (OperatorStatistics op: this.operators)
+            result += op.maxShardWork;
+        return result;
+    }
+
+    /** Ratio between the total work and the work on the critical path;
+     * this is the speedup of parallel execution if work were the only cost.
+     * Since the work of the operators which are not sharded is entirely on the
+     * critical path, this is a lower bound of the speedup of the DBSP runtime. */
+    public double estimatedSpeedup() {
+        long critical = this.criticalPathWork();
+        if (critical == 0)
+            return 1.0;
+        return (double) this.totalWork() / critical;
+    }
+
+    public long totalStateSize() {
+        long result = 0;
+        for (OperatorStatistics op: this.operators)
+            result += op.stateSize;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Step ").append(this.step)
+                .append(" work=").append(this.totalWork())
+                .append(" state=").append(this.totalStateSize())
+                .append(System.lineSeparator());
+        for (OperatorStatistics op: this.operators)
+            builder.append("  ").append(op).append(System.lineSeparator());
+        return builder.toString();
+    }
+}
@@ -5,6 +5,9 @@ import org.dbsp.simulator.util.IndentStream;
 import org.dbsp.simulator.util.ToIndentableString;
 
 public abstract class BaseCollection<Weight> implements ICastable, ToIndentableString {
+    /** Number of distinct entries in the collection. */
+    public abstract int entryCount();
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -4,9 +4,11 @@ import org.dbsp.simulator.AggregateDescription;
 import org.dbsp.simulator.types.WeightType;
 import org.dbsp.simulator.util.IIndentStream;
 import org.dbsp.simulator.util.ToIndentableString;
+import org.dbsp.simulator.util.TriFunction;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiFunction;
 
 public class IndexedZSet<Key, Value, Weight> extends BaseCollection<Weight> implements ToIndentableString {
@@ -45,6 +47,74 @@ public class IndexedZSet<Key, Value, Weight> extends BaseCollection<Weight> impl
         return result;
     }
 
+    /** Join two indexed collections, producing a Z-set.
+     * The combiner receives the key and the two values; when it returns null
+     * the pair does not contribute to the result. */
+    public <Result, OtherValue> ZSet<Result, Weight> joinFlatMap(
+            IndexedZSet<Key, OtherValue, Weight> other,
+            TriFunction<Key, Value, OtherValue, Result> combiner) {
+        ZSet<Result, Weight> result = new ZSet<>(this.weightType);
+        for (Map.Entry<Key, ZSet<Value, Weight>> group: this.index.entrySet()) {
+            ZSet<OtherValue, Weight> right = other.index.get(group.getKey());
+            if (right == null)
+                continue;
+            for (Map.Entry<Value, Weight> left: group.getValue().data.entrySet()) {
+                for (Map.Entry<OtherValue, Weight> entry: right.data.entrySet()) {
+                    Result data = combiner.apply(group.getKey(), left.getKey(), entry.getKey());
+                    if (data == null)
+                        continue;
+                    Weight weight = this.weightType.multiply(left.getValue(), entry.getValue());
+                    result.append(data, weight);
+                }
+            }
+        }
+        return result;
+    }
+
+    public IndexedZSet<Key, Value, Weight> add(IndexedZSet<Key, Value, Weight> other) {
+        IndexedZSet<Key, Value, Weight> result = new IndexedZSet<>(this.weightType);
+        result.append(this);
+        result.append(other);
+        return result;
+    }
+
+    public IndexedZSet<Key, Value, Weight> append(IndexedZSet<Key, Value, Weight> other) {
+        for (Map.Entry<Key, ZSet<Value, Weight>> group: other.index.entrySet()) {
+            for (Map.Entry<Value, Weight> entry: group.getValue().data.entrySet())
+                this.append(group.getKey(), entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    public boolean equals(IndexedZSet<Key, Value, Weight> other) {
+        return this.add(other.negate()).isEmpty();
+    }
+
+    public IndexedZSet<Key, Value, Weight> negate() {
+        IndexedZSet<Key, Value, Weight> result = new IndexedZSet<>(this.weightType);
+        for (Map.Entry<Key, ZSet<Value, Weight>> group: this.index.entrySet())
+            result.index.put(group.getKey(), group.getValue().negate());
+        return result;
+    }
+
+    /** Index the data again, using a function which produces a new key and value
+     * for each key and value. */
+    public <OKey, OValue> IndexedZSet<OKey, OValue, Weight> mapIndex(
+            BiFunction<Key, Value, Map.Entry<OKey, OValue>> function) {
+        IndexedZSet<OKey, OValue, Weight> result = new IndexedZSet<>(this.weightType);
+        for (Map.Entry<Key, ZSet<Value, Weight>> group: this.index.entrySet()) {
+            for (Map.Entry<Value, Weight> entry: group.getValue().data.entrySet()) {
+                Map.Entry<OKey, OValue> kv = function.apply(group.getKey(), entry.getKey());
+                result.append(kv.getKey(), kv.getValue(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return this.index.isEmpty();
+    }
+
     public <Result, IntermediateResult> IndexedZSet<Key, Result, Weight>
     aggregate(AggregateDescription<Result, IntermediateResult, Value, Weight> aggregate) {
         IndexedZSet<Key, Result, Weight> result = new IndexedZSet<>(this.weightType);
@@ -74,6 +144,26 @@ public class IndexedZSet<Key, Value, Weight> extends BaseCollection<Weight> impl
         return this.index.size();
     }
 
+    @Override
+    public int entryCount() {
+        int result = 0;
+        for (ZSet<Value, Weight> group: this.index.values())
+            result += group.entryCount();
+        return result;
+    }
+
+    public Set<Key> keys() {
+        return this.index.keySet();
+    }
+
+    /** The values associated with a key; an empty Z-set if the key is not present. */
+    public ZSet<Value, Weight> getGroup(Key key) {
+        ZSet<Value, Weight> result = this.index.get(key);
+        if (result == null)
+            return new ZSet<>(this.weightType);
+        return result;
+    }
+
     public IIndentStream toString(IIndentStream stream) {
         stream.append("{").increase();
         boolean first = true;
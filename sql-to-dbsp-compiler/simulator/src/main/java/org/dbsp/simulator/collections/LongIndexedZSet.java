@@ -0,0 +1,104 @@
+package org.dbsp.simulator.collections;
+
+import org.dbsp.simulator.util.IIndentStream;
+import org.dbsp.simulator.util.ToIndentableString;
+import org.dbsp.simulator.util.TriFunction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** An indexed Z-set with long weights, used for the traces of operators
+ * which look up the groups of many keys.  Each group is a {@link LongZSet},
+ * so weights are never boxed. */
+public class LongIndexedZSet<Key, Value> extends BaseCollection<Long> implements ToIndentableString {
+    final Map<Key, LongZSet<Value>> index;
+    /** Number of entries in all groups. */
+    int entries;
+
+    public LongIndexedZSet() {
+        this.index = new HashMap<>();
+        this.entries = 0;
+    }
+
+    public void append(Key key, Value value, long weight) {
+        LongZSet<Value> group = this.index.computeIfAbsent(key, k -> new LongZSet<>());
+        this.entries -= group.entryCount();
+        group.append(value, weight);
+        this.entries += group.entryCount();
+        if (group.isEmpty())
+            // The group has become empty
+            this.index.remove(key);
+    }
+
+    /** Add the specified indexed Z-set to this one, in place. */
+    public LongIndexedZSet<Key, Value> append(IndexedZSet<Key, Value, Long> other) {
+        for (Key key: other.keys()) {
+            for (Map.Entry<Value, Long> entry: other.getGroup(key).entries())
+                this.append(key, entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    /** The values associated with a key; an empty Z-set if the key is not present. */
+    public LongZSet<Value> getGroup(Key key) {
+        LongZSet<Value> result = this.index.get(key);
+        if (result == null)
+            return new LongZSet<>();
+        return result;
+    }
+
+    /** Join the specified indexed Z-set with this one, adding the results to a Z-set.
+     * The combiner receives the key, the value of the other Z-set and the value of this one;
+     * when it returns null the pair does not contribute to the result. */
+    public <OtherValue, Result> void joinInto(
+            LongZSet<Result> result, IndexedZSet<Key, OtherValue, Long> other,
+            TriFunction<Key, OtherValue, Value, Result> combiner) {
+        for (Key key: other.keys()) {
+            LongZSet<Value> group = this.index.get(key);
+            if (group == null)
+                continue;
+            for (Map.Entry<OtherValue, Long> entry: other.getGroup(key).entries()) {
+                long weight = entry.getValue();
+                group.forEach((value, groupWeight) -> {
+                    Result data = combiner.apply(key, entry.getKey(), value);
+                    if (data != null)
+                        result.append(data, Math.multiplyExact(weight, groupWeight));
+                });
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.index.isEmpty();
+    }
+
+    public int groupCount() {
+        return this.index.size();
+    }
+
+    @Override
+    public int entryCount() {
+        return this.entries;
+    }
+
+    public Set<Key> keys() {
+        return this.index.keySet();
+    }
+
+    public IIndentStream toString(IIndentStream stream) {
+        stream.append("{").increase();
+        boolean first = true;
+        for (Map.Entry<Key, LongZSet<Value>> group: this.index.entrySet()) {
+            if (!first)
+                stream.append(",\n");
+            first = false;
+            stream.append(group.getKey().toString())
+                    .append("=>")
+                    .append(group.getValue());
+        }
+        return stream.decrease()
+                .newline()
+                .append("}");
+    }
+}
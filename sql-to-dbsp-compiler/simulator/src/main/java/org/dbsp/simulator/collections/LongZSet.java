@@ -0,0 +1,328 @@
+package org.dbsp.simulator.collections;
+
+import org.dbsp.simulator.types.LongWeight;
+import org.dbsp.simulator.util.IIndentStream;
+import org.dbsp.simulator.util.ToIndentableString;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+
+/** A Z-set with long weights, specialized for large collections.
+ * The data, their hash codes and their weights are stored in parallel arrays
+ * using open addressing with linear probing, so weights are never boxed,
+ * and hash codes are computed only once for each entry.
+ * {@link #append} merges changes in place; entries whose weight becomes zero
+ * are removed by shifting the following entries back, so there are no tombstones.
+ * Invariant: weights are never zero. */
+public class LongZSet<Data> extends BaseCollection<Long> implements ToIndentableString {
+    static final int MIN_CAPACITY = 8;
+
+    /** Data of each slot; null for empty slots. */
+    Object[] keys;
+    /** Hash code of the data in each slot. */
+    int[] hashes;
+    long[] weights;
+    /** Number of non-empty slots. */
+    int size;
+
+    /** Create an empty Z-set. */
+    public LongZSet() {
+        this(0);
+    }
+
+    /** Create an empty Z-set which can hold the specified number of entries without resizing. */
+    public LongZSet(int expectedSize) {
+        this.allocate(capacityFor(expectedSize));
+        this.size = 0;
+    }
+
+    /** Create a copy of the specified Z-set. */
+    LongZSet(LongZSet<Data> other) {
+        this.keys = other.keys.clone();
+        this.hashes = other.hashes.clone();
+        this.weights = other.weights.clone();
+        this.size = other.size;
+    }
+
+    public static <Data> LongZSet<Data> fromZSet(ZSet<Data, Long> zset) {
+        LongZSet<Data> result = new LongZSet<>(zset.entryCount());
+        for (Map.Entry<Data, Long> entry: zset.entries())
+            result.append(entry.getKey(), entry.getValue());
+        return result;
+    }
+
+    public ZSet<Data, Long> toZSet() {
+        ZSet<Data, Long> result = new ZSet<>(LongWeight.INSTANCE);
+        this.forEach(result::append);
+        return result;
+    }
+
+    /** Smallest power of two which keeps the load factor of the specified number of entries under 1/2. */
+    static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * entries)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    void allocate(int capacity) {
+        this.keys = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.weights = new long[capacity];
+    }
+
+    static int hash(Object data) {
+        int h = data.hashCode();
+        // Mix the high bits into the low bits, which select the slot
+        return h ^ (h >>> 16);
+    }
+
+    int mask() {
+        return this.keys.length - 1;
+    }
+
+    /** Slot holding the specified data, or -(slot where it can be inserted) - 1. */
+    int find(Object data, int hash) {
+        int mask = this.mask();
+        int slot = hash & mask;
+        while (this.keys[slot] != null) {
+            if (this.hashes[slot] == hash && this.keys[slot].equals(data))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    void grow() {
+        Object[] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        long[] oldWeights = this.weights;
+        this.allocate(oldKeys.length * 2);
+        int mask = this.mask();
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null)
+                continue;
+            int slot = oldHashes[i] & mask;
+            while (this.keys[slot] != null)
+                slot = (slot + 1) & mask;
+            this.keys[slot] = oldKeys[i];
+            this.hashes[slot] = oldHashes[i];
+            this.weights[slot] = oldWeights[i];
+        }
+    }
+
+    /** Empty the specified slot, moving back the entries of the same probe sequence. */
+    void remove(int slot) {
+        int mask = this.mask();
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (this.keys[next] == null)
+                break;
+            int home = this.hashes[next] & mask;
+            // The entry can fill the hole if its home slot is not cyclically in (hole, next]
+            boolean canMove = hole <= next ?
+                    (home <= hole || home > next) :
+                    (home <= hole && home > next);
+            if (canMove) {
+                this.keys[hole] = this.keys[next];
+                this.hashes[hole] = this.hashes[next];
+                this.weights[hole] = this.weights[next];
+                hole = next;
+            }
+        }
+        this.keys[hole] = null;
+        this.hashes[hole] = 0;
+        this.weights[hole] = 0;
+        this.size--;
+    }
+
+    void append(Object data, int hash, long weight) {
+        if (weight == 0)
+            return;
+        int slot = this.find(data, hash);
+        if (slot >= 0) {
+            long sum = Math.addExact(this.weights[slot], weight);
+            if (sum == 0)
+                this.remove(slot);
+            else
+                this.weights[slot] = sum;
+            return;
+        }
+        if (2L * (this.size + 1) > this.keys.length) {
+            this.grow();
+            slot = this.find(data, hash);
+        }
+        slot = -slot - 1;
+        this.keys[slot] = data;
+        this.hashes[slot] = hash;
+        this.weights[slot] = weight;
+        this.size++;
+    }
+
+    /** Add the specified data to this Z-set, in place. */
+    public LongZSet<Data> append(Data data, long weight) {
+        this.append(data, hash(data), weight);
+        return this;
+    }
+
+    public LongZSet<Data> append(Data data) {
+        return this.append(data, 1);
+    }
+
+    /** Add the specified Z-set to this one, in place. */
+    public LongZSet<Data> append(LongZSet<Data> other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null)
+                this.append(other.keys[i], other.hashes[i], other.weights[i]);
+        }
+        return this;
+    }
+
+    public long getWeight(Data data) {
+        int slot = this.find(data, hash(data));
+        return slot >= 0 ? this.weights[slot] : 0;
+    }
+
+    @Override
+    public int entryCount() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<Data> consumer) {
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null)
+                consumer.accept((Data) this.keys[i], this.weights[i]);
+        }
+    }
+
+    public LongZSet<Data> negate() {
+        LongZSet<Data> result = new LongZSet<>(this);
+        for (int i = 0; i < result.weights.length; i++)
+            result.weights[i] = Math.negateExact(result.weights[i]);
+        return result;
+    }
+
+    public LongZSet<Data> add(LongZSet<Data> other) {
+        // Copy the larger set, and merge the smaller one into the copy
+        if (other.size > this.size)
+            return new LongZSet<>(other).append(this);
+        return new LongZSet<>(this).append(other);
+    }
+
+    /** Add a Z-set with boxed weights to a copy of this one. */
+    public LongZSet<Data> add(ZSet<Data, Long> other) {
+        LongZSet<Data> result = new LongZSet<>(this);
+        for (Map.Entry<Data, Long> entry: other.entries())
+            result.append(entry.getKey(), entry.getValue());
+        return result;
+    }
+
+    public LongZSet<Data> subtract(LongZSet<Data> other) {
+        LongZSet<Data> result = new LongZSet<>(this);
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null)
+                result.append(other.keys[i], other.hashes[i], Math.negateExact(other.weights[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof LongZSet<?> other))
+            return false;
+        if (this.size != other.size)
+            return false;
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] == null)
+                continue;
+            int slot = other.find(this.keys[i], this.hashes[i]);
+            if (slot < 0 || other.weights[slot] != this.weights[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Independent of the order of the slots, which depends on the insertion order
+        int result = 0;
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null)
+                result += this.hashes[i] ^ Long.hashCode(this.weights[i]);
+        }
+        return result;
+    }
+
+    public <OData> LongZSet<OData> map(Function<Data, OData> tupleTransform) {
+        LongZSet<OData> result = new LongZSet<>(this.size);
+        this.forEach((data, weight) -> result.append(tupleTransform.apply(data), weight));
+        return result;
+    }
+
+    public <Key> IndexedZSet<Key, Data, Long> index(Function<Data, Key> key) {
+        IndexedZSet<Key, Data, Long> result = new IndexedZSet<>(LongWeight.INSTANCE);
+        this.forEach((data, weight) -> result.append(key.apply(data), data, weight));
+        return result;
+    }
+
+    public <Key, Value> IndexedZSet<Key, Value, Long> mapIndex(Function<Data, Map.Entry<Key, Value>> function) {
+        IndexedZSet<Key, Value, Long> result = new IndexedZSet<>(LongWeight.INSTANCE);
+        this.forEach((data, weight) -> {
+            Map.Entry<Key, Value> entry = function.apply(data);
+            result.append(entry.getKey(), entry.getValue(), weight);
+        });
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public LongZSet<Data> filter(Predicate<Data> keep) {
+        LongZSet<Data> result = new LongZSet<>(this.size);
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null && keep.test((Data) this.keys[i]))
+                result.append(this.keys[i], this.hashes[i], this.weights[i]);
+        }
+        return result;
+    }
+
+    public LongZSet<Data> positive(boolean set) {
+        LongZSet<Data> result = new LongZSet<>(this.size);
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null && this.weights[i] > 0)
+                result.append(this.keys[i], this.hashes[i], set ? 1 : this.weights[i]);
+        }
+        return result;
+    }
+
+    public LongZSet<Data> distinct() {
+        return this.positive(true);
+    }
+
+    public IIndentStream toString(IIndentStream stream) {
+        stream.append("{").increase();
+        boolean first = true;
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] == null)
+                continue;
+            if (!first)
+                stream.append(",").newline();
+            first = false;
+            stream.append(this.keys[i].toString())
+                    .append(" => ")
+                    .append(this.weights[i]);
+        }
+        return stream.decrease()
+                .newline()
+                .append("}");
+    }
+}
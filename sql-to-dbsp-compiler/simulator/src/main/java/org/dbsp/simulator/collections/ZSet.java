@@ -32,10 +32,15 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
         return this.weightType.zero();
     }
 
+    @Override
     public int entryCount() {
         return this.data.size();
     }
 
+    public Iterable<Map.Entry<Data, Weight>> entries() {
+        return Collections.unmodifiableMap(this.data).entrySet();
+    }
+
     /** Create an empty Z-set */
     public ZSet(WeightType<Weight> weightType) {
         this.data = new HashMap<>();
@@ -51,11 +56,12 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
     }
 
     public ZSet<Data, Weight> negate() {
-        Map<Data, Weight> result = new HashMap<>();
+        // Results are built directly in the map of the new Z-set, without copying
+        ZSet<Data, Weight> result = new ZSet<>(this.weightType);
         for (Map.Entry<Data, Weight> entry: this.data.entrySet()) {
-            result.put(entry.getKey(), this.weightType.negate(entry.getValue()));
+            result.data.put(entry.getKey(), this.weightType.negate(entry.getValue()));
         }
-        return new ZSet<>(result, this.weightType);
+        return result;
     }
 
     public static <Data, Weight> ZSet<Data, Weight> zero(WeightType<Weight> weightType) {
@@ -71,11 +77,12 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
     }
 
     public ZSet<Data, Weight> add(ZSet<Data, Weight> other) {
-        Map<Data, Weight> result = new HashMap<>(this.data);
-        for (Map.Entry<Data, Weight> entry: other.data.entrySet()) {
-            result.merge(entry.getKey(), entry.getValue(), this::merger);
-        }
-        return new ZSet<>(result, this.weightType);
+        // Copy the larger set, and merge the smaller one into the copy
+        if (other.data.size() > this.data.size())
+            return other.add(this);
+        ZSet<Data, Weight> result = new ZSet<>(this.weightType);
+        result.data.putAll(this.data);
+        return result.append(other);
     }
 
     public <OtherData, Result> ZSet<Result, Weight> multiply(
@@ -93,14 +100,17 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
     }
 
     public ZSet<Data, Weight> subtract(ZSet<Data, Weight> other) {
-        Map<Data, Weight> result = new HashMap<>(this.data);
+        ZSet<Data, Weight> result = new ZSet<>(this.weightType);
+        result.data.putAll(this.data);
         for (Map.Entry<Data, Weight> entry: other.data.entrySet()) {
-            result.merge(entry.getKey(), this.weightType.negate(entry.getValue()), this::merger);
+            result.data.merge(entry.getKey(), this.weightType.negate(entry.getValue()), this::merger);
         }
-        return new ZSet<>(result, this.weightType);
+        return result;
     }
 
     public ZSet<Data, Weight> append(Data data, Weight weight) {
+        if (this.weightType.isZero(weight))
+            return this;
         this.data.merge(data, weight, this::merger);
         return this;
     }
@@ -122,16 +132,16 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
     }
 
     public ZSet<Data, Weight> positive(boolean set) {
-        Map<Data, Weight> result = new HashMap<>();
+        ZSet<Data, Weight> result = new ZSet<>(this.weightType);
         for (Map.Entry<Data, Weight> entry: this.data.entrySet()) {
             Weight weight = entry.getValue();
             if (!this.weightType.greaterThanZero(weight))
                 continue;
             if (set)
                 weight = this.weightType.one();
-            result.put(entry.getKey(), weight);
+            result.data.put(entry.getKey(), weight);
         }
-        return new ZSet<>(result, this.weightType);
+        return result;
     }
 
     public ZSet<Data, Weight> distinct() {
@@ -139,23 +149,23 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
     }
 
     public <OData> ZSet<OData, Weight> map(Function<Data, OData> tupleTransform) {
-        Map<OData, Weight> result = new HashMap<>();
+        ZSet<OData, Weight> result = new ZSet<>(this.weightType);
         for (Map.Entry<Data, Weight> entry: this.data.entrySet()) {
             Weight weight = entry.getValue();
             OData out = tupleTransform.apply(entry.getKey());
-            result.merge(out, weight, this::merger);
+            result.append(out, weight);
         }
-        return new ZSet<>(result, this.weightType);
+        return result;
     }
 
     public ZSet<Data, Weight> filter(Predicate<Data> keep) {
-        Map<Data, Weight> result = new HashMap<>();
+        ZSet<Data, Weight> result = new ZSet<>(this.weightType);
         for (Map.Entry<Data, Weight> entry: this.data.entrySet()) {
             Weight weight = entry.getValue();
             if (keep.test(entry.getKey()))
-                result.put(entry.getKey(), weight);
+                result.data.put(entry.getKey(), weight);
         }
-        return new ZSet<>(result, this.weightType);
+        return result;
     }
 
     public <Key> IndexedZSet<Key, Data, Weight> index(Function<Data, Key> key) {
@@ -168,6 +178,16 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
         return result;
     }
 
+    /** Index the data using a function which produces a key and a value for each item. */
+    public <Key, Value> IndexedZSet<Key, Value, Weight> mapIndex(Function<Data, Map.Entry<Key, Value>> function) {
+        IndexedZSet<Key, Value, Weight> result = new IndexedZSet<>(this.weightType);
+        for (Map.Entry<Data, Weight> entry: this.data.entrySet()) {
+            Map.Entry<Key, Value> kv = function.apply(entry.getKey());
+            result.append(kv.getKey(), kv.getValue(), entry.getValue());
+        }
+        return result;
+    }
+
     /** Returns a collection of all data items.
      * If an item has a negative weight, this throws an exception.
      * If an item has a larger weight, multiple copies are emitted. */
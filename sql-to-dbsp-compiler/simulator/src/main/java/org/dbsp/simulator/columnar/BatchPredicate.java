@@ -0,0 +1,14 @@
+package org.dbsp.simulator.columnar;
+
+/** A predicate evaluated on all rows of a {@link ColumnarBatch} at once. */
+@FunctionalInterface
+public interface BatchPredicate {
+    /** Keep the selected rows that satisfy the predicate.
+     *
+     * @param batch     Batch whose rows are tested.
+     * @param selection Indexes of the rows to test, in increasing order;
+     *                  the indexes of the rows kept are compacted in place at its start.
+     * @param count     Number of valid indexes in selection.
+     * @return          The number of rows kept. */
+    int filter(ColumnarBatch batch, int[] selection, int count);
+}
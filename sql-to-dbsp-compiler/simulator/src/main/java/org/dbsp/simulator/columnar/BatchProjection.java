@@ -0,0 +1,7 @@
+package org.dbsp.simulator.columnar;
+
+/** Computes one column of the output of a projection from all rows of a {@link ColumnarBatch}. */
+@FunctionalInterface
+public interface BatchProjection {
+    Column compute(ColumnarBatch batch);
+}
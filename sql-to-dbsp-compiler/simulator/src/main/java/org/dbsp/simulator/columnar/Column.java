@@ -0,0 +1,130 @@
+package org.dbsp.simulator.columnar;
+
+import org.dbsp.simulator.types.SqlType;
+import org.dbsp.simulator.values.DynamicSqlValue;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/** A column of a {@link ColumnarBatch}: the values of one field for all rows.
+ * NULL values are recorded in a bitmap. */
+public abstract class Column {
+    public final SqlType type;
+    final int size;
+    /** Bit i is set if row i is NULL; null if no row is NULL. */
+    @Nullable
+    final long[] nulls;
+
+    protected Column(SqlType type, int size, @Nullable long[] nulls) {
+        this.type = type;
+        this.size = size;
+        this.nulls = nulls;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean hasNulls() {
+        return this.nulls != null;
+    }
+
+    public boolean isNull(int row) {
+        return this.nulls != null && isSet(this.nulls, row);
+    }
+
+    /** Value of the specified row, as a row-at-a-time value. */
+    public abstract DynamicSqlValue getValue(int row);
+
+    /** A column containing the rows with the specified indexes, in order. */
+    public abstract Column gather(int[] rows, int count);
+
+    static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    static boolean isSet(long[] bitmap, int row) {
+        return (bitmap[row >>> 6] & (1L << row)) != 0;
+    }
+
+    static void set(long[] bitmap, int row) {
+        bitmap[row >>> 6] |= 1L << row;
+    }
+
+    @Nullable
+    long[] gatherNulls(int[] rows, int count) {
+        if (this.nulls == null)
+            return null;
+        long[] result = null;
+        for (int i = 0; i < count; i++) {
+            if (isSet(this.nulls, rows[i])) {
+                if (result == null)
+                    result = new long[words(count)];
+                set(result, i);
+            }
+        }
+        return result;
+    }
+
+    /** Null bitmap of the result of a binary operation which is NULL when either input is NULL. */
+    @Nullable
+    static long[] union(Column left, Column right) {
+        if (left.nulls == null)
+            return right.nulls == null ? null : right.nulls.clone();
+        long[] result = left.nulls.clone();
+        if (right.nulls != null) {
+            for (int i = 0; i < result.length; i++)
+                result[i] |= right.nulls[i];
+        }
+        return result;
+    }
+
+    /** Create a builder for a column of the specified type.
+     * Types without a primitive representation are stored in a {@link ValueColumn}. */
+    public static Builder builder(SqlType type) {
+        return switch (type.getTypeName()) {
+            case BOOLEAN, INTEGER, BIGINT -> new LongColumn.Builder(type);
+            case DOUBLE -> new DoubleColumn.Builder(type);
+            case CHAR, VARCHAR -> new StringColumn.Builder(type);
+            default -> new ValueColumn.Builder(type);
+        };
+    }
+
+    /** Builds a column by appending values one row at a time. */
+    public abstract static class Builder {
+        final SqlType type;
+        int size;
+        @Nullable
+        long[] nulls;
+
+        Builder(SqlType type) {
+            this.type = type;
+            this.size = 0;
+            this.nulls = null;
+        }
+
+        /** Grow arrays of values to hold at least the specified number of rows. */
+        static int newCapacity(int capacity, int required) {
+            return Math.max(required, Math.max(16, capacity * 2));
+        }
+
+        void appendNull() {
+            if (this.nulls == null)
+                this.nulls = new long[words(this.size + 1)];
+            else if (this.nulls.length < words(this.size + 1))
+                this.nulls = Arrays.copyOf(this.nulls, Math.max(words(this.size + 1), this.nulls.length * 2));
+            set(this.nulls, this.size);
+        }
+
+        @Nullable
+        long[] buildNulls() {
+            if (this.nulls == null)
+                return null;
+            return Arrays.copyOf(this.nulls, words(this.size));
+        }
+
+        public abstract void append(DynamicSqlValue value);
+
+        public abstract Column build();
+    }
+}
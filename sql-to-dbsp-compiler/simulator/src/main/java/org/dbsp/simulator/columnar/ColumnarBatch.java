@@ -0,0 +1,245 @@
+package org.dbsp.simulator.columnar;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.LongWeight;
+import org.dbsp.simulator.types.SqlType;
+import org.dbsp.simulator.util.IIndentStream;
+import org.dbsp.simulator.util.ToIndentableString;
+import org.dbsp.simulator.values.SqlTuple;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/** A Z-set of tuples with long weights stored column by column.
+ * Each field of the tuples is stored in a {@link Column} of primitive values,
+ * so kernels such as {@link BatchPredicate} and {@link BatchProjection} process
+ * a whole batch with tight loops over arrays instead of one boxed
+ * {@link SqlTuple} at a time.
+ * Unlike {@link ZSet} a batch is not consolidated: the same tuple may appear in
+ * several rows, and its weight is the sum of their weights.
+ * Invariant: weights are never zero. */
+public class ColumnarBatch extends BaseCollection<Long> implements ToIndentableString {
+    final Column[] columns;
+    final long[] weights;
+    final int size;
+
+    public ColumnarBatch(Column[] columns, long[] weights, int size) {
+        for (Column column: columns)
+            assert column.size() == size;
+        this.columns = columns;
+        this.weights = weights;
+        this.size = size;
+    }
+
+    public static ColumnarBatch fromZSet(ZSet<SqlTuple, Long> zset, SqlType... schema) {
+        Builder builder = new Builder(schema);
+        for (Map.Entry<SqlTuple, Long> entry: zset.entries())
+            builder.append(entry.getKey(), entry.getValue());
+        return builder.build();
+    }
+
+    public ZSet<SqlTuple, Long> toZSet() {
+        ZSet<SqlTuple, Long> result = new ZSet<>(LongWeight.INSTANCE);
+        for (int i = 0; i < this.size; i++)
+            result.append(this.row(i), this.weights[i]);
+        return result;
+    }
+
+    public LongZSet<SqlTuple> toLongZSet() {
+        LongZSet<SqlTuple> result = new LongZSet<>(this.size);
+        for (int i = 0; i < this.size; i++)
+            result.append(this.row(i), this.weights[i]);
+        return result;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int columnCount() {
+        return this.columns.length;
+    }
+
+    public Column getColumn(int index) {
+        return this.columns[index];
+    }
+
+    public long getWeight(int row) {
+        return this.weights[row];
+    }
+
+    public SqlType[] getSchema() {
+        SqlType[] result = new SqlType[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++)
+            result[i] = this.columns[i].type;
+        return result;
+    }
+
+    /** The tuple stored in the specified row. */
+    public SqlTuple row(int row) {
+        SqlTuple result = new SqlTuple();
+        for (Column column: this.columns)
+            result.add(column.getValue(row));
+        return result;
+    }
+
+    /** A batch containing the rows with the specified indexes, in order. */
+    public ColumnarBatch gather(int[] rows, int count) {
+        if (count == this.size)
+            return this;
+        Column[] columns = new Column[this.columns.length];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = this.columns[i].gather(rows, count);
+        long[] weights = new long[count];
+        for (int i = 0; i < count; i++)
+            weights[i] = this.weights[rows[i]];
+        return new ColumnarBatch(columns, weights, count);
+    }
+
+    /** A batch with the same rows and weights, and the specified columns. */
+    public ColumnarBatch withColumns(Column[] columns) {
+        return new ColumnarBatch(columns, this.weights, this.size);
+    }
+
+    /** Indexes of all rows, used as the initial selection of the filter kernels. */
+    public int[] allRows() {
+        int[] result = new int[this.size];
+        for (int i = 0; i < this.size; i++)
+            result[i] = i;
+        return result;
+    }
+
+    public ColumnarBatch negate() {
+        long[] weights = new long[this.size];
+        for (int i = 0; i < this.size; i++)
+            weights[i] = Math.negateExact(this.weights[i]);
+        return new ColumnarBatch(this.columns, weights, this.size);
+    }
+
+    /** Equi-join of this batch with another one on a BOOLEAN, INTEGER or BIGINT column of each.
+     * The right batch is loaded into a hash table whose buckets are chained through
+     * an array of row indexes, so no objects are allocated per row.
+     * NULL keys do not match anything.
+     * The output contains the columns of the left batch followed by the columns of
+     * the right batch, and the weight of each row is the product of the input weights. */
+    public ColumnarBatch hashJoin(int leftKey, ColumnarBatch right, int rightKey) {
+        LongColumn leftColumn = (LongColumn) this.columns[leftKey];
+        LongColumn rightColumn = (LongColumn) right.columns[rightKey];
+
+        int buckets = Integer.highestOneBit(Math.max(1, right.size) * 2 - 1) << 1;
+        int mask = buckets - 1;
+        // Index of the first row + 1 in each bucket; 0 for empty buckets
+        int[] head = new int[buckets];
+        int[] next = new int[right.size];
+        for (int i = right.size - 1; i >= 0; i--) {
+            if (rightColumn.isNull(i))
+                continue;
+            int bucket = bucket(rightColumn.values[i], mask);
+            next[i] = head[bucket];
+            head[bucket] = i + 1;
+        }
+
+        int[] leftRows = new int[Math.max(16, this.size)];
+        int[] rightRows = new int[leftRows.length];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (leftColumn.isNull(i))
+                continue;
+            long key = leftColumn.values[i];
+            for (int j = head[bucket(key, mask)]; j != 0; j = next[j - 1]) {
+                if (rightColumn.values[j - 1] != key)
+                    continue;
+                if (count == leftRows.length) {
+                    leftRows = Arrays.copyOf(leftRows, count * 2);
+                    rightRows = Arrays.copyOf(rightRows, count * 2);
+                }
+                leftRows[count] = i;
+                rightRows[count] = j - 1;
+                count++;
+            }
+        }
+
+        Column[] columns = new Column[this.columns.length + right.columns.length];
+        for (int i = 0; i < this.columns.length; i++)
+            columns[i] = this.columns[i].gather(leftRows, count);
+        for (int i = 0; i < right.columns.length; i++)
+            columns[this.columns.length + i] = right.columns[i].gather(rightRows, count);
+        long[] weights = new long[count];
+        for (int i = 0; i < count; i++)
+            weights[i] = Math.multiplyExact(this.weights[leftRows[i]], right.weights[rightRows[i]]);
+        return new ColumnarBatch(columns, weights, count);
+    }
+
+    static int bucket(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public boolean equals(ColumnarBatch other) {
+        return this.toZSet().equals(other.toZSet());
+    }
+
+    @Override
+    public int entryCount() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public IIndentStream toString(IIndentStream stream) {
+        stream.append("{").increase();
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0)
+                stream.append(",").newline();
+            stream.append(this.row(i).toString())
+                    .append(" => ")
+                    .append(this.weights[i]);
+        }
+        return stream.decrease()
+                .newline()
+                .append("}");
+    }
+
+    /** Builds a batch by appending tuples one at a time. */
+    public static class Builder {
+        final Column.Builder[] columns;
+        long[] weights;
+        int size;
+
+        public Builder(SqlType... schema) {
+            this.columns = new Column.Builder[schema.length];
+            for (int i = 0; i < schema.length; i++)
+                this.columns[i] = Column.builder(schema[i]);
+            this.weights = new long[16];
+            this.size = 0;
+        }
+
+        public Builder append(SqlTuple tuple, long weight) {
+            assert tuple.size() == this.columns.length;
+            if (weight == 0)
+                return this;
+            for (int i = 0; i < this.columns.length; i++)
+                this.columns[i].append(tuple.get(i));
+            if (this.size == this.weights.length)
+                this.weights = Arrays.copyOf(this.weights, this.size * 2);
+            this.weights[this.size++] = weight;
+            return this;
+        }
+
+        public Builder append(SqlTuple tuple) {
+            return this.append(tuple, 1);
+        }
+
+        public ColumnarBatch build() {
+            Column[] columns = new Column[this.columns.length];
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = this.columns[i].build();
+            return new ColumnarBatch(columns, Arrays.copyOf(this.weights, this.size), this.size);
+        }
+    }
+}
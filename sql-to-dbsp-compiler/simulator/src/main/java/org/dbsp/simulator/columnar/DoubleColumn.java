@@ -0,0 +1,61 @@
+package org.dbsp.simulator.columnar;
+
+import org.dbsp.simulator.types.SqlType;
+import org.dbsp.simulator.values.DoubleSqlValue;
+import org.dbsp.simulator.values.DynamicSqlValue;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/** A column of DOUBLE values. */
+public final class DoubleColumn extends Column {
+    final double[] values;
+
+    public DoubleColumn(SqlType type, double[] values, int size, @Nullable long[] nulls) {
+        super(type, size, nulls);
+        this.values = values;
+    }
+
+    public double get(int row) {
+        return this.values[row];
+    }
+
+    @Override
+    public DynamicSqlValue getValue(int row) {
+        return new DoubleSqlValue(this.isNull(row) ? null : this.values[row]);
+    }
+
+    @Override
+    public DoubleColumn gather(int[] rows, int count) {
+        double[] result = new double[count];
+        for (int i = 0; i < count; i++)
+            result[i] = this.values[rows[i]];
+        return new DoubleColumn(this.type, result, count, this.gatherNulls(rows, count));
+    }
+
+    static final class Builder extends Column.Builder {
+        double[] values;
+
+        Builder(SqlType type) {
+            super(type);
+            this.values = new double[16];
+        }
+
+        @Override
+        public void append(DynamicSqlValue value) {
+            if (this.values.length == this.size)
+                this.values = Arrays.copyOf(this.values, newCapacity(this.values.length, this.size + 1));
+            Object v = value.getValue();
+            if (v == null)
+                this.appendNull();
+            else
+                this.values[this.size] = ((Number) v).doubleValue();
+            this.size++;
+        }
+
+        @Override
+        public DoubleColumn build() {
+            return new DoubleColumn(this.type, Arrays.copyOf(this.values, this.size), this.size, this.buildNulls());
+        }
+    }
+}
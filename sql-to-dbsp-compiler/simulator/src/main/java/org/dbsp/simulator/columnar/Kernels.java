@@ -0,0 +1,154 @@
+package org.dbsp.simulator.columnar;
+
+import org.dbsp.simulator.types.BigintSqlType;
+import org.dbsp.simulator.types.DoubleSqlType;
+import org.dbsp.simulator.types.SqlType;
+import org.dbsp.simulator.types.SqlTypeName;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/** Vectorized implementations of common predicates and projections.
+ * Each kernel loops over the arrays of its columns; SQL NULL never satisfies a comparison,
+ * and arithmetic produces NULL when either operand is NULL. */
+public final class Kernels {
+    private Kernels() {}
+
+    public enum Comparison {
+        EQ, NEQ, LT, LTE, GT, GTE;
+
+        boolean test(int compare) {
+            return switch (this) {
+                case EQ -> compare == 0;
+                case NEQ -> compare != 0;
+                case LT -> compare < 0;
+                case LTE -> compare <= 0;
+                case GT -> compare > 0;
+                case GTE -> compare >= 0;
+            };
+        }
+    }
+
+    public enum Arithmetic {
+        ADD, SUB, MUL
+    }
+
+    /** Rows whose BOOLEAN, INTEGER or BIGINT column compares with a constant. */
+    public static BatchPredicate compare(int column, Comparison comparison, long constant) {
+        return (batch, selection, count) -> {
+            LongColumn values = (LongColumn) batch.getColumn(column);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = selection[i];
+                if (!values.isNull(row) && comparison.test(Long.compare(values.values[row], constant)))
+                    selection[kept++] = row;
+            }
+            return kept;
+        };
+    }
+
+    /** Rows whose DOUBLE column compares with a constant. */
+    public static BatchPredicate compare(int column, Comparison comparison, double constant) {
+        return (batch, selection, count) -> {
+            DoubleColumn values = (DoubleColumn) batch.getColumn(column);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = selection[i];
+                if (!values.isNull(row) && comparison.test(Double.compare(values.values[row], constant)))
+                    selection[kept++] = row;
+            }
+            return kept;
+        };
+    }
+
+    /** Rows whose string column is (or is not) equal to a constant.
+     * The constant is looked up once in the dictionary, and then only the codes are compared. */
+    public static BatchPredicate equals(int column, String constant, boolean equal) {
+        return (batch, selection, count) -> {
+            StringColumn values = (StringColumn) batch.getColumn(column);
+            int code = values.codeOf(constant);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = selection[i];
+                if (!values.isNull(row) && (values.codes[row] == code) == equal)
+                    selection[kept++] = row;
+            }
+            return kept;
+        };
+    }
+
+    /** Rows which satisfy all the predicates; each predicate only tests the rows kept by the previous ones. */
+    public static BatchPredicate and(BatchPredicate... predicates) {
+        return (batch, selection, count) -> {
+            for (BatchPredicate predicate: predicates) {
+                if (count == 0)
+                    break;
+                count = predicate.filter(batch, selection, count);
+            }
+            return count;
+        };
+    }
+
+    /** A column of the input, unchanged. */
+    public static BatchProjection column(int column) {
+        return batch -> batch.getColumn(column);
+    }
+
+    /** Arithmetic on two INTEGER or BIGINT columns.  The result is a BIGINT column. */
+    public static BatchProjection arithmetic(Arithmetic operation, int left, int right) {
+        return batch -> {
+            LongColumn l = (LongColumn) batch.getColumn(left);
+            LongColumn r = (LongColumn) batch.getColumn(right);
+            return combine(operation, l, r.values, Column.union(l, r));
+        };
+    }
+
+    /** Arithmetic on an INTEGER or BIGINT column and a constant.
+     * The result has the type of the column, and throws if it overflows that type. */
+    public static BatchProjection arithmeticConstant(Arithmetic operation, int column, long constant) {
+        return batch -> {
+            LongColumn l = (LongColumn) batch.getColumn(column);
+            long[] r = new long[l.size];
+            Arrays.fill(r, constant);
+            return combine(operation, l.type, l, r, l.nulls == null ? null : l.nulls.clone());
+        };
+    }
+
+    /** Arithmetic on two DOUBLE columns. */
+    public static BatchProjection doubleArithmetic(Arithmetic operation, int left, int right) {
+        return batch -> {
+            DoubleColumn l = (DoubleColumn) batch.getColumn(left);
+            DoubleColumn r = (DoubleColumn) batch.getColumn(right);
+            double[] result = new double[l.size];
+            switch (operation) {
+                case ADD -> { for (int i = 0; i < l.size; i++) result[i] = l.values[i] + r.values[i]; }
+                case SUB -> { for (int i = 0; i < l.size; i++) result[i] = l.values[i] - r.values[i]; }
+                case MUL -> { for (int i = 0; i < l.size; i++) result[i] = l.values[i] * r.values[i]; }
+            }
+            return new DoubleColumn(DoubleSqlType.INSTANCE, result, l.size, Column.union(l, r));
+        };
+    }
+
+    static LongColumn combine(Arithmetic operation, LongColumn l, long[] r, @Nullable long[] nulls) {
+        return combine(operation, BigintSqlType.INSTANCE, l, r, nulls);
+    }
+
+    static LongColumn combine(Arithmetic operation, SqlType type, LongColumn l, long[] r,
+                              @Nullable long[] nulls) {
+        long[] result = new long[l.size];
+        boolean isInt = type.getTypeName() != SqlTypeName.BIGINT;
+        // Values of NULL rows are ignored, so they must not cause overflow errors
+        for (int i = 0; i < l.size; i++) {
+            if (nulls != null && Column.isSet(nulls, i))
+                continue;
+            result[i] = switch (operation) {
+                case ADD -> Math.addExact(l.values[i], r[i]);
+                case SUB -> Math.subtractExact(l.values[i], r[i]);
+                case MUL -> Math.multiplyExact(l.values[i], r[i]);
+            };
+            if (isInt)
+                result[i] = Math.toIntExact(result[i]);
+        }
+        return new LongColumn(type, result, l.size, nulls);
+    }
+}
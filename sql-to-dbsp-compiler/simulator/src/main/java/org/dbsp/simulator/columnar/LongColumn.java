@@ -0,0 +1,72 @@
+package org.dbsp.simulator.columnar;
+
+import org.dbsp.simulator.types.SqlType;
+import org.dbsp.simulator.values.BigintSqlValue;
+import org.dbsp.simulator.values.BooleanSqlValue;
+import org.dbsp.simulator.values.DynamicSqlValue;
+import org.dbsp.simulator.values.IntegerSqlValue;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/** A column of BOOLEAN, INTEGER or BIGINT values, stored as longs. */
+public final class LongColumn extends Column {
+    final long[] values;
+
+    public LongColumn(SqlType type, long[] values, int size, @Nullable long[] nulls) {
+        super(type, size, nulls);
+        this.values = values;
+    }
+
+    public long get(int row) {
+        return this.values[row];
+    }
+
+    @Override
+    public DynamicSqlValue getValue(int row) {
+        boolean isNull = this.isNull(row);
+        long value = this.values[row];
+        return switch (this.type.getTypeName()) {
+            case BOOLEAN -> new BooleanSqlValue(isNull ? null : value != 0);
+            case INTEGER -> new IntegerSqlValue(isNull ? null : (int) value);
+            default -> new BigintSqlValue(isNull ? null : value);
+        };
+    }
+
+    @Override
+    public LongColumn gather(int[] rows, int count) {
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++)
+            result[i] = this.values[rows[i]];
+        return new LongColumn(this.type, result, count, this.gatherNulls(rows, count));
+    }
+
+    static final class Builder extends Column.Builder {
+        long[] values;
+
+        Builder(SqlType type) {
+            super(type);
+            this.values = new long[16];
+        }
+
+        @Override
+        public void append(DynamicSqlValue value) {
+            if (this.values.length == this.size)
+                this.values = Arrays.copyOf(this.values, newCapacity(this.values.length, this.size + 1));
+            Object v = value.getValue();
+            if (v == null)
+                this.appendNull();
+            else if (v instanceof Boolean b)
+                this.values[this.size] = b ? 1 : 0;
+            else
+                this.values[this.size] = ((Number) Objects.requireNonNull(v)).longValue();
+            this.size++;
+        }
+
+        @Override
+        public LongColumn build() {
+            return new LongColumn(this.type, Arrays.copyOf(this.values, this.size), this.size, this.buildNulls());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.dbsp.simulator.columnar;
+
+import org.dbsp.simulator.types.SqlType;
+import org.dbsp.simulator.types.StringSqlType;
+import org.dbsp.simulator.values.DynamicSqlValue;
+import org.dbsp.simulator.values.StringSqlValue;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A column of strings, dictionary-encoded: each row stores the index of its
+ * value in a dictionary of distinct strings.  Columns derived from this one
+ * share its dictionary, and comparisons for equality compare indexes. */
+public final class StringColumn extends Column {
+    final int[] codes;
+    final List<String> dictionary;
+    /** Maps each string of the dictionary to its index. */
+    final Map<String, Integer> index;
+
+    StringColumn(SqlType type, int[] codes, int size, @Nullable long[] nulls,
+                 List<String> dictionary, Map<String, Integer> index) {
+        super(type, size, nulls);
+        this.codes = codes;
+        this.dictionary = dictionary;
+        this.index = index;
+    }
+
+    /** Index of the specified string in the dictionary, or -1 if no row has this value. */
+    public int codeOf(String value) {
+        Integer code = this.index.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public int getCode(int row) {
+        return this.codes[row];
+    }
+
+    public int dictionarySize() {
+        return this.dictionary.size();
+    }
+
+    @Override
+    public DynamicSqlValue getValue(int row) {
+        String value = this.isNull(row) ? null : this.dictionary.get(this.codes[row]);
+        return new StringSqlValue(value, (StringSqlType) this.type);
+    }
+
+    @Override
+    public StringColumn gather(int[] rows, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++)
+            result[i] = this.codes[rows[i]];
+        return new StringColumn(this.type, result, count, this.gatherNulls(rows, count),
+                this.dictionary, this.index);
+    }
+
+    static final class Builder extends Column.Builder {
+        int[] codes;
+        final List<String> dictionary;
+        final Map<String, Integer> index;
+
+        Builder(SqlType type) {
+            super(type);
+            this.codes = new int[16];
+            this.dictionary = new ArrayList<>();
+            this.index = new HashMap<>();
+        }
+
+        @Override
+        public void append(DynamicSqlValue value) {
+            if (this.codes.length == this.size)
+                this.codes = Arrays.copyOf(this.codes, newCapacity(this.codes.length, this.size + 1));
+            Object v = value.getValue();
+            if (v == null) {
+                this.appendNull();
+            } else {
+                String s = (String) v;
+                Integer code = this.index.get(s);
+                if (code == null) {
+                    code = this.dictionary.size();
+                    this.dictionary.add(s);
+                    this.index.put(s, code);
+                }
+                this.codes[this.size] = code;
+            }
+            this.size++;
+        }
+
+        @Override
+        public StringColumn build() {
+            return new StringColumn(this.type, Arrays.copyOf(this.codes, this.size), this.size,
+                    this.buildNulls(), this.dictionary, this.index);
+        }
+    }
+}
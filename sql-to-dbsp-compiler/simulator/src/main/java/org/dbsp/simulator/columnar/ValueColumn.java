@@ -0,0 +1,58 @@
+package org.dbsp.simulator.columnar;
+
+import org.dbsp.simulator.types.SqlType;
+import org.dbsp.simulator.values.DynamicSqlValue;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/** A column of boxed values, used for the types which have no primitive
+ * representation, such as DECIMAL, DATE or TIMESTAMP.
+ * Rows are stored as in a {@link org.dbsp.simulator.values.SqlTuple}, so there
+ * are no kernels for these columns; the operators process them one row at a time. */
+public final class ValueColumn extends Column {
+    final DynamicSqlValue[] values;
+
+    ValueColumn(SqlType type, DynamicSqlValue[] values, int size, @Nullable long[] nulls) {
+        super(type, size, nulls);
+        this.values = values;
+    }
+
+    @Override
+    public DynamicSqlValue getValue(int row) {
+        return this.values[row];
+    }
+
+    @Override
+    public ValueColumn gather(int[] rows, int count) {
+        DynamicSqlValue[] result = new DynamicSqlValue[count];
+        for (int i = 0; i < count; i++)
+            result[i] = this.values[rows[i]];
+        return new ValueColumn(this.type, result, count, this.gatherNulls(rows, count));
+    }
+
+    static final class Builder extends Column.Builder {
+        DynamicSqlValue[] values;
+
+        Builder(SqlType type) {
+            super(type);
+            this.values = new DynamicSqlValue[16];
+        }
+
+        @Override
+        public void append(DynamicSqlValue value) {
+            if (this.values.length == this.size)
+                this.values = Arrays.copyOf(this.values, newCapacity(this.values.length, this.size + 1));
+            if (value.isNull())
+                this.appendNull();
+            this.values[this.size] = value;
+            this.size++;
+        }
+
+        @Override
+        public ValueColumn build() {
+            return new ValueColumn(this.type, Arrays.copyOf(this.values, this.size), this.size,
+                    this.buildNulls());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.AggregateDescription;
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.SqlTuple;
+
+/** Computes an aggregate for each group of an indexed Z-set, non-incrementally. */
+public class AggregateOperator<Weight> extends UnaryOperator<Weight> {
+    final AggregateDescription<SqlTuple, ?, SqlTuple, Weight> aggregate;
+
+    public AggregateOperator(WeightType<Weight> weightType,
+                             AggregateDescription<SqlTuple, ?, SqlTuple, Weight> aggregate,
+                             BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.aggregate = aggregate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> indexed = (IndexedZSet<SqlTuple, SqlTuple, Weight>) input;
+        this.nextOutput = indexed.aggregate(this.aggregate);
+    }
+}
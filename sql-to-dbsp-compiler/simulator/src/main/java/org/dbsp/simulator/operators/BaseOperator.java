@@ -2,6 +2,9 @@
 package org.dbsp.simulator.operators;
 
 import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.columnar.ColumnarBatch;
 import org.dbsp.simulator.types.WeightType;
 
 import javax.annotation.Nullable;
@@ -14,12 +17,34 @@ public abstract class BaseOperator<Weight> {
     BaseCollection<Weight> nextOutput;
 
     @SafeVarargs
+    @SuppressWarnings("varargs")
     protected BaseOperator(WeightType<Weight> weightType, BaseOperator<Weight>... inputs) {
         this.weightType = weightType;
         this.inputs = inputs;
         this.nextOutput = null;
     }
 
+    /** The specified Z-set as a {@link ZSet}; Z-sets with other representations are converted. */
+    @SuppressWarnings("unchecked")
+    static <Data, Weight> ZSet<Data, Weight> asZSet(BaseCollection<Weight> collection) {
+        if (collection instanceof LongZSet)
+            return (ZSet<Data, Weight>) (ZSet<?, ?>) ((LongZSet<Data>) collection).toZSet();
+        if (collection instanceof ColumnarBatch batch)
+            return (ZSet<Data, Weight>) (ZSet<?, ?>) batch.toZSet();
+        return (ZSet<Data, Weight>) collection;
+    }
+
+    /** The specified Z-set with long weights as a {@link LongZSet};
+     * Z-sets with other representations are converted. */
+    @SuppressWarnings("unchecked")
+    static <Data> LongZSet<Data> asLongZSet(BaseCollection<?> collection) {
+        if (collection instanceof LongZSet)
+            return (LongZSet<Data>) collection;
+        if (collection instanceof ColumnarBatch batch)
+            return (LongZSet<Data>) batch.toLongZSet();
+        return LongZSet.fromZSet((ZSet<Data, Long>) collection);
+    }
+
     /** Execute one computation step: gather data from the inputs,
      * and compute the current output. */
     public abstract void step();
@@ -31,4 +56,29 @@ public abstract class BaseOperator<Weight> {
     public int getInputCount() {
         return this.inputs.length;
     }
+
+    /** Invoked after all the operators of a circuit have executed a step.
+     * Stateful operators update their state here. */
+    public void endStep() {}
+
+    /** Work performed by the last step.  The default measure is the
+     * number of input entries processed; operators which also read
+     * their state override this. */
+    public long getWork() {
+        long result = 0;
+        for (BaseOperator<Weight> input: this.inputs)
+            result += input.getOutput().entryCount();
+        return result;
+    }
+
+    /** Work performed by the last step on the busiest shard.
+     * Operators which are not sharded execute on a single shard. */
+    public long getMaxShardWork() {
+        return this.getWork();
+    }
+
+    /** Number of entries retained by this operator across steps. */
+    public long getStateSize() {
+        return 0;
+    }
 }
@@ -0,0 +1,19 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.types.WeightType;
+
+/** An operator which produces the same value at each step. */
+public class ConstantOperator<Weight> extends BaseOperator<Weight> {
+    final BaseCollection<Weight> value;
+
+    public ConstantOperator(WeightType<Weight> weightType, BaseCollection<Weight> value) {
+        super(weightType);
+        this.value = value;
+    }
+
+    @Override
+    public void step() {
+        this.nextOutput = this.value;
+    }
+}
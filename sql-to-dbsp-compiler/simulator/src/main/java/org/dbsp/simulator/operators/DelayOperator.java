@@ -0,0 +1,38 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.types.WeightType;
+
+/** The z^-1 operator: produces at each step the input received in the previous step.
+ * The input is only read at the end of a step, so the input may be computed
+ * by an operator which is executed after the delay. */
+public class DelayOperator<Weight> extends UnaryOperator<Weight> {
+    BaseCollection<Weight> state;
+
+    /** @param initial Value produced in the first step. */
+    public DelayOperator(WeightType<Weight> weightType, BaseCollection<Weight> initial,
+                         BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.state = initial;
+    }
+
+    @Override
+    public void step() {
+        this.nextOutput = this.state;
+    }
+
+    @Override
+    public void endStep() {
+        this.state = this.getInputValue();
+    }
+
+    @Override
+    public long getWork() {
+        return 0;
+    }
+
+    @Override
+    public long getStateSize() {
+        return this.state.entryCount();
+    }
+}
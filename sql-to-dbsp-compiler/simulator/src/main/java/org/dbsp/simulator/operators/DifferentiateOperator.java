@@ -0,0 +1,41 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.types.WeightType;
+
+import javax.annotation.Nullable;
+
+/** Computes the difference between consecutive values of its input stream. */
+public class DifferentiateOperator<Weight> extends UnaryOperator<Weight> {
+    /** Input received in the previous step; null before the first step. */
+    @Nullable
+    BaseCollection<Weight> previous;
+
+    public DifferentiateOperator(WeightType<Weight> weightType, BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.previous = null;
+    }
+
+    @Override
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        if (this.previous == null)
+            this.nextOutput = input;
+        else
+            this.nextOutput = SumOperator.add(input, NegateOperator.negate(this.previous));
+        this.previous = input;
+    }
+
+    @Override
+    public long getWork() {
+        long work = super.getWork();
+        if (this.previous != null)
+            work += this.previous.entryCount();
+        return work;
+    }
+
+    @Override
+    public long getStateSize() {
+        return this.previous == null ? 0 : this.previous.entryCount();
+    }
+}
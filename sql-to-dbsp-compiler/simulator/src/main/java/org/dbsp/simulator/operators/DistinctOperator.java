@@ -0,0 +1,26 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.SqlTuple;
+
+/** Distinct applied to each collection in a stream, non-incrementally. */
+public class DistinctOperator<Weight> extends UnaryOperator<Weight> {
+    public DistinctOperator(WeightType<Weight> weightType, BaseOperator<Weight> input) {
+        super(weightType, input);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        if (input instanceof LongZSet) {
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) ((LongZSet<?>) input).distinct();
+            return;
+        }
+        ZSet<SqlTuple, Weight> zset = (ZSet<SqlTuple, Weight>) input;
+        this.nextOutput = zset.distinct();
+    }
+}
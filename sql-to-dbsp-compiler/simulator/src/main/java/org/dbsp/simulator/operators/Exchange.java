@@ -0,0 +1,81 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.WeightType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Moves data between the shards of a sharded computation.
+ * An indexed Z-set is partitioned by key; a Z-set is partitioned by its data.
+ * Inputs which share a key are therefore always sent to the same shard. */
+public final class Exchange {
+    private Exchange() {}
+
+    /** Shard which receives the specified key. */
+    public static int shardOf(Object key, int shards) {
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <Weight> List<BaseCollection<Weight>> partition(
+            WeightType<Weight> weightType, BaseCollection<Weight> collection, int shards) {
+        List<BaseCollection<Weight>> result = new ArrayList<>(shards);
+        if (collection instanceof IndexedZSet) {
+            IndexedZSet<Object, Object, Weight> indexed = (IndexedZSet<Object, Object, Weight>) collection;
+            List<IndexedZSet<Object, Object, Weight>> parts = new ArrayList<>(shards);
+            for (int i = 0; i < shards; i++)
+                parts.add(new IndexedZSet<>(weightType));
+            for (Object key: indexed.keys()) {
+                IndexedZSet<Object, Object, Weight> part = parts.get(shardOf(key, shards));
+                for (Map.Entry<Object, Weight> entry: indexed.getGroup(key).entries())
+                    part.append(key, entry.getKey(), entry.getValue());
+            }
+            result.addAll(parts);
+        } else if (collection instanceof LongZSet) {
+            LongZSet<Object> zset = (LongZSet<Object>) collection;
+            List<LongZSet<Object>> parts = new ArrayList<>(shards);
+            for (int i = 0; i < shards; i++)
+                parts.add(new LongZSet<>());
+            zset.forEach((data, weight) -> parts.get(shardOf(data, shards)).append(data, weight));
+            for (LongZSet<Object> part: parts)
+                result.add((BaseCollection<Weight>) (BaseCollection<?>) part);
+        } else {
+            ZSet<Object, Weight> zset = (ZSet<Object, Weight>) collection;
+            List<ZSet<Object, Weight>> parts = new ArrayList<>(shards);
+            for (int i = 0; i < shards; i++)
+                parts.add(new ZSet<>(weightType));
+            for (Map.Entry<Object, Weight> entry: zset.entries())
+                parts.get(shardOf(entry.getKey(), shards)).append(entry.getKey(), entry.getValue());
+            result.addAll(parts);
+        }
+        return result;
+    }
+
+    /** Combine the outputs of all shards into a single collection. */
+    @SuppressWarnings("unchecked")
+    public static <Weight> BaseCollection<Weight> gather(
+            WeightType<Weight> weightType, List<BaseCollection<Weight>> parts) {
+        BaseCollection<Weight> first = parts.get(0);
+        if (first instanceof IndexedZSet) {
+            IndexedZSet<Object, Object, Weight> result = new IndexedZSet<>(weightType);
+            for (BaseCollection<Weight> part: parts)
+                result.append((IndexedZSet<Object, Object, Weight>) part);
+            return result;
+        } else if (first instanceof LongZSet) {
+            LongZSet<Object> result = new LongZSet<>();
+            for (BaseCollection<Weight> part: parts)
+                result.append((LongZSet<Object>) (BaseCollection<?>) part);
+            return (BaseCollection<Weight>) (BaseCollection<?>) result;
+        }
+        ZSet<Object, Weight> result = new ZSet<>(weightType);
+        for (BaseCollection<Weight> part: parts)
+            result.append((ZSet<Object, Weight>) part);
+        return result;
+    }
+}
@@ -1,24 +1,64 @@
 package org.dbsp.simulator.operators;
 
 import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
 import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.columnar.BatchPredicate;
+import org.dbsp.simulator.columnar.ColumnarBatch;
 import org.dbsp.simulator.types.WeightType;
 import org.dbsp.simulator.values.SqlTuple;
 
+import javax.annotation.Nullable;
 import java.util.function.Predicate;
 
 public class FilterOperator<Weight> extends UnaryOperator<Weight> {
     final Predicate<SqlTuple> keep;
+    /** Vectorized version of keep, used for columnar inputs; if null
+     * the rows of columnar inputs are tested one at a time. */
+    @Nullable
+    final BatchPredicate batchKeep;
 
     public FilterOperator(WeightType<Weight> weightType,
                           Predicate<SqlTuple> keep, BaseOperator<Weight> input) {
+        this(weightType, keep, null, input);
+    }
+
+    public FilterOperator(WeightType<Weight> weightType,
+                          Predicate<SqlTuple> keep, @Nullable BatchPredicate batchKeep,
+                          BaseOperator<Weight> input) {
         super(weightType, input);
         this.keep = keep;
+        this.batchKeep = batchKeep;
+    }
+
+    ColumnarBatch filter(ColumnarBatch batch) {
+        int[] selection = batch.allRows();
+        int count;
+        if (this.batchKeep != null) {
+            count = this.batchKeep.filter(batch, selection, selection.length);
+        } else {
+            count = 0;
+            for (int row = 0; row < batch.size(); row++) {
+                if (this.keep.test(batch.row(row)))
+                    selection[count++] = row;
+            }
+        }
+        return batch.gather(selection, count);
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void step() {
         BaseCollection<Weight> input = this.getInputValue();
+        if (input instanceof ColumnarBatch batch) {
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) this.filter(batch);
+            return;
+        }
+        if (input instanceof LongZSet) {
+            LongZSet<SqlTuple> longZSet = (LongZSet<SqlTuple>) input;
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) longZSet.filter(this.keep);
+            return;
+        }
         ZSet<SqlTuple, Weight> inputZset = (ZSet<SqlTuple, Weight>) input;
         this.nextOutput = inputZset.filter(this.keep);
     }
@@ -0,0 +1,28 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.SqlTuple;
+
+import java.util.function.BiFunction;
+
+/** Converts an indexed Z-set into a Z-set, computing a tuple from each key and value. */
+public class FlattenOperator<Weight> extends UnaryOperator<Weight> {
+    final BiFunction<SqlTuple, SqlTuple, SqlTuple> combiner;
+
+    public FlattenOperator(WeightType<Weight> weightType,
+                           BiFunction<SqlTuple, SqlTuple, SqlTuple> combiner,
+                           BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.combiner = combiner;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> indexed = (IndexedZSet<SqlTuple, SqlTuple, Weight>) input;
+        this.nextOutput = indexed.flatten(this.combiner);
+    }
+}
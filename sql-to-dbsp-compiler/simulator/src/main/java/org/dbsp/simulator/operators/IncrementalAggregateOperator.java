@@ -0,0 +1,65 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.AggregateDescription;
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.SqlTuple;
+
+import java.util.Map;
+
+/** Incremental aggregate: receives changes to an indexed Z-set and produces
+ * the changes to the aggregate of each group.  The integral of the input and
+ * of the output are retained; only the groups whose keys appear in the input
+ * change are aggregated again. */
+public class IncrementalAggregateOperator<Weight> extends UnaryOperator<Weight> {
+    final AggregateDescription<SqlTuple, ?, SqlTuple, Weight> aggregate;
+    /** Integral of the input. */
+    final IndexedZSet<SqlTuple, SqlTuple, Weight> trace;
+    /** Integral of the output. */
+    final IndexedZSet<SqlTuple, SqlTuple, Weight> outputTrace;
+    long work;
+
+    public IncrementalAggregateOperator(WeightType<Weight> weightType,
+                                        AggregateDescription<SqlTuple, ?, SqlTuple, Weight> aggregate,
+                                        BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.aggregate = aggregate;
+        this.trace = new IndexedZSet<>(weightType);
+        this.outputTrace = new IndexedZSet<>(weightType);
+        this.work = 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> delta = (IndexedZSet<SqlTuple, SqlTuple, Weight>) input;
+        IndexedZSet<SqlTuple, SqlTuple, Weight> result = new IndexedZSet<>(this.weightType);
+        this.work = delta.entryCount();
+        for (SqlTuple key: delta.keys()) {
+            for (Map.Entry<SqlTuple, Weight> entry: delta.getGroup(key).entries())
+                this.trace.append(key, entry.getKey(), entry.getValue());
+            // Retract the previous result for this group
+            for (Map.Entry<SqlTuple, Weight> entry: this.outputTrace.getGroup(key).entries())
+                result.append(key, entry.getKey(), this.weightType.negate(entry.getValue()));
+            ZSet<SqlTuple, Weight> group = this.trace.getGroup(key);
+            this.work += group.entryCount();
+            if (!group.isEmpty())
+                result.append(key, group.aggregate(this.aggregate), this.weightType.one());
+        }
+        this.outputTrace.append(result);
+        this.nextOutput = result;
+    }
+
+    @Override
+    public long getWork() {
+        return this.work;
+    }
+
+    @Override
+    public long getStateSize() {
+        return this.trace.entryCount() + this.outputTrace.entryCount();
+    }
+}
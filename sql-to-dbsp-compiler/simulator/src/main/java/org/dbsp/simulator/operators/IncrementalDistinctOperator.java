@@ -0,0 +1,90 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.LongWeight;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.SqlTuple;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Objects;
+
+/** Incremental distinct: receives changes to a Z-set and produces the
+ * changes to the distinct of the Z-set.  Only the entries which appear
+ * in the input change are looked up in the integral of the input.
+ * With long weights the integral is a {@link LongZSet}, and the changes are
+ * processed without boxing the weights. */
+public class IncrementalDistinctOperator<Weight> extends UnaryOperator<Weight> {
+    /** Integral of the input, for weights other than longs. */
+    @Nullable
+    final ZSet<SqlTuple, Weight> trace;
+    /** Integral of the input, for long weights. */
+    @Nullable
+    final LongZSet<SqlTuple> longTrace;
+
+    public IncrementalDistinctOperator(WeightType<Weight> weightType, BaseOperator<Weight> input) {
+        super(weightType, input);
+        if (weightType instanceof LongWeight) {
+            this.trace = null;
+            this.longTrace = new LongZSet<>();
+        } else {
+            this.trace = new ZSet<>(weightType);
+            this.longTrace = null;
+        }
+    }
+
+    /** The changes to the distinct of the integral, which is updated in place. */
+    static LongZSet<SqlTuple> step(LongZSet<SqlTuple> trace, LongZSet<SqlTuple> delta) {
+        LongZSet<SqlTuple> result = new LongZSet<>();
+        delta.forEach((data, weight) -> {
+            long oldWeight = trace.getWeight(data);
+            long newWeight = Math.addExact(oldWeight, weight);
+            if (newWeight > 0 && oldWeight <= 0)
+                result.append(data, 1);
+            else if (oldWeight > 0 && newWeight <= 0)
+                result.append(data, -1);
+        });
+        trace.append(delta);
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        if (this.longTrace != null) {
+            LongZSet<SqlTuple> result = step(this.longTrace, asLongZSet(input));
+            if (input instanceof LongZSet)
+                // Produce the same representation as the input
+                this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) result;
+            else
+                this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) result.toZSet();
+            return;
+        }
+
+        ZSet<SqlTuple, Weight> trace = Objects.requireNonNull(this.trace);
+        ZSet<SqlTuple, Weight> delta = asZSet(input);
+        ZSet<SqlTuple, Weight> result = new ZSet<>(this.weightType);
+        for (Map.Entry<SqlTuple, Weight> entry: delta.entries()) {
+            Weight oldWeight = trace.getWeight(entry.getKey());
+            Weight newWeight = this.weightType.add(oldWeight, entry.getValue());
+            boolean wasPresent = this.weightType.greaterThanZero(oldWeight);
+            boolean isPresent = this.weightType.greaterThanZero(newWeight);
+            if (isPresent && !wasPresent)
+                result.append(entry.getKey(), this.weightType.one());
+            else if (wasPresent && !isPresent)
+                result.append(entry.getKey(), this.weightType.negate(this.weightType.one()));
+        }
+        trace.append(delta);
+        this.nextOutput = result;
+    }
+
+    @Override
+    public long getStateSize() {
+        if (this.longTrace != null)
+            return this.longTrace.entryCount();
+        return Objects.requireNonNull(this.trace).entryCount();
+    }
+}
@@ -0,0 +1,122 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.LongIndexedZSet;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.LongWeight;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.util.TriFunction;
+import org.dbsp.simulator.values.SqlTuple;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+/** Incremental join: receives changes to two indexed Z-sets and produces the
+ * changes to their join.  The change is computed as
+ * dL join R + L join dR + dL join dR, where L and R are the integrals of the
+ * inputs before this step.  The combiner receives the key and the two values;
+ * pairs for which it returns null are dropped.
+ * With long weights the integrals are {@link LongIndexedZSet}s and the
+ * result is a {@link LongZSet}, so the weights are never boxed. */
+public class IncrementalJoinOperator<Weight> extends BaseOperator<Weight> {
+    final TriFunction<SqlTuple, SqlTuple, SqlTuple, SqlTuple> combiner;
+    /** Integrals of the inputs, for weights other than longs. */
+    @Nullable
+    final IndexedZSet<SqlTuple, SqlTuple, Weight> leftTrace;
+    @Nullable
+    final IndexedZSet<SqlTuple, SqlTuple, Weight> rightTrace;
+    /** Integrals of the inputs, for long weights. */
+    @Nullable
+    final LongIndexedZSet<SqlTuple, SqlTuple> leftLongTrace;
+    @Nullable
+    final LongIndexedZSet<SqlTuple, SqlTuple> rightLongTrace;
+    long work;
+
+    public IncrementalJoinOperator(WeightType<Weight> weightType,
+                                   TriFunction<SqlTuple, SqlTuple, SqlTuple, SqlTuple> combiner,
+                                   BaseOperator<Weight> left, BaseOperator<Weight> right) {
+        super(weightType, left, right);
+        this.combiner = combiner;
+        if (weightType instanceof LongWeight) {
+            this.leftTrace = null;
+            this.rightTrace = null;
+            this.leftLongTrace = new LongIndexedZSet<>();
+            this.rightLongTrace = new LongIndexedZSet<>();
+        } else {
+            this.leftTrace = new IndexedZSet<>(weightType);
+            this.rightTrace = new IndexedZSet<>(weightType);
+            this.leftLongTrace = null;
+            this.rightLongTrace = null;
+        }
+        this.work = 0;
+    }
+
+    /** Number of trace entries which have to be read to join the delta with a trace. */
+    long lookups(IndexedZSet<SqlTuple, SqlTuple, Weight> delta, IndexedZSet<SqlTuple, SqlTuple, Weight> trace) {
+        long result = 0;
+        for (SqlTuple key: delta.keys())
+            result += trace.getGroup(key).entryCount();
+        return result;
+    }
+
+    long lookups(IndexedZSet<SqlTuple, SqlTuple, Long> delta, LongIndexedZSet<SqlTuple, SqlTuple> trace) {
+        long result = 0;
+        for (SqlTuple key: delta.keys())
+            result += trace.getGroup(key).entryCount();
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> left = this.inputs[0].getOutput();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> leftDelta = (IndexedZSet<SqlTuple, SqlTuple, Weight>) left;
+        BaseCollection<Weight> right = this.inputs[1].getOutput();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> rightDelta = (IndexedZSet<SqlTuple, SqlTuple, Weight>) right;
+
+        if (this.leftLongTrace != null) {
+            LongIndexedZSet<SqlTuple, SqlTuple> leftTrace = this.leftLongTrace;
+            LongIndexedZSet<SqlTuple, SqlTuple> rightTrace = Objects.requireNonNull(this.rightLongTrace);
+            IndexedZSet<SqlTuple, SqlTuple, Long> leftLong = (IndexedZSet<SqlTuple, SqlTuple, Long>) left;
+            IndexedZSet<SqlTuple, SqlTuple, Long> rightLong = (IndexedZSet<SqlTuple, SqlTuple, Long>) right;
+            this.work = leftDelta.entryCount() + rightDelta.entryCount() +
+                    this.lookups(leftLong, rightTrace) + this.lookups(rightLong, leftTrace);
+
+            // dL join (R + dR) + L join dR, which is the same as the sum of the three products
+            LongZSet<SqlTuple> result = new LongZSet<>();
+            rightTrace.append(rightLong);
+            rightTrace.joinInto(result, leftLong, this.combiner);
+            leftTrace.joinInto(result, rightLong, (k, r, l) -> this.combiner.apply(k, l, r));
+            leftTrace.append(leftLong);
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) result;
+            return;
+        }
+
+        IndexedZSet<SqlTuple, SqlTuple, Weight> leftTrace = Objects.requireNonNull(this.leftTrace);
+        IndexedZSet<SqlTuple, SqlTuple, Weight> rightTrace = Objects.requireNonNull(this.rightTrace);
+        ZSet<SqlTuple, Weight> result = leftDelta.joinFlatMap(rightTrace, this.combiner);
+        result.append(leftTrace.joinFlatMap(rightDelta, this.combiner));
+        result.append(leftDelta.joinFlatMap(rightDelta, this.combiner));
+        this.work = leftDelta.entryCount() + rightDelta.entryCount() +
+                this.lookups(leftDelta, rightTrace) + this.lookups(rightDelta, leftTrace);
+
+        leftTrace.append(leftDelta);
+        rightTrace.append(rightDelta);
+        this.nextOutput = result;
+    }
+
+    @Override
+    public long getWork() {
+        return this.work;
+    }
+
+    @Override
+    public long getStateSize() {
+        if (this.leftLongTrace != null)
+            return this.leftLongTrace.entryCount() + Objects.requireNonNull(this.rightLongTrace).entryCount();
+        return Objects.requireNonNull(this.leftTrace).entryCount() +
+                Objects.requireNonNull(this.rightTrace).entryCount();
+    }
+}
@@ -1,7 +1,9 @@
 package org.dbsp.simulator.operators;
 
 import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
 import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.columnar.ColumnarBatch;
 import org.dbsp.simulator.types.WeightType;
 import org.dbsp.simulator.values.SqlTuple;
 
@@ -17,9 +19,16 @@ public class IndexOperator<Weight> extends UnaryOperator<Weight> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void step() {
         BaseCollection<Weight> input = this.getInputValue();
-        ZSet<SqlTuple, Weight> zset = (ZSet<SqlTuple, Weight>) input;
+        if (input instanceof LongZSet || input instanceof ColumnarBatch) {
+            // Collections with long weights are indexed without boxing them in a ZSet first
+            LongZSet<SqlTuple> longZSet = asLongZSet(input);
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) longZSet.index(this.keyFunction);
+            return;
+        }
+        ZSet<SqlTuple, Weight> zset = asZSet(input);
         this.nextOutput = zset.index(this.keyFunction);
     }
 }
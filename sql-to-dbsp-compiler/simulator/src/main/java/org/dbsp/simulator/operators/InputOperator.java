@@ -0,0 +1,33 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.WeightType;
+
+import javax.annotation.Nullable;
+
+/** An operator which receives its data from outside the circuit.
+ * The value set before a step is consumed by that step; a step for
+ * which no value was set produces an empty Z-set. */
+public class InputOperator<Weight> extends BaseOperator<Weight> {
+    @Nullable
+    BaseCollection<Weight> value;
+
+    public InputOperator(WeightType<Weight> weightType) {
+        super(weightType);
+        this.value = null;
+    }
+
+    public void setValue(BaseCollection<Weight> value) {
+        this.value = value;
+    }
+
+    @Override
+    public void step() {
+        if (this.value != null)
+            this.nextOutput = this.value;
+        else
+            this.nextOutput = new ZSet<>(this.weightType);
+        this.value = null;
+    }
+}
@@ -0,0 +1,33 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.types.WeightType;
+
+import javax.annotation.Nullable;
+
+/** Computes the running sum of its input stream. */
+public class IntegrateOperator<Weight> extends UnaryOperator<Weight> {
+    /** Sum of all inputs received so far; null before the first step. */
+    @Nullable
+    BaseCollection<Weight> sum;
+
+    public IntegrateOperator(WeightType<Weight> weightType, BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.sum = null;
+    }
+
+    @Override
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        if (this.sum == null)
+            this.nextOutput = input;
+        else
+            this.nextOutput = SumOperator.add(this.sum, input);
+        this.sum = this.nextOutput;
+    }
+
+    @Override
+    public long getStateSize() {
+        return this.sum == null ? 0 : this.sum.entryCount();
+    }
+}
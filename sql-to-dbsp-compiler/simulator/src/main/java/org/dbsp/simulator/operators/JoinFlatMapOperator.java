@@ -0,0 +1,31 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.util.TriFunction;
+import org.dbsp.simulator.values.SqlTuple;
+
+/** Joins two indexed Z-sets, producing a Z-set.
+ * The combiner receives the key and the two values; pairs for which
+ * it returns null are dropped. */
+public class JoinFlatMapOperator<Weight> extends BaseOperator<Weight> {
+    final TriFunction<SqlTuple, SqlTuple, SqlTuple, SqlTuple> combiner;
+
+    public JoinFlatMapOperator(WeightType<Weight> weightType,
+                               TriFunction<SqlTuple, SqlTuple, SqlTuple, SqlTuple> combiner,
+                               BaseOperator<Weight> left, BaseOperator<Weight> right) {
+        super(weightType, left, right);
+        this.combiner = combiner;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> left = this.inputs[0].getOutput();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> leftIndex = (IndexedZSet<SqlTuple, SqlTuple, Weight>) left;
+        BaseCollection<Weight> right = this.inputs[1].getOutput();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> rightIndex = (IndexedZSet<SqlTuple, SqlTuple, Weight>) right;
+        this.nextOutput = leftIndex.joinFlatMap(rightIndex, this.combiner);
+    }
+}
@@ -2,27 +2,101 @@ package org.dbsp.simulator.operators;
 
 import org.dbsp.simulator.collections.BaseCollection;
 import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.LongIndexedZSet;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.columnar.ColumnarBatch;
+import org.dbsp.simulator.columnar.LongColumn;
 import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.DynamicSqlValue;
 import org.dbsp.simulator.values.SqlTuple;
 
 import java.util.function.BiFunction;
 
 public class JoinOperator<Weight> extends BaseOperator<Weight> {
     final BiFunction<SqlTuple, SqlTuple, SqlTuple> combiner;
+    /** Key column of each input when the inputs are Z-sets of rows; -1 if the
+     * inputs are indexed Z-sets. */
+    final int leftKey;
+    final int rightKey;
 
     protected JoinOperator(BiFunction<SqlTuple, SqlTuple, SqlTuple> combiner,
                            WeightType<Weight> weightType, BaseOperator<Weight>[] inputs) {
         super(weightType, inputs);
         assert inputs.length == 2;
         this.combiner = combiner;
+        this.leftKey = -1;
+        this.rightKey = -1;
+    }
+
+    /** Equi-join of two Z-sets of rows on the specified key columns, producing
+     * the concatenation of the matching rows; NULL keys do not match anything.
+     * Columnar inputs whose key columns are {@link LongColumn}s are joined with
+     * {@link ColumnarBatch#hashJoin}; other keys, inputs with other representations,
+     * or a mix of representations, are joined one row at a time.
+     * If any input is a {@link LongZSet} the rows are joined with long weights,
+     * and the result is a {@link LongZSet}; otherwise the result is a {@link ZSet}. */
+    public JoinOperator(WeightType<Weight> weightType, int leftKey, int rightKey,
+                        BaseOperator<Weight> left, BaseOperator<Weight> right) {
+        super(weightType, left, right);
+        this.combiner = JoinOperator::concatenate;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+    }
+
+    static SqlTuple concatenate(SqlTuple left, SqlTuple right) {
+        SqlTuple result = new SqlTuple();
+        for (int i = 0; i < left.size(); i++)
+            result.add(left.get(i));
+        for (int i = 0; i < right.size(); i++)
+            result.add(right.get(i));
+        return result;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void step() {
         BaseCollection<Weight> left = this.inputs[0].getOutput();
-        IndexedZSet<SqlTuple, SqlTuple, Weight> leftIndex = (IndexedZSet<SqlTuple, SqlTuple, Weight> ) left;
         BaseCollection<Weight> right = this.inputs[1].getOutput();
-        IndexedZSet<SqlTuple, SqlTuple, Weight> rightIndex = (IndexedZSet<SqlTuple, SqlTuple, Weight>) right;
-        this.nextOutput = leftIndex.join(rightIndex, this.combiner);
+        if (this.leftKey < 0) {
+            IndexedZSet<SqlTuple, SqlTuple, Weight> leftIndex = (IndexedZSet<SqlTuple, SqlTuple, Weight>) left;
+            IndexedZSet<SqlTuple, SqlTuple, Weight> rightIndex = (IndexedZSet<SqlTuple, SqlTuple, Weight>) right;
+            this.nextOutput = leftIndex.join(rightIndex, this.combiner);
+            return;
+        }
+        if (left instanceof ColumnarBatch leftBatch && right instanceof ColumnarBatch rightBatch &&
+                leftBatch.getColumn(this.leftKey) instanceof LongColumn &&
+                rightBatch.getColumn(this.rightKey) instanceof LongColumn) {
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>)
+                    leftBatch.hashJoin(this.leftKey, rightBatch, this.rightKey);
+            return;
+        }
+        int leftKey = this.leftKey;
+        int rightKey = this.rightKey;
+        if (left instanceof LongZSet || right instanceof LongZSet) {
+            LongIndexedZSet<DynamicSqlValue, SqlTuple> rightIndex = new LongIndexedZSet<>();
+            BaseOperator.<SqlTuple>asLongZSet(right).forEach((r, weight) -> {
+                DynamicSqlValue key = r.get(rightKey);
+                if (!key.isNull())
+                    rightIndex.append(key, r, weight);
+            });
+            LongZSet<SqlTuple> result = new LongZSet<>();
+            BaseOperator.<SqlTuple>asLongZSet(left).forEach((l, weight) -> {
+                DynamicSqlValue key = l.get(leftKey);
+                if (key.isNull())
+                    return;
+                rightIndex.getGroup(key).forEach((r, rightWeight) ->
+                        result.append(this.combiner.apply(l, r), Math.multiplyExact(weight, rightWeight)));
+            });
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) result;
+            return;
+        }
+        ZSet<SqlTuple, Weight> leftRows = BaseOperator.<SqlTuple, Weight>asZSet(left)
+                .filter(r -> !r.get(leftKey).isNull());
+        ZSet<SqlTuple, Weight> rightRows = BaseOperator.<SqlTuple, Weight>asZSet(right)
+                .filter(r -> !r.get(rightKey).isNull());
+        this.nextOutput = leftRows.index(r -> r.get(leftKey))
+                .join(rightRows.index(r -> r.get(rightKey)), this.combiner)
+                .deindex();
     }
 }
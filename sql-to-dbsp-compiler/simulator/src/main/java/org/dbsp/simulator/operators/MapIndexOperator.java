@@ -0,0 +1,37 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.columnar.ColumnarBatch;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.SqlTuple;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/** Converts a Z-set into an indexed Z-set, computing a key and a value for each tuple. */
+public class MapIndexOperator<Weight> extends UnaryOperator<Weight> {
+    final Function<SqlTuple, Map.Entry<SqlTuple, SqlTuple>> function;
+
+    public MapIndexOperator(WeightType<Weight> weightType,
+                            Function<SqlTuple, Map.Entry<SqlTuple, SqlTuple>> function,
+                            BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.function = function;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        if (input instanceof LongZSet || input instanceof ColumnarBatch) {
+            // Collections with long weights are indexed without boxing them in a ZSet first
+            LongZSet<SqlTuple> longZSet = asLongZSet(input);
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) longZSet.mapIndex(this.function);
+            return;
+        }
+        ZSet<SqlTuple, Weight> zset = asZSet(input);
+        this.nextOutput = zset.mapIndex(this.function);
+    }
+}
@@ -0,0 +1,27 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.WeightType;
+
+public class NegateOperator<Weight> extends UnaryOperator<Weight> {
+    public NegateOperator(WeightType<Weight> weightType, BaseOperator<Weight> input) {
+        super(weightType, input);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <Weight> BaseCollection<Weight> negate(BaseCollection<Weight> value) {
+        if (value instanceof LongZSet)
+            return (BaseCollection<Weight>) (BaseCollection<?>) ((LongZSet<?>) value).negate();
+        if (value instanceof IndexedZSet)
+            return ((IndexedZSet<?, ?, Weight>) value).negate();
+        return ((ZSet<?, Weight>) value).negate();
+    }
+
+    @Override
+    public void step() {
+        this.nextOutput = negate(this.getInputValue());
+    }
+}
@@ -0,0 +1,29 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.types.WeightType;
+import org.dbsp.simulator.values.SqlTuple;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/** Indexes an indexed Z-set again, computing a new key and value from each key and value. */
+public class ReindexOperator<Weight> extends UnaryOperator<Weight> {
+    final BiFunction<SqlTuple, SqlTuple, Map.Entry<SqlTuple, SqlTuple>> function;
+
+    public ReindexOperator(WeightType<Weight> weightType,
+                           BiFunction<SqlTuple, SqlTuple, Map.Entry<SqlTuple, SqlTuple>> function,
+                           BaseOperator<Weight> input) {
+        super(weightType, input);
+        this.function = function;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void step() {
+        BaseCollection<Weight> input = this.getInputValue();
+        IndexedZSet<SqlTuple, SqlTuple, Weight> indexed = (IndexedZSet<SqlTuple, SqlTuple, Weight>) input;
+        this.nextOutput = indexed.mapIndex(this.function);
+    }
+}
@@ -1,25 +1,61 @@
 package org.dbsp.simulator.operators;
 
 import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.LongZSet;
 import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.columnar.BatchProjection;
+import org.dbsp.simulator.columnar.Column;
+import org.dbsp.simulator.columnar.ColumnarBatch;
 import org.dbsp.simulator.values.SqlTuple;
 import org.dbsp.simulator.types.WeightType;
 
+import javax.annotation.Nullable;
+import java.util.List;
 import java.util.function.Function;
 
 public class SelectOperator<Weight> extends UnaryOperator<Weight> {
     final Function<SqlTuple, SqlTuple> tupleTransform;
+    /** Vectorized version of tupleTransform, one projection for each output column,
+     * used for columnar inputs; if null the rows of columnar inputs are transformed
+     * one at a time, and the output is a Z-set. */
+    @Nullable
+    final List<BatchProjection> batchTransform;
 
     public SelectOperator(WeightType<Weight> weightType,
                           Function<SqlTuple, SqlTuple> tupleTransform,
                           BaseOperator<Weight> input) {
+        this(weightType, tupleTransform, null, input);
+    }
+
+    public SelectOperator(WeightType<Weight> weightType,
+                          Function<SqlTuple, SqlTuple> tupleTransform,
+                          @Nullable List<BatchProjection> batchTransform,
+                          BaseOperator<Weight> input) {
         super(weightType, input);
         this.tupleTransform = tupleTransform;
+        this.batchTransform = batchTransform;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void step() {
         BaseCollection<Weight> input = this.getInputValue();
+        if (input instanceof ColumnarBatch batch) {
+            if (this.batchTransform != null) {
+                Column[] columns = new Column[this.batchTransform.size()];
+                for (int i = 0; i < columns.length; i++)
+                    columns[i] = this.batchTransform.get(i).compute(batch);
+                this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) batch.withColumns(columns);
+            } else {
+                this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) batch.toZSet().map(this.tupleTransform);
+            }
+            return;
+        }
+        if (input instanceof LongZSet) {
+            LongZSet<SqlTuple> longZSet = (LongZSet<SqlTuple>) input;
+            this.nextOutput = (BaseCollection<Weight>) (BaseCollection<?>) longZSet.map(this.tupleTransform);
+            return;
+        }
         ZSet<SqlTuple, Weight> inputZset = (ZSet<SqlTuple, Weight>) input;
         this.nextOutput = inputZset.map(this.tupleTransform);
     }
@@ -0,0 +1,115 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.types.WeightType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/** Executes an operator on multiple shards in parallel, like the workers of the DBSP runtime.
+ * Each shard has its own instance of the operator, created by a factory, with its own state.
+ * A step has three phases:
+ * <ul>
+ *     <li>exchange: each input is partitioned by key across the shards (see {@link Exchange})</li>
+ *     <li>compute: the shards execute their operator in a fork-join pool</li>
+ *     <li>gather: the outputs of all shards are combined</li>
+ * </ul>
+ * This is only correct for operators whose output for a key depends only on the
+ * inputs with the same key, such as join, aggregate and distinct.
+ * The work of each shard is recorded, to estimate skew and parallel speedup. */
+public class ShardedOperator<Weight> extends BaseOperator<Weight> {
+    final ForkJoinPool pool;
+    /** For each shard, one input operator for each input of this operator. */
+    final List<List<InputOperator<Weight>>> shardInputs;
+    /** The operator executed by each shard. */
+    final List<BaseOperator<Weight>> shards;
+
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public ShardedOperator(WeightType<Weight> weightType, int shardCount, ForkJoinPool pool,
+                           Function<List<BaseOperator<Weight>>, BaseOperator<Weight>> factory,
+                           BaseOperator<Weight>... inputs) {
+        super(weightType, inputs);
+        if (shardCount < 1)
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        this.pool = pool;
+        this.shardInputs = new ArrayList<>(shardCount);
+        this.shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            List<InputOperator<Weight>> shardInputs = new ArrayList<>(inputs.length);
+            for (int j = 0; j < inputs.length; j++)
+                shardInputs.add(new InputOperator<>(weightType));
+            this.shardInputs.add(shardInputs);
+            this.shards.add(factory.apply(new ArrayList<>(shardInputs)));
+        }
+    }
+
+    public int getShardCount() {
+        return this.shards.size();
+    }
+
+    @Override
+    public void step() {
+        int shardCount = this.getShardCount();
+        // Exchange
+        for (int j = 0; j < this.inputs.length; j++) {
+            List<BaseCollection<Weight>> parts = Exchange.partition(
+                    this.weightType, this.inputs[j].getOutput(), shardCount);
+            for (int i = 0; i < shardCount; i++)
+                this.shardInputs.get(i).get(j).setValue(parts.get(i));
+        }
+        // Compute
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            tasks.add(this.pool.submit(() -> {
+                for (InputOperator<Weight> input: this.shardInputs.get(shard))
+                    input.step();
+                this.shards.get(shard).step();
+            }));
+        }
+        for (ForkJoinTask<?> task: tasks)
+            task.join();
+        // Gather
+        List<BaseCollection<Weight>> outputs = new ArrayList<>(shardCount);
+        for (BaseOperator<Weight> shard: this.shards)
+            outputs.add(shard.getOutput());
+        this.nextOutput = Exchange.gather(this.weightType, outputs);
+    }
+
+    @Override
+    public void endStep() {
+        for (BaseOperator<Weight> shard: this.shards)
+            shard.endStep();
+    }
+
+    /** Work performed by each shard in the last step. */
+    public long[] getShardWork() {
+        long[] result = new long[this.getShardCount()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = this.shards.get(i).getWork();
+        return result;
+    }
+
+    @Override
+    public long getWork() {
+        return Arrays.stream(this.getShardWork()).sum();
+    }
+
+    @Override
+    public long getMaxShardWork() {
+        return Arrays.stream(this.getShardWork()).max().orElse(0);
+    }
+
+    @Override
+    public long getStateSize() {
+        long result = 0;
+        for (BaseOperator<Weight> shard: this.shards)
+            result += shard.getStateSize();
+        return result;
+    }
+}
@@ -0,0 +1,16 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.types.WeightType;
+
+public class SubtractOperator<Weight> extends BaseOperator<Weight> {
+    public SubtractOperator(WeightType<Weight> weightType,
+                            BaseOperator<Weight> left, BaseOperator<Weight> right) {
+        super(weightType, left, right);
+    }
+
+    @Override
+    public void step() {
+        this.nextOutput = SumOperator.add(
+                this.inputs[0].getOutput(), NegateOperator.negate(this.inputs[1].getOutput()));
+    }
+}
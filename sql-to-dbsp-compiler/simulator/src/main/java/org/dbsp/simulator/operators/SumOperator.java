@@ -0,0 +1,50 @@
+package org.dbsp.simulator.operators;
+
+import org.dbsp.simulator.collections.BaseCollection;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.LongZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.WeightType;
+
+/** Adds all its inputs, which are either all Z-sets or all indexed Z-sets.
+ * Z-sets with different representations can be mixed; the result is a
+ * {@link LongZSet} if any input is one. */
+public class SumOperator<Weight> extends BaseOperator<Weight> {
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public SumOperator(WeightType<Weight> weightType, BaseOperator<Weight>... inputs) {
+        super(weightType, inputs);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <Weight> BaseCollection<Weight> add(BaseCollection<Weight> left, BaseCollection<Weight> right) {
+        // Collections are not modified after they are produced, so they can be shared
+        if (right.entryCount() == 0)
+            return left;
+        if (left.entryCount() == 0)
+            return right;
+        if (left instanceof LongZSet || right instanceof LongZSet) {
+            // Only Z-sets with long weights can be mixed with a LongZSet
+            LongZSet<Object> longZSet = asLongZSet(left instanceof LongZSet ? left : right);
+            BaseCollection<Weight> other = left instanceof LongZSet ? right : left;
+            LongZSet<Object> result;
+            if (other instanceof ZSet)
+                // Merge the boxed weights directly, without converting the Z-set first
+                result = longZSet.add((ZSet<Object, Long>) other);
+            else
+                result = longZSet.add(BaseOperator.<Object>asLongZSet(other));
+            return (BaseCollection<Weight>) (BaseCollection<?>) result;
+        }
+        if (left instanceof IndexedZSet)
+            return ((IndexedZSet<Object, Object, Weight>) left).add((IndexedZSet<Object, Object, Weight>) right);
+        return BaseOperator.<Object, Weight>asZSet(left).add(asZSet(right));
+    }
+
+    @Override
+    public void step() {
+        BaseCollection<Weight> result = this.inputs[0].getOutput();
+        for (int i = 1; i < this.inputs.length; i++)
+            result = add(result, this.inputs[i].getOutput());
+        this.nextOutput = result;
+    }
+}
@@ -0,0 +1,14 @@
+package org.dbsp.simulator.types;
+
+public class BigintSqlType extends SqlTypeBase {
+    public static final BigintSqlType INSTANCE = new BigintSqlType();
+
+    protected BigintSqlType() {
+        super(SqlTypeName.BIGINT, 64);
+    }
+
+    @Override
+    public String toString() {
+        return "BIGINT";
+    }
+}
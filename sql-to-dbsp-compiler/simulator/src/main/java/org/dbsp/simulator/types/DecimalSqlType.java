@@ -0,0 +1,15 @@
+package org.dbsp.simulator.types;
+
+public class DecimalSqlType extends SqlTypeBase {
+    public final int scale;
+
+    public DecimalSqlType(int precision, int scale) {
+        super(SqlTypeName.DECIMAL, precision);
+        this.scale = scale;
+    }
+
+    @Override
+    public String toString() {
+        return "DECIMAL(" + this.precision + ", " + this.scale + ")";
+    }
+}
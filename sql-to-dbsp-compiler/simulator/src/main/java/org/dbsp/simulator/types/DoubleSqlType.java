@@ -0,0 +1,14 @@
+package org.dbsp.simulator.types;
+
+public class DoubleSqlType extends SqlTypeBase {
+    public static final DoubleSqlType INSTANCE = new DoubleSqlType();
+
+    protected DoubleSqlType() {
+        super(SqlTypeName.DOUBLE);
+    }
+
+    @Override
+    public String toString() {
+        return "DOUBLE";
+    }
+}
@@ -0,0 +1,43 @@
+package org.dbsp.simulator.types;
+
+/**
+ * Weights represented as longs.
+ * Throws on overflow.
+ */
+public class LongWeight implements WeightType<Long> {
+    private LongWeight() {}
+
+    public static final LongWeight INSTANCE = new LongWeight();
+
+    @Override
+    public Long add(Long left, Long right) {
+        return Math.addExact(left, right);
+    }
+
+    @Override
+    public Long negate(Long value) {
+        return Math.negateExact(value);
+    }
+
+    @Override
+    public Long zero() {
+        return 0L;
+    }
+
+    @Override
+    public Long one() { return 1L; }
+
+    public boolean isZero(Long value) {
+        return value == 0;
+    }
+
+    @Override
+    public boolean greaterThanZero(Long value) {
+        return value > 0;
+    }
+
+    @Override
+    public Long multiply(Long left, Long right) {
+        return Math.multiplyExact(left, right);
+    }
+}
@@ -2,6 +2,8 @@ package org.dbsp.simulator.values;
 
 import org.dbsp.simulator.types.SqlType;
 
+import java.util.Objects;
+
 public abstract class BaseSqlValue implements DynamicSqlValue {
     public final SqlType type;
 
@@ -13,4 +15,22 @@ public abstract class BaseSqlValue implements DynamicSqlValue {
     public SqlType getType() {
         return this.type;
     }
+
+    @Override
+    public boolean isNull() {
+        return this.getValue() == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BaseSqlValue other = (BaseSqlValue) o;
+        return Objects.equals(this.getValue(), other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.getValue());
+    }
 }
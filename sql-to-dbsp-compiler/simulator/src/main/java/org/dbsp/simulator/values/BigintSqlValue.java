@@ -0,0 +1,29 @@
+package org.dbsp.simulator.values;
+
+import org.dbsp.simulator.types.BigintSqlType;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+public class BigintSqlValue extends BaseSqlValue {
+    @Nullable
+    final Long value;
+
+    public BigintSqlValue(@Nullable Long value) {
+        super(BigintSqlType.INSTANCE);
+        this.value = value;
+    }
+
+    @Override
+    @Nullable
+    public Long getValue() {
+        return this.value;
+    }
+
+    @Override
+    public String toString() {
+        if (this.isNull())
+            return "NULL";
+        return Long.toString(Objects.requireNonNull(this.value));
+    }
+}
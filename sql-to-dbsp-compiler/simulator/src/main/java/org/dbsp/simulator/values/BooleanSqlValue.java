@@ -0,0 +1,29 @@
+package org.dbsp.simulator.values;
+
+import org.dbsp.simulator.types.BooleanSqlType;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+public class BooleanSqlValue extends BaseSqlValue {
+    @Nullable
+    final Boolean value;
+
+    public BooleanSqlValue(@Nullable Boolean value) {
+        super(BooleanSqlType.INSTANCE);
+        this.value = value;
+    }
+
+    @Override
+    @Nullable
+    public Boolean getValue() {
+        return this.value;
+    }
+
+    @Override
+    public String toString() {
+        if (this.isNull())
+            return "NULL";
+        return Boolean.toString(Objects.requireNonNull(this.value));
+    }
+}
@@ -0,0 +1,32 @@
+package org.dbsp.simulator.values;
+
+import org.dbsp.simulator.types.DecimalSqlType;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+public class DecimalSqlValue extends BaseSqlValue {
+    /** Always has the scale of the type, so that equal values compare equal. */
+    @Nullable
+    final BigDecimal value;
+
+    public DecimalSqlValue(@Nullable BigDecimal value, DecimalSqlType type) {
+        super(type);
+        this.value = value == null ? null : value.setScale(type.scale, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    @Nullable
+    public BigDecimal getValue() {
+        return this.value;
+    }
+
+    @Override
+    public String toString() {
+        if (this.isNull())
+            return "NULL";
+        return Objects.requireNonNull(this.value).toPlainString();
+    }
+}
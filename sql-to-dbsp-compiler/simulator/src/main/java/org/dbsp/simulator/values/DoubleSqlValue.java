@@ -0,0 +1,29 @@
+package org.dbsp.simulator.values;
+
+import org.dbsp.simulator.types.DoubleSqlType;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+public class DoubleSqlValue extends BaseSqlValue {
+    @Nullable
+    final Double value;
+
+    public DoubleSqlValue(@Nullable Double value) {
+        super(DoubleSqlType.INSTANCE);
+        this.value = value;
+    }
+
+    @Override
+    @Nullable
+    public Double getValue() {
+        return this.value;
+    }
+
+    @Override
+    public String toString() {
+        if (this.isNull())
+            return "NULL";
+        return Double.toString(Objects.requireNonNull(this.value));
+    }
+}
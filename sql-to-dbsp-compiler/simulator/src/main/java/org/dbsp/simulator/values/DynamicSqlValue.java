@@ -3,10 +3,14 @@ package org.dbsp.simulator.values;
 import org.dbsp.simulator.types.SqlType;
 import org.dbsp.simulator.util.ICastable;
 
+import javax.annotation.Nullable;
+
 /**
  * Interface implemented by dynamically-typed values that can be represented in Sql.
  */
 public interface DynamicSqlValue extends ICastable {
     SqlType getType();
     boolean isNull();
+    /** The Java representation of the value; null for SQL NULL. */
+    @Nullable Object getValue();
 }
@@ -15,8 +15,9 @@ public class IntegerSqlValue extends BaseSqlValue {
     }
 
     @Override
-    public boolean isNull() {
-        return this.value == null;
+    @Nullable
+    public Integer getValue() {
+        return this.value;
     }
 
     @Override
@@ -6,27 +6,44 @@ import java.util.Objects;
 
 public class SqlTuple {
     private final List<DynamicSqlValue> values;
+    /** Cached hash code; 0 when it has not been computed since the last change. */
+    private int hashCode;
 
     public SqlTuple() {
         this.values = new ArrayList<>();
+        this.hashCode = 0;
     }
 
     public SqlTuple add(DynamicSqlValue value) {
         this.values.add(value);
+        this.hashCode = 0;
         return this;
     }
 
+    public DynamicSqlValue get(int index) {
+        return this.values.get(index);
+    }
+
+    public int size() {
+        return this.values.size();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         SqlTuple sqlTuple = (SqlTuple) o;
+        if (this.hashCode() != sqlTuple.hashCode())
+            return false;
         return values.equals(sqlTuple.values);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(values);
+        // Tuples are used as keys of hash tables, and are rarely modified after construction
+        if (this.hashCode == 0)
+            this.hashCode = Objects.hash(values);
+        return this.hashCode;
     }
 
     @Override
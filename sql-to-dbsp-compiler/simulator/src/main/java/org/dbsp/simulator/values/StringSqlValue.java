@@ -16,8 +16,9 @@ public class StringSqlValue extends BaseSqlValue {
     }
 
     @Override
-    public boolean isNull() {
-        return this.value == null;
+    @Nullable
+    public String getValue() {
+        return this.value;
     }
 
     @Override
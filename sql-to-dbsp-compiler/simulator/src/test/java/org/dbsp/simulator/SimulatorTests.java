@@ -5,10 +5,34 @@ import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.dbsp.simulator.collections.BaseCollection;
 import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.LongZSet;
 import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.columnar.BatchPredicate;
+import org.dbsp.simulator.columnar.BatchProjection;
+import org.dbsp.simulator.columnar.ColumnarBatch;
+import org.dbsp.simulator.columnar.Kernels;
+import org.dbsp.simulator.operators.DelayOperator;
+import org.dbsp.simulator.operators.DifferentiateOperator;
+import org.dbsp.simulator.operators.FilterOperator;
+import org.dbsp.simulator.operators.IncrementalAggregateOperator;
+import org.dbsp.simulator.operators.IncrementalDistinctOperator;
+import org.dbsp.simulator.operators.IncrementalJoinOperator;
+import org.dbsp.simulator.operators.InputOperator;
+import org.dbsp.simulator.operators.IntegrateOperator;
+import org.dbsp.simulator.operators.JoinFlatMapOperator;
+import org.dbsp.simulator.operators.JoinOperator;
+import org.dbsp.simulator.operators.MapIndexOperator;
+import org.dbsp.simulator.operators.SelectOperator;
+import org.dbsp.simulator.operators.ShardedOperator;
+import org.dbsp.simulator.types.DecimalSqlType;
+import org.dbsp.simulator.types.IntegerSqlType;
 import org.dbsp.simulator.types.IntegerWeight;
+import org.dbsp.simulator.types.LongWeight;
+import org.dbsp.simulator.types.SqlType;
 import org.dbsp.simulator.types.StringSqlType;
+import org.dbsp.simulator.values.DecimalSqlValue;
 import org.dbsp.simulator.values.IntegerSqlValue;
 import org.dbsp.simulator.values.SqlTuple;
 import org.dbsp.simulator.values.StringSqlValue;
@@ -18,10 +42,15 @@ import org.junit.Test;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class SimulatorTests {
     @Test
@@ -49,6 +78,133 @@ public class SimulatorTests {
         Assert.assertTrue(none.isEmpty());
     }
 
+    @Test
+    public void longZSetTests() {
+        LongZSet<SqlTuple> some = new LongZSet<>();
+        SqlTuple tuple = new SqlTuple()
+                .add(new IntegerSqlValue(10))
+                .add(new StringSqlValue("string", new StringSqlType()));
+        some.append(tuple, 2);
+        Assert.assertEquals("{\n    [10, 'string'] => 2\n}", some.toString());
+        LongZSet<SqlTuple> dbl = some.add(some);
+        Assert.assertEquals(4, dbl.getWeight(tuple));
+        Assert.assertEquals(2, some.getWeight(tuple));
+        LongZSet<SqlTuple> neg = dbl.negate();
+        Assert.assertTrue(dbl.add(neg).isEmpty());
+        Assert.assertEquals(1, dbl.distinct().getWeight(tuple));
+        Assert.assertTrue(neg.positive(false).isEmpty());
+
+        // Compare with a ZSet, merging changes which cancel entries in place
+        ZSet<SqlTuple, Long> expected = new ZSet<>(LongWeight.INSTANCE);
+        LongZSet<SqlTuple> actual = new LongZSet<>();
+        for (int i = 0; i < 10000; i++) {
+            SqlTuple t = new SqlTuple().add(new IntegerSqlValue(i % 1000));
+            long weight = (i % 3) - 1;
+            expected.append(t, weight);
+            actual.append(t, weight);
+        }
+        Assert.assertEquals(expected.entryCount(), actual.entryCount());
+        Assert.assertTrue(expected.equals(actual.toZSet()));
+        Assert.assertEquals(actual, LongZSet.fromZSet(expected));
+        Assert.assertEquals(actual.hashCode(), LongZSet.fromZSet(expected).hashCode());
+        Assert.assertNotEquals(some, dbl);
+        Assert.assertNotEquals(some, some.toZSet());
+        for (int i = 0; i < 1000; i++) {
+            SqlTuple t = new SqlTuple().add(new IntegerSqlValue(i));
+            actual.append(t, -actual.getWeight(t));
+        }
+        Assert.assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLongZSetCircuit() {
+        Circuit<Long> circuit = new Circuit<>(LongWeight.INSTANCE);
+        InputOperator<Long> input = circuit.addInput("T");
+        FilterOperator<Long> filter = circuit.addOperator(new FilterOperator<>(LongWeight.INSTANCE,
+                t -> Objects.requireNonNull(((IntegerSqlValue) t.get(0)).getValue()) % 2 == 0, input));
+        SelectOperator<Long> select = circuit.addOperator(new SelectOperator<>(LongWeight.INSTANCE,
+                t -> new SqlTuple().add(new IntegerSqlValue(
+                        Objects.requireNonNull(((IntegerSqlValue) t.get(0)).getValue()) / 4)), filter));
+        IntegrateOperator<Long> integral = circuit.addOperator(new IntegrateOperator<>(LongWeight.INSTANCE, select));
+        circuit.addOutput("V", integral);
+
+        LongZSet<SqlTuple> data = new LongZSet<>();
+        for (int i = 0; i < 8; i++)
+            data.append(new SqlTuple().add(new IntegerSqlValue(i)));
+        circuit.step(Map.of("T", data));
+        Map<String, BaseCollection<Long>> outputs = circuit.step(Map.of("T", data.negate()));
+        Assert.assertTrue(((LongZSet<SqlTuple>) outputs.get("V")).isEmpty());
+        outputs = circuit.step(Map.of("T", data));
+        LongZSet<SqlTuple> expected = new LongZSet<>();
+        expected.append(new SqlTuple().add(new IntegerSqlValue(0)), 2);
+        expected.append(new SqlTuple().add(new IntegerSqlValue(1)), 2);
+        Assert.assertTrue(expected.equals((LongZSet<SqlTuple>) outputs.get("V")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLongZSetIncrementalCircuit() {
+        // The stateful operators and the indexing operators receive LongZSets
+        Circuit<Long> circuit = new Circuit<>(LongWeight.INSTANCE);
+        InputOperator<Long> input = circuit.addInput("T");
+        IncrementalDistinctOperator<Long> distinct = circuit.addOperator(
+                new IncrementalDistinctOperator<>(LongWeight.INSTANCE, input));
+        MapIndexOperator<Long> index = circuit.addOperator(new MapIndexOperator<>(
+                LongWeight.INSTANCE, t -> Map.entry(new SqlTuple().add(t.get(0)), t), input));
+        AggregateDescription<SqlTuple, Long, SqlTuple, Long> sum = new AggregateDescription<>(
+                0L, (a, t, w) -> a + Objects.requireNonNull(((IntegerSqlValue) t.get(1)).getValue()) * w,
+                a -> new SqlTuple().add(new IntegerSqlValue(Math.toIntExact(a))));
+        IncrementalAggregateOperator<Long> aggregate = circuit.addOperator(
+                new IncrementalAggregateOperator<>(LongWeight.INSTANCE, sum, index));
+        IncrementalJoinOperator<Long> join = circuit.addOperator(new IncrementalJoinOperator<>(
+                LongWeight.INSTANCE, (k, l, r) -> new SqlTuple().add(l.get(1)).add(r.get(1)), index, index));
+        IntegrateOperator<Long> integral = circuit.addOperator(
+                new IntegrateOperator<>(LongWeight.INSTANCE, input));
+        // The initial value of the delay is a ZSet, which is mixed with LongZSets
+        DelayOperator<Long> delay = circuit.addOperator(
+                new DelayOperator<>(LongWeight.INSTANCE, new ZSet<>(LongWeight.INSTANCE), integral));
+        DifferentiateOperator<Long> delayed = circuit.addOperator(
+                new DifferentiateOperator<>(LongWeight.INSTANCE, delay));
+        circuit.addOutput("distinct", distinct);
+        circuit.addOutput("sum", aggregate);
+        circuit.addOutput("join", join);
+        circuit.addOutput("delayed", delayed);
+
+        LongZSet<SqlTuple> first = new LongZSet<>();
+        first.append(pair(1, 10), 2);
+        first.append(pair(2, 20));
+        LongZSet<SqlTuple> second = new LongZSet<>();
+        second.append(pair(1, 10), -1);
+        second.append(pair(2, 20), -1);
+        List<Map<String, BaseCollection<Long>>> outputs = circuit.run(List.of(
+                Map.of("T", first), Map.of("T", second), Map.of()));
+
+        LongZSet<SqlTuple> expected = new LongZSet<>();
+        expected.append(pair(1, 10));
+        expected.append(pair(2, 20));
+        Assert.assertEquals(expected, outputs.get(0).get("distinct"));
+        IndexedZSet<SqlTuple, SqlTuple, Long> expectedSum = new IndexedZSet<>(LongWeight.INSTANCE);
+        expectedSum.append(new SqlTuple().add(new IntegerSqlValue(1)), new SqlTuple().add(new IntegerSqlValue(20)), 1L);
+        expectedSum.append(new SqlTuple().add(new IntegerSqlValue(2)), new SqlTuple().add(new IntegerSqlValue(20)), 1L);
+        Assert.assertTrue(expectedSum.equals((IndexedZSet<SqlTuple, SqlTuple, Long>) outputs.get(0).get("sum")));
+        LongZSet<SqlTuple> expectedJoin = new LongZSet<>();
+        expectedJoin.append(pair(10, 10), 4);
+        expectedJoin.append(pair(20, 20));
+        Assert.assertEquals(expectedJoin, outputs.get(0).get("join"));
+
+        expected = new LongZSet<>();
+        expected.append(pair(2, 20), -1);
+        Assert.assertEquals(expected, outputs.get(1).get("distinct"));
+        // The join traces hold the integrals of the inputs
+        expectedJoin = new LongZSet<>();
+        expectedJoin.append(pair(10, 10), -3);
+        expectedJoin.append(pair(20, 20), -1);
+        Assert.assertEquals(expectedJoin, outputs.get(1).get("join"));
+        Assert.assertEquals(first, outputs.get(1).get("delayed"));
+        Assert.assertEquals(second, outputs.get(2).get("delayed"));
+    }
+
     @JsonPropertyOrder({"name", "age"})
     public static class Person {
         @Nullable
@@ -447,4 +603,273 @@ public class SimulatorTests {
                     '}';
         }
     }
+
+    @Test
+    public void testCircuit() {
+        // Join each value with the values having the same key, dropping equal values
+        Circuit<Integer> circuit = new Circuit<>(IntegerWeight.INSTANCE);
+        InputOperator<Integer> input = circuit.addInput("T");
+        MapIndexOperator<Integer> index = circuit.addOperator(new MapIndexOperator<>(
+                IntegerWeight.INSTANCE, t -> Map.entry(new SqlTuple().add(t.get(0)), t), input));
+        JoinFlatMapOperator<Integer> join = circuit.addOperator(new JoinFlatMapOperator<>(
+                IntegerWeight.INSTANCE,
+                (k, l, r) -> Objects.requireNonNull(l).equals(r) ? null :
+                        new SqlTuple().add(l.get(1)).add(Objects.requireNonNull(r).get(1)),
+                index, index));
+        circuit.addOutput("V", join);
+
+        ZSet<SqlTuple, Integer> data = new ZSet<>(IntegerWeight.INSTANCE);
+        data.append(new SqlTuple().add(new IntegerSqlValue(1)).add(new IntegerSqlValue(10)));
+        data.append(new SqlTuple().add(new IntegerSqlValue(1)).add(new IntegerSqlValue(20)));
+        data.append(new SqlTuple().add(new IntegerSqlValue(2)).add(new IntegerSqlValue(30)));
+        Map<String, BaseCollection<Integer>> outputs = circuit.step(Map.of("T", data));
+        ZSet<SqlTuple, Integer> expected = new ZSet<>(IntegerWeight.INSTANCE);
+        expected.append(new SqlTuple().add(new IntegerSqlValue(10)).add(new IntegerSqlValue(20)));
+        expected.append(new SqlTuple().add(new IntegerSqlValue(20)).add(new IntegerSqlValue(10)));
+        @SuppressWarnings("unchecked")
+        ZSet<SqlTuple, Integer> output = (ZSet<SqlTuple, Integer>) outputs.get("V");
+        Assert.assertTrue(expected.equals(output));
+
+        // Inputs are only used for one step
+        outputs = circuit.step(Map.of());
+        Assert.assertTrue(((ZSet<?, Integer>) outputs.get("V")).isEmpty());
+    }
+
+    static SqlTuple pair(int key, int value) {
+        return new SqlTuple().add(new IntegerSqlValue(key)).add(new IntegerSqlValue(value));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIncrementalCircuit() {
+        Circuit<Integer> circuit = new Circuit<>(IntegerWeight.INSTANCE);
+        InputOperator<Integer> input = circuit.addInput("T");
+        IncrementalDistinctOperator<Integer> distinct = circuit.addOperator(
+                new IncrementalDistinctOperator<>(IntegerWeight.INSTANCE, input));
+        MapIndexOperator<Integer> index = circuit.addOperator(new MapIndexOperator<>(
+                IntegerWeight.INSTANCE, t -> Map.entry(new SqlTuple().add(t.get(0)), t), input));
+        // Sum of the second field of each group
+        AggregateDescription<SqlTuple, Integer, SqlTuple, Integer> sum = new AggregateDescription<>(
+                0, (a, t, w) -> a + Objects.requireNonNull(((IntegerSqlValue) t.get(1)).getValue()) * w,
+                a -> new SqlTuple().add(new IntegerSqlValue(a)));
+        IncrementalAggregateOperator<Integer> aggregate = circuit.addOperator(
+                new IncrementalAggregateOperator<>(IntegerWeight.INSTANCE, sum, index));
+        // D(z^-1(I(x))) is x delayed by one step
+        IntegrateOperator<Integer> integral = circuit.addOperator(
+                new IntegrateOperator<>(IntegerWeight.INSTANCE, input));
+        DelayOperator<Integer> delay = circuit.addOperator(
+                new DelayOperator<>(IntegerWeight.INSTANCE, new ZSet<>(IntegerWeight.INSTANCE), integral));
+        DifferentiateOperator<Integer> delayed = circuit.addOperator(
+                new DifferentiateOperator<>(IntegerWeight.INSTANCE, delay));
+        circuit.addOutput("distinct", distinct);
+        circuit.addOutput("sum", aggregate);
+        circuit.addOutput("delayed", delayed);
+
+        ZSet<SqlTuple, Integer> first = new ZSet<>(IntegerWeight.INSTANCE);
+        first.append(pair(1, 10), 2);
+        first.append(pair(2, 20));
+        ZSet<SqlTuple, Integer> second = new ZSet<>(IntegerWeight.INSTANCE);
+        second.append(pair(1, 10), -1);
+        second.append(pair(2, 20), -1);
+        second.append(pair(1, 5));
+        List<Map<String, BaseCollection<Integer>>> outputs = circuit.run(List.of(
+                Map.of("T", first), Map.of("T", second), Map.of()));
+        Assert.assertEquals(3, outputs.size());
+
+        ZSet<SqlTuple, Integer> expected = new ZSet<>(IntegerWeight.INSTANCE);
+        expected.append(pair(1, 10));
+        expected.append(pair(2, 20));
+        Assert.assertTrue(expected.equals((ZSet<SqlTuple, Integer>) outputs.get(0).get("distinct")));
+        IndexedZSet<SqlTuple, SqlTuple, Integer> expectedSum = new IndexedZSet<>(IntegerWeight.INSTANCE);
+        expectedSum.append(new SqlTuple().add(new IntegerSqlValue(1)), new SqlTuple().add(new IntegerSqlValue(20)), 1);
+        expectedSum.append(new SqlTuple().add(new IntegerSqlValue(2)), new SqlTuple().add(new IntegerSqlValue(20)), 1);
+        Assert.assertTrue(expectedSum.equals((IndexedZSet<SqlTuple, SqlTuple, Integer>) outputs.get(0).get("sum")));
+        Assert.assertTrue(((ZSet<SqlTuple, Integer>) outputs.get(0).get("delayed")).isEmpty());
+
+        // (1, 10) still has a positive weight, so only (2, 20) is removed
+        expected = new ZSet<>(IntegerWeight.INSTANCE);
+        expected.append(pair(2, 20), -1);
+        expected.append(pair(1, 5));
+        Assert.assertTrue(expected.equals((ZSet<SqlTuple, Integer>) outputs.get(1).get("distinct")));
+        expectedSum = new IndexedZSet<>(IntegerWeight.INSTANCE);
+        expectedSum.append(new SqlTuple().add(new IntegerSqlValue(1)), new SqlTuple().add(new IntegerSqlValue(20)), -1);
+        expectedSum.append(new SqlTuple().add(new IntegerSqlValue(1)), new SqlTuple().add(new IntegerSqlValue(15)), 1);
+        expectedSum.append(new SqlTuple().add(new IntegerSqlValue(2)), new SqlTuple().add(new IntegerSqlValue(20)), -1);
+        Assert.assertTrue(expectedSum.equals((IndexedZSet<SqlTuple, SqlTuple, Integer>) outputs.get(1).get("sum")));
+        Assert.assertTrue(first.equals((ZSet<SqlTuple, Integer>) outputs.get(1).get("delayed")));
+        Assert.assertTrue(second.equals((ZSet<SqlTuple, Integer>) outputs.get(2).get("delayed")));
+
+        // No input: the stateless operators do no work, but the state is retained
+        StepStatistics last = circuit.getStatistics().get(2);
+        Assert.assertEquals(2, last.step);
+        Assert.assertEquals(0, last.operators.get(1).work);
+        Assert.assertEquals(2, last.operators.get(1).stateSize);
+        // Aggregate: two input entries and one output entry
+        Assert.assertEquals(3, last.operators.get(3).stateSize);
+        Assert.assertTrue(last.totalStateSize() > 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testShardedCircuit() {
+        // The same aggregate, computed on a single shard and on 4 shards
+        Circuit<Integer> circuit = new Circuit<>(IntegerWeight.INSTANCE);
+        InputOperator<Integer> input = circuit.addInput("T");
+        MapIndexOperator<Integer> index = circuit.addOperator(new MapIndexOperator<>(
+                IntegerWeight.INSTANCE, t -> Map.entry(new SqlTuple().add(t.get(0)), t), input));
+        AggregateDescription<SqlTuple, Integer, SqlTuple, Integer> count = new AggregateDescription<>(
+                0, (a, t, w) -> a + w, a -> new SqlTuple().add(new IntegerSqlValue(a)));
+        IncrementalAggregateOperator<Integer> aggregate = circuit.addOperator(
+                new IncrementalAggregateOperator<>(IntegerWeight.INSTANCE, count, index));
+        ShardedOperator<Integer> sharded = circuit.addOperator(new ShardedOperator<>(
+                IntegerWeight.INSTANCE, 4, ForkJoinPool.commonPool(),
+                inputs -> new IncrementalAggregateOperator<>(IntegerWeight.INSTANCE, count, inputs.get(0)),
+                index));
+        circuit.addOutput("single", aggregate);
+        circuit.addOutput("sharded", sharded);
+
+        ZSet<SqlTuple, Integer> uniform = new ZSet<>(IntegerWeight.INSTANCE);
+        ZSet<SqlTuple, Integer> skewed = new ZSet<>(IntegerWeight.INSTANCE);
+        for (int i = 0; i < 100; i++) {
+            uniform.append(pair(i, i));
+            skewed.append(pair(0, i));
+        }
+        for (ZSet<SqlTuple, Integer> data: List.of(uniform, skewed, uniform.negate())) {
+            Map<String, BaseCollection<Integer>> outputs = circuit.step(Map.of("T", data));
+            IndexedZSet<SqlTuple, SqlTuple, Integer> single =
+                    (IndexedZSet<SqlTuple, SqlTuple, Integer>) outputs.get("single");
+            Assert.assertTrue(single.equals((IndexedZSet<SqlTuple, SqlTuple, Integer>) outputs.get("sharded")));
+        }
+
+        List<StepStatistics> statistics = circuit.getStatistics();
+        StepStatistics.OperatorStatistics first = statistics.get(0).operators.get(3);
+        Assert.assertEquals(statistics.get(0).operators.get(2).work, first.work);
+        Assert.assertTrue(first.maxShardWork < first.work);
+        Assert.assertEquals(statistics.get(0).operators.get(2).stateSize, first.stateSize);
+        // All changes have the same key, so they are processed by a single shard
+        StepStatistics.OperatorStatistics second = statistics.get(1).operators.get(3);
+        Assert.assertTrue(second.work > 0);
+        Assert.assertEquals(second.work, second.maxShardWork);
+        Assert.assertTrue(statistics.get(0).estimatedSpeedup() > statistics.get(1).estimatedSpeedup());
+    }
+
+    static SqlTuple row(int id, @Nullable Integer v, @Nullable String s) {
+        return new SqlTuple()
+                .add(new IntegerSqlValue(id))
+                .add(new IntegerSqlValue(v))
+                .add(new StringSqlValue(s, new StringSqlType()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testColumnarBatch() {
+        // The same filter, projection and join, applied to tuples and to columnar batches
+        ZSet<SqlTuple, Long> t = new ZSet<>(LongWeight.INSTANCE);
+        ZSet<SqlTuple, Long> s = new ZSet<>(LongWeight.INSTANCE);
+        for (int i = 0; i < 20; i++) {
+            t.append(row(i, i % 3 == 0 ? null : i * 10, "s" + (i % 4)), (long) (i % 5 - 2));
+            s.append(row(i % 12, i, "r" + i));
+        }
+        SqlType[] schema = { IntegerSqlType.INSTANCE, IntegerSqlType.INSTANCE, new StringSqlType() };
+        ColumnarBatch batch = ColumnarBatch.fromZSet(t, schema);
+        Assert.assertTrue(t.equals(batch.toZSet()));
+        Assert.assertTrue(t.negate().equals(batch.negate().toZSet()));
+
+        Predicate<SqlTuple> keep = r -> {
+            Integer v = ((IntegerSqlValue) r.get(1)).getValue();
+            return v != null && v > 50 && !Objects.equals(r.get(2).getValue(), "s1");
+        };
+        BatchPredicate batchKeep = Kernels.and(
+                Kernels.compare(1, Kernels.Comparison.GT, 50),
+                Kernels.equals(2, "s1", false));
+        Function<SqlTuple, SqlTuple> project = r -> new SqlTuple()
+                .add(r.get(0))
+                .add(new IntegerSqlValue(((IntegerSqlValue) r.get(1)).getValue() + 1));
+        List<BatchProjection> batchProject = List.of(
+                Kernels.column(0), Kernels.arithmeticConstant(Kernels.Arithmetic.ADD, 1, 1));
+
+        Circuit<Long> circuit = new Circuit<>(LongWeight.INSTANCE);
+        InputOperator<Long> left = circuit.addInput("T");
+        InputOperator<Long> right = circuit.addInput("S");
+        FilterOperator<Long> filter = circuit.addOperator(
+                new FilterOperator<>(LongWeight.INSTANCE, keep, batchKeep, left));
+        SelectOperator<Long> select = circuit.addOperator(
+                new SelectOperator<>(LongWeight.INSTANCE, project, batchProject, filter));
+        JoinOperator<Long> join = circuit.addOperator(
+                new JoinOperator<>(LongWeight.INSTANCE, 0, 0, select, right));
+        circuit.addOutput("select", select);
+        circuit.addOutput("join", join);
+
+        Map<String, BaseCollection<Long>> outputs = circuit.step(Map.of(
+                "T", batch, "S", ColumnarBatch.fromZSet(s, schema)));
+        ZSet<SqlTuple, Long> selected = t.filter(keep).map(project);
+        ColumnarBatch actual = (ColumnarBatch) outputs.get("select");
+        Assert.assertTrue(actual.size() > 0);
+        Assert.assertTrue(selected.equals(actual.toZSet()));
+
+        ZSet<SqlTuple, Long> joined = selected.index(r -> r.get(0))
+                .join(s.index(r -> r.get(0)), (l, r) -> {
+                    SqlTuple result = new SqlTuple();
+                    for (int i = 0; i < l.size(); i++)
+                        result.add(l.get(i));
+                    for (int i = 0; i < r.size(); i++)
+                        result.add(r.get(i));
+                    return result;
+                })
+                .deindex();
+        ColumnarBatch actualJoin = (ColumnarBatch) outputs.get("join");
+        Assert.assertTrue(actualJoin.size() > 0);
+        Assert.assertTrue(joined.equals(actualJoin.toZSet()));
+
+        // A columnar batch joined with a Z-set produces the same rows
+        outputs = circuit.step(Map.of("T", batch, "S", s));
+        Assert.assertTrue(joined.equals((ZSet<SqlTuple, Long>) outputs.get("join")));
+        // A columnar batch joined with a LongZSet is joined with long weights
+        outputs = circuit.step(Map.of("T", batch, "S", LongZSet.fromZSet(s)));
+        Assert.assertEquals(LongZSet.fromZSet(joined), outputs.get("join"));
+
+        // Batches joined on a VARCHAR key are joined one row at a time
+        Circuit<Long> strings = new Circuit<>(LongWeight.INSTANCE);
+        InputOperator<Long> stringLeft = strings.addInput("T");
+        InputOperator<Long> stringRight = strings.addInput("S");
+        JoinOperator<Long> stringJoin = strings.addOperator(
+                new JoinOperator<>(LongWeight.INSTANCE, 2, 2, stringLeft, stringRight));
+        strings.addOutput("join", stringJoin);
+        ZSet<SqlTuple, Long> u = new ZSet<>(LongWeight.INSTANCE);
+        for (int i = 0; i < 8; i++)
+            u.append(row(i, i, i == 5 ? null : "s" + (i % 3)), (long) (i % 2 + 1));
+        outputs = strings.step(Map.of(
+                "T", batch, "S", ColumnarBatch.fromZSet(u, schema)));
+        ZSet<SqlTuple, Long> stringJoined = t.index(r -> r.get(2))
+                .join(u.filter(r -> !r.get(2).isNull()).index(r -> r.get(2)), (l, r) -> {
+                    SqlTuple result = new SqlTuple();
+                    for (int i = 0; i < l.size(); i++)
+                        result.add(l.get(i));
+                    for (int i = 0; i < r.size(); i++)
+                        result.add(r.get(i));
+                    return result;
+                })
+                .deindex();
+        ZSet<SqlTuple, Long> actualStringJoin = (ZSet<SqlTuple, Long>) outputs.get("join");
+        Assert.assertFalse(actualStringJoin.isEmpty());
+        Assert.assertTrue(stringJoined.equals(actualStringJoin));
+
+        // Without kernels the rows are processed one at a time, with the same result
+        Circuit<Long> rows = new Circuit<>(LongWeight.INSTANCE);
+        InputOperator<Long> input = rows.addInput("T");
+        FilterOperator<Long> rowFilter = rows.addOperator(new FilterOperator<>(LongWeight.INSTANCE, keep, input));
+        SelectOperator<Long> rowSelect = rows.addOperator(new SelectOperator<>(LongWeight.INSTANCE, project, rowFilter));
+        rows.addOutput("select", rowSelect);
+        outputs = rows.step(Map.of("T", batch));
+        Assert.assertTrue(selected.equals((ZSet<SqlTuple, Long>) outputs.get("select")));
+
+        // Types without a primitive column are stored as boxed values
+        DecimalSqlType decimal = new DecimalSqlType(10, 2);
+        ZSet<SqlTuple, Long> d = new ZSet<>(LongWeight.INSTANCE);
+        d.append(new SqlTuple().add(new IntegerSqlValue(1)).add(new DecimalSqlValue(new BigDecimal("1.5"), decimal)));
+        d.append(new SqlTuple().add(new IntegerSqlValue(2)).add(new DecimalSqlValue(null, decimal)), -1L);
+        ColumnarBatch decimals = ColumnarBatch.fromZSet(d, IntegerSqlType.INSTANCE, decimal);
+        Assert.assertTrue(decimals.getColumn(1).hasNulls());
+        Assert.assertTrue(d.equals(decimals.toZSet()));
+    }
 }